@@ -0,0 +1,43 @@
+package com.polymarket.bot;
+
+import com.polymarket.bot.service.BotConfig;
+import com.polymarket.bot.service.ConfigManager;
+import com.polymarket.bot.service.LoadHarness;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Load and ingest tests against local stubs; the micro-benchmarks run through JMH's own main.
+ * 针对本地存根的负载测试和拉取测试；微基准测试通过 JMH 自带的主类运行。
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.polymarket.bot.LoadTest [KEY=VALUE]...
+ *     LOADTEST_RATE/SECONDS/ADDRESSES/MARKETS set the load, other keys configure the bot
+ * java -cp target/benchmarks.jar com.polymarket.bot.LoadTest ingest [KEY=VALUE]...
+ *     Paging throughput over a recorded (LOADTEST_LOG) or synthetic high-volume day
+ * java -jar target/benchmarks.jar [JMH options]
+ * </pre>
+ */
+public class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) {
+        boolean ingest = args.length > 0 && "ingest".equals(args[0]);
+        List<String> settings = Arrays.asList(args).subList(ingest ? 1 : 0, args.length);
+        try {
+            BotConfig config = ConfigManager.load().current().with(ConfigManager.parse(settings), 0);
+            if (ingest) {
+                LoadHarness.runIngest(config);
+            } else {
+                LoadHarness.runLoad(config);
+            }
+            System.exit(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.polymarket.bot.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of matching a trade's creator against the watchlist, half hits and half
+ * misses: {@link AddressIndex} against the {@code Set<String>} it replaced, at
+ * several watchlist sizes.
+ * 将交易创建者与观察列表匹配的开销（命中和未命中各占一半）：在多种观察列表规模下，
+ * 比较 {@link AddressIndex} 与其取代的 {@code Set<String>}。
+ *
+ * {@code addressIndex} and {@code stringSet} reuse the lookup strings, so the set
+ * finds their hash already cached; the {@code decoded} pair builds a new string
+ * per lookup, as every decoded trade brings one, and the set has to hash it.
+ * {@code addressIndex} 和 {@code stringSet} 复用查找字符串，因此集合直接使用已缓存的哈希值；
+ * {@code decoded} 这一对每次查找都构建新字符串（每笔解码的交易都会带来一个），集合必须重新计算哈希。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressMatchBenchmark {
+
+    private static final int LOOKUPS = 20_000;
+
+    @Param({ "1000", "10000", "100000" })
+    public int addresses;
+
+    private AddressIndex index;
+    private Set<String> set;
+    private String[] lookups;
+    private char[][] lookupChars;
+
+    @Setup
+    public void setUp() {
+        // Random addresses, like real ones; sequential numbers would leave the high bits zero
+        // 随机地址，与真实地址一样；顺序编号会使高位全为零
+        Random random = new Random(42);
+        String[] watched = new String[addresses];
+        List<String> manual = new ArrayList<>();
+        List<String> smartMoney = new ArrayList<>();
+        set = new HashSet<>();
+        for (int i = 0; i < addresses; i++) {
+            watched[i] = randomAddress(random);
+            (i % 2 == 0 ? manual : smartMoney).add(watched[i]);
+            set.add(watched[i]);
+        }
+        // Loaded in bulk, as the bot does; add() copies the table per address / 与机器人一样批量加载；add() 每个地址复制一次表
+        index = new AddressIndex();
+        index.addAll(manual, AddressIndex.MANUAL);
+        index.addAll(smartMoney, AddressIndex.SMART_MONEY);
+
+        // Random order, so the larger tables do not stay in cache / 随机顺序，使较大的表无法常驻缓存
+        lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = i % 2 == 0 ? watched[random.nextInt(addresses)] : randomAddress(random); // Miss / 未命中
+        }
+        lookupChars = new char[LOOKUPS][];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupChars[i] = lookups[i].toCharArray();
+        }
+    }
+
+    private static String randomAddress(Random random) {
+        return String.format("0x%016x%016x%08x", random.nextLong(), random.nextLong(), random.nextInt());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long addressIndex() {
+        long flags = 0;
+        for (String address : lookups) {
+            flags += index.flags(address);
+        }
+        return flags;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long stringSet() {
+        long hits = 0;
+        for (String address : lookups) {
+            if (set.contains(address)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long addressIndexDecoded() {
+        long flags = 0;
+        for (char[] address : lookupChars) {
+            flags += index.flags(new String(address));
+        }
+        return flags;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long stringSetDecoded() {
+        long hits = 0;
+        for (char[] address : lookupChars) {
+            if (set.contains(new String(address))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,64 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.FlowSignal;
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering one Telegram alert, for a single fill and for a coalesced flow window.
+ * 渲染一条 Telegram 警报的开销，分别针对单笔成交和合并的流量窗口。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertFormatBenchmark {
+
+    private static final int SIGNALS = 100;
+
+    private final List<FlowSignal> singles = new ArrayList<>();
+    private final List<FlowSignal> windows = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        for (Trade trade : BenchData.sampleTrades(SIGNALS)) {
+            singles.add(FlowSignal.of(new MatchedTrade(trade, true)));
+            windows.add(new FlowSignal(trade, true, 5, 4_200_000_000L, 1_300_000_000L,
+                    List.of(trade.id()), trade.creationTimestamp() - 20));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void singleFill(Blackhole bh) {
+        for (FlowSignal signal : singles) {
+            bh.consume(WhaleWatcher.alertMessage(signal));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void coalescedWindow(Blackhole bh) {
+        for (FlowSignal signal : windows) {
+            bh.consume(WhaleWatcher.alertMessage(signal));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.polymarket.bot.model.Trade;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sample trades and pages shared by the benchmarks.
+ * 各基准测试共用的示例交易和分页。
+ */
+final class BenchData {
+
+    private BenchData() {
+    }
+
+    /**
+     * Trades by 100 whales over 50 markets, one per second, ending now.
+     * 100 个巨鲸在 50 个市场上的交易，每秒一笔，截止到当前时间。
+     */
+    static List<Trade> sampleTrades(int count) {
+        List<Trade> trades = new ArrayList<>(count);
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < count; i++) {
+            long collateral = (10 + i % 1991) * 1_000_000L;
+            trades.add(new Trade(String.format("0x%016x", i), now - count + i, "Load market " + i % 50 + " #" + i,
+                    i % 2, i % 4 == 0 ? "Sell" : "Buy", Long.toString(collateral * 2), Long.toString(collateral),
+                    String.format("0x%040x", i % 100 + 1), LoadStubs.conditionId(i % 50)));
+        }
+        return trades;
+    }
+
+    /**
+     * Encodes trades the way the subgraph returns them. / 按子图返回的格式编码交易。
+     */
+    static byte[] encodePage(List<Trade> trades) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator g = new JsonFactory().createGenerator(out)) {
+            g.writeStartObject();
+            g.writeObjectFieldStart("data");
+            g.writeArrayFieldStart("fpmmTrades");
+            for (Trade trade : trades) {
+                LoadStubs.writeTrade(g, trade);
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+            g.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.polymarket.bot.model.Trade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding one {@code fpmmTrades} response: the streaming {@link SubgraphDecoder}
+ * against the tree model ({@code readTree} on the body string) it replaced.
+ * 解码一个 {@code fpmmTrades} 响应的开销：流式 {@link SubgraphDecoder} 与其取代的树模型（对响应体字符串调用 {@code readTree}）对比。
+ *
+ * Set {@code -p payload=<file>} to decode a recorded response body instead of a
+ * generated page; {@code pageSize} is then ignored.
+ * 设置 {@code -p payload=<file>} 可解码已记录的响应体而不是生成的分页；此时忽略 {@code pageSize}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({ "100", "1000" })
+    public int pageSize;
+
+    /** Recorded response body, or empty for a generated page / 已记录的响应体，为空时使用生成的分页 */
+    @Param({ "" })
+    public String payload;
+
+    private SubgraphDecoder decoder;
+    private ObjectMapper mapper;
+    private byte[] page;
+
+    @Setup
+    public void setUp() throws IOException {
+        decoder = new SubgraphDecoder(new JsonFactory());
+        mapper = new ObjectMapper();
+        page = payload.isEmpty() ? BenchData.encodePage(BenchData.sampleTrades(pageSize))
+                : Files.readAllBytes(Path.of(payload));
+    }
+
+    @Benchmark
+    public List<Trade> streaming() throws IOException {
+        return decoder.decodeTrades(new ByteArrayInputStream(page));
+    }
+
+    /**
+     * The original path: read the body as a string, build the tree, then copy fields out.
+     * 原始路径：将响应体读为字符串，构建树，再逐个取出字段。
+     */
+    @Benchmark
+    public List<Trade> treeModel() throws IOException {
+        JsonNode trades = mapper.readTree(new String(page, StandardCharsets.UTF_8)).path("data").path("fpmmTrades");
+        List<Trade> result = new ArrayList<>(trades.size());
+        for (JsonNode trade : trades) {
+            JsonNode conditions = trade.path("fpmm").path("conditions");
+            result.add(new Trade(trade.path("id").asText(), trade.path("creationTimestamp").asLong(),
+                    trade.path("title").asText(), trade.path("outcomeIndex").asInt(), trade.path("type").asText(),
+                    trade.path("amount").asText(), trade.path("collateralAmount").asText(),
+                    trade.path("creator").path("id").asText().toLowerCase(),
+                    conditions.size() > 0 ? conditions.get(0).path("id").asText() : null));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,360 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.polymarket.bot.model.Trade;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Performance baselines for the poll → alert → copy path.
+ * 轮询 → 警报 → 跟单路径的性能基线。
+ *
+ * {@link #runLoad} starts the real watcher, executor and pipeline against
+ * {@link LoadStubs} and reports throughput, trade-to-alert latency percentiles
+ * and the bot's allocation rate. Per-operation costs are measured by the JMH
+ * benchmarks next to this class.
+ * {@link #runLoad} 针对 {@link LoadStubs} 启动真实的观察者、执行器和流水线，报告吞吐量、交易到警报的延迟分位数和机器人的内存分配速率。
+ * 单次操作的开销由本类旁边的 JMH 基准测试测量。
+ */
+public class LoadHarness {
+
+    private static final Pattern SEQ = Pattern.compile("#(\\d+)");
+
+    private LoadHarness() {
+    }
+
+    /**
+     * Runs the bot against local stubs with the load from the {@code LOADTEST_*} settings.
+     * 以 {@code LOADTEST_*} 设置的负载针对本地存根运行机器人。
+     *
+     * Every other setting configures the bot as usual; endpoints, the watchlist,
+     * the state directory and the trade mode are replaced so nothing leaves the host.
+     * 其他设置照常配置机器人；端点、观察列表、状态目录和交易模式会被替换，因此不会有任何请求离开本机。
+     */
+    public static void runLoad(BotConfig base) throws Exception {
+        double rate = base.getDouble("LOADTEST_RATE", 50);
+        long seconds = base.getLong("LOADTEST_SECONDS", 60);
+        int addressCount = base.getInt("LOADTEST_ADDRESSES", 100);
+        int marketCount = base.getInt("LOADTEST_MARKETS", 50);
+        // Long enough for open flow windows to close / 足以让未关闭的流量窗口关闭
+        long drainSeconds = base.getLong("LOADTEST_DRAIN_SECONDS", base.getLong("FLOW_WINDOW_SECONDS", 0) + 10);
+
+        List<String> whales = new ArrayList<>(addressCount);
+        for (int i = 0; i < addressCount; i++) {
+            whales.add(String.format("0x%040x", i + 1));
+        }
+        LoadStubs stubs = new LoadStubs(whales, marketCount);
+        stubs.start();
+        String url = stubs.baseUrl();
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("ACTIVITY_SUBGRAPH_URLS", url + "/activity");
+        overrides.put("PNL_SUBGRAPH_URLS", url + "/pnl");
+        overrides.put("GAMMA_URL", url + "/gamma");
+        overrides.put("CLOB_URL", url + "/clob");
+        overrides.put("MANUAL_WATCHLIST", String.join(",", whales));
+        overrides.put("TRADE_MODE", "SIMULATION");
+        overrides.put("STATE_DIR", Files.createTempDirectory("loadtest-state").toString());
+        overrides.put("EVENT_LOG_DIR", "none");
+        overrides.put("EVENT_LOG_CONSOLE", "false");
+        // Blank resets a key to its default / 空值将键重置为默认值
+        overrides.put("CLUSTER_DIR", "");
+        overrides.put("HTTP_PROXY_HOST", "");
+        BotConfig config = base.with(overrides, 0);
+        ConfigManager configs = new ConfigManager(config, null);
+
+        Metrics metrics = new Metrics();
+        EventLog events = EventLog.fromConfig(config, metrics);
+        events.start();
+
+        Latencies toAlert = new Latencies();
+        Latencies toDelivery = new Latencies();
+        AtomicLong alerts = new AtomicLong();
+        AtomicLong copies = new AtomicLong();
+        stubs.onDelivery(toDelivery::add);
+
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl(url + "/telegram/bot");
+        TelegramNotifier notifier = new TelegramNotifier(options, "load", "1", metrics) {
+            @Override
+            public void sendAlert(String message, long tradeTimestamp) {
+                long now = System.nanoTime();
+                // Copy logs start with 📋; alerts name the newest fill they report / 跟单日志以 📋 开头；警报包含其报告的最新成交
+                if (message.startsWith("📋")) {
+                    copies.incrementAndGet();
+                } else {
+                    alerts.incrementAndGet();
+                    Matcher m = SEQ.matcher(message);
+                    if (m.find()) {
+                        toAlert.add(now - stubs.generatedNanos(Long.parseLong(m.group(1))));
+                    }
+                }
+                super.sendAlert(message, tradeTimestamp);
+            }
+        };
+        TradeExecutor executor = new TradeExecutor(notifier, configs, events, metrics);
+        WhaleWatcher watcher = new WhaleWatcher(notifier, executor, configs, events, metrics);
+        PollPipeline pipeline = PollPipeline.forWatcher(config, watcher, metrics);
+        pipeline.start(TradeSource.fromConfig(config, metrics));
+
+        AllocationSampler allocation = new AllocationSampler(stubs::threadIds);
+        allocation.start();
+        long[] gcStart = gcTotals();
+        long start = System.nanoTime();
+
+        System.out.printf("Load test: %d whales, %d markets, %.1f trades/s for %d s (+%d s drain) / 负载测试开始%n",
+                addressCount, marketCount, rate, seconds, drainSeconds);
+        stubs.startGenerating(rate, seconds, 42);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds + drainSeconds));
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long allocated = allocation.stop();
+        long[] gcEnd = gcTotals();
+        stubs.stop();
+
+        long matched = pipeline.getMatchStats().getCount();
+        System.out.printf("Generated %d trades, matched %d (%.1f/s), alerts %d, copies %d, Telegram messages %d"
+                + " (dropped %d)%n", stubs.getGeneratedCount(), matched, matched / (double) seconds, alerts.get(),
+                copies.get(), stubs.getMessageCount(), notifier.getDroppedCount());
+        System.out.println("Trade -> alert queued:     " + toAlert);
+        System.out.println("Trade -> Telegram delivery: " + toDelivery);
+        System.out.println("Pipeline: " + pipeline.getFetchStats() + "; " + pipeline.getMatchStats() + "; "
+                + pipeline.getDispatchStats());
+        System.out.printf("Allocation: %.1f MB/s by the bot (stubs excluded), %d GCs, %d ms GC time%n",
+                allocated / elapsed / 1e6, gcEnd[0] - gcStart[0], gcEnd[1] - gcStart[1]);
+        System.out.println("Ledger: " + executor.getLedger().describe().lines().findFirst().orElse(""));
+    }
+
+    /**
+     * Measures how fast {@link TradeIngestor} pages through a high-volume day served by {@link LoadStubs}.
+     * 测量 {@link TradeIngestor} 分页读取由 {@link LoadStubs} 提供的高成交量一天数据的速度。
+     *
+     * The day is the recording at {@code LOADTEST_LOG} ({@code record <file> 1 all})
+     * or, without one, a synthetic day of {@code LOADTEST_DAY_RATE} trades per
+     * second with a burst of {@code LOADTEST_BURST} trades in one second every ten
+     * minutes, so paging by id within a second is exercised too. The whole day is
+     * indexed up front and ingested from its first second until the cursor
+     * catches up; every trade must come back exactly once.
+     * 数据来自 {@code LOADTEST_LOG} 中的记录（{@code record <file> 1 all}）；若未提供，则合成一天数据：
+     * 每秒 {@code LOADTEST_DAY_RATE} 笔，每十分钟有一秒突发 {@code LOADTEST_BURST} 笔，以便同时覆盖同一秒内按 id 分页。
+     * 整天数据预先索引，从第一秒开始拉取直到游标追上；每笔交易必须恰好返回一次。
+     */
+    public static void runIngest(BotConfig base) throws Exception {
+        String log = base.get("LOADTEST_LOG");
+        List<Trade> day = log != null && !log.isBlank() ? recordedDay(TradeLog.open(Path.of(log)))
+                : syntheticDay(base.getDouble("LOADTEST_DAY_RATE", 3), base.getInt("LOADTEST_BURST", 1500), 42);
+        if (day.isEmpty()) {
+            System.err.println("No trades to replay / 没有可回放的交易");
+            return;
+        }
+        LoadStubs stubs = new LoadStubs(List.of(day.get(0).creator()), 1);
+        stubs.preload(day);
+        stubs.start();
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("HTTP_PROXY_HOST", "");
+        BotConfig config = base.with(overrides, 0);
+        Metrics metrics = new Metrics();
+        JsonFactory factory = new JsonFactory();
+        SubgraphMirrors graph = new SubgraphMirrors("activity", List.of(stubs.baseUrl() + "/activity"),
+                new UpstreamClient(config, metrics), factory, config.getBoolean("GRAPHQL_GZIP_REQUESTS", false), 1,
+                Long.MAX_VALUE, metrics);
+        TradeIngestor ingestor = new TradeIngestor(graph, new SubgraphDecoder(factory),
+                day.get(0).creationTimestamp());
+
+        System.out.printf("Ingest test: %d trades over %d s / 拉取测试开始%n", day.size(),
+                day.get(day.size() - 1).creationTimestamp() - day.get(0).creationTimestamp() + 1);
+        Set<String> seen = new HashSet<>(day.size() * 2);
+        long duplicates = 0;
+        long polls = 0;
+        long start = System.nanoTime();
+        while (true) {
+            List<Trade> batch = ingestor.fetchNewTrades();
+            polls++;
+            for (Trade trade : batch) {
+                if (!seen.add(trade.id())) {
+                    duplicates++;
+                }
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        stubs.stop();
+        System.out.printf("Ingested %d trades in %.2f s: %.0f trades/s, %d pages (%.2f ms/page) in %d polls,"
+                + " missing %d, duplicates %d%n", seen.size(), elapsed, seen.size() / elapsed, stubs.getQueryCount(),
+                elapsed * 1000 / Math.max(1, stubs.getQueryCount()), polls, day.size() - seen.size(), duplicates);
+    }
+
+    /**
+     * A recorded day with ids in trade order, which is also (timestamp, id) order.
+     * 按交易顺序编号的已记录一天数据，该顺序同时也是 (时间戳, id) 顺序。
+     */
+    private static List<Trade> recordedDay(TradeLog log) {
+        List<Trade> day = new ArrayList<>(log.size());
+        for (int i = 0; i < log.size(); i++) {
+            Trade t = log.trade(i);
+            day.add(new Trade(String.format("0x%016x", i), t.creationTimestamp(), t.title(), t.outcomeIndex(),
+                    t.type(), t.amount(), t.collateralAmount(), t.creator(), t.conditionId()));
+        }
+        day.sort(Comparator.comparingLong(Trade::creationTimestamp).thenComparing(Trade::id));
+        return day;
+    }
+
+    private static List<Trade> syntheticDay(double perSecond, int burst, long seed) {
+        Random random = new Random(seed);
+        long first = System.currentTimeMillis() / 1000 - TimeUnit.DAYS.toSeconds(1);
+        List<Trade> day = new ArrayList<>();
+        double due = 0;
+        for (long second = 0; second < TimeUnit.DAYS.toSeconds(1); second++) {
+            due += perSecond * 2 * random.nextDouble(); // Averages perSecond / 平均为 perSecond
+            int count = (int) due + (second % 600 == 300 ? burst : 0);
+            due -= (int) due;
+            for (int i = 0; i < count; i++) {
+                int seq = day.size();
+                int market = random.nextInt(500);
+                long collateral = (1 + random.nextInt(5000)) * 1_000_000L;
+                day.add(new Trade(String.format("0x%016x", seq), first + second, "Day market " + market,
+                        random.nextInt(2), random.nextInt(4) == 0 ? "Sell" : "Buy", Long.toString(collateral * 2),
+                        Long.toString(collateral), String.format("0x%040x", random.nextInt(20_000) + 1),
+                        LoadStubs.conditionId(market)));
+            }
+        }
+        return day;
+    }
+
+    /**
+     * Bytes allocated by threads other than the stubs', from periodic per-thread samples.
+     * 根据定期的逐线程采样，统计存根以外线程分配的字节数。
+     *
+     * JDK 17 has no process-wide total, and a thread that exits between two
+     * samples loses its allocation since the last one.
+     * JDK 17 没有进程级总量，在两次采样之间退出的线程会丢失自上次采样以来的分配量。
+     */
+    private static final class AllocationSampler {
+        private static final long SAMPLE_MILLIS = 200;
+
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        private final Supplier<long[]> stubThreads;
+        private final Set<Long> excluded = new HashSet<>();
+        // Per thread: bytes at its first sample and at its latest / 每个线程：首次采样和最近一次采样时的字节数
+        private final Map<Long, long[]> seen = new HashMap<>();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "alloc-sampler");
+            t.setDaemon(true);
+            excluded.add(t.getId());
+            return t;
+        });
+        private boolean baseline = true;
+
+        /**
+         * @param stubThreads Threads to leave out, re-read on every sample / 要排除的线程，每次采样时重新读取
+         */
+        AllocationSampler(Supplier<long[]> stubThreads) {
+            this.stubThreads = stubThreads;
+        }
+
+        void start() {
+            excluded.add(Thread.currentThread().getId());
+            sample();
+            baseline = false;
+            scheduler.scheduleAtFixedRate(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return bytes allocated since {@link #start()} / 自 {@link #start()} 以来分配的字节数
+         */
+        long stop() throws InterruptedException {
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            sample();
+            long total = 0;
+            for (long[] bytes : seen.values()) {
+                total += bytes[1] - bytes[0];
+            }
+            return total;
+        }
+
+        private synchronized void sample() {
+            for (long id : stubThreads.get()) {
+                excluded.add(id);
+            }
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0 || excluded.contains(ids[i])) {
+                    continue;
+                }
+                // Threads started after the baseline count from zero / 基线之后启动的线程从零开始计
+                long first = baseline ? bytes[i] : 0;
+                seen.computeIfAbsent(ids[i], id -> new long[] { first, 0 })[1] = bytes[i];
+            }
+        }
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] { count, millis };
+    }
+
+    /**
+     * Latency samples in nanoseconds, summarized as percentiles. / 以纳秒计的延迟样本，汇总为分位数。
+     */
+    private static final class Latencies {
+        private static final int MAX_SAMPLES = 1 << 20;
+        private long[] samples = new long[1024];
+        private int count;
+
+        synchronized void add(long nanos) {
+            if (count == samples.length && count < MAX_SAMPLES) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            if (count < samples.length) {
+                samples[count++] = nanos;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return "n=0";
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return String.format("n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", count,
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double q) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)] / 1e6;
+        }
+    }
+}
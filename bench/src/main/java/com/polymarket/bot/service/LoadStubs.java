@@ -0,0 +1,445 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.polymarket.bot.model.Trade;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-ins for the activity and PnL subgraphs, Gamma, the CLOB book
+ * endpoint and the Telegram Bot API, for load tests.
+ * 用于负载测试的活动和 PnL 子图、Gamma、CLOB 订单簿端点及 Telegram Bot API 的本地替身。
+ *
+ * Trades are generated for the given whales at a fixed rate and, like a
+ * subgraph indexing whole blocks, become visible to {@code fpmmTrades} queries
+ * one second at a time once that second is over. Every title carries
+ * {@code #<seq>}, so an alert that reaches the Telegram stub can be traced back
+ * to the fill it reports and its generation time.
+ * 按固定速率为给定巨鲸生成交易，并像按整块索引的子图一样，每秒结束后该秒的交易才一次性对 {@code fpmmTrades} 查询可见。
+ * 每个标题带有 {@code #<seq>}，因此到达 Telegram 存根的警报可以追溯到其报告的成交及生成时间。
+ */
+public class LoadStubs {
+
+    private static final Pattern SEQ = Pattern.compile("#(\\d+)");
+    private static final long GENERATE_TICK_MILLIS = 10;
+    // Fills trade around 0.5, inside the stub book / 成交价约 0.5，位于存根订单簿之内
+    private static final double FILL_PRICE = 0.5;
+
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private volatile boolean stopped;
+    private final Set<Long> threadIds = new HashSet<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = mapper.getFactory();
+    private final List<String> whales;
+    private final int markets;
+
+    // Indexed trades in (timestamp, id) order, guarded by this / 按 (时间戳, id) 排序的已索引交易，由 this 保护
+    private final List<Trade> trades = new ArrayList<>();
+    // Generation time by seq, including trades not yet indexed / 按序号记录的生成时间，包括尚未索引的交易
+    private long[] generatedNanos = new long[1024];
+    private int generated;
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final Set<Long> delivered = new HashSet<>();
+    private volatile LongConsumer deliveryLatency = nanos -> {
+    };
+
+    /**
+     * @param whales  Addresses that trade / 进行交易的地址
+     * @param markets Markets the trades are spread over / 交易分布的市场数
+     */
+    public LoadStubs(List<String> whales, int markets) throws IOException {
+        this.whales = List.copyOf(whales);
+        this.markets = Math.max(1, markets);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // A fixed pool, so its allocation can be told apart from the bot's / 固定线程池，以便将其内存分配与机器人区分开
+        this.pool = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "stub-http");
+            t.setDaemon(true);
+            synchronized (threadIds) {
+                threadIds.add(t.getId());
+            }
+            return t;
+        });
+        server.setExecutor(pool);
+        server.createContext("/activity", exchange -> handle(exchange, this::graphql));
+        server.createContext("/pnl", exchange -> handle(exchange, this::graphql));
+        server.createContext("/gamma/markets", exchange -> handle(exchange, this::gammaMarkets));
+        server.createContext("/clob/books", exchange -> handle(exchange, this::books));
+        server.createContext("/telegram/", exchange -> handle(exchange, this::telegram));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * IDs of the stub's own threads (server and generator). / 存根自身线程（服务器和生成器）的 ID。
+     */
+    public long[] threadIds() {
+        synchronized (threadIds) {
+            return threadIds.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /**
+     * Receives generation-to-delivery nanos for the first Telegram message naming each fill.
+     * 接收每笔成交首次出现在 Telegram 消息中时从生成到送达的纳秒数。
+     */
+    public void onDelivery(LongConsumer latency) {
+        this.deliveryLatency = latency;
+    }
+
+    public long getMessageCount() {
+        return messages.get();
+    }
+
+    /**
+     * GraphQL requests answered on the subgraph endpoints. / 子图端点应答的 GraphQL 请求数。
+     */
+    public long getQueryCount() {
+        return queries.get();
+    }
+
+    public synchronized int getGeneratedCount() {
+        return generated;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when fill {@code seq} was generated / 成交 {@code seq} 生成时的 {@link System#nanoTime()}
+     */
+    public synchronized long generatedNanos(long seq) {
+        return seq < generated ? generatedNanos[(int) seq] : 0;
+    }
+
+    /**
+     * Generates trades at {@code perSecond} for {@code seconds} on a daemon thread,
+     * which then idles until {@link #stop()} so its allocation stays measurable.
+     * 在守护线程上以 {@code perSecond} 的速率生成交易，持续 {@code seconds} 秒，之后空闲直到 {@link #stop()}，
+     * 以便其内存分配仍可测量。
+     */
+    public void startGenerating(double perSecond, long seconds, long seed) {
+        Thread t = new Thread(() -> {
+            Random random = new Random(seed);
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+            double due = 0;
+            List<Trade> block = new ArrayList<>();
+            long blockSecond = System.currentTimeMillis() / 1000;
+            while (!stopped) {
+                long now = System.currentTimeMillis();
+                if (now / 1000 != blockSecond) {
+                    index(block);
+                    block.clear();
+                    blockSecond = now / 1000;
+                }
+                if (now < end) {
+                    due += perSecond * GENERATE_TICK_MILLIS / 1000.0;
+                    for (; due >= 1; due--) {
+                        block.add(newTrade(random, blockSecond));
+                    }
+                }
+                try {
+                    Thread.sleep(GENERATE_TICK_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "stub-generator");
+        t.setDaemon(true);
+        synchronized (threadIds) {
+            threadIds.add(t.getId());
+        }
+        t.start();
+    }
+
+    /**
+     * Makes a whole period visible at once, as a fully indexed subgraph would.
+     * 一次性使整段时间的交易可见，如同已完全索引的子图。
+     *
+     * @param recorded Trades in (timestamp, id) order, ids zero-padded hex / 按 (时间戳, id) 排序的交易，id 为补零的十六进制
+     */
+    public void preload(List<Trade> recorded) {
+        index(recorded);
+    }
+
+    private synchronized void index(List<Trade> block) {
+        trades.addAll(block);
+    }
+
+    private synchronized Trade newTrade(Random random, long timestamp) {
+        int seq = generated++;
+        if (seq == generatedNanos.length) {
+            generatedNanos = Arrays.copyOf(generatedNanos, generatedNanos.length * 2);
+        }
+        generatedNanos[seq] = System.nanoTime();
+        int market = random.nextInt(markets);
+        // 10 to 2000 USDC / 10 到 2000 USDC
+        long collateral = (10 + random.nextInt(1991)) * 1_000_000L;
+        return new Trade(String.format("0x%016x", seq), timestamp,
+                "Load market " + market + " #" + seq, random.nextInt(2), random.nextInt(4) == 0 ? "Sell" : "Buy",
+                Long.toString(Math.round(collateral / FILL_PRICE)), Long.toString(collateral),
+                whales.get(random.nextInt(whales.size())), conditionId(market));
+    }
+
+    static String conditionId(int market) {
+        return String.format("0x%064x", market + 1);
+    }
+
+    static String tokenId(int market, int outcome) {
+        return Long.toString(1_000_000L + market * 2L + outcome);
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, byte[] body, JsonGenerator out) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            byte[] body = in.readAllBytes();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+            try (JsonGenerator g = factory.createGenerator(buffer)) {
+                handler.handle(exchange, body, g);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, buffer.size());
+            try (OutputStream os = exchange.getResponseBody()) {
+                buffer.writeTo(os);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Stub " + exchange.getRequestURI().getPath() + " failed: " + e);
+        }
+    }
+
+    /**
+     * Answers {@code fpmmTrades} (filtered, ordered and paged like the subgraph) and {@code users}.
+     * 响应 {@code fpmmTrades}（按子图方式过滤、排序和分页）和 {@code users}。
+     */
+    private void graphql(HttpExchange exchange, byte[] body, JsonGenerator g) throws IOException {
+        queries.incrementAndGet();
+        JsonNode request = mapper.readTree(body);
+        String query = request.path("query").asText();
+        JsonNode variables = request.path("variables");
+        g.writeStartObject();
+        g.writeObjectFieldStart("data");
+        if (query.contains("users(")) {
+            g.writeArrayFieldStart("users");
+            int first = variables.path("first").asInt(50);
+            for (int i = 0; i < Math.min(first, whales.size()); i++) {
+                g.writeStartObject();
+                g.writeStringField("id", whales.get(i));
+                g.writeStringField("profit", Integer.toString(1_000_000 - i));
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        } else if (query.contains("fpmmTrades(") && !query.contains(" a0:")) {
+            g.writeArrayFieldStart("fpmmTrades");
+            for (Trade trade : select(query, variables)) {
+                writeTrade(g, trade);
+            }
+            g.writeEndArray();
+        }
+        // Aliased discovery batches get no activity / 别名发现批量查询不返回活动
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    private List<Trade> select(String query, JsonNode variables) {
+        JsonNode where = variables.path("where");
+        Set<String> creators = null;
+        JsonNode creatorList = where.has("creator_in") ? where.get("creator_in") : variables.get("creators");
+        if (creatorList != null) {
+            creators = new HashSet<>();
+            for (JsonNode creator : creatorList) {
+                creators.add(creator.asText());
+            }
+        }
+        long gte = where.has("creationTimestamp_gte") ? where.get("creationTimestamp_gte").asLong()
+                : where.has("creationTimestamp_gt") ? where.get("creationTimestamp_gt").asLong() + 1
+                : where.has("creationTimestamp") ? where.get("creationTimestamp").asLong() : 0;
+        long lte = where.has("creationTimestamp") ? gte : Long.MAX_VALUE;
+        String idGt = where.path("id_gt").asText("");
+        int first = variables.path("first").asInt(1);
+        boolean desc = query.contains("orderDirection: desc");
+
+        List<Trade> result = new ArrayList<>();
+        synchronized (this) {
+            int from = desc ? trades.size() - 1 : firstAtOrAfter(gte);
+            int step = desc ? -1 : 1;
+            for (int i = from; i >= 0 && i < trades.size() && result.size() < first; i += step) {
+                Trade trade = trades.get(i);
+                if (trade.creationTimestamp() > lte) {
+                    break;
+                }
+                // Ids are zero-padded hex, so they order like the sequence / id 为补零的十六进制，与序号同序
+                if (trade.creationTimestamp() >= gte && trade.id().compareTo(idGt) > 0
+                        && (creators == null || creators.contains(trade.creator()))) {
+                    result.add(trade);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int firstAtOrAfter(long timestamp) {
+        int lo = 0;
+        int hi = trades.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (trades.get(mid).creationTimestamp() < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void gammaMarkets(HttpExchange exchange, byte[] body, JsonGenerator g) throws IOException {
+        g.writeStartArray();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        for (String param : rawQuery == null ? new String[0] : rawQuery.split("&")) {
+            String[] kv = param.split("=", 2);
+            if (kv.length < 2 || !"condition_ids".equals(kv[0])) {
+                continue;
+            }
+            String id = URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
+            int market = (int) Long.parseLong(id.substring(2), 16) - 1;
+            if (market < 0 || market >= markets) {
+                continue;
+            }
+            g.writeStartObject();
+            g.writeStringField("conditionId", id);
+            g.writeStringField("question", "Load market " + market);
+            g.writeStringField("clobTokenIds",
+                    "[\"" + tokenId(market, 0) + "\",\"" + tokenId(market, 1) + "\"]");
+            g.writeBooleanField("negRisk", false);
+            g.writeBooleanField("acceptingOrders", true);
+            g.writeNumberField("orderPriceMinTickSize", 0.01);
+            g.writeNumberField("orderMinSize", 5);
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private void books(HttpExchange exchange, byte[] body, JsonGenerator g) throws IOException {
+        g.writeStartArray();
+        for (JsonNode request : mapper.readTree(body)) {
+            g.writeStartObject();
+            g.writeStringField("asset_id", request.path("token_id").asText());
+            writeLevels(g, "bids", FILL_PRICE, -0.01);
+            writeLevels(g, "asks", FILL_PRICE, 0.01);
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeLevels(JsonGenerator g, String side, double best, double step) throws IOException {
+        g.writeArrayFieldStart(side);
+        for (int i = 0; i < 5; i++) {
+            g.writeStartObject();
+            g.writeStringField("price", String.format("%.2f", best + i * step));
+            g.writeStringField("size", "2000");
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    /**
+     * Accepts {@code sendMessage} and times every fill the message names for the first time.
+     * 接受 {@code sendMessage}，并为消息中首次出现的每笔成交计时。
+     */
+    private void telegram(HttpExchange exchange, byte[] body, JsonGenerator g) throws IOException {
+        long now = System.nanoTime();
+        String text = mapper.readTree(body).path("text").asText();
+        long id = messages.incrementAndGet();
+        Matcher m = SEQ.matcher(text);
+        while (m.find()) {
+            long seq = Long.parseLong(m.group(1));
+            long generated;
+            synchronized (this) {
+                generated = delivered.add(seq) ? generatedNanos(seq) : 0;
+            }
+            if (generated > 0) {
+                deliveryLatency.accept(now - generated);
+            }
+        }
+        g.writeStartObject();
+        g.writeBooleanField("ok", true);
+        g.writeObjectFieldStart("result");
+        g.writeNumberField("message_id", id);
+        g.writeNumberField("date", System.currentTimeMillis() / 1000);
+        g.writeObjectFieldStart("chat");
+        g.writeNumberField("id", 1);
+        g.writeStringField("type", "private");
+        g.writeEndObject();
+        g.writeStringField("text", text);
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    /**
+     * Writes a trade as the subgraph does, numbers as strings. / 按子图格式写出交易，数字以字符串表示。
+     */
+    static void writeTrade(JsonGenerator g, Trade trade) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", trade.id());
+        g.writeStringField("creationTimestamp", Long.toString(trade.creationTimestamp()));
+        g.writeStringField("title", trade.title());
+        g.writeStringField("outcomeIndex", Integer.toString(trade.outcomeIndex()));
+        g.writeStringField("type", trade.type());
+        g.writeStringField("amount", trade.amount());
+        g.writeStringField("collateralAmount", trade.collateralAmount());
+        g.writeObjectFieldStart("creator");
+        g.writeStringField("id", trade.creator());
+        g.writeEndObject();
+        g.writeObjectFieldStart("fpmm");
+        g.writeArrayFieldStart("conditions");
+        g.writeStartObject();
+        g.writeStringField("id", trade.conditionId());
+        g.writeEndObject();
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+}
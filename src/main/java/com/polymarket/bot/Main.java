@@ -1,16 +1,28 @@
 package com.polymarket.bot;
 
+import com.polymarket.bot.service.BotConfig;
+import com.polymarket.bot.service.ConfigManager;
+import com.polymarket.bot.service.EventLog;
+import com.polymarket.bot.service.Metrics;
+import com.polymarket.bot.service.PollPipeline;
 import com.polymarket.bot.service.TelegramNotifier;
 import com.polymarket.bot.service.TradeExecutor;
+import com.polymarket.bot.service.TradeSource;
 import com.polymarket.bot.service.WhaleWatcher;
-import io.github.cdimascio.dotenv.Dotenv;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Main Entry Point.
@@ -19,16 +31,23 @@ import java.net.InetSocketAddress;
 public class Main {
     public static void main(String[] args) {
         // 1. Load Environment Variables / 加载环境变量
-        // Handle case where .env file is missing (e.g. Docker/Production)
-        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        // Read once (.env may be missing, e.g. Docker/Production); components keep the snapshot
+        // 只读取一次（.env 可能不存在，例如 Docker/生产环境）；各组件持有快照
+        ConfigManager configs = ConfigManager.load();
+        BotConfig config = configs.current();
 
-        String botToken = dotenv.get("TELEGRAM_BOT_TOKEN");
-        if (botToken == null)
-            botToken = System.getenv("TELEGRAM_BOT_TOKEN");
+        // Offline record/replay commands need no Telegram config / 离线记录/回放命令无需 Telegram 配置
+        if (args.length > 0) {
+            try {
+                System.exit(Replay.run(args, config));
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
 
-        String chatId = dotenv.get("TELEGRAM_CHAT_ID");
-        if (chatId == null)
-            chatId = System.getenv("TELEGRAM_CHAT_ID");
+        String botToken = config.get("TELEGRAM_BOT_TOKEN");
+        String chatId = config.get("TELEGRAM_CHAT_ID");
 
         if (botToken == null || chatId == null) {
             System.err.println("Fatal Error: Missing Configuration");
@@ -40,16 +59,14 @@ public class Main {
         }
 
         try {
+            // Shared metrics registry, scraped at /metrics / 共享指标注册表，通过 /metrics 抓取
+            Metrics metrics = new Metrics();
+
             // 2. Initialize Telegram Bot with Proxy Support / 初始化带代理支持的 Telegram 机器人
             DefaultBotOptions botOptions = new DefaultBotOptions();
 
-            String proxyHost = dotenv.get("HTTP_PROXY_HOST");
-            if (proxyHost == null)
-                proxyHost = System.getenv("HTTP_PROXY_HOST");
-
-            String proxyPort = dotenv.get("HTTP_PROXY_PORT");
-            if (proxyPort == null)
-                proxyPort = System.getenv("HTTP_PROXY_PORT");
+            String proxyHost = config.get("HTTP_PROXY_HOST");
+            String proxyPort = config.get("HTTP_PROXY_PORT");
 
             if (proxyHost != null && !proxyHost.isEmpty() && proxyPort != null && !proxyPort.isEmpty()) {
                 botOptions.setProxyType(DefaultBotOptions.ProxyType.HTTP);
@@ -59,7 +76,7 @@ public class Main {
                         "Using Proxy: " + proxyHost + ":" + proxyPort + " / 使用代理：" + proxyHost + ":" + proxyPort);
             }
 
-            TelegramNotifier bot = new TelegramNotifier(botOptions, botToken, chatId);
+            TelegramNotifier bot = new TelegramNotifier(botOptions, botToken, chatId, metrics);
             // No need to register bot - we're using send-only mode (no Long Polling)
             // 无需注册机器人 - 我们使用仅发送模式（无长轮询）
             System.out.println("Telegram Notifier initialized (Send-only mode). / Telegram 通知器已初始化（仅发送模式）。");
@@ -67,8 +84,13 @@ public class Main {
             bot.sendAlert("🤖 Polymarket Bot Started! Monitoring whales... \n🤖 Polymarket 机器人已启动！正在监控巨鲸...");
 
             // 3. Initialize Whale Watcher / 初始化巨鲸观察者
-            TradeExecutor executor = new TradeExecutor(bot);
-            WhaleWatcher watcher = new WhaleWatcher(bot, executor);
+            // Hot-path events go through the async event log / 热路径事件经由异步事件日志输出
+            EventLog events = EventLog.fromConfig(config, metrics);
+            events.start();
+            TradeExecutor executor = new TradeExecutor(bot, configs, events, metrics);
+            WhaleWatcher watcher = new WhaleWatcher(bot, executor, configs, events, metrics);
+            // Reloadable settings apply from the next trade / 可热加载的设置从下一笔交易起生效
+            configs.watch();
 
             // Send a test alert immediately / 立即发送测试警报
             // watcher.sendTestAlert(); // Disabled to prevent spam / 已禁用以防止刷屏
@@ -78,11 +100,13 @@ public class Main {
                 System.err.println(
                         "⚠️ WARNING: Goldsky Connection Failed. Please check PROXY_GUIDE.md. / 警告：Goldsky 连接失败。请检查 PROXY_GUIDE.md。");
             }
+            // Load the manual whales' markets before their next trade / 在手动巨鲸下一笔交易前加载其市场
+            watcher.warmMarkets();
 
             // 5. Start Keep-Alive Server (For Render/Fly Health Checks) / 启动保活服务器（用于
             // Render/Fly 健康检查）
             try {
-                int port = Integer.parseInt(dotenv.get("PORT", "8080"));
+                int port = config.getInt("PORT", 8080);
                 HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
                 server.createContext("/", exchange -> {
                     String response = "Polymarket Bot is Running. / Polymarket 机器人正在运行。";
@@ -91,21 +115,100 @@ public class Main {
                         os.write(response.getBytes());
                     }
                 });
+                // Prometheus text format / Prometheus 文本格式
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (var os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                });
+                String adminToken = config.get("CONFIG_ADMIN_TOKEN");
+                // Copy positions, exposure and PnL; holdings are private, so the admin token is required
+                // 跟单持仓、敞口和盈亏；持仓属于隐私，因此需要管理令牌
+                server.createContext("/positions", exchange -> {
+                    int status = 200;
+                    String response;
+                    if (!authorized(exchange, adminToken)) {
+                        status = 403;
+                        response = "Forbidden (CONFIG_ADMIN_TOKEN) / 禁止访问\n";
+                    } else {
+                        response = executor.getLedger().describe();
+                    }
+                    byte[] body = response.getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(status, body.length);
+                    try (var os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                });
+                // GET shows the reloadable settings; POST applies KEY=VALUE lines in memory
+                // GET 显示可热加载的设置；POST 在内存中应用 KEY=VALUE 行
+                server.createContext("/config", exchange -> {
+                    int status = 200;
+                    String response;
+                    if ("GET".equals(exchange.getRequestMethod())) {
+                        response = configs.current().describe();
+                    } else if (!"POST".equals(exchange.getRequestMethod())) {
+                        status = 405;
+                        response = "Method not allowed\n";
+                    } else if (!authorized(exchange, adminToken)) {
+                        status = 403;
+                        response = "Forbidden (CONFIG_ADMIN_TOKEN) / 禁止访问\n";
+                    } else {
+                        try (BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                            Map<String, String> updates = ConfigManager.parse(reader.lines().toList());
+                            Set<String> restartOnly = configs.apply(updates);
+                            response = configs.current().describe()
+                                    + (restartOnly.isEmpty() ? "" : "# restart required: " + restartOnly + "\n");
+                        } catch (IllegalArgumentException e) {
+                            status = 400;
+                            response = "Rejected: " + e.getMessage() + "\n";
+                        }
+                    }
+                    byte[] body = response.getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(status, body.length);
+                    try (var os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                });
                 server.start();
                 System.out.println("Keep-Alive HTTP Server started on port " + port);
             } catch (Exception e) {
                 System.err.println("Failed to start HTTP Server: " + e.getMessage());
             }
 
-            // 4. Schedule Polling (e.g., every 5 seconds) / 调度轮询（例如，每 5 秒）
-            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-            scheduler.scheduleAtFixedRate(watcher::poll, 0, 5, TimeUnit.SECONDS);
+            // 4. Schedule Polling / 调度轮询
+            // Ticks only hand off to the async pipeline, so a slow upstream never stalls the scheduler
+            // tick 只把任务交给异步流水线，因此上游变慢不会阻塞调度器
+            PollPipeline pipeline = PollPipeline.forWatcher(config, watcher, metrics);
+            pipeline.start(TradeSource.fromConfig(config, metrics));
             System.out.println("Whale polling scheduled. / 巨鲸轮询已调度。");
 
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+            // 6. Refresh Smart Money on a schedule (Auto-Discovery) / 定期刷新聪明钱（自动发现）
+            long discoveryMinutes = config.getLong("DISCOVERY_INTERVAL_MINUTES", 30);
+            scheduler.scheduleWithFixedDelay(watcher::refreshWhales, 0, discoveryMinutes, TimeUnit.MINUTES);
+
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("Fatal Error during startup. Exiting. / 启动期间发生致命错误。正在退出。");
             System.exit(1);
         }
     }
+
+    /**
+     * Whether the request carries {@code Authorization: Bearer <CONFIG_ADMIN_TOKEN>}; always false when unset.
+     * 请求是否携带 {@code Authorization: Bearer <CONFIG_ADMIN_TOKEN>}；未设置令牌时总是 false。
+     */
+    private static boolean authorized(HttpExchange exchange, String adminToken) {
+        return adminToken != null && MessageDigest.isEqual(
+                ("Bearer " + adminToken).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(exchange.getRequestHeaders().getFirst("Authorization"))
+                        .getBytes(StandardCharsets.UTF_8));
+    }
 }
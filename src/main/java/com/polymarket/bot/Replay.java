@@ -0,0 +1,73 @@
+package com.polymarket.bot;
+
+import com.polymarket.bot.service.BotConfig;
+import com.polymarket.bot.service.ReplayEngine;
+import com.polymarket.bot.service.TradeLog;
+import com.polymarket.bot.service.TradeRecorder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline commands: record trade history and backtest the copy strategy on it.
+ * 离线命令：记录交易历史并在其上回测跟单策略。
+ *
+ * <pre>
+ * record &lt;file&gt; &lt;days&gt; [all]      Manual watchlist (or every trade) over the last days
+ * replay &lt;file&gt; [key=value,...]...  One parameter set per argument, defaults from the environment
+ * </pre>
+ */
+public class Replay {
+
+    private Replay() {
+    }
+
+    /**
+     * @return process exit code / 进程退出码
+     */
+    public static int run(String[] args, BotConfig config) throws Exception {
+        if (args.length >= 3 && "record".equals(args[0])) {
+            long now = System.currentTimeMillis() / 1000;
+            long from = now - Long.parseLong(args[2]) * 86400;
+            Set<String> manual = new HashSet<>(config.manualWatchlist());
+            List<String> creators = args.length > 3 && "all".equals(args[3]) || manual.isEmpty() ? null
+                    : new ArrayList<>(manual);
+            System.out.println("Recording " + (creators == null ? "all trades" : creators.size() + " addresses")
+                    + " since " + from + " / 开始记录交易");
+            int count = TradeRecorder.record(config, Path.of(args[1]), from, now, creators);
+            System.out.println("Recorded " + count + " trades to " + args[1] + " / 已记录 " + count + " 笔交易");
+            return 0;
+        }
+        if (args.length >= 2 && "replay".equals(args[0])) {
+            long loadStart = System.nanoTime();
+            TradeLog log = TradeLog.open(Path.of(args[1]));
+            System.out.println("Loaded " + log.size() + " trades (" + log.creatorCount() + " traders, "
+                    + log.marketCount() + " markets) in " + (System.nanoTime() - loadStart) / 1_000_000
+                    + " ms / 已加载交易日志");
+
+            // Every set starts from the bot's own settings / 每个参数集都从机器人自身的设置开始
+            ReplayEngine.Params defaults = new ReplayEngine.Params("default", false, Map.of());
+            List<ReplayEngine.Params> sets = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                sets.add(defaults.with("name=set" + (i - 1)).with(args[i]));
+            }
+            if (sets.isEmpty()) {
+                sets.add(defaults);
+            }
+
+            int threads = config.getInt("REPLAY_THREADS", Runtime.getRuntime().availableProcessors());
+            long start = System.nanoTime();
+            List<ReplayEngine.Result> results = new ReplayEngine(log, config).run(sets, threads);
+            System.out.println("Replayed " + sets.size() + " parameter sets in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms / 回放完成");
+            results.forEach(System.out::println);
+            return 0;
+        }
+        System.err.println("Usage: record <file> <days> [all] | replay <file> [key=value,...]...");
+        return 2;
+    }
+}
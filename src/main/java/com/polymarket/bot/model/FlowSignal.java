@@ -0,0 +1,44 @@
+package com.polymarket.bot.model;
+
+import java.util.List;
+
+/**
+ * One or more fills of a whale in a market outcome, coalesced into a single signal.
+ * 巨鲸在某个市场结果上的一笔或多笔成交，合并为单个信号。
+ *
+ * @param trade     Net trade: last fill's market and id, net side, net USDC and shares at the side's average price / 净交易：最后一笔成交的市场和 ID，净方向、净 USDC 及按该方向均价计算的份额
+ * @param manual    true if the creator is on the manual (copy) watchlist / 如果交易者在手动（跟单）列表中则为 true
+ * @param fills     Fills coalesced / 合并的成交笔数
+ * @param buyUsdc   Bought, raw USDC / 买入金额（原始 USDC）
+ * @param sellUsdc  Sold, raw USDC / 卖出金额（原始 USDC）
+ * @param tradeIds  IDs of the coalesced fills / 合并的成交 ID
+ * @param firstTimestamp Creation time of the oldest fill, Unix seconds / 最早一笔成交的创建时间（Unix 秒）
+ */
+public record FlowSignal(
+        Trade trade,
+        boolean manual,
+        int fills,
+        double buyUsdc,
+        double sellUsdc,
+        List<String> tradeIds,
+        long firstTimestamp) {
+
+    // Net flows under 1 USDC after both buying and selling count as a round trip / 买卖后净额低于 1 USDC 视为来回交易
+    private static final double FLAT_USDC_RAW = 1e6;
+
+    /** A single fill, passed through as is. / 单笔成交，原样传递。 */
+    public static FlowSignal of(MatchedTrade matched) {
+        Trade trade = matched.trade();
+        double usdc = Double.parseDouble(trade.collateralAmount());
+        boolean sell = "Sell".equalsIgnoreCase(trade.type());
+        return new FlowSignal(trade, matched.manual(), 1, sell ? 0 : usdc, sell ? usdc : 0, List.of(trade.id()),
+                trade.creationTimestamp());
+    }
+
+    /**
+     * @return true if buys and sells cancelled out, so there is nothing to copy / 买卖相互抵消，无需跟单时返回 true
+     */
+    public boolean flat() {
+        return buyUsdc > 0 && sellUsdc > 0 && Math.abs(buyUsdc - sellUsdc) < FLAT_USDC_RAW;
+    }
+}
@@ -0,0 +1,11 @@
+package com.polymarket.bot.model;
+
+/**
+ * A trade by one of our watched whales.
+ * 我们关注的巨鲸之一的交易。
+ *
+ * @param trade  The trade / 交易
+ * @param manual true if the creator is on the manual (copy) watchlist / 如果交易者在手动（跟单）列表中则为 true
+ */
+public record MatchedTrade(Trade trade, boolean manual) {
+}
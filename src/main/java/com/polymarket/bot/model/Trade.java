@@ -0,0 +1,27 @@
+package com.polymarket.bot.model;
+
+/**
+ * An immutable fpmmTrade as decoded from the activity subgraph.
+ * 从活动子图解码的不可变 fpmmTrade。
+ *
+ * @param id               Trade ID / 交易 ID
+ * @param creationTimestamp Unix seconds / Unix 秒
+ * @param title            Market title (interned) / 市场标题（已驻留）
+ * @param outcomeIndex     Outcome index / 结果索引
+ * @param type             Buy/Sell (interned) / 买/卖（已驻留）
+ * @param amount           Outcome token amount, raw / 结果代币数量（原始值）
+ * @param collateralAmount USDC amount, raw / USDC 数量（原始值）
+ * @param creator          Lower-cased trader address / 小写交易者地址
+ * @param conditionId      Condition id of the market, or null if not queried / 市场的条件 ID，未查询时为 null
+ */
+public record Trade(
+        String id,
+        long creationTimestamp,
+        String title,
+        int outcomeIndex,
+        String type,
+        String amount,
+        String collateralAmount,
+        String creator,
+        String conditionId) {
+}
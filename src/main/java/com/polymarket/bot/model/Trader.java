@@ -0,0 +1,11 @@
+package com.polymarket.bot.model;
+
+/**
+ * An immutable user row from the PnL subgraph.
+ * 来自 PnL 子图的不可变用户记录。
+ *
+ * @param id     Lower-cased address / 小写地址
+ * @param profit Realized profit / 已实现利润
+ */
+public record Trader(String id, double profit) {
+}
@@ -0,0 +1,86 @@
+package com.polymarket.bot.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls fast while whales are active and backs off when quiet.
+ * 巨鲸活跃时快速轮询，安静时逐步放缓。
+ *
+ * The next tick is scheduled only once the previous fetch has completed, so
+ * fetches never overlap. A fetch that returns trades drops the interval to the
+ * minimum; each empty fetch stretches it by {@code BACKOFF_FACTOR} up to the
+ * maximum. Failed fetches jump straight to the maximum so an upstream outage is
+ * not hammered at the fast rate.
+ * 只有上一次拉取完成后才调度下一次 tick，因此拉取不会重叠。拉取到交易时间隔降到最小值；
+ * 每次空拉取将间隔乘以 {@code BACKOFF_FACTOR}，直到最大值。拉取失败时直接跳到最大值，
+ * 避免以高频率冲击故障中的上游。
+ */
+public class AdaptivePollSource implements TradeSource {
+
+    private static final double BACKOFF_FACTOR = 1.5;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "trade-source");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Runnable tick;
+    private volatile long intervalMillis;
+    private ScheduledFuture<?> nextTick; // Guarded by this / 由 this 保护
+
+    public AdaptivePollSource(long minIntervalMillis, long maxIntervalMillis) {
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Invalid poll interval range: " + minIntervalMillis + "-"
+                    + maxIntervalMillis + "ms");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.intervalMillis = minIntervalMillis;
+    }
+
+    @Override
+    public void start(Runnable tick) {
+        this.tick = tick;
+        scheduler.execute(tick);
+    }
+
+    @Override
+    public synchronized void onFetch(int newTrades, boolean failed) {
+        long next;
+        if (failed) {
+            next = maxIntervalMillis;
+        } else if (newTrades > 0) {
+            next = minIntervalMillis;
+        } else {
+            next = Math.min(maxIntervalMillis, (long) (intervalMillis * BACKOFF_FACTOR));
+        }
+        intervalMillis = next;
+        // Keep a single pending tick even if the pipeline ran extra fetches / 即使流水线额外拉取，也只保留一个待定 tick
+        if (nextTick != null) {
+            nextTick.cancel(false);
+        }
+        if (!scheduler.isShutdown()) {
+            nextTick = scheduler.schedule(tick, next, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "adaptive " + minIntervalMillis + "-" + maxIntervalMillis + "ms";
+    }
+}
@@ -0,0 +1,362 @@
+package com.polymarket.bot.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watchlist index over 20-byte addresses stored as primitives.
+ * 以原始类型存储 20 字节地址的观察列表索引。
+ *
+ * Each address is kept as two longs plus an int in an open-addressing table, with
+ * a flag byte per slot (manual / smart money). Lookups parse the hex address
+ * in place, so matching a trade allocates nothing and needs no toLowerCase().
+ * Reads are lock-free against an immutable {@link Snapshot}; updates build a new
+ * snapshot and publish it with a volatile write (copy-on-write).
+ * 每个地址以两个 long 加一个 int 存储在开放寻址表中，每个槽位带一个标志字节（手动/聪明钱）。
+ * 查找时原地解析十六进制地址，因此匹配交易无需分配内存，也无需 toLowerCase()。
+ * 读操作针对不可变的 {@link Snapshot} 无锁进行；更新时构建新快照并通过 volatile 写发布（写时复制）。
+ */
+public class AddressIndex {
+
+    /** Address is on the manual (copy-trade) list / 地址在手动（跟单）列表中 */
+    public static final int MANUAL = 1;
+    /** Address was selected by discovery / 地址由自动发现选出 */
+    public static final int SMART_MONEY = 2;
+
+    private volatile Snapshot snapshot = new Snapshot(new long[0], new long[0], new int[0], new byte[0], 0, 0);
+
+    /**
+     * @return the flags for the address, or 0 if not watched / 地址的标志，未观察时返回 0
+     */
+    public int flags(CharSequence address) {
+        return snapshot.flags(address);
+    }
+
+    public boolean contains(CharSequence address) {
+        return flags(address) != 0;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Current immutable view; cheap to take on every poll.
+     * 当前的不可变视图；每次轮询获取的开销很小。
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets a flag on an address, adding it if needed.
+     * 为地址设置标志，必要时添加该地址。
+     *
+     * @return true if the address was not already watched / 如果地址之前未被观察则返回 true
+     * @throws IllegalArgumentException if the address is not 0x + 40 hex chars / 地址格式无效时抛出
+     */
+    public synchronized boolean add(String address, int flag) {
+        int existing = snapshot.flags(address);
+        addAll(List.of(address), flag);
+        return existing == 0;
+    }
+
+    /**
+     * Sets a flag on many addresses with a single copy.
+     * 以一次复制为多个地址设置标志。
+     *
+     * @throws IllegalArgumentException if any address is invalid / 任一地址无效时抛出
+     */
+    public synchronized void addAll(Collection<String> addresses, int flag) {
+        Snapshot current = snapshot;
+        Map<Packed, Integer> updates = new LinkedHashMap<>();
+        for (String address : addresses) {
+            Packed key = Packed.parse(address);
+            int existing = current.flags(key);
+            if ((existing & flag) != flag) {
+                updates.put(key, existing | flag);
+            }
+        }
+        if (!updates.isEmpty()) {
+            snapshot = current.with(updates);
+        }
+    }
+
+    /**
+     * Clears a flag; the address is removed once no flags remain.
+     * 清除标志；没有剩余标志时移除该地址。
+     *
+     * @return true if the address is no longer watched / 如果地址不再被观察则返回 true
+     */
+    public synchronized boolean remove(String address, int flag) {
+        Snapshot current = snapshot;
+        int existing = current.flags(address);
+        if ((existing & flag) == 0) {
+            return false;
+        }
+        snapshot = current.with(Map.of(Packed.parse(address), existing & ~flag));
+        return (existing & ~flag) == 0;
+    }
+
+    /**
+     * Sets a flag on exactly these addresses and clears it everywhere else, in one swap.
+     * 仅为这些地址设置标志并在其他地址上清除，一次换入完成。
+     *
+     * Readers see either the old list or the new one, never a mix.
+     * 读取方只会看到旧列表或新列表，不会看到两者混合。
+     *
+     * @throws IllegalArgumentException if any address is invalid / 任一地址无效时抛出
+     */
+    public synchronized void replaceFlag(Collection<String> addresses, int flag) {
+        Snapshot current = snapshot;
+        Set<Packed> keep = new HashSet<>();
+        Map<Packed, Integer> updates = new LinkedHashMap<>();
+        for (String address : addresses) {
+            Packed key = Packed.parse(address);
+            keep.add(key);
+            int existing = current.flags(key);
+            if ((existing & flag) != flag) {
+                updates.put(key, existing | flag);
+            }
+        }
+        for (int slot = 0; slot < current.slotFlags.length; slot++) {
+            if ((current.slotFlags[slot] & flag) != 0) {
+                Packed key = current.key(slot);
+                if (!keep.contains(key)) {
+                    updates.put(key, current.slotFlags[slot] & ~flag);
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            snapshot = current.with(updates);
+        }
+    }
+
+    /**
+     * Replaces the whole index in one swap.
+     * 一次换入替换整个索引。
+     *
+     * @param flagsByAddress Flags per address; entries with no flags are skipped / 每个地址的标志；无标志的条目会被跳过
+     */
+    public synchronized void replaceAll(Map<String, Integer> flagsByAddress) {
+        Map<Packed, Integer> entries = new LinkedHashMap<>();
+        flagsByAddress.forEach((address, flag) -> {
+            if (flag != 0) {
+                entries.put(Packed.parse(address), flag);
+            }
+        });
+        snapshot = Snapshot.of(entries, snapshot.version + 1);
+    }
+
+    private static int hash(long hi, long mid, int lo) {
+        // Addresses are already uniformly distributed; fold and mix / 地址本身分布均匀；折叠并混合
+        long h = hi * 0x9E3779B97F4A7C15L ^ mid ^ ((long) lo << 32);
+        return (int) (h ^ (h >>> 29));
+    }
+
+    /**
+     * An address as its three columns; used only on the update path.
+     * 以三列表示的地址；仅在更新路径上使用。
+     */
+    private record Packed(long hi, long mid, int lo) {
+
+        /**
+         * Parses "0x" + 40 hex chars (any case).
+         * 解析 "0x" + 40 个十六进制字符（大小写均可）。
+         *
+         * @throws IllegalArgumentException if the address is invalid / 地址无效时抛出
+         */
+        static Packed parse(CharSequence s) {
+            if (s == null || s.length() != 42 || s.charAt(0) != '0' || (s.charAt(1) | 0x20) != 'x') {
+                throw new IllegalArgumentException("Invalid address: " + s);
+            }
+            long hi = 0, mid = 0;
+            int lo = 0;
+            for (int i = 0; i < 40; i++) {
+                int nibble = Character.digit(s.charAt(i + 2), 16);
+                if (nibble < 0) {
+                    throw new IllegalArgumentException("Invalid address: " + s);
+                }
+                if (i < 16)
+                    hi = (hi << 4) | nibble;
+                else if (i < 32)
+                    mid = (mid << 4) | nibble;
+                else
+                    lo = (lo << 4) | nibble;
+            }
+            return new Packed(hi, mid, lo);
+        }
+
+        /** Lower-cased "0x" + 40 hex chars. / 小写的 "0x" + 40 个十六进制字符。 */
+        String address() {
+            HexFormat hex = HexFormat.of();
+            return "0x" + hex.toHexDigits(hi) + hex.toHexDigits(mid) + hex.toHexDigits(lo);
+        }
+    }
+
+    /**
+     * Immutable open-addressing table. Safe to read from any thread.
+     * 不可变的开放寻址表。可在任意线程读取。
+     *
+     * The packed columns are the only copy of the addresses; {@link #addresses()}
+     * formats them back to strings when asked.
+     * 打包的列是地址的唯一副本；{@link #addresses()} 在调用时将其格式化回字符串。
+     */
+    public static final class Snapshot {
+        private final long[] his;
+        private final long[] mids;
+        private final int[] los;
+        private final byte[] slotFlags; // 0 = empty slot / 0 表示空槽
+        private final int mask;
+        private final int size;
+        private final long version;
+
+        /** Builds the table from {@code count} entries given as parallel columns. / 由以并行列给出的 {@code count} 个条目构建表。 */
+        private Snapshot(long[] his, long[] mids, int[] los, byte[] flags, int count, long version) {
+            this.size = count;
+            this.version = version;
+
+            int capacity = Integer.highestOneBit(Math.max(4, count * 2) - 1) << 1;
+            this.his = new long[capacity];
+            this.mids = new long[capacity];
+            this.los = new int[capacity];
+            this.slotFlags = new byte[capacity];
+            this.mask = capacity - 1;
+
+            for (int i = 0; i < count; i++) {
+                int slot = hash(his[i], mids[i], los[i]) & mask;
+                while (slotFlags[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.his[slot] = his[i];
+                this.mids[slot] = mids[i];
+                this.los[slot] = los[i];
+                this.slotFlags[slot] = flags[i];
+            }
+        }
+
+        private static Snapshot of(Map<Packed, Integer> entries, long version) {
+            int n = entries.size();
+            long[] his = new long[n];
+            long[] mids = new long[n];
+            int[] los = new int[n];
+            byte[] flags = new byte[n];
+            int i = 0;
+            for (Map.Entry<Packed, Integer> e : entries.entrySet()) {
+                his[i] = e.getKey().hi();
+                mids[i] = e.getKey().mid();
+                los[i] = e.getKey().lo();
+                flags[i] = e.getValue().byteValue();
+                i++;
+            }
+            return new Snapshot(his, mids, los, flags, n, version);
+        }
+
+        int flags(CharSequence s) {
+            if (size == 0 || s == null || s.length() != 42 || s.charAt(0) != '0'
+                    || (s.charAt(1) | 0x20) != 'x') {
+                return 0;
+            }
+            // Parse inline (no scratch array) so lookups allocate nothing / 内联解析（无临时数组），查找不分配内存
+            long hi = 0, mid = 0;
+            int lo = 0;
+            for (int i = 0; i < 40; i++) {
+                int nibble = Character.digit(s.charAt(i + 2), 16);
+                if (nibble < 0) {
+                    return 0;
+                }
+                if (i < 16)
+                    hi = (hi << 4) | nibble;
+                else if (i < 32)
+                    mid = (mid << 4) | nibble;
+                else
+                    lo = (lo << 4) | nibble;
+            }
+            return flags(hi, mid, lo);
+        }
+
+        private int flags(Packed key) {
+            return flags(key.hi(), key.mid(), key.lo());
+        }
+
+        private int flags(long hi, long mid, int lo) {
+            int slot = hash(hi, mid, lo) & mask;
+            while (slotFlags[slot] != 0) {
+                if (his[slot] == hi && mids[slot] == mid && los[slot] == lo) {
+                    return slotFlags[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        private Packed key(int slot) {
+            return new Packed(his[slot], mids[slot], los[slot]);
+        }
+
+        /**
+         * Copy with the given addresses set to new flags (removed if 0).
+         * 复制并将给定地址设置为新标志（为 0 时移除）。
+         */
+        private Snapshot with(Map<Packed, Integer> updates) {
+            int capacity = size + updates.size();
+            long[] nextHis = new long[capacity];
+            long[] nextMids = new long[capacity];
+            int[] nextLos = new int[capacity];
+            byte[] nextFlags = new byte[capacity];
+            int n = 0;
+            for (int slot = 0; slot < slotFlags.length; slot++) {
+                if (slotFlags[slot] != 0 && !updates.containsKey(key(slot))) {
+                    nextHis[n] = his[slot];
+                    nextMids[n] = mids[slot];
+                    nextLos[n] = los[slot];
+                    nextFlags[n++] = slotFlags[slot];
+                }
+            }
+            for (Map.Entry<Packed, Integer> e : updates.entrySet()) {
+                if (e.getValue() != 0) {
+                    nextHis[n] = e.getKey().hi();
+                    nextMids[n] = e.getKey().mid();
+                    nextLos[n] = e.getKey().lo();
+                    nextFlags[n++] = e.getValue().byteValue();
+                }
+            }
+            return new Snapshot(nextHis, nextMids, nextLos, nextFlags, n, version + 1);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Incremented on every update; lets callers detect changes cheaply.
+         * 每次更新递增；便于调用方低成本地检测变化。
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Watched addresses, formatted from the table; called on changes, not per trade.
+         * 从表中格式化出的观察地址；在变化时调用，而非每笔交易调用。
+         *
+         * @return lower-cased watched addresses / 小写的观察地址
+         */
+        public List<String> addresses() {
+            List<String> result = new ArrayList<>(size);
+            for (int slot = 0; slot < slotFlags.length; slot++) {
+                if (slotFlags[slot] != 0) {
+                    result.add(key(slot).address());
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
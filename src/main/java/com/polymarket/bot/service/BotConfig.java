@@ -0,0 +1,249 @@
+package com.polymarket.bot.service;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import io.github.cdimascio.dotenv.DotenvEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable configuration snapshot.
+ * 不可变的配置快照。
+ *
+ * Values come from the environment and .env (loaded once), overlaid by the
+ * optional config file and then by {@code /config} updates. The keys in
+ * {@link #RELOADABLE} are parsed up front into typed fields, so a bad value
+ * rejects the whole update instead of surfacing mid-trade; every other key is
+ * read by its component at startup.
+ * 值来自环境变量和 .env（只加载一次），依次被可选的配置文件和 {@code /config} 更新覆盖。
+ * {@link #RELOADABLE} 中的键会预先解析为类型化字段，因此错误的值会使整个更新被拒绝，而不是在交易中途暴露；
+ * 其他键由各组件在启动时读取。
+ */
+public final class BotConfig {
+
+    /** Keys applied without a restart / 无需重启即可生效的键 */
+    public static final Set<String> RELOADABLE = Set.of("MANUAL_WATCHLIST", "MIN_WIN_RATE", "MAX_DAILY_TRADES",
+            "COPY_TRADE_AMOUNT", "COPY_RATIO", "COPY_MAX_AMOUNT", "COPY_MAX_BOOK_SHARE", "COPY_MAX_SLIPPAGE",
+            "RISK_MAX_MARKET_USDC", "RISK_MAX_WHALE_USDC", "RISK_MAX_TOTAL_USDC", "RISK_DAILY_LOSS_USDC");
+
+    private static final Pattern ADDRESS = Pattern.compile("0x[0-9a-f]{40}");
+
+    private final Map<String, String> values;
+    private final long version;
+
+    private final List<String> manualWatchlist;
+    private final double minWinRate;
+    private final int maxDailyTrades;
+    private final double copyTradeAmount;
+    private final double copyRatio;
+    private final double copyMaxAmount;
+    private final double copyMaxBookShare;
+    private final double copyMaxSlippage;
+    private final double riskMaxMarketUsdc;
+    private final double riskMaxWhaleUsdc;
+    private final double riskMaxTotalUsdc;
+    private final double riskDailyLossUsdc;
+
+    private BotConfig(Map<String, String> values, long version) {
+        this.values = Collections.unmodifiableMap(values);
+        this.version = version;
+        this.manualWatchlist = parseWatchlist(get("MANUAL_WATCHLIST", ""));
+        this.minWinRate = getDouble("MIN_WIN_RATE", 0.60);
+        this.maxDailyTrades = getInt("MAX_DAILY_TRADES", 50);
+        this.copyTradeAmount = getDouble("COPY_TRADE_AMOUNT", 10.0);
+        this.copyRatio = getDouble("COPY_RATIO", 0);
+        this.copyMaxAmount = getDouble("COPY_MAX_AMOUNT", 100.0);
+        this.copyMaxBookShare = getDouble("COPY_MAX_BOOK_SHARE", 0.5);
+        this.copyMaxSlippage = getDouble("COPY_MAX_SLIPPAGE", 0.02);
+        this.riskMaxMarketUsdc = getDouble("RISK_MAX_MARKET_USDC", 250);
+        this.riskMaxWhaleUsdc = getDouble("RISK_MAX_WHALE_USDC", 500);
+        this.riskMaxTotalUsdc = getDouble("RISK_MAX_TOTAL_USDC", 2000);
+        this.riskDailyLossUsdc = getDouble("RISK_DAILY_LOSS_USDC", 250);
+        if (minWinRate < 0 || minWinRate > 1 || maxDailyTrades < 0 || copyTradeAmount < 0 || copyRatio < 0
+                || copyMaxAmount < 0 || copyMaxBookShare < 0 || copyMaxSlippage < 0 || riskMaxMarketUsdc < 0
+                || riskMaxWhaleUsdc < 0 || riskMaxTotalUsdc < 0 || riskDailyLossUsdc < 0) {
+            throw new IllegalArgumentException("Copy, risk and filter settings must not be negative, MIN_WIN_RATE <= 1");
+        }
+    }
+
+    /**
+     * Reads the environment and .env once. / 一次性读取环境变量和 .env。
+     */
+    public static BotConfig load() {
+        Map<String, String> values = new HashMap<>(System.getenv());
+        // dotenv's entries already merge the environment over .env / dotenv 的条目已将环境变量合并到 .env 之上
+        for (DotenvEntry entry : Dotenv.configure().ignoreIfMissing().load().entries()) {
+            values.put(entry.getKey(), entry.getValue());
+        }
+        return new BotConfig(values, 0);
+    }
+
+    /**
+     * Copy with the given keys overridden; a blank value resets a key to its default.
+     * 覆盖给定键后的副本；空值会将该键重置为默认值。
+     *
+     * @param version Version of the new snapshot / 新快照的版本
+     * @throws IllegalArgumentException if a reloadable value does not parse / 可热加载的值无法解析时抛出
+     */
+    public BotConfig with(Map<String, String> overrides, long version) {
+        Map<String, String> next = new HashMap<>(values);
+        overrides.forEach((key, value) -> next.put(key, value == null ? "" : value.trim()));
+        return new BotConfig(next, version);
+    }
+
+    /**
+     * @return keys whose value differs from the other snapshot / 与另一快照取值不同的键
+     */
+    public Set<String> changedKeys(BotConfig other) {
+        Set<String> keys = new LinkedHashSet<>(values.keySet());
+        keys.addAll(other.values.keySet());
+        keys.removeIf(key -> Objects.equals(values.get(key), other.values.get(key)));
+        return keys;
+    }
+
+    /** Incremented on every update. / 每次更新递增。 */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the trimmed value, or null if unset or blank / 去除空白后的值；未设置或为空时返回 null
+     */
+    public String get(String key) {
+        String value = values.get(key);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = get(key);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    /**
+     * Comma-separated list, trimmed, without blanks. / 逗号分隔的列表（去空白、不含空项）。
+     */
+    public List<String> getList(String key) {
+        List<String> items = new ArrayList<>();
+        for (String item : get(key, "").split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /** Valid lower-cased manual addresses. / 有效的小写手动地址。 */
+    public List<String> manualWatchlist() {
+        return manualWatchlist;
+    }
+
+    public double minWinRate() {
+        return minWinRate;
+    }
+
+    public int maxDailyTrades() {
+        return maxDailyTrades;
+    }
+
+    /** Fixed USDC per copy. / 每笔跟单的固定 USDC。 */
+    public double copyTradeAmount() {
+        return copyTradeAmount;
+    }
+
+    /** Fraction of the whale's USDC, 0 for the fixed amount. / 巨鲸 USDC 的比例，0 表示固定金额。 */
+    public double copyRatio() {
+        return copyRatio;
+    }
+
+    public double copyMaxAmount() {
+        return copyMaxAmount;
+    }
+
+    public double copyMaxBookShare() {
+        return copyMaxBookShare;
+    }
+
+    public double copyMaxSlippage() {
+        return copyMaxSlippage;
+    }
+
+    /** Open cost allowed per market, 0 for no cap. / 每个市场允许的持仓成本，0 表示不限。 */
+    public double riskMaxMarketUsdc() {
+        return riskMaxMarketUsdc;
+    }
+
+    /** Open cost allowed from copying one whale, 0 for no cap. / 跟单单个巨鲸允许的持仓成本，0 表示不限。 */
+    public double riskMaxWhaleUsdc() {
+        return riskMaxWhaleUsdc;
+    }
+
+    /** Open cost allowed overall, 0 for no cap. / 允许的总持仓成本，0 表示不限。 */
+    public double riskMaxTotalUsdc() {
+        return riskMaxTotalUsdc;
+    }
+
+    /** Loss today (realized plus unrealized) that stops new buys, 0 for no limit. / 停止新买入的当日亏损（已实现加未实现），0 表示不限。 */
+    public double riskDailyLossUsdc() {
+        return riskDailyLossUsdc;
+    }
+
+    /**
+     * Reloadable settings as text, for {@code /config}. / 可热加载的设置文本，用于 {@code /config}。
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder("# version ").append(version).append('\n');
+        for (String key : sorted(RELOADABLE)) {
+            sb.append(key).append('=').append(values.getOrDefault(key, "")).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static List<String> sorted(Set<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static List<String> parseWatchlist(String value) {
+        List<String> addresses = new ArrayList<>();
+        for (String address : value.split(",")) {
+            String clean = address.trim().toLowerCase();
+            if (clean.isEmpty()) {
+                continue;
+            }
+            if (!ADDRESS.matcher(clean).matches()) {
+                System.err.println("Ignoring invalid manual watch address: " + clean + " / 忽略无效的手动观察地址：" + clean);
+                continue;
+            }
+            addresses.add(clean);
+        }
+        return List.copyOf(addresses);
+    }
+}
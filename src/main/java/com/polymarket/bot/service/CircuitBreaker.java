@@ -0,0 +1,81 @@
+package com.polymarket.bot.service;
+
+/**
+ * Consecutive-failure circuit breaker for one upstream endpoint.
+ * 针对单个上游端点的连续失败熔断器。
+ *
+ * After {@code failureThreshold} failures in a row the circuit opens and calls
+ * fail fast for {@code openMillis}. Then a single probe is let through
+ * (half-open): success closes the circuit, failure re-opens it.
+ * 连续失败 {@code failureThreshold} 次后熔断器打开，在 {@code openMillis} 内调用直接失败。
+ * 之后放行一个探测请求（半开）：成功则关闭熔断器，失败则重新打开。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return true if a call may proceed; the caller must then report its outcome / 允许调用时返回 true；调用方随后必须报告结果
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAtMillis < openMillis) {
+                return false;
+            }
+            // Open long enough: half-open and let one probe in / 打开时间已到：半开并放行一个探测请求
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (probeInFlight) {
+            return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            System.out.println("Circuit closed for " + name + " / " + name + " 熔断器已关闭");
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            if (state == State.CLOSED) {
+                System.err.println("Circuit opened for " + name + " after " + consecutiveFailures
+                        + " failures / " + name + " 连续失败 " + consecutiveFailures + " 次，熔断器已打开");
+            }
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
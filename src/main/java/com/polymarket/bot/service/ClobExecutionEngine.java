@@ -0,0 +1,617 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Submits copy orders to the Polymarket CLOB.
+ * 向 Polymarket CLOB 提交跟单订单。
+ *
+ * Signing is kept off the hot path: for every prepared (token, side, notional)
+ * a ladder of orders, one per price tick, is signed in the background. A
+ * submission takes the signed order for its limit tick, adds the L2 HMAC
+ * headers and enqueues the pre-rendered body on a pooled HTTP/2 client; the
+ * used rung is re-signed in the background. Orders that rest on the book are
+ * polled until they fill or are cancelled; when tracking times out we cancel
+ * them ourselves.
+ * 签名不在热路径上：对每个已准备的（代币、方向、金额），后台为每个价格刻度签好一个订单，组成价格阶梯。
+ * 提交时取出限价刻度对应的已签名订单，加上 L2 HMAC 请求头，在池化的 HTTP/2 客户端上异步发送预先生成的请求体；
+ * 用掉的档位在后台重新签名。挂在订单簿上的订单会被轮询，直到成交或被取消；跟踪超时后由我们自行取消。
+ */
+public class ClobExecutionEngine {
+
+    /**
+     * Price ticks of 0.01; rung {@code t} is the limit price {@code t / 100}.
+     * 价格刻度为 0.01；档位 {@code t} 对应限价 {@code t / 100}。
+     */
+    private static final int TICKS = 100;
+    private static final long UNITS = 1_000_000; // USDC and outcome tokens have 6 decimals / USDC 和结果代币均为 6 位小数
+    private static final long MAX_SAFE_SALT = 1L << 53; // Salt is a JSON number / salt 是 JSON 数字
+    private static final long KEEP_WARM_SECONDS = 25;
+    private static final int MAX_IN_FLIGHT = 64;
+
+    private static final double[] SUBMIT_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1 };
+
+    private final OkHttpClient client;
+    private final JsonFactory factory = new JsonFactory();
+    private final SecureRandom random = new SecureRandom();
+    private final Metrics metrics;
+
+    private final String baseUrl;
+    private final OrderSigner signer;
+    private final String funder;
+    private final int signatureType;
+    private final String apiKey;
+    private final byte[] apiSecret;
+    private final String passphrase;
+    private final String orderType;
+    private final long fillPollMillis;
+    private final long fillTrackMillis;
+
+    private final ThreadLocal<Mac> hmac;
+    private final ExecutorService signerExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<LadderKey, Ladder> ladders;
+
+    private final Metrics.Histogram detectToSubmit;
+    private final Metrics.Histogram ackTime;
+
+    public ClobExecutionEngine(BotConfig config, Metrics metrics) {
+        this.metrics = metrics;
+        String privateKey = config.get("POLYMARKET_PRIVATE_KEY");
+        this.apiKey = config.get("CLOB_API_KEY");
+        String secret = config.get("CLOB_API_SECRET");
+        this.passphrase = config.get("CLOB_API_PASSPHRASE");
+        if (privateKey == null || apiKey == null || secret == null || passphrase == null) {
+            throw new IllegalStateException("POLYMARKET_PRIVATE_KEY, CLOB_API_KEY, CLOB_API_SECRET and "
+                    + "CLOB_API_PASSPHRASE are required for REAL trading");
+        }
+        this.apiSecret = Base64.getUrlDecoder().decode(secret.trim());
+        this.signer = new OrderSigner(privateKey, OrderSigner.POLYGON_CHAIN_ID);
+        // Proxy wallet holding the funds; the signer itself for plain EOA accounts
+        // 持有资金的代理钱包；普通 EOA 账户则为签名者本身
+        this.funder = config.get("POLYMARKET_FUNDER", signer.getAddress()).toLowerCase();
+        this.signatureType = config.getInt("POLYMARKET_SIGNATURE_TYPE", 0);
+        this.baseUrl = stripTrailingSlash(config.get("CLOB_URL", "https://clob.polymarket.com"));
+        this.orderType = config.get("CLOB_ORDER_TYPE", "FOK").toUpperCase();
+        this.fillPollMillis = config.getLong("CLOB_FILL_POLL_MS", 1000);
+        this.fillTrackMillis = TimeUnit.SECONDS.toMillis(config.getLong("CLOB_FILL_TRACK_SECONDS", 300));
+        int maxLadders = config.getInt("CLOB_PRESIGN_LADDERS", 64);
+
+        this.hmac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(apiSecret, "HmacSHA256"));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // Least recently used ladders are dropped first / 最久未使用的阶梯最先被丢弃
+        this.ladders = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LadderKey, Ladder> eldest) {
+                return size() > maxLadders;
+            }
+        });
+
+        // OkHttp queues async calls beyond 5 per host by default; a burst of orders must not wait in line
+        // OkHttp 默认每个主机超过 5 个异步调用就排队；突发订单不应排队等待
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_IN_FLIGHT);
+        dispatcher.setMaxRequestsPerHost(MAX_IN_FLIGHT);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .callTimeout(15, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(false) // Orders are not idempotent / 下单不是幂等操作
+                .addNetworkInterceptor(new HttpMetricsInterceptor(metrics));
+        String proxyHost = config.get("HTTP_PROXY_HOST");
+        String proxyPort = config.get("HTTP_PROXY_PORT");
+        if (proxyHost != null && !proxyHost.isEmpty() && proxyPort != null && !proxyPort.isEmpty()) {
+            builder.proxy(new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                    new java.net.InetSocketAddress(proxyHost, Integer.parseInt(proxyPort))));
+        }
+        this.client = builder.build();
+
+        this.signerExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "order-signer");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "clob-tracker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.detectToSubmit = metrics.histogram("clob_detect_to_submit_seconds",
+                "Time from whale trade dispatch to our order being handed to the HTTP client", SUBMIT_BUCKETS);
+        this.ackTime = metrics.histogram("clob_order_ack_seconds", "Time from order submission to CLOB response",
+                Metrics.LATENCY_BUCKETS);
+        metrics.gauge("clob_presigned_ladders", "Token/side/notional ladders with pre-signed orders", ladders::size);
+
+        // Keep the TLS/HTTP2 connection open so the first order doesn't pay for the handshake
+        // 保持 TLS/HTTP2 连接打开，使首个订单无需承担握手开销
+        scheduler.scheduleWithFixedDelay(this::keepWarm, 0, KEEP_WARM_SECONDS, TimeUnit.SECONDS);
+
+        System.out.println("CLOB execution engine ready: " + baseUrl + ", signer " + signer.getAddress()
+                + ", funder " + funder + ", order type " + orderType
+                + " / CLOB 执行引擎就绪：签名者 " + signer.getAddress() + "，出资地址 " + funder);
+    }
+
+    /**
+     * Signs a ladder of orders for this token, side and notional in the background.
+     * 在后台为该代币、方向和金额签好一组价格阶梯订单。
+     *
+     * Cheap to call repeatedly: an existing ladder is left as is.
+     * 可重复调用：已存在的阶梯保持不变。
+     */
+    public void prepare(String tokenId, boolean negRisk, OrderSigner.Side side, double notionalUsdc) {
+        long cents = Math.round(notionalUsdc * 100);
+        LadderKey key = new LadderKey(tokenId, side, cents);
+        if (ladders.containsKey(key)) {
+            return;
+        }
+        Ladder ladder = new Ladder(signer.template(funder, signatureType, tokenId, side, negRisk, 0), cents);
+        if (ladders.putIfAbsent(key, ladder) == null) {
+            signerExecutor.execute(ladder::fillAll);
+        }
+    }
+
+    /**
+     * Submits an immediately marketable order without blocking on the network.
+     * 提交一个可立即成交的订单，不在网络上阻塞。
+     *
+     * @param limitPrice    Worst acceptable price; rounded to the tick in our favour / 可接受的最差价格；按有利方向取整到刻度
+     * @param notionalUsdc  Order size in USDC / 订单金额（USDC）
+     * @param detectedNanos {@link System#nanoTime()} when the whale trade was dispatched / 分发巨鲸交易时的 {@link System#nanoTime()}
+     * @return completes with the CLOB's answer; fails on network errors / 以 CLOB 的响应完成；网络错误时失败
+     */
+    public CompletableFuture<OrderResult> submit(String tokenId, boolean negRisk, OrderSigner.Side side,
+            double limitPrice, double notionalUsdc, long detectedNanos) {
+        int tick = side == OrderSigner.Side.BUY
+                ? (int) Math.floor(limitPrice * TICKS + 1e-9)
+                : (int) Math.ceil(limitPrice * TICKS - 1e-9);
+        tick = Math.max(1, Math.min(TICKS - 1, tick));
+        long cents = Math.round(notionalUsdc * 100);
+
+        PreparedOrder order = null;
+        Ladder ladder = ladders.get(new LadderKey(tokenId, side, cents));
+        if (ladder != null) {
+            order = ladder.take(tick);
+        }
+        metrics.counter("clob_presigned_total", "Order submissions by pre-signed cache result",
+                "result", order != null ? "hit" : "miss").inc();
+        if (order == null) {
+            order = prepareOrder(signer.template(funder, signatureType, tokenId, side, negRisk, 0), tick, cents);
+            if (order == null) {
+                return CompletableFuture.completedFuture(OrderResult.rejected("Notional too small for price "
+                        + tick / (double) TICKS));
+            }
+        }
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/order")
+                .headers(l2Headers("POST", "/order", order.body()))
+                .post(RequestBody.create(order.body(), GraphQLClient.JSON))
+                .build();
+        CompletableFuture<OrderResult> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                ackTime.observeNanos(System.nanoTime() - submitted);
+                try (response) {
+                    OrderResult parsed = parseOrderResponse(response);
+                    metrics.counter("clob_orders_total", "Orders submitted by CLOB status",
+                            "status", parsed.status()).inc();
+                    result.complete(parsed);
+                } catch (IOException e) {
+                    onFailure(call, e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                metrics.counter("clob_orders_total", "Orders submitted by CLOB status", "status", "error").inc();
+                result.completeExceptionally(e);
+            }
+        });
+        detectToSubmit.observeNanos(System.nanoTime() - detectedNanos);
+        return result;
+    }
+
+    /**
+     * Polls a resting order until it is no longer live. At the deadline the order
+     * is cancelled and its status read once more, so the fills it got before the
+     * cancel are counted.
+     * 轮询挂单，直到其不再有效。到达截止时间时取消订单并再读取一次状态，从而计入取消前的成交。
+     *
+     * @return the last status seen; {@link OrderStatus#unsettled()} if the cancel could not be confirmed / 最后一次看到的状态；无法确认取消时为 {@link OrderStatus#unsettled()}
+     */
+    public CompletableFuture<OrderStatus> trackFill(String orderId) {
+        CompletableFuture<OrderStatus> done = new CompletableFuture<>();
+        long deadline = System.currentTimeMillis() + fillTrackMillis;
+        OrderStatus unknown = new OrderStatus(orderId, OrderStatus.UNKNOWN, 0, 0);
+        scheduler.schedule(() -> pollOrder(orderId, deadline, unknown, done), fillPollMillis, TimeUnit.MILLISECONDS);
+        return done;
+    }
+
+    private void pollOrder(String orderId, long deadline, OrderStatus lastSeen, CompletableFuture<OrderStatus> done) {
+        lookupOrder(orderId, new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                OrderStatus status;
+                try (response) {
+                    status = parseOrderStatus(orderId, response);
+                } catch (IOException e) {
+                    onFailure(call, e);
+                    return;
+                }
+                if (!status.live()) {
+                    metrics.counter("clob_fills_total", "Tracked orders by final status", "status", status.status())
+                            .inc();
+                    done.complete(status);
+                } else if (System.currentTimeMillis() >= deadline) {
+                    cancel(status, done);
+                } else {
+                    scheduler.schedule(() -> pollOrder(orderId, deadline, status, done), fillPollMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    // The order may still be live / 订单可能仍然有效
+                    cancel(lastSeen, done);
+                } else {
+                    scheduler.schedule(() -> pollOrder(orderId, deadline, lastSeen, done), fillPollMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels an order that outlived tracking, then reads its final status.
+     * 取消超出跟踪时长的订单，然后读取其最终状态。
+     */
+    private void cancel(OrderStatus lastSeen, CompletableFuture<OrderStatus> done) {
+        String orderId = lastSeen.orderId();
+        byte[] body = ("{\"orderID\":\"" + orderId + "\"}").getBytes(StandardCharsets.UTF_8);
+        Request request = new Request.Builder()
+                .url(baseUrl + "/order")
+                .headers(l2Headers("DELETE", "/order", body))
+                .delete(RequestBody.create(body, GraphQLClient.JSON))
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    metrics.counter("clob_cancels_total", "Cancels of orders that outlived tracking", "result",
+                            response.isSuccessful() ? "ok" : "rejected").inc();
+                }
+                settle(lastSeen, done);
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                metrics.counter("clob_cancels_total", "Cancels of orders that outlived tracking", "result", "error")
+                        .inc();
+                System.err.println("Cancel of order " + orderId + " failed: " + e.getMessage() + " / 撤单失败");
+                settle(lastSeen, done);
+            }
+        });
+    }
+
+    /**
+     * Final read after a cancel; the last status seen stands in if it fails.
+     * 撤单后的最终读取；读取失败时以最后一次看到的状态代替。
+     */
+    private void settle(OrderStatus lastSeen, CompletableFuture<OrderStatus> done) {
+        lookupOrder(lastSeen.orderId(), new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    complete(parseOrderStatus(lastSeen.orderId(), response));
+                } catch (IOException e) {
+                    onFailure(call, e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                complete(new OrderStatus(lastSeen.orderId(), OrderStatus.UNKNOWN, lastSeen.sizeMatched(),
+                        lastSeen.originalSize()));
+            }
+
+            private void complete(OrderStatus status) {
+                metrics.counter("clob_fills_total", "Tracked orders by final status", "status",
+                        status.unsettled() ? "TIMEOUT" : status.status()).inc();
+                done.complete(status);
+            }
+        });
+    }
+
+    private void lookupOrder(String orderId, Callback callback) {
+        String path = "/data/order/" + orderId;
+        Request request = new Request.Builder()
+                .url(baseUrl + path)
+                .headers(l2Headers("GET", path, null))
+                .get()
+                .build();
+        client.newCall(request).enqueue(callback);
+    }
+
+    private void keepWarm() {
+        Request request = new Request.Builder().url(baseUrl + "/time").get().build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                System.err.println("CLOB keep-alive failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Signs one order at the given tick and renders the complete POST body.
+     * 在给定刻度签名一个订单，并生成完整的 POST 请求体。
+     *
+     * Buys spend the notional (2 decimals) for shares rounded down to 4 decimals;
+     * sells give shares rounded down to 2 decimals for their exact USDC value.
+     * 买入花费该金额（2 位小数），得到向下取整到 4 位小数的份额；卖出付出向下取整到 2 位小数的份额，得到其精确的 USDC 价值。
+     *
+     * @return null if the notional buys less than one unit at this price / 若该金额在此价格下不足一个单位则返回 null
+     */
+    private PreparedOrder prepareOrder(OrderSigner.Template template, int tick, long cents) {
+        long makerAmount;
+        long takerAmount;
+        if (template.side() == OrderSigner.Side.BUY) {
+            makerAmount = cents * (UNITS / 100);
+            takerAmount = cents * UNITS / tick / 100 * 100;
+        } else {
+            long shareCents = cents * TICKS / tick;
+            makerAmount = shareCents * (UNITS / 100);
+            takerAmount = shareCents * tick * (UNITS / 100 / TICKS);
+        }
+        if (makerAmount <= 0 || takerAmount <= 0) {
+            return null;
+        }
+        long salt = Math.floorMod(random.nextLong(), MAX_SAFE_SALT);
+        OrderSigner.SignedOrder signed = signer.sign(template, salt, makerAmount, takerAmount, 0);
+        return new PreparedOrder(signed, renderBody(signed));
+    }
+
+    private byte[] renderBody(OrderSigner.SignedOrder order) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(768);
+        try (JsonGenerator g = factory.createGenerator(out)) {
+            g.writeStartObject();
+            g.writeObjectFieldStart("order");
+            g.writeNumberField("salt", order.salt());
+            g.writeStringField("maker", funder);
+            g.writeStringField("signer", signer.getAddress());
+            g.writeStringField("taker", "0x0000000000000000000000000000000000000000");
+            g.writeStringField("tokenId", order.template().tokenId());
+            g.writeStringField("makerAmount", Long.toString(order.makerAmount()));
+            g.writeStringField("takerAmount", Long.toString(order.takerAmount()));
+            g.writeStringField("expiration", Long.toString(order.expiration()));
+            g.writeStringField("nonce", "0");
+            g.writeStringField("feeRateBps", "0");
+            g.writeStringField("side", order.template().side().name());
+            g.writeNumberField("signatureType", signatureType);
+            g.writeStringField("signature", order.signature());
+            g.writeEndObject();
+            g.writeStringField("owner", apiKey);
+            g.writeStringField("orderType", orderType);
+            g.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory / 仅内存操作
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * CLOB L2 authentication: HMAC-SHA256 over timestamp + method + path + body.
+     * CLOB L2 认证：对 timestamp + method + path + body 计算 HMAC-SHA256。
+     */
+    private Headers l2Headers(String method, String path, byte[] body) {
+        String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+        Mac mac = hmac.get();
+        mac.update(timestamp.getBytes(StandardCharsets.US_ASCII));
+        mac.update(method.getBytes(StandardCharsets.US_ASCII));
+        mac.update(path.getBytes(StandardCharsets.US_ASCII));
+        if (body != null) {
+            mac.update(body);
+        }
+        String signature = Base64.getUrlEncoder().encodeToString(mac.doFinal());
+        return new Headers.Builder()
+                .add("POLY_ADDRESS", signer.getAddress())
+                .add("POLY_SIGNATURE", signature)
+                .add("POLY_TIMESTAMP", timestamp)
+                .add("POLY_API_KEY", apiKey)
+                .add("POLY_PASSPHRASE", passphrase)
+                .build();
+    }
+
+    private OrderResult parseOrderResponse(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("Empty CLOB response: " + response.code());
+        }
+        boolean success = false;
+        String orderId = null;
+        String status = null;
+        String error = null;
+        String making = null;
+        String taking = null;
+        try (JsonParser p = factory.createParser(body.byteStream())) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected CLOB response: " + response.code());
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "success" -> success = value == JsonToken.VALUE_TRUE;
+                    case "orderID" -> orderId = p.getValueAsString();
+                    case "status" -> status = p.getValueAsString();
+                    case "errorMsg", "error" -> error = p.getValueAsString();
+                    case "makingAmount" -> making = p.getValueAsString();
+                    case "takingAmount" -> taking = p.getValueAsString();
+                    default -> p.skipChildren();
+                }
+            }
+        }
+        if (!response.isSuccessful() || !success) {
+            return new OrderResult(false, orderId, "rejected", error != null ? error : "HTTP " + response.code(),
+                    making, taking);
+        }
+        return new OrderResult(true, orderId, status != null ? status : "unknown", error, making, taking);
+    }
+
+    private OrderStatus parseOrderStatus(String orderId, Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            throw new IOException("Order lookup failed: " + response.code());
+        }
+        String status = OrderStatus.UNKNOWN;
+        double matched = 0;
+        double original = 0;
+        try (InputStream in = body.byteStream(); JsonParser p = factory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected order lookup response");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "status" -> status = p.getValueAsString().toUpperCase();
+                    case "size_matched" -> matched = Double.parseDouble(p.getValueAsString("0"));
+                    case "original_size" -> original = Double.parseDouble(p.getValueAsString("0"));
+                    default -> p.skipChildren();
+                }
+            }
+        }
+        return new OrderStatus(orderId, status, matched, original);
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private record LadderKey(String tokenId, OrderSigner.Side side, long cents) {
+    }
+
+    private record PreparedOrder(OrderSigner.SignedOrder order, byte[] body) {
+    }
+
+    /**
+     * One pre-signed order per price tick; each is used once. / 每个价格刻度一个预签名订单；每个只使用一次。
+     */
+    private final class Ladder {
+        private final OrderSigner.Template template;
+        private final long cents;
+        private final AtomicReferenceArray<PreparedOrder> rungs = new AtomicReferenceArray<>(TICKS);
+
+        Ladder(OrderSigner.Template template, long cents) {
+            this.template = template;
+            this.cents = cents;
+        }
+
+        void fillAll() {
+            for (int tick = 1; tick < TICKS; tick++) {
+                rungs.set(tick, prepareOrder(template, tick, cents));
+            }
+        }
+
+        PreparedOrder take(int tick) {
+            PreparedOrder order = rungs.getAndSet(tick, null);
+            if (order != null) {
+                signerExecutor.execute(() -> rungs.compareAndSet(tick, null, prepareOrder(template, tick, cents)));
+            }
+            return order;
+        }
+    }
+
+    /**
+     * The CLOB's answer to an order. / CLOB 对订单的响应。
+     *
+     * @param status matched, live, delayed or unmatched; "rejected" when not accepted / matched、live、delayed 或 unmatched；未被接受时为 "rejected"
+     */
+    public record OrderResult(boolean success, String orderId, String status, String error, String makingAmount,
+            String takingAmount) {
+
+        static OrderResult rejected(String error) {
+            return new OrderResult(false, null, "rejected", error, null, null);
+        }
+
+        /** Resting on the book, so fills arrive later. / 挂在订单簿上，成交稍后到来。 */
+        public boolean resting() {
+            return "live".equalsIgnoreCase(status) || "delayed".equalsIgnoreCase(status);
+        }
+    }
+
+    /**
+     * Fill state of a tracked order; sizes are in shares. / 跟踪订单的成交状态；数量以份额计。
+     */
+    public record OrderStatus(String orderId, String status, double sizeMatched, double originalSize) {
+
+        /** Status when the CLOB gave none or could not be reached. / CLOB 未提供状态或无法访问时的状态。 */
+        public static final String UNKNOWN = "UNKNOWN";
+
+        public boolean live() {
+            return "LIVE".equals(status) || "DELAYED".equals(status);
+        }
+
+        /** Possibly still on the book, so more of it may fill. / 可能仍在订单簿上，因此可能继续成交。 */
+        public boolean unsettled() {
+            return live() || UNKNOWN.equals(status);
+        }
+    }
+}
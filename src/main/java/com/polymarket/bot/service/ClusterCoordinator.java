@@ -0,0 +1,142 @@
+package com.polymarket.bot.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the watchlist across bot instances by consistent hashing.
+ * 通过一致性哈希在多个机器人实例间划分观察列表。
+ *
+ * Renews this node's lease a few times per lease period and rebuilds the
+ * {@link HashRing} whenever the live members change, so shards rebalance on
+ * their own when a node joins or dies. Only the owner of an address polls,
+ * alerts on and copies its trades.
+ * 每个租约周期内续期本节点租约数次，并在存活成员变化时重建 {@link HashRing}，
+ * 因此节点加入或宕机时分片会自动重新平衡。只有地址的所有者才会轮询、警报和跟单其交易。
+ *
+ * A node that cannot renew for a whole lease owns nothing until it can again:
+ * by then the others have taken its addresses, and two owners would copy twice.
+ * For the same reason a node that joins (or rejoins) claims nothing for two
+ * renewal periods, until every member has seen it and given its addresses up.
+ * 整个租约期内无法续期的节点在恢复前不拥有任何地址：此时其他节点已接管其地址，两个所有者会重复跟单。
+ * 出于同样原因，加入（或重新加入）的节点在两个续期周期内不认领任何地址，直到所有成员都看到它并让出地址。
+ */
+public class ClusterCoordinator {
+
+    private static final int RENEWALS_PER_LEASE = 3;
+
+    private final ClusterMembership membership;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final long renewMillis;
+    private final int virtualNodes;
+    private final Metrics.Counter rebalances;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-lease");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Thread leaveOnShutdown;
+
+    private volatile HashRing ring;
+    private volatile long ringVersion;
+    private volatile long renewedAtMillis;
+    private volatile long claimAfterMillis;
+
+    public ClusterCoordinator(ClusterMembership membership, String nodeId, long leaseMillis, int virtualNodes,
+            Metrics metrics) {
+        this.membership = membership;
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+        this.renewMillis = Math.max(1, leaseMillis / RENEWALS_PER_LEASE);
+        this.virtualNodes = virtualNodes;
+        this.ring = new HashRing(List.of(), virtualNodes);
+        this.rebalances = metrics.counter("cluster_rebalances_total", "Times the cluster membership changed");
+        metrics.gauge("cluster_members", "Live nodes in the cluster", () -> ring.nodes().size());
+        this.leaveOnShutdown = new Thread(this::leave, "cluster-leave");
+    }
+
+    /**
+     * Joins the cluster and keeps renewing the lease; leaves on shutdown.
+     * 加入集群并持续续期租约；关闭时离开。
+     */
+    public void start() {
+        renew();
+        scheduler.scheduleWithFixedDelay(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(leaveOnShutdown);
+    }
+
+    /**
+     * Stops renewing; without leaving, the lease runs out as if this node had crashed.
+     * 停止续期；若不离开，租约将像本节点崩溃一样自然过期。
+     */
+    void stop(boolean leave) {
+        scheduler.shutdownNow();
+        Runtime.getRuntime().removeShutdownHook(leaveOnShutdown);
+        if (leave) {
+            leave();
+        }
+    }
+
+    private void leave() {
+        try {
+            membership.leave(nodeId);
+        } catch (IOException e) {
+            System.err.println("Failed to leave cluster: " + e.getMessage());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * @return true if this node owns the address / 如果本节点拥有该地址则返回 true
+     */
+    public boolean owns(String address) {
+        return claiming(System.currentTimeMillis()) && nodeId.equals(ring.owner(address));
+    }
+
+    /**
+     * Changes whenever ownership may have changed, including a lapsed lease.
+     * 所有权可能变化时（包括租约失效）都会改变。
+     */
+    public long getRingVersion() {
+        return ringVersion * 2 + (claiming(System.currentTimeMillis()) ? 1 : 0);
+    }
+
+    private boolean claiming(long nowMillis) {
+        // False while our lease has lapsed or we just joined / 租约已失效或刚加入时为 false
+        return nowMillis - renewedAtMillis <= leaseMillis && nowMillis >= claimAfterMillis;
+    }
+
+    private void renew() {
+        // Taken before the call so our view never outlives the lease others see / 在调用前取时间，使本节点视角不会比他人看到的租约更久
+        long start = System.currentTimeMillis();
+        try {
+            List<String> members = membership.heartbeat(nodeId, leaseMillis);
+            if (start - renewedAtMillis > leaseMillis) {
+                claimAfterMillis = start + 2 * renewMillis;
+                System.out.println("Cluster lease acquired by " + nodeId + ", claiming addresses in "
+                        + 2 * renewMillis + " ms / 已获得集群租约");
+            }
+            renewedAtMillis = start;
+            if (!members.equals(ring.nodes())) {
+                ring = new HashRing(members, virtualNodes);
+                ringVersion++;
+                rebalances.inc();
+                System.out.println("Cluster members: " + members + " (this node: " + nodeId + ") / 集群成员已变化");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cluster lease renewal failed: " + e.getMessage() + " / 集群租约续期失败");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.polymarket.bot.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Membership backend for cluster mode: leases that expire unless renewed.
+ * 集群模式的成员后端：不续期就会过期的租约。
+ *
+ * A node that stops renewing (crash, partition) drops out once its lease
+ * expires, and the survivors take over its addresses.
+ * 停止续期的节点（崩溃、网络分区）在租约过期后退出，其地址由其余节点接管。
+ */
+public interface ClusterMembership {
+
+    /**
+     * Registers or renews this node's lease.
+     * 注册或续期本节点的租约。
+     *
+     * @return IDs of all nodes with a live lease, including this one, sorted / 所有租约有效的节点 ID（含本节点），已排序
+     * @throws IOException if the backend is unreachable / 后端不可达时抛出
+     */
+    List<String> heartbeat(String nodeId, long leaseMillis) throws IOException;
+
+    /**
+     * Gives up this node's lease so others take over at once.
+     * 放弃本节点的租约，使其他节点立即接管。
+     */
+    void leave(String nodeId) throws IOException;
+}
@@ -0,0 +1,199 @@
+package com.polymarket.bot.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Holds the current {@link BotConfig} and swaps in new snapshots.
+ * 持有当前的 {@link BotConfig} 并换入新快照。
+ *
+ * Readers call {@link #current()} (a volatile read) once per unit of work and
+ * keep that snapshot, so a reload never changes settings halfway through a
+ * trade. Updates come from the watched config file or {@code /config}; each is
+ * validated by building the new snapshot before it is published, then
+ * listeners apply it (e.g. swapping the watchlist index).
+ * 读取方在每个工作单元调用一次 {@link #current()}（volatile 读）并保留该快照，
+ * 因此重新加载不会在一笔交易中途改变设置。更新来自被监视的配置文件或 {@code /config}；
+ * 每次更新先构建新快照进行校验再发布，然后由监听器应用（例如换入观察列表索引）。
+ */
+public class ConfigManager {
+
+    private static final long FILE_SETTLE_MILLIS = 200;
+
+    private final BotConfig base;
+    private final Path file;
+    private final List<Consumer<BotConfig>> listeners = new CopyOnWriteArrayList<>();
+
+    // Layers over the base, guarded by this / 基础配置之上的覆盖层，由 this 保护
+    private Map<String, String> fileOverrides = Map.of();
+    private final Map<String, String> apiOverrides = new LinkedHashMap<>();
+    private volatile BotConfig current;
+
+    /**
+     * @param file Optional config file in KEY=VALUE form, or null / 可选的 KEY=VALUE 格式配置文件，或 null
+     */
+    public ConfigManager(BotConfig base, Path file) {
+        this.base = base;
+        this.file = file;
+        this.current = base;
+        if (file != null && Files.exists(file)) {
+            reloadFile();
+        }
+    }
+
+    /**
+     * Loads the environment and .env once, plus {@code CONFIG_FILE} if set.
+     * 一次性加载环境变量和 .env，以及已设置的 {@code CONFIG_FILE}。
+     */
+    public static ConfigManager load() {
+        BotConfig base = BotConfig.load();
+        String file = base.get("CONFIG_FILE");
+        return new ConfigManager(base, file != null && !file.isBlank() ? Path.of(file) : null);
+    }
+
+    public BotConfig current() {
+        return current;
+    }
+
+    /**
+     * Registers a listener called with each new snapshot, on the updating thread.
+     * 注册监听器，在更新线程上以每个新快照调用。
+     */
+    public void addListener(Consumer<BotConfig> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies {@code /config} updates on top of the file and environment.
+     * 在文件和环境变量之上应用 {@code /config} 更新。
+     *
+     * @return keys that only take effect after a restart / 仅在重启后生效的键
+     * @throws IllegalArgumentException if a value is invalid; nothing is applied / 值无效时抛出，不应用任何更改
+     */
+    public synchronized Set<String> apply(Map<String, String> updates) {
+        Map<String, String> next = new LinkedHashMap<>(apiOverrides);
+        next.putAll(updates);
+        Set<String> restartOnly = publish(fileOverrides, next, "/config");
+        apiOverrides.clear();
+        apiOverrides.putAll(next);
+        return restartOnly;
+    }
+
+    /**
+     * Watches the config file's directory and reloads on change (daemon thread).
+     * 监视配置文件所在目录，变化时重新加载（守护线程）。
+     */
+    public void watch() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread t = new Thread(() -> runWatcher(watcher), "config-watch");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Watching config file " + file + " / 正在监视配置文件 " + file);
+    }
+
+    private void runWatcher(WatchService watcher) {
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= name.equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    // Editors often write in several steps / 编辑器常分多步写入
+                    Thread.sleep(FILE_SETTLE_MILLIS);
+                    WatchKey more = watcher.poll();
+                    if (more != null) {
+                        more.pollEvents();
+                        more.reset();
+                    }
+                    reloadFile();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void reloadFile() {
+        try {
+            Map<String, String> parsed = parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+            publish(parsed, apiOverrides, file.toString());
+            fileOverrides = parsed;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Config file rejected, keeping version " + current.version() + ": " + e.getMessage()
+                    + " / 配置文件被拒绝，保留当前版本");
+        }
+    }
+
+    private Set<String> publish(Map<String, String> fileLayer, Map<String, String> apiLayer, String source) {
+        Map<String, String> overrides = new HashMap<>(fileLayer);
+        overrides.putAll(apiLayer);
+        BotConfig previous = current;
+        // Rebuilt from the base, so keys dropped from every layer revert / 从基础配置重建，因此从所有层移除的键会恢复
+        BotConfig next = base.with(overrides, previous.version() + 1);
+        Set<String> changed = next.changedKeys(previous);
+        if (changed.isEmpty()) {
+            return Set.of();
+        }
+        current = next;
+        Set<String> restartOnly = new TreeSet<>(changed);
+        restartOnly.removeAll(BotConfig.RELOADABLE);
+        System.out.println("Config version " + next.version() + " from " + source + ": " + changed
+                + " / 配置已更新到版本 " + next.version());
+        if (!restartOnly.isEmpty()) {
+            System.out.println("Restart required for " + restartOnly + " / 以下键需要重启才能生效：" + restartOnly);
+        }
+        for (Consumer<BotConfig> listener : listeners) {
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                System.err.println("Config listener failed: " + e.getMessage());
+            }
+        }
+        return restartOnly;
+    }
+
+    /**
+     * Parses KEY=VALUE lines; blank lines and # comments are skipped.
+     * 解析 KEY=VALUE 行；跳过空行和 # 注释。
+     */
+    public static Map<String, String> parse(List<String> lines) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected KEY=VALUE: " + trimmed);
+            }
+            values.put(trimmed.substring(0, eq).trim(), trimmed.substring(eq + 1).trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,90 @@
+package com.polymarket.bot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Checks whale candidates concurrently on a dedicated, bounded I/O executor.
+ * 在专用的有界 I/O 线程池上并发检查巨鲸候选人。
+ *
+ * Blocking HTTP checks never touch ForkJoinPool.commonPool, and concurrency is set
+ * explicitly instead of following the core count. Tasks are waited on in rank
+ * order; once the caller has enough (e.g. the top-N quota is filled) the
+ * remaining ones are cancelled.
+ * 阻塞的 HTTP 检查不会占用 ForkJoinPool.commonPool，并发度显式设置而不跟随核心数。
+ * 任务按排名顺序等待；一旦调用方已足够（例如前 N 名配额已满），剩余任务会被取消。
+ */
+public class DiscoveryEngine {
+
+    private final ThreadPoolExecutor executor;
+    private final long deadlineMillis;
+
+    /**
+     * @param concurrency    Max checks in flight / 同时进行的最大检查数
+     * @param deadlineMillis Max time to wait for one check's result; checks doing I/O should also
+     *                       set a matching call timeout / 等待单个检查结果的最长时间；进行 I/O 的检查也应设置相应的调用超时
+     */
+    public DiscoveryEngine(int concurrency, long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "discovery-" + threadId.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true); // Idle between scans / 扫描间隙空闲
+    }
+
+    /**
+     * Runs all tasks concurrently and waits for them in order, each bounded by the deadline.
+     * 并发运行所有任务并按顺序等待，每个受截止时间限制。
+     *
+     * Before each wait {@code done} is asked with the number of tasks finished so
+     * far; once it says yes the remaining tasks are cancelled. Tasks that fail or
+     * time out are logged and skipped.
+     * 每次等待前以已完成的任务数询问 {@code done}；一旦返回 true，剩余任务即被取消。失败或超时的任务会被记录并跳过。
+     *
+     * @param tasks Tasks, most important first / 任务（最重要的在前）
+     * @param done  Whether the first n finished tasks are enough / 前 n 个已完成的任务是否已足够
+     */
+    public void runUntil(List<Runnable> tasks, IntPredicate done) {
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        int waited = 0;
+        try {
+            for (; waited < futures.size() && !done.test(waited); waited++) {
+                Future<?> future = futures.get(waited);
+                try {
+                    future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    System.err.println("Discovery task timed out");
+                } catch (ExecutionException e) {
+                    System.err.println("Discovery task failed: " + e.getCause().getMessage());
+                } catch (CancellationException e) {
+                    // Cancelled while waiting / 等待期间被取消
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Discovery interrupted");
+        } finally {
+            // Enough decided (or interrupted): cancel the rest / 已足够（或被中断）：取消其余任务
+            for (int i = waited; i < futures.size(); i++) {
+                futures.get(i).cancel(true);
+            }
+        }
+    }
+}
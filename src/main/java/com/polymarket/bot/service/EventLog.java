@@ -0,0 +1,414 @@
+package com.polymarket.bot.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event log: typed events through a preallocated ring, written to
+ * rolling JSON-lines files by a background thread.
+ * 结构化事件日志：类型化事件经预分配的环形缓冲，由后台线程写入滚动的 JSON-lines 文件。
+ *
+ * Publishing copies a few references and primitives into a reused slot, so the
+ * detection path neither allocates nor touches the console. Producers claim
+ * slots with a CAS; when the ring is full the event is dropped and counted
+ * rather than blocking a trade. Events below the level, or not picked by their
+ * type's 1-in-N sampling, cost one comparison. The files double as an audit trail.
+ * 发布事件只是把几个引用和原始值复制到复用的槽位中，因此检测路径既不分配内存也不访问控制台。
+ * 生产者通过 CAS 认领槽位；环满时事件被丢弃并计数，而不是阻塞交易。
+ * 低于级别或未被该类型 1/N 采样选中的事件只需一次比较。这些文件同时作为审计记录。
+ */
+public class EventLog {
+
+    public enum Level {
+        DEBUG, INFO, WARN
+    }
+
+    /**
+     * Event types and the JSON names of the slot fields each one uses (null = unused).
+     * 事件类型及其使用的槽位字段的 JSON 名称（null 表示未使用）。
+     */
+    public enum Type {
+        POLL_COMPLETED(Level.DEBUG, null, null, null, null, "addresses", "trades", "fetchMillis", null, null),
+        TRADE_MATCHED(Level.INFO, "id", "creator", "title", "side", "outcome", null, "usdc", null, "manual"),
+        ALERT_SENT(Level.INFO, "id", "creator", "title", "side", "outcome", "fills", "netUsdc", null, "manual"),
+        COPY_SKIPPED(Level.INFO, "reason", "creator", "title", null, "outcome", null, null, null, null),
+        ORDER_SUBMITTED(Level.INFO, "tokenId", "creator", "title", "side", "outcome", null, "limit", "amount",
+                "simulation"),
+        ORDER_RESULT(Level.INFO, "orderId", "status", "title", "error", null, null, null, null, "success"),
+        DISCOVERY_COMPLETED(Level.INFO, null, null, null, null, "candidates", "qualified", "scanMillis", null, null);
+
+        final Level level;
+        final String[] names;
+
+        Type(Level level, String... names) {
+            this.level = level;
+            this.names = names;
+        }
+    }
+
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long drained;
+
+    private final Level level;
+    private final Map<Type, Integer> sampleEvery;
+    private final AtomicLongArray sampleCounters = new AtomicLongArray(Type.values().length);
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final boolean console;
+    private final Metrics.Counter dropped;
+    private final Metrics.Counter written;
+
+    /**
+     * @param capacity    Ring slots, rounded up to a power of two / 环形槽位数，向上取整为 2 的幂
+     * @param sampleEvery Keep 1 in N events of these types / 这些类型的事件每 N 个保留 1 个
+     * @param directory   Directory of the rolling files, or null for console only / 滚动文件所在目录，null 表示仅控制台
+     * @param console     Also print each event (from the writer thread) / 同时打印每个事件（在写入线程上）
+     */
+    public EventLog(int capacity, Level level, Map<Type, Integer> sampleEvery, Path directory, long maxFileBytes,
+            int maxFiles, boolean console, Metrics metrics) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.level = level;
+        this.sampleEvery = new EnumMap<>(Type.class);
+        this.sampleEvery.putAll(sampleEvery);
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.console = console;
+        this.dropped = metrics.counter("events_dropped_total", "Events dropped because the ring was full");
+        this.written = metrics.counter("events_written_total", "Events written by the event log");
+        metrics.gauge("event_ring_depth", "Events waiting to be written", () -> claimed.get() - drained);
+    }
+
+    /**
+     * Builds the log from {@code EVENT_LOG_*} settings. / 根据 {@code EVENT_LOG_*} 设置构建日志。
+     */
+    public static EventLog fromConfig(BotConfig config, Metrics metrics) {
+        Map<Type, Integer> sampling = new EnumMap<>(Type.class);
+        // TYPE=N pairs, e.g. POLL_COMPLETED=20 / TYPE=N 对，例如 POLL_COMPLETED=20
+        for (String pair : config.getList("EVENT_LOG_SAMPLING")) {
+            String[] kv = pair.split("=", 2);
+            if (kv.length == 2) {
+                sampling.put(Type.valueOf(kv[0].trim().toUpperCase()), Math.max(1, Integer.parseInt(kv[1].trim())));
+            }
+        }
+        String dir = config.get("EVENT_LOG_DIR", "events");
+        return new EventLog(config.getInt("EVENT_LOG_BUFFER", 65536),
+                Level.valueOf(config.get("EVENT_LOG_LEVEL", "INFO").toUpperCase()), sampling,
+                "none".equalsIgnoreCase(dir) ? null : Path.of(dir),
+                config.getLong("EVENT_LOG_MAX_FILE_MB", 64) * 1024 * 1024, config.getInt("EVENT_LOG_MAX_FILES", 10),
+                config.getBoolean("EVENT_LOG_CONSOLE", true), metrics);
+    }
+
+    /**
+     * Starts the writer thread (daemon). / 启动写入线程（守护线程）。
+     */
+    public void start() {
+        Thread t = new Thread(this::runWriter, "event-log");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void pollCompleted(int addresses, int trades, long fetchNanos) {
+        Slot s = claim(Type.POLL_COMPLETED);
+        if (s != null) {
+            s.l1 = addresses;
+            s.l2 = trades;
+            s.d1 = fetchNanos / 1e6;
+            publish(s);
+        }
+    }
+
+    public void tradeMatched(String id, String creator, String title, String side, int outcome, double usdc,
+            boolean manual) {
+        Slot s = claim(Type.TRADE_MATCHED);
+        if (s != null) {
+            s.s1 = id;
+            s.s2 = creator;
+            s.s3 = title;
+            s.s4 = side;
+            s.l1 = outcome;
+            s.d1 = usdc;
+            s.flag = manual;
+            publish(s);
+        }
+    }
+
+    public void alertSent(String id, String creator, String title, String side, int outcome, int fills,
+            double netUsdc, boolean manual) {
+        Slot s = claim(Type.ALERT_SENT);
+        if (s != null) {
+            s.s1 = id;
+            s.s2 = creator;
+            s.s3 = title;
+            s.s4 = side;
+            s.l1 = outcome;
+            s.l2 = fills;
+            s.d1 = netUsdc;
+            s.flag = manual;
+            publish(s);
+        }
+    }
+
+    public void copySkipped(String reason, String creator, String title, int outcome) {
+        Slot s = claim(Type.COPY_SKIPPED);
+        if (s != null) {
+            s.s1 = reason;
+            s.s2 = creator;
+            s.s3 = title;
+            s.l1 = outcome;
+            publish(s);
+        }
+    }
+
+    public void orderSubmitted(String tokenId, String creator, String title, String side, int outcome, double limit,
+            double amount, boolean simulation) {
+        Slot s = claim(Type.ORDER_SUBMITTED);
+        if (s != null) {
+            s.s1 = tokenId;
+            s.s2 = creator;
+            s.s3 = title;
+            s.s4 = side;
+            s.l1 = outcome;
+            s.d1 = limit;
+            s.d2 = amount;
+            s.flag = simulation;
+            publish(s);
+        }
+    }
+
+    public void orderResult(String orderId, String status, String title, String error, boolean success) {
+        Slot s = claim(Type.ORDER_RESULT, success ? Level.INFO : Level.WARN);
+        if (s != null) {
+            s.s1 = orderId;
+            s.s2 = status;
+            s.s3 = title;
+            s.s4 = error;
+            s.flag = success;
+            publish(s);
+        }
+    }
+
+    public void discoveryCompleted(int candidates, int qualified, long scanNanos) {
+        Slot s = claim(Type.DISCOVERY_COMPLETED);
+        if (s != null) {
+            s.l1 = candidates;
+            s.l2 = qualified;
+            s.d1 = scanNanos / 1e6;
+            publish(s);
+        }
+    }
+
+    private Slot claim(Type type) {
+        return claim(type, type.level);
+    }
+
+    /**
+     * @return a slot to fill and {@link #publish}, or null if filtered out or the ring is full / 待填充并发布的槽位；被过滤或环已满时为 null
+     */
+    private Slot claim(Type type, Level eventLevel) {
+        if (eventLevel.compareTo(level) < 0) {
+            return null;
+        }
+        Integer every = sampleEvery.get(type);
+        if (every != null && sampleCounters.getAndIncrement(type.ordinal()) % every != 0) {
+            return null;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - drained >= slots.length) {
+                dropped.inc();
+                return null;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        Slot s = slots[(int) seq & mask];
+        s.seq = seq;
+        s.type = type;
+        s.level = eventLevel;
+        s.timeMillis = System.currentTimeMillis();
+        s.s1 = s.s2 = s.s3 = s.s4 = null;
+        s.l1 = s.l2 = 0;
+        s.d1 = s.d2 = 0;
+        s.flag = false;
+        return s;
+    }
+
+    private void publish(Slot s) {
+        published.lazySet((int) s.seq & mask, s.seq);
+    }
+
+    private void runWriter() {
+        StringBuilder line = new StringBuilder(256);
+        Output out = new Output();
+        long next = drained;
+        while (!Thread.currentThread().isInterrupted()) {
+            int index = (int) next & mask;
+            if (published.get(index) != next) {
+                out.flush();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            line.setLength(0);
+            format(slots[index], line);
+            // Release the slot before the I/O / 在 I/O 之前释放槽位
+            drained = ++next;
+            out.write(line);
+            written.inc();
+        }
+    }
+
+    private static void format(Slot s, StringBuilder sb) {
+        String[] names = s.type.names;
+        sb.append("{\"ts\":\"").append(Instant.ofEpochMilli(s.timeMillis)).append("\",\"level\":\"").append(s.level)
+                .append("\",\"event\":\"").append(s.type).append('"');
+        appendString(sb, names[0], s.s1);
+        appendString(sb, names[1], s.s2);
+        appendString(sb, names[2], s.s3);
+        appendString(sb, names[3], s.s4);
+        if (names[4] != null)
+            sb.append(",\"").append(names[4]).append("\":").append(s.l1);
+        if (names[5] != null)
+            sb.append(",\"").append(names[5]).append("\":").append(s.l2);
+        if (names[6] != null)
+            sb.append(",\"").append(names[6]).append("\":").append(Math.round(s.d1 * 1e4) / 1e4);
+        if (names[7] != null)
+            sb.append(",\"").append(names[7]).append("\":").append(Math.round(s.d2 * 1e4) / 1e4);
+        if (names[8] != null)
+            sb.append(",\"").append(names[8]).append("\":").append(s.flag);
+        sb.append('}');
+    }
+
+    private static void appendString(StringBuilder sb, String name, String value) {
+        if (name == null || value == null) {
+            return;
+        }
+        sb.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * One event; reused for every lap of the ring. / 单个事件；环的每一圈都复用。
+     */
+    private static final class Slot {
+        long seq;
+        Type type;
+        Level level;
+        long timeMillis;
+        String s1;
+        String s2;
+        String s3;
+        String s4;
+        long l1;
+        long l2;
+        double d1;
+        double d2;
+        boolean flag;
+    }
+
+    /**
+     * Rolling {@code events-<millis>.jsonl} files, owned by the writer thread.
+     * 滚动的 {@code events-<millis>.jsonl} 文件，由写入线程独占。
+     */
+    private final class Output {
+        private BufferedWriter writer;
+        private long bytes;
+        private boolean dirty;
+        private long lastName;
+
+        void write(CharSequence line) {
+            if (console) {
+                System.out.println(line);
+            }
+            if (directory == null) {
+                return;
+            }
+            try {
+                if (writer == null || bytes >= maxFileBytes) {
+                    roll();
+                }
+                writer.append(line).append('\n');
+                bytes += line.length() + 1;
+                dirty = true;
+            } catch (IOException e) {
+                System.err.println("Event log write failed: " + e.getMessage());
+                writer = null;
+            }
+        }
+
+        void flush() {
+            if (dirty && writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    System.err.println("Event log flush failed: " + e.getMessage());
+                }
+                dirty = false;
+            }
+        }
+
+        private void roll() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+            Files.createDirectories(directory);
+            // Strictly increasing, so two rolls in one millisecond do not collide / 严格递增，同一毫秒内两次滚动不会冲突
+            lastName = Math.max(System.currentTimeMillis(), lastName + 1);
+            writer = Files.newBufferedWriter(directory.resolve("events-" + lastName + ".jsonl"), StandardCharsets.UTF_8);
+            bytes = 0;
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "events-*.jsonl")) {
+                stream.forEach(files::add);
+            }
+            // Millisecond names sort by age / 以毫秒命名，按文件名排序即按时间排序
+            Collections.sort(files);
+            for (int i = 0; i < files.size() - maxFiles; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.polymarket.bot.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Membership through a shared directory, for one host or a shared volume.
+ * 通过共享目录实现的成员管理，适用于单台主机或共享卷。
+ *
+ * Each node keeps a {@code <node>.lease} file holding its expiry time. Renewals
+ * and scans run under an exclusive lock on {@code cluster.lock}, and expired
+ * leases are deleted by whichever node sees them first. Expiry uses the local
+ * clock, so all nodes must share one (true on a single host).
+ * 每个节点维护一个记录其过期时间的 {@code <node>.lease} 文件。续期和扫描在 {@code cluster.lock}
+ * 的排他锁下进行，过期租约由最先发现的节点删除。过期判断使用本地时钟，因此所有节点须共享同一时钟（单台主机上成立）。
+ */
+public class FileClusterMembership implements ClusterMembership {
+
+    private static final String LEASE_SUFFIX = ".lease";
+    // File locks are per process; threads of one JVM queue here first / 文件锁按进程生效；同一 JVM 的线程先在此排队
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+    private final Path lockFile;
+
+    public FileClusterMembership(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.lockFile = directory.resolve("cluster.lock");
+    }
+
+    @Override
+    public List<String> heartbeat(String nodeId, long leaseMillis) throws IOException {
+        synchronized (JVM_LOCK) {
+            return heartbeatLocked(nodeId, leaseMillis);
+        }
+    }
+
+    private List<String> heartbeatLocked(String nodeId, long leaseMillis) throws IOException {
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Released when the channel closes / 通道关闭时释放
+            channel.lock();
+            long now = System.currentTimeMillis();
+            Path lease = directory.resolve(nodeId + LEASE_SUFFIX);
+            Path tmp = directory.resolve(nodeId + LEASE_SUFFIX + ".tmp");
+            Files.writeString(tmp, Long.toString(now + leaseMillis), StandardCharsets.UTF_8);
+            Files.move(tmp, lease, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            List<String> live = new ArrayList<>();
+            try (DirectoryStream<Path> leases = Files.newDirectoryStream(directory, "*" + LEASE_SUFFIX)) {
+                for (Path file : leases) {
+                    String name = file.getFileName().toString();
+                    if (expiresAt(file) > now) {
+                        live.add(name.substring(0, name.length() - LEASE_SUFFIX.length()));
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            Collections.sort(live);
+            return live;
+        }
+    }
+
+    @Override
+    public void leave(String nodeId) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                channel.lock();
+                Files.deleteIfExists(directory.resolve(nodeId + LEASE_SUFFIX));
+            }
+        }
+    }
+
+    private static long expiresAt(Path lease) {
+        try {
+            return Long.parseLong(Files.readString(lease, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0; // Unreadable leases are treated as expired / 无法读取的租约视为已过期
+        }
+    }
+}
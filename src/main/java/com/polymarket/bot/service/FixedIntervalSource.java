@@ -0,0 +1,46 @@
+package com.polymarket.bot.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticks at a fixed rate, regardless of activity.
+ * 以固定频率发出 tick，与活动量无关。
+ *
+ * Overlapping fetches are handled by the pipeline's overrun policy.
+ * 重叠的拉取由流水线的重叠策略处理。
+ */
+public class FixedIntervalSource implements TradeSource {
+
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "trade-source");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public FixedIntervalSource(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void start(Runnable tick) {
+        scheduler.scheduleAtFixedRate(tick, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onFetch(int newTrades, boolean failed) {
+        // Fixed pace / 固定节奏
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "fixed " + intervalMillis + "ms";
+    }
+}
@@ -0,0 +1,463 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.FlowSignal;
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces a whale's fills per (creator, market, outcome) into one {@link FlowSignal}.
+ * 按（交易者，市场，结果）将巨鲸的成交合并为一个 {@link FlowSignal}。
+ *
+ * A whale building a position shows up as dozens of small fills; alerting and
+ * copying each one floods Telegram and the CLOB. Fills are summed per key until
+ * the window closes or the net flow crosses a threshold, then emitted once.
+ * Windows are tumbling (closed a fixed time after the first fill) or session
+ * (closed after a quiet gap, at most {@value #SESSION_MAX_WINDOWS} windows).
+ * 巨鲸建仓时会出现几十笔小额成交；逐笔警报和跟单会刷屏 Telegram 并冲击 CLOB。
+ * 成交按键累加，直到窗口关闭或净流量超过阈值，然后只发出一次。
+ * 窗口为滚动窗口（首笔成交后固定时间关闭）或会话窗口（静默间隔后关闭，最长 {@value #SESSION_MAX_WINDOWS} 个窗口）。
+ *
+ * Open windows live in an open-addressing table of parallel primitive columns,
+ * removed (backward-shift) as soon as they are emitted. Signals are taken out
+ * under the aggregator's lock but handed to the sink after it is released, so
+ * a slow sink (alert, risk check, order signing) never blocks other lanes. A key
+ * with a signal still in the sink is not emitted again until it returns, so the
+ * signals of one key never overtake each other, and its fills keep holding the
+ * watermark back until then.
+ * 未关闭的窗口保存在由并行原始类型列组成的开放寻址表中，发出后立即移除（后移删除）。
+ * 信号在聚合器的锁内取出，但在释放锁之后才交给接收方，因此缓慢的接收方（警报、风控检查、订单签名）
+ * 不会阻塞其他通道。某个键的信号仍在接收方处理时，该键不会再次发出，因此同一键的信号不会相互超越，
+ * 其成交在此之前也会继续阻挡水位线。
+ */
+public class FlowAggregator {
+
+    /**
+     * When a window closes.
+     * 窗口何时关闭。
+     */
+    public enum WindowMode {
+        /** A fixed time after the first fill / 首笔成交后固定时间 */
+        TUMBLING,
+        /** After no fill for the window length / 窗口长度内没有新成交 */
+        SESSION;
+
+        /**
+         * Parses {@code FLOW_WINDOW_MODE}, any case; SLIDING is the former name of SESSION.
+         * 解析 {@code FLOW_WINDOW_MODE}（大小写不限）；SLIDING 是 SESSION 的旧名称。
+         *
+         * @throws IllegalArgumentException for an unknown mode / 模式未知时抛出
+         */
+        public static WindowMode parse(String value) {
+            String name = value.trim().toUpperCase();
+            return "SLIDING".equals(name) ? SESSION : valueOf(name);
+        }
+    }
+
+    private static final int SESSION_MAX_WINDOWS = 5;
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+    private static final int INITIAL_CAPACITY = 64;
+    // Dedupe of re-read fills until they are emitted and persisted / 在发出并持久化之前对重复读取的成交去重
+    private static final int SEEN_CAPACITY = 10_000;
+
+    private final long windowMillis;
+    private final WindowMode mode;
+    private final double emitUsdcRaw;
+    private final Consumer<FlowSignal> sink;
+
+    private final Metrics.Counter fillsTotal;
+    private final Metrics.Counter thresholdSignals;
+    private final Metrics.Counter windowSignals;
+
+    // Open windows, guarded by this / 未关闭的窗口，由 this 保护
+    private String[] creators;
+    private String[] markets;
+    private int[] outcomes;
+    private int[] hashes;
+    private boolean[] manual;
+    private long[] openedAt;
+    private long[] lastAt;
+    private long[] firstTimestamps;
+    private double[] buyUsdc;
+    private double[] buyShares;
+    private double[] sellUsdc;
+    private double[] sellShares;
+    private Trade[] lastTrades;
+    private Object[] tradeIds;
+    private int size;
+    private final RecentIdSet seen = new RecentIdSet(SEEN_CAPACITY);
+    // Signals handed to the sink and not yet returned, with their oldest fill / 已交给接收方但尚未返回的信号及其最旧成交
+    private final Map<Key, Long> inFlight = new HashMap<>();
+    private volatile Runnable onDelivered = () -> {
+    };
+
+    /**
+     * @param windowMillis Window length / 窗口长度
+     * @param emitUsdc     Net USDC that emits a window early, 0 to wait for the window / 提前发出窗口的净 USDC，0 表示等待窗口关闭
+     * @param sink         Receives each signal, outside the aggregator's lock / 在聚合器的锁外接收每个信号
+     */
+    public FlowAggregator(long windowMillis, WindowMode mode, double emitUsdc, Consumer<FlowSignal> sink,
+            Metrics metrics) {
+        this.windowMillis = windowMillis;
+        this.mode = mode;
+        this.emitUsdcRaw = emitUsdc * 1e6;
+        this.sink = sink;
+        this.fillsTotal = metrics.counter("flow_fills_total", "Fills added to flow windows");
+        this.thresholdSignals = metrics.counter("flow_signals_total", "Coalesced flow signals emitted",
+                "reason", "threshold");
+        this.windowSignals = metrics.counter("flow_signals_total", "Coalesced flow signals emitted",
+                "reason", "window");
+        metrics.gauge("flow_windows_open", "Flow windows waiting to close", this::size);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Runs after the sink has returned for a signal, once its fills no longer hold the watermark back.
+     * 在接收方处理完一个信号、其成交不再阻挡水位线后运行。
+     */
+    public void setOnDelivered(Runnable onDelivered) {
+        this.onDelivered = onDelivered;
+    }
+
+    /**
+     * Starts closing expired windows in the background (daemon thread).
+     * 在后台开始关闭到期的窗口（守护线程）。
+     */
+    public void start() {
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                    flushExpired(System.currentTimeMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "flow-flush");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Flow windows: " + windowMillis / 1000 + "s " + mode + ", early emit at $"
+                + emitUsdcRaw / 1e6 + " / 流量窗口已启动");
+    }
+
+    /**
+     * Adds a fill to its window, emitting the window if the net flow crosses the threshold.
+     * 将成交加入其窗口；净流量超过阈值时发出该窗口。
+     */
+    public void add(MatchedTrade matched) {
+        add(matched, System.currentTimeMillis());
+    }
+
+    void add(MatchedTrade matched, long nowMillis) {
+        Pending pending = addLocked(matched, nowMillis);
+        if (pending != null) {
+            deliver(pending);
+        }
+    }
+
+    private synchronized Pending addLocked(MatchedTrade matched, long nowMillis) {
+        Trade trade = matched.trade();
+        if (!seen.add(trade.id())) {
+            return null;
+        }
+        fillsTotal.inc();
+        String market = trade.conditionId() != null ? trade.conditionId() : trade.title();
+        int hash = hash(trade.creator(), market, trade.outcomeIndex());
+        int slot = find(trade.creator(), market, trade.outcomeIndex(), hash);
+        if (creators[slot] == null) {
+            creators[slot] = trade.creator();
+            markets[slot] = market;
+            outcomes[slot] = trade.outcomeIndex();
+            hashes[slot] = hash;
+            openedAt[slot] = nowMillis;
+            firstTimestamps[slot] = trade.creationTimestamp();
+            tradeIds[slot] = new ArrayList<String>(4);
+            size++;
+        }
+        manual[slot] |= matched.manual();
+        lastAt[slot] = nowMillis;
+        firstTimestamps[slot] = Math.min(firstTimestamps[slot], trade.creationTimestamp());
+        lastTrades[slot] = trade;
+        ids(slot).add(trade.id());
+        double usdc = parse(trade.collateralAmount());
+        double shares = parse(trade.amount());
+        if ("Sell".equalsIgnoreCase(trade.type())) {
+            sellUsdc[slot] += usdc;
+            sellShares[slot] += shares;
+        } else {
+            buyUsdc[slot] += usdc;
+            buyShares[slot] += shares;
+        }
+
+        // A key still in the sink is left for the flush thread / 仍在接收方处理的键留给刷新线程
+        if (crossed(slot) && !inFlight.containsKey(key(slot))) {
+            thresholdSignals.inc();
+            return take(slot);
+        }
+        if (size * 2 > creators.length) {
+            allocate(creators.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Emits every window whose time is up.
+     * 发出所有已到期的窗口。
+     */
+    public void flushExpired(long nowMillis) {
+        for (Pending pending : takeDue(nowMillis)) {
+            deliver(pending);
+        }
+    }
+
+    /**
+     * Takes expired windows, and crossed ones left behind by {@link #add}, unless their key is in flight.
+     * 取出已到期的窗口以及 {@link #add} 留下的已越过阈值的窗口，但其键正在处理中的除外。
+     */
+    private synchronized List<Pending> takeDue(long nowMillis) {
+        List<Pending> due = new ArrayList<>();
+        int slot = 0;
+        while (slot < creators.length) {
+            boolean expired = creators[slot] != null && expired(slot, nowMillis);
+            if ((expired || creators[slot] != null && crossed(slot)) && !inFlight.containsKey(key(slot))) {
+                (expired ? windowSignals : thresholdSignals).inc();
+                // Backward shift may move an unvisited entry into this slot / 后移可能把未访问的条目移入此槽
+                due.add(take(slot));
+            } else {
+                slot++;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @return creation time of the oldest fill not yet emitted, or Long.MAX_VALUE / 尚未发出的最旧成交的创建时间，或 Long.MAX_VALUE
+     */
+    public synchronized long oldestPendingTimestamp() {
+        long oldest = Long.MAX_VALUE;
+        for (long first : inFlight.values()) {
+            oldest = Math.min(oldest, first);
+        }
+        for (int slot = 0; slot < creators.length; slot++) {
+            if (creators[slot] != null) {
+                oldest = Math.min(oldest, firstTimestamps[slot]);
+            }
+        }
+        return oldest;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean expired(int slot, long nowMillis) {
+        if (mode == WindowMode.TUMBLING) {
+            return nowMillis - openedAt[slot] >= windowMillis;
+        }
+        return nowMillis - lastAt[slot] >= windowMillis
+                || nowMillis - openedAt[slot] >= windowMillis * SESSION_MAX_WINDOWS;
+    }
+
+    private boolean crossed(int slot) {
+        return emitUsdcRaw > 0 && Math.abs(buyUsdc[slot] - sellUsdc[slot]) >= emitUsdcRaw;
+    }
+
+    private Key key(int slot) {
+        return new Key(creators[slot], markets[slot], outcomes[slot]);
+    }
+
+    /** Removes a window and marks its key in flight; caller holds the lock. / 移除窗口并将其键标记为处理中；调用方持有锁。 */
+    private Pending take(int slot) {
+        Key key = key(slot);
+        inFlight.put(key, firstTimestamps[slot]);
+        FlowSignal signal = toSignal(slot);
+        remove(slot);
+        return new Pending(key, signal);
+    }
+
+    /** Runs the sink without the lock. / 在不持有锁的情况下运行接收方。 */
+    private void deliver(Pending pending) {
+        try {
+            sink.accept(pending.signal());
+        } catch (RuntimeException e) {
+            System.err.println("Error dispatching flow signal " + pending.signal().trade().id() + ": "
+                    + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                inFlight.remove(pending.key());
+            }
+        }
+        onDelivered.run();
+    }
+
+    /**
+     * The net side is whichever traded more USDC; its shares are priced at that side's average.
+     * 净方向为 USDC 成交额较大的一方；其份额按该方向的均价计算。
+     */
+    private FlowSignal toSignal(int slot) {
+        Trade last = lastTrades[slot];
+        List<String> ids = ids(slot);
+        if (ids.size() == 1) {
+            return FlowSignal.of(new MatchedTrade(last, manual[slot]));
+        }
+        boolean buy = buyUsdc[slot] >= sellUsdc[slot];
+        double netUsdc = Math.abs(buyUsdc[slot] - sellUsdc[slot]);
+        double avgPrice = buy ? buyUsdc[slot] / buyShares[slot] : sellUsdc[slot] / sellShares[slot];
+        double netShares = avgPrice > 0 ? netUsdc / avgPrice : 0;
+        Trade net = new Trade(last.id(), last.creationTimestamp(), last.title(), last.outcomeIndex(),
+                buy ? "Buy" : "Sell", Long.toString(Math.round(netShares)), Long.toString(Math.round(netUsdc)),
+                last.creator(), last.conditionId());
+        return new FlowSignal(net, manual[slot], ids.size(), buyUsdc[slot], sellUsdc[slot], List.copyOf(ids),
+                firstTimestamps[slot]);
+    }
+
+    private int find(String creator, String market, int outcome, int hash) {
+        int mask = creators.length - 1;
+        int slot = hash & mask;
+        while (creators[slot] != null) {
+            if (hashes[slot] == hash && outcomes[slot] == outcome && creators[slot].equals(creator)
+                    && markets[slot].equals(market)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Clears a slot and shifts later entries of its probe run back (no tombstones).
+     * 清空槽位并将其探测序列中后续的条目前移（无墓碑）。
+     */
+    private void remove(int slot) {
+        int mask = creators.length - 1;
+        clear(slot);
+        size--;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (creators[next] != null) {
+            int home = hashes[next] & mask;
+            // Move back unless the entry's home lies cyclically in (hole, next] / 除非条目的起始位置循环地位于 (hole, next]，否则前移
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void move(int from, int to) {
+        creators[to] = creators[from];
+        markets[to] = markets[from];
+        outcomes[to] = outcomes[from];
+        hashes[to] = hashes[from];
+        manual[to] = manual[from];
+        openedAt[to] = openedAt[from];
+        lastAt[to] = lastAt[from];
+        firstTimestamps[to] = firstTimestamps[from];
+        buyUsdc[to] = buyUsdc[from];
+        buyShares[to] = buyShares[from];
+        sellUsdc[to] = sellUsdc[from];
+        sellShares[to] = sellShares[from];
+        lastTrades[to] = lastTrades[from];
+        tradeIds[to] = tradeIds[from];
+        clear(from);
+    }
+
+    private void clear(int slot) {
+        creators[slot] = null;
+        markets[slot] = null;
+        manual[slot] = false;
+        buyUsdc[slot] = 0;
+        buyShares[slot] = 0;
+        sellUsdc[slot] = 0;
+        sellShares[slot] = 0;
+        lastTrades[slot] = null;
+        tradeIds[slot] = null;
+    }
+
+    private void allocate(int capacity) {
+        String[] oldCreators = creators;
+        String[] oldMarkets = markets;
+        int[] oldOutcomes = outcomes;
+        int[] oldHashes = hashes;
+        boolean[] oldManual = manual;
+        long[] oldOpened = openedAt;
+        long[] oldLast = lastAt;
+        long[] oldFirst = firstTimestamps;
+        double[] oldBuyUsdc = buyUsdc;
+        double[] oldBuyShares = buyShares;
+        double[] oldSellUsdc = sellUsdc;
+        double[] oldSellShares = sellShares;
+        Trade[] oldTrades = lastTrades;
+        Object[] oldIds = tradeIds;
+
+        creators = new String[capacity];
+        markets = new String[capacity];
+        outcomes = new int[capacity];
+        hashes = new int[capacity];
+        manual = new boolean[capacity];
+        openedAt = new long[capacity];
+        lastAt = new long[capacity];
+        firstTimestamps = new long[capacity];
+        buyUsdc = new double[capacity];
+        buyShares = new double[capacity];
+        sellUsdc = new double[capacity];
+        sellShares = new double[capacity];
+        lastTrades = new Trade[capacity];
+        tradeIds = new Object[capacity];
+        if (oldCreators == null) {
+            return;
+        }
+        for (int i = 0; i < oldCreators.length; i++) {
+            if (oldCreators[i] == null) {
+                continue;
+            }
+            int slot = find(oldCreators[i], oldMarkets[i], oldOutcomes[i], oldHashes[i]);
+            creators[slot] = oldCreators[i];
+            markets[slot] = oldMarkets[i];
+            outcomes[slot] = oldOutcomes[i];
+            hashes[slot] = oldHashes[i];
+            manual[slot] = oldManual[i];
+            openedAt[slot] = oldOpened[i];
+            lastAt[slot] = oldLast[i];
+            firstTimestamps[slot] = oldFirst[i];
+            buyUsdc[slot] = oldBuyUsdc[i];
+            buyShares[slot] = oldBuyShares[i];
+            sellUsdc[slot] = oldSellUsdc[i];
+            sellShares[slot] = oldSellShares[i];
+            lastTrades[slot] = oldTrades[i];
+            tradeIds[slot] = oldIds[i];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> ids(int slot) {
+        return (List<String>) tradeIds[slot];
+    }
+
+    private record Key(String creator, String market, int outcome) {
+    }
+
+    private record Pending(Key key, FlowSignal signal) {
+    }
+
+    private static int hash(String creator, String market, int outcome) {
+        int h = (creator.hashCode() * 31 + market.hashCode()) * 31 + outcome;
+        return h ^ (h >>> 16);
+    }
+
+    private static double parse(String raw) {
+        try {
+            return raw != null ? Double.parseDouble(raw) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
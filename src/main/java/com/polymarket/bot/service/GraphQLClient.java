@@ -0,0 +1,169 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Small GraphQL client for one subgraph endpoint.
+ * 面向单个子图端点的小型 GraphQL 客户端。
+ *
+ * Query documents are compiled once into {@link Template}s; each call only writes
+ * the variables as JSON into a per-thread buffer that is reused across requests.
+ * Responses are handed to a streaming decoder. OkHttp already negotiates gzip
+ * responses transparently; gzip request bodies are opt-in because not every
+ * GraphQL server accepts them.
+ * 查询文档只编译一次为 {@link Template}；每次调用只需将变量以 JSON 写入按线程复用的缓冲区。
+ * 响应交给流式解码器处理。OkHttp 已透明协商 gzip 响应；gzip 请求体需显式开启，因为并非所有 GraphQL 服务器都支持。
+ */
+public class GraphQLClient {
+
+    public static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int ERROR_SNIPPET_LENGTH = 300;
+
+    private final UpstreamClient upstream;
+    private final JsonFactory factory;
+    private final String url;
+    private final boolean gzipRequests;
+    private final long callTimeoutMillis;
+
+    // execute() blocks until a response is chosen and cancels any losing hedge, so the
+    // buffer is free again once it returns
+    // execute() 会阻塞直到选定响应并取消落败的对冲请求，因此返回后缓冲区即可复用
+    private final ThreadLocal<ReusableBuffer> buffers = ThreadLocal.withInitial(ReusableBuffer::new);
+
+    public GraphQLClient(UpstreamClient upstream, JsonFactory factory, String url, boolean gzipRequests) {
+        this(upstream, factory, url, gzipRequests, upstream.getCallTimeoutMillis());
+    }
+
+    private GraphQLClient(UpstreamClient upstream, JsonFactory factory, String url, boolean gzipRequests,
+            long callTimeoutMillis) {
+        this.upstream = upstream;
+        this.factory = factory;
+        this.url = url;
+        this.gzipRequests = gzipRequests;
+        this.callTimeoutMillis = callTimeoutMillis;
+    }
+
+    /**
+     * Same endpoint and settings with a different per-attempt timeout.
+     * 相同的端点和设置，但使用不同的单次尝试超时。
+     */
+    public GraphQLClient withCallTimeout(long millis) {
+        return new GraphQLClient(upstream, factory, url, gzipRequests, millis);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Runs a query and decodes the response body as it streams in.
+     * 执行查询，并在响应体流入时进行解码。
+     *
+     * @param variables Writes the fields of the {@code variables} object, or null / 写入 {@code variables} 对象的字段，或 null
+     * @throws IOException on network errors or non-2xx responses / 网络错误或非 2xx 响应时抛出
+     */
+    public <T> T execute(Template template, Variables variables, ResponseDecoder<T> decoder) throws IOException {
+        ReusableBuffer buffer = buffers.get();
+        buffer.reset();
+        OutputStream out = gzipRequests ? new GZIPOutputStream(buffer) : buffer;
+        try (JsonGenerator g = factory.createGenerator(out)) {
+            g.writeStartObject();
+            g.writeFieldName("query");
+            g.writeRawValue(template.quotedDocument);
+            if (variables != null) {
+                g.writeObjectFieldStart("variables");
+                variables.write(g);
+                g.writeEndObject();
+            }
+            g.writeEndObject();
+        }
+        out.close(); // Finishes the gzip trailer; no-op otherwise / 写入 gzip 尾部；否则无操作
+
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(buffer.array(), JSON, 0, buffer.size()));
+        if (gzipRequests) {
+            request.header("Content-Encoding", "gzip");
+        }
+
+        try (Response response = upstream.execute(request.build(), callTimeoutMillis)) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                String snippet = body != null ? body.string() : "";
+                if (snippet.length() > ERROR_SNIPPET_LENGTH) {
+                    snippet = snippet.substring(0, ERROR_SNIPPET_LENGTH) + "...";
+                }
+                throw new IOException("Subgraph request failed: " + response.code() + " " + response.message()
+                        + (snippet.isEmpty() ? "" : " " + snippet));
+            }
+            return decoder.decode(body.byteStream());
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                buffers.remove(); // Don't pin a large batch body / 不长期占用大批量请求体
+            }
+        }
+    }
+
+    /**
+     * A query document compiled once: whitespace collapsed and pre-escaped as a JSON string.
+     * 只编译一次的查询文档：压缩空白并预先转义为 JSON 字符串。
+     */
+    public static final class Template {
+        private final String quotedDocument;
+
+        private Template(String quotedDocument) {
+            this.quotedDocument = quotedDocument;
+        }
+
+        public static Template compile(String document) {
+            String compact = document.trim().replaceAll("\\s+", " ");
+            return new Template("\"" + new String(JsonStringEncoder.getInstance().quoteAsString(compact)) + "\"");
+        }
+    }
+
+    /**
+     * Writes the fields of the {@code variables} object.
+     * 写入 {@code variables} 对象的字段。
+     */
+    @FunctionalInterface
+    public interface Variables {
+        void write(JsonGenerator g) throws IOException;
+    }
+
+    /**
+     * Decodes a successful response body. / 解码成功响应的响应体。
+     */
+    @FunctionalInterface
+    public interface ResponseDecoder<T> {
+        T decode(InputStream body) throws IOException;
+    }
+
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+        ReusableBuffer() {
+            super(4096);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.polymarket.bot.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable consistent-hash ring mapping addresses to cluster nodes.
+ * 将地址映射到集群节点的不可变一致性哈希环。
+ *
+ * Each node is placed at {@code virtualNodes} points; an address belongs to
+ * the first point at or after its own hash. When a node joins or leaves, only
+ * the addresses next to its points change owner.
+ * 每个节点被放置在 {@code virtualNodes} 个点上；地址属于其哈希值处或之后的第一个点。
+ * 节点加入或离开时，只有其点附近的地址会更换所有者。
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(List<String> nodes, int virtualNodes) {
+        this.nodes = List.copyOf(nodes);
+        int count = nodes.size() * Math.max(1, virtualNodes);
+        long[] unsorted = new long[count];
+        String[] unsortedOwners = new String[count];
+        int i = 0;
+        for (String node : nodes) {
+            for (int v = 0; v < Math.max(1, virtualNodes); v++) {
+                unsorted[i] = hash(node + "#" + v);
+                unsortedOwners[i] = node;
+                i++;
+            }
+        }
+        // Sort points and owners together / 点和所有者一起排序
+        Integer[] order = new Integer[count];
+        for (int j = 0; j < count; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int j = 0; j < count; j++) {
+            points[j] = unsorted[order[j]];
+            owners[j] = unsortedOwners[order[j]];
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the owning node, or null if the ring is empty / 所属节点；环为空时返回 null
+     */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars, finished with the MurmurHash3 mixer.
+     * 对字符做 64 位 FNV-1a，再用 MurmurHash3 混合函数收尾。
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
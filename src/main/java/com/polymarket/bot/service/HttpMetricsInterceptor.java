@@ -0,0 +1,82 @@
+package com.polymarket.bot.service;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * OkHttp network interceptor that records upstream status codes, latency and bytes.
+ * 记录上游状态码、延迟和字节数的 OkHttp 网络拦截器。
+ *
+ * Bytes are counted as the body is streamed, so responses decoded incrementally
+ * (chunked, no Content-Length) are measured too.
+ * 字节数在读取响应体时统计，因此增量解码的响应（分块传输、无 Content-Length）也能计入。
+ */
+public class HttpMetricsInterceptor implements Interceptor {
+
+    private final Metrics metrics;
+
+    public HttpMetricsInterceptor(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String upstream = upstreamName(chain.request().url());
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            requests(upstream, "error").inc();
+            throw e;
+        } finally {
+            metrics.histogram("upstream_request_seconds", "Time to upstream response headers",
+                    Metrics.LATENCY_BUCKETS, "upstream", upstream).observeNanos(System.nanoTime() - start);
+        }
+        requests(upstream, String.valueOf(response.code())).inc();
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        Metrics.Counter bytes = metrics.counter("upstream_response_bytes_total", "Upstream response body bytes read",
+                "upstream", upstream);
+        BufferedSource counted = Okio.buffer(new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long n = super.read(sink, byteCount);
+                if (n > 0) {
+                    bytes.add(n);
+                }
+                return n;
+            }
+        });
+        return response.newBuilder()
+                .body(ResponseBody.create(counted, body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    private Metrics.Counter requests(String upstream, String code) {
+        return metrics.counter("upstream_requests_total", "Upstream HTTP requests by status code",
+                "upstream", upstream, "code", code);
+    }
+
+    /**
+     * Goldsky URLs look like .../subgraphs/{name}/{version}/gn; label by subgraph name.
+     * Goldsky URL 形如 .../subgraphs/{name}/{version}/gn；以子图名作为标签。
+     */
+    static String upstreamName(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        int i = segments.indexOf("subgraphs");
+        return i >= 0 && i + 1 < segments.size() ? segments.get(i + 1) : url.host();
+    }
+}
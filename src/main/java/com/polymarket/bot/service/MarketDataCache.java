@@ -0,0 +1,635 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Market metadata and top-of-book snapshots, keyed by condition id.
+ * 以条件 ID 为键的市场元数据和订单簿顶部快照。
+ *
+ * Metadata (CLOB token id per outcome, neg-risk flag, tick and minimum size) is
+ * loaded from the Gamma API in batches; order books are refreshed from the CLOB
+ * in the background, stalest first, a batch per cycle. Lookups on the trade path
+ * never block: {@link #peek} returns what is cached, {@link #get} completes when
+ * a missing market has loaded. Markets not looked up within the TTL are evicted,
+ * and the least recently used go first when the cache is full; pinned markets
+ * (those we hold tokens in) are never evicted and are reloaded if missing.
+ * 元数据（每个结果的 CLOB 代币 ID、neg-risk 标志、价格刻度和最小数量）从 Gamma API 批量加载；
+ * 订单簿在后台从 CLOB 刷新，每轮按最旧优先刷新一批。交易路径上的查找从不阻塞：{@link #peek} 返回已缓存的内容，
+ * {@link #get} 在缺失的市场加载完成后完成。在 TTL 内未被查找的市场会被淘汰，缓存满时最久未使用的先被淘汰；
+ * 固定的市场（持有其代币的市场）从不淘汰，缺失时会重新加载。
+ */
+public class MarketDataCache {
+
+    private static final int MAX_LEVELS = 20;
+    private static final int METADATA_BATCH = 20;
+
+    private final UpstreamClient upstream;
+    private final JsonFactory factory;
+    private final String gammaUrl;
+    private final String clobUrl;
+    private final Metrics metrics;
+    private final int maxMarkets;
+    private final long ttlMillis;
+    private final long bookRefreshMillis;
+    private final int bookBatch;
+
+    private final Map<String, Market> markets = new ConcurrentHashMap<>();
+    private final Map<String, Market> byToken = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Market>> loading = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<String> pending = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService refresher;
+    private volatile Consumer<Market> onLoaded = market -> {
+    };
+    private volatile Supplier<Set<String>> pinned = Set::of;
+
+    /**
+     * @param maxMarkets        Markets kept at most / 最多保留的市场数
+     * @param ttlMillis         Evict markets not looked up for this long / 超过该时长未被查找的市场会被淘汰
+     * @param bookRefreshMillis Delay between order book refresh cycles / 订单簿刷新轮次之间的间隔
+     * @param bookBatch         Tokens refreshed per cycle / 每轮刷新的代币数
+     */
+    public MarketDataCache(UpstreamClient upstream, JsonFactory factory, String gammaUrl, String clobUrl,
+            int maxMarkets, long ttlMillis, long bookRefreshMillis, int bookBatch, Metrics metrics) {
+        this.upstream = upstream;
+        this.factory = factory;
+        this.gammaUrl = stripTrailingSlash(gammaUrl);
+        this.clobUrl = stripTrailingSlash(clobUrl);
+        this.maxMarkets = maxMarkets;
+        this.ttlMillis = ttlMillis;
+        this.bookRefreshMillis = bookRefreshMillis;
+        this.bookBatch = bookBatch;
+        this.metrics = metrics;
+        this.refresher = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "market-data");
+            t.setDaemon(true);
+            return t;
+        });
+        metrics.gauge("market_cache_markets", "Markets with cached metadata", markets::size);
+        metrics.gauge("market_book_max_age_seconds", "Age of the stalest cached order book", this::maxBookAgeSeconds);
+    }
+
+    /**
+     * Called once for each market after it loads, on a background thread.
+     * 每个市场加载后在后台线程上调用一次。
+     */
+    public void setOnLoaded(Consumer<Market> onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    /**
+     * Sets the condition ids to keep cached regardless of TTL and size, read every refresh cycle.
+     * 设置无论 TTL 和容量都保持缓存的条件 ID，每个刷新轮次读取一次。
+     */
+    public void setPinned(Supplier<Set<String>> pinned) {
+        this.pinned = pinned;
+    }
+
+    /**
+     * Starts the metadata loader and the order book refresh loop.
+     * 启动元数据加载器和订单簿刷新循环。
+     */
+    public void start() {
+        refresher.execute(this::loadLoop);
+        refresher.scheduleWithFixedDelay(this::refreshCycle, bookRefreshMillis, bookRefreshMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public int size() {
+        return markets.size();
+    }
+
+    /**
+     * Best bid of a token from the cached book, the price a holding could be sold at now.
+     * 缓存订单簿中某代币的最优买价，即当前持仓可卖出的价格。
+     *
+     * @return NaN if the market is not cached or has no bids / 市场未缓存或无买单时为 NaN
+     */
+    public double bidPrice(String tokenId) {
+        Market market = byToken.get(tokenId);
+        Book book = market != null ? market.book(market.outcomeOf(tokenId)) : null;
+        return book != null ? book.bestBid() : Double.NaN;
+    }
+
+    /**
+     * Non-blocking lookup; a miss schedules a load.
+     * 非阻塞查找；未命中时安排加载。
+     *
+     * @return the cached market, or null / 已缓存的市场，或 null
+     */
+    public Market peek(String conditionId) {
+        if (conditionId == null) {
+            return null;
+        }
+        Market market = markets.get(conditionId);
+        metrics.counter("market_cache_lookups_total", "Market metadata lookups by result",
+                "result", market != null ? "hit" : "miss").inc();
+        if (market == null) {
+            get(conditionId);
+            return null;
+        }
+        market.lastAccessMillis = System.currentTimeMillis();
+        return market;
+    }
+
+    /**
+     * @return completes with the market, or null if it is unknown or could not be loaded / 以市场完成；未知或无法加载时为 null
+     */
+    public CompletableFuture<Market> get(String conditionId) {
+        if (conditionId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Market market = markets.get(conditionId);
+        if (market != null) {
+            market.lastAccessMillis = System.currentTimeMillis();
+            return CompletableFuture.completedFuture(market);
+        }
+        return loading.computeIfAbsent(conditionId, id -> {
+            pending.add(id);
+            return new CompletableFuture<>();
+        });
+    }
+
+    /**
+     * Loads these markets ahead of their first trade.
+     * 在首笔交易前预先加载这些市场。
+     */
+    public void warm(Collection<String> conditionIds) {
+        for (String id : conditionIds) {
+            get(id);
+        }
+    }
+
+    /**
+     * Drains pending condition ids in batches of one Gamma request each.
+     * 按每批一个 Gamma 请求的方式处理待加载的条件 ID。
+     */
+    private void loadLoop() {
+        List<String> batch = new ArrayList<>(METADATA_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pending.take());
+                pending.drainTo(batch, METADATA_BATCH - 1);
+                loadBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Market metadata load failed: " + e.getMessage());
+            } finally {
+                // Whatever was not found is reported as null; a later lookup retries
+                // 未找到的以 null 完成；之后的查找会重试
+                for (String id : batch) {
+                    CompletableFuture<Market> future = loading.remove(id);
+                    if (future != null) {
+                        future.complete(markets.get(id));
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void loadBatch(List<String> conditionIds) throws IOException {
+        HttpUrl.Builder url = HttpUrl.get(gammaUrl + "/markets").newBuilder();
+        for (String id : conditionIds) {
+            url.addQueryParameter("condition_ids", id);
+        }
+        List<Market> loaded;
+        try (Response response = upstream.execute(new Request.Builder().url(url.build()).get().build(),
+                upstream.getCallTimeoutMillis())) {
+            loaded = parseMarkets(checkedBody(response));
+        }
+        // Only what was asked for and is not cached yet / 只保留请求过且尚未缓存的市场
+        loaded.removeIf(market -> !conditionIds.contains(market.conditionId)
+                || markets.containsKey(market.conditionId));
+        for (Market market : loaded) {
+            market.lastAccessMillis = System.currentTimeMillis();
+            markets.put(market.conditionId, market);
+            for (String token : market.tokenIds) {
+                byToken.put(token, market);
+            }
+        }
+        if (!loaded.isEmpty()) {
+            // Depth is needed for the first copy, not only later ones / 首次跟单就需要深度，而不仅是之后
+            refreshBooks(loaded);
+            for (Market market : loaded) {
+                onLoaded.accept(market);
+            }
+        }
+    }
+
+    private void refreshCycle() {
+        try {
+            Set<String> pinnedIds = pinned.get();
+            evict(pinnedIds);
+            // A pinned market whose load failed is retried / 加载失败的固定市场会重试
+            for (String id : pinnedIds) {
+                if (!markets.containsKey(id)) {
+                    get(id);
+                }
+            }
+            List<Market> stalest = new ArrayList<>(markets.values());
+            stalest.sort(Comparator.comparingLong(Market::bookUpdatedMillis));
+            List<Market> batch = new ArrayList<>();
+            int tokens = 0;
+            for (Market market : stalest) {
+                if (tokens + market.tokenIds.length > bookBatch) {
+                    break;
+                }
+                batch.add(market);
+                tokens += market.tokenIds.length;
+            }
+            if (!batch.isEmpty()) {
+                refreshBooks(batch);
+            }
+        } catch (Exception e) {
+            System.err.println("Order book refresh failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops markets past their TTL, then the least recently used beyond the size
+     * bound; pinned markets are skipped.
+     * 淘汰超过 TTL 的市场，再淘汰超出容量上限的最久未使用市场；跳过固定的市场。
+     */
+    private void evict(Set<String> pinnedIds) {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        List<Market> expired = new ArrayList<>();
+        List<Market> byAccess = new ArrayList<>();
+        for (Market market : markets.values()) {
+            if (pinnedIds.contains(market.conditionId)) {
+                continue;
+            }
+            if (market.lastAccessMillis < cutoff) {
+                expired.add(market);
+            } else {
+                byAccess.add(market);
+            }
+        }
+        int excess = markets.size() - expired.size() - maxMarkets;
+        if (excess > 0) {
+            byAccess.sort(Comparator.comparingLong(m -> m.lastAccessMillis));
+            expired.addAll(byAccess.subList(0, Math.min(excess, byAccess.size())));
+        }
+        for (Market market : expired) {
+            markets.remove(market.conditionId);
+            for (String token : market.tokenIds) {
+                byToken.remove(token);
+            }
+        }
+        if (!expired.isEmpty()) {
+            metrics.counter("market_cache_evictions_total", "Markets evicted by TTL or size").add(expired.size());
+        }
+    }
+
+    private void refreshBooks(List<Market> batch) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator g = factory.createGenerator(body)) {
+            g.writeStartArray();
+            for (Market market : batch) {
+                for (String token : market.tokenIds) {
+                    g.writeStartObject();
+                    g.writeStringField("token_id", token);
+                    g.writeEndObject();
+                }
+            }
+            g.writeEndArray();
+        }
+        Request request = new Request.Builder()
+                .url(clobUrl + "/books")
+                .post(RequestBody.create(body.toByteArray(), GraphQLClient.JSON))
+                .build();
+        long start = System.nanoTime();
+        try (Response response = upstream.execute(request, upstream.getCallTimeoutMillis())) {
+            parseBooks(checkedBody(response));
+        }
+        metrics.histogram("market_book_refresh_seconds", "Duration of one batched order book refresh",
+                Metrics.LATENCY_BUCKETS).observeNanos(System.nanoTime() - start);
+    }
+
+    private InputStream checkedBody(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            throw new IOException(response.request().url().encodedPath() + " failed: " + response.code());
+        }
+        return body.byteStream();
+    }
+
+    /**
+     * Parses Gamma markets; {@code clobTokenIds} is itself a JSON-encoded string array.
+     * 解析 Gamma 市场；{@code clobTokenIds} 本身是 JSON 编码的字符串数组。
+     */
+    private List<Market> parseMarkets(InputStream in) throws IOException {
+        List<Market> result = new ArrayList<>();
+        try (JsonParser p = factory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Unexpected Gamma response");
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String conditionId = null;
+                String question = null;
+                String tokens = null;
+                boolean negRisk = false;
+                boolean acceptingOrders = true;
+                double tickSize = 0.01;
+                double minSize = 0;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    switch (field) {
+                        case "conditionId" -> conditionId = p.getValueAsString();
+                        case "question" -> question = p.getValueAsString();
+                        case "clobTokenIds" -> tokens = p.getValueAsString();
+                        case "negRisk" -> negRisk = value == JsonToken.VALUE_TRUE;
+                        case "acceptingOrders" -> acceptingOrders = value != JsonToken.VALUE_FALSE;
+                        case "orderPriceMinTickSize" -> tickSize = p.getValueAsDouble(0.01);
+                        case "orderMinSize" -> minSize = p.getValueAsDouble(0);
+                        default -> p.skipChildren();
+                    }
+                }
+                String[] tokenIds = parseStringArray(tokens);
+                if (conditionId != null && tokenIds.length > 0) {
+                    result.add(new Market(conditionId.toLowerCase(), question, tokenIds, negRisk, acceptingOrders,
+                            tickSize, minSize));
+                }
+            }
+        }
+        return result;
+    }
+
+    private String[] parseStringArray(String json) throws IOException {
+        if (json == null || json.isEmpty()) {
+            return new String[0];
+        }
+        List<String> values = new ArrayList<>(2);
+        try (JsonParser p = factory.createParser(json)) {
+            if (p.nextToken() == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.VALUE_STRING) {
+                    values.add(p.getText());
+                }
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    private void parseBooks(InputStream in) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<Market, Book[]> updates = new HashMap<>();
+        try (JsonParser p = factory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Unexpected order book response");
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String assetId = null;
+                double[][] bids = null;
+                double[][] asks = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    p.nextToken();
+                    switch (field) {
+                        case "asset_id" -> assetId = p.getValueAsString();
+                        case "bids" -> bids = readLevels(p);
+                        case "asks" -> asks = readLevels(p);
+                        default -> p.skipChildren();
+                    }
+                }
+                Market market = assetId != null ? byToken.get(assetId) : null;
+                int outcome = market != null ? market.outcomeOf(assetId) : -1;
+                if (outcome < 0) {
+                    continue;
+                }
+                Book[] books = updates.computeIfAbsent(market, m -> m.books.clone());
+                books[outcome] = Book.of(bids, asks, now);
+            }
+        }
+        // Swap whole arrays so readers see a consistent set of books / 整体替换数组，读者看到一致的订单簿集合
+        updates.forEach((market, books) -> market.books = books);
+    }
+
+    /**
+     * @return {prices, sizes} in response order / 按响应顺序的 {价格, 数量}
+     */
+    private static double[][] readLevels(JsonParser p) throws IOException {
+        List<double[]> levels = new ArrayList<>();
+        if (p.currentToken() == JsonToken.START_ARRAY) {
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                double price = 0;
+                double size = 0;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    p.nextToken();
+                    switch (field) {
+                        case "price" -> price = Double.parseDouble(p.getValueAsString("0"));
+                        case "size" -> size = Double.parseDouble(p.getValueAsString("0"));
+                        default -> p.skipChildren();
+                    }
+                }
+                levels.add(new double[] { price, size });
+            }
+        } else {
+            p.skipChildren();
+        }
+        double[][] result = new double[2][levels.size()];
+        for (int i = 0; i < levels.size(); i++) {
+            result[0][i] = levels.get(i)[0];
+            result[1][i] = levels.get(i)[1];
+        }
+        return result;
+    }
+
+    private double maxBookAgeSeconds() {
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        for (Market market : markets.values()) {
+            oldest = Math.min(oldest, market.bookUpdatedMillis());
+        }
+        return (now - oldest) / 1000.0;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Cached metadata and latest books of one market. / 单个市场的缓存元数据和最新订单簿。
+     */
+    public static final class Market {
+        private final String conditionId;
+        private final String question;
+        private final String[] tokenIds; // By outcome index / 按结果索引
+        private final boolean negRisk;
+        private final boolean acceptingOrders;
+        private final double tickSize;
+        private final double minOrderSize;
+        private volatile Book[] books;
+        private volatile long lastAccessMillis;
+
+        Market(String conditionId, String question, String[] tokenIds, boolean negRisk, boolean acceptingOrders,
+                double tickSize, double minOrderSize) {
+            this.conditionId = conditionId;
+            this.question = question;
+            this.tokenIds = tokenIds;
+            this.negRisk = negRisk;
+            this.acceptingOrders = acceptingOrders;
+            this.tickSize = tickSize;
+            this.minOrderSize = minOrderSize;
+            this.books = new Book[tokenIds.length];
+        }
+
+        public String conditionId() {
+            return conditionId;
+        }
+
+        public String question() {
+            return question;
+        }
+
+        /**
+         * @return the CLOB token id of this outcome, or null / 该结果的 CLOB 代币 ID，或 null
+         */
+        public String tokenId(int outcomeIndex) {
+            return outcomeIndex >= 0 && outcomeIndex < tokenIds.length ? tokenIds[outcomeIndex] : null;
+        }
+
+        public List<String> tokenIds() {
+            return Arrays.asList(tokenIds);
+        }
+
+        public boolean negRisk() {
+            return negRisk;
+        }
+
+        public boolean acceptingOrders() {
+            return acceptingOrders;
+        }
+
+        public double tickSize() {
+            return tickSize;
+        }
+
+        /** In shares. / 以份额计。 */
+        public double minOrderSize() {
+            return minOrderSize;
+        }
+
+        /**
+         * @return the latest snapshot for this outcome, or null before the first refresh / 该结果的最新快照；首次刷新前为 null
+         */
+        public Book book(int outcomeIndex) {
+            Book[] current = books;
+            return outcomeIndex >= 0 && outcomeIndex < current.length ? current[outcomeIndex] : null;
+        }
+
+        int outcomeOf(String tokenId) {
+            for (int i = 0; i < tokenIds.length; i++) {
+                if (tokenIds[i].equals(tokenId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long bookUpdatedMillis() {
+            long oldest = Long.MAX_VALUE;
+            for (Book book : books) {
+                oldest = Math.min(oldest, book != null ? book.updatedMillis() : 0);
+            }
+            return oldest;
+        }
+    }
+
+    /**
+     * Best {@code MAX_LEVELS} price levels per side, best first. / 每侧最优的 {@code MAX_LEVELS} 个价位，最优在前。
+     */
+    public record Book(double[] bidPrices, double[] bidSizes, double[] askPrices, double[] askSizes,
+            long updatedMillis) {
+
+        static Book of(double[][] bids, double[][] asks, long now) {
+            double[][] b = best(bids, true);
+            double[][] a = best(asks, false);
+            return new Book(b[0], b[1], a[0], a[1], now);
+        }
+
+        private static double[][] best(double[][] levels, boolean descending) {
+            if (levels == null) {
+                return new double[2][0];
+            }
+            Integer[] order = new Integer[levels[0].length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Comparator<Integer> byPrice = Comparator.comparingDouble(i -> levels[0][i]);
+            Arrays.sort(order, descending ? byPrice.reversed() : byPrice);
+            int n = Math.min(order.length, MAX_LEVELS);
+            double[][] result = new double[2][n];
+            for (int i = 0; i < n; i++) {
+                result[0][i] = levels[0][order[i]];
+                result[1][i] = levels[1][order[i]];
+            }
+            return result;
+        }
+
+        /** @return NaN if there are no bids / 无买单时为 NaN */
+        public double bestBid() {
+            return bidPrices.length > 0 ? bidPrices[0] : Double.NaN;
+        }
+
+        /** @return NaN if there are no asks / 无卖单时为 NaN */
+        public double bestAsk() {
+            return askPrices.length > 0 ? askPrices[0] : Double.NaN;
+        }
+
+        /**
+         * USDC that buys can spend at or below the limit. / 买入在限价及以下可花费的 USDC。
+         */
+        public double askNotional(double limit) {
+            double total = 0;
+            for (int i = 0; i < askPrices.length && askPrices[i] <= limit; i++) {
+                total += askPrices[i] * askSizes[i];
+            }
+            return total;
+        }
+
+        /**
+         * USDC that sells can raise at or above the limit. / 卖出在限价及以上可获得的 USDC。
+         */
+        public double bidNotional(double limit) {
+            double total = 0;
+            for (int i = 0; i < bidPrices.length && bidPrices[i] >= limit; i++) {
+                total += bidPrices[i] * bidSizes[i];
+            }
+            return total;
+        }
+
+        public long ageMillis() {
+            return System.currentTimeMillis() - updatedMillis;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.polymarket.bot.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Minimal metrics registry rendered in Prometheus text format.
+ * 以 Prometheus 文本格式输出的最小指标注册表。
+ *
+ * Counters and histogram buckets are striped {@link LongAdder}s, so recording on
+ * the hot path is a few uncontended adds and never takes a lock.
+ * 计数器和直方图桶均为分段的 {@link LongAdder}，因此热路径上的记录只是几次无竞争的加法，从不加锁。
+ */
+public class Metrics {
+
+    /** Default latency buckets, in seconds / 默认延迟桶（秒） */
+    public static final double[] LATENCY_BUCKETS = {
+            0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Gets or creates a counter.
+     * 获取或创建计数器。
+     *
+     * @param labels Alternating label names and values / 交替的标签名和标签值
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").children.computeIfAbsent(renderLabels(labels),
+                k -> new Counter());
+    }
+
+    /**
+     * Gets or creates a histogram.
+     * 获取或创建直方图。
+     *
+     * @param buckets Upper bounds in seconds, ascending / 升序的上界（秒）
+     * @param labels  Alternating label names and values / 交替的标签名和标签值
+     */
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) family(name, help, "histogram").children.computeIfAbsent(renderLabels(labels),
+                k -> new Histogram(buckets));
+    }
+
+    /**
+     * Registers a gauge read at scrape time.
+     * 注册在抓取时读取的仪表。
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").children.put(renderLabels(labels), value);
+    }
+
+    private synchronized Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Renders all metrics in Prometheus text exposition format.
+     * 以 Prometheus 文本格式输出所有指标。
+     */
+    public synchronized String render() {
+        StringBuilder out = new StringBuilder();
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.children.forEach((labels, child) -> {
+                if (child instanceof Counter c) {
+                    out.append(name).append(braces(labels)).append(' ').append(c.get()).append('\n');
+                } else if (child instanceof DoubleSupplier g) {
+                    out.append(name).append(braces(labels)).append(' ').append(g.getAsDouble()).append('\n');
+                } else if (child instanceof Histogram h) {
+                    h.render(out, name, labels);
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> children = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Monotonic counter. / 单调计数器。
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Fixed-bucket histogram; also tracks the max for log summaries.
+     * 固定桶直方图；同时记录最大值以便输出日志摘要。
+     */
+    public static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public void observe(double seconds) {
+            int i = 0;
+            while (i < bounds.length && seconds > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            sum.add(seconds);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() * 1000 / n;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        void render(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += buckets[bounds.length].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append(name).append("_sum").append(braces(labels)).append(' ').append(sum.sum()).append('\n');
+            out.append(name).append("_count").append(braces(labels)).append(' ').append(cumulative).append('\n');
+        }
+    }
+}
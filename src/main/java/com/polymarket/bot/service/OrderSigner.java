@@ -0,0 +1,254 @@
+package com.polymarket.bot.service;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * EIP-712 signer for Polymarket CTF Exchange orders.
+ * Polymarket CTF Exchange 订单的 EIP-712 签名器。
+ *
+ * Everything that does not change between orders (domain separators, type hash,
+ * maker/signer/taker, token id, side) is encoded once into a {@link Template};
+ * signing an order then only fills in salt and amounts, hashes and runs one
+ * deterministic (RFC 6979) secp256k1 signature.
+ * 订单间不变的内容（域分隔符、类型哈希、maker/signer/taker、代币 ID、方向）只编码一次到 {@link Template}；
+ * 签名时只需填入 salt 和数量、计算哈希并执行一次确定性（RFC 6979）secp256k1 签名。
+ */
+public class OrderSigner {
+
+    public enum Side {
+        BUY, SELL
+    }
+
+    public static final long POLYGON_CHAIN_ID = 137;
+    private static final String EXCHANGE = "0x4bFb41d5B3570DeFd03C39a9A4D8dE6Bd8B8982E";
+    private static final String NEG_RISK_EXCHANGE = "0xC5d563A36AE78145C45a50134d48A1215220f80a";
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    private static final byte[] ORDER_TYPEHASH = keccak(("Order(uint256 salt,address maker,address signer,"
+            + "address taker,uint256 tokenId,uint256 makerAmount,uint256 takerAmount,uint256 expiration,"
+            + "uint256 nonce,uint256 feeRateBps,uint8 side,uint8 signatureType)").getBytes(StandardCharsets.UTF_8));
+
+    // Word offsets of the order struct encoding / 订单结构编码中各字段的字位置
+    private static final int WORD = 32;
+    private static final int SALT = 1, MAKER = 2, SIGNER = 3, TAKER = 4, TOKEN_ID = 5, MAKER_AMOUNT = 6,
+            TAKER_AMOUNT = 7, EXPIRATION = 8, NONCE = 9, FEE_RATE = 10, SIDE = 11, SIGNATURE_TYPE = 12;
+    private static final int STRUCT_WORDS = 13;
+
+    private static final X9ECParameters SECP256K1 = CustomNamedCurves.getByName("secp256k1");
+    private static final ECDomainParameters CURVE = new ECDomainParameters(SECP256K1.getCurve(), SECP256K1.getG(),
+            SECP256K1.getN(), SECP256K1.getH());
+    private static final BigInteger HALF_N = CURVE.getN().shiftRight(1);
+
+    private final BigInteger privateKey;
+    private final String address;
+    private final byte[] domainSeparator;
+    private final byte[] negRiskDomainSeparator;
+
+    /**
+     * @param privateKeyHex Hex private key of the signing wallet, with or without 0x / 签名钱包的十六进制私钥，可带或不带 0x
+     */
+    public OrderSigner(String privateKeyHex, long chainId) {
+        this.privateKey = new BigInteger(1, HexFormat.of().parseHex(strip0x(privateKeyHex.trim())));
+        byte[] pub = new FixedPointCombMultiplier().multiply(CURVE.getG(), privateKey).getEncoded(false);
+        byte[] hash = keccak(Arrays.copyOfRange(pub, 1, pub.length));
+        this.address = "0x" + HexFormat.of().formatHex(hash, 12, 32);
+        this.domainSeparator = domainSeparator(chainId, EXCHANGE);
+        this.negRiskDomainSeparator = domainSeparator(chainId, NEG_RISK_EXCHANGE);
+    }
+
+    /**
+     * @return lower-cased address of the signing wallet / 签名钱包的小写地址
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Pre-encodes the fields shared by every order for one token and side.
+     * 预编码同一代币和方向的所有订单共享的字段。
+     *
+     * @param maker         Funding address (the proxy wallet for signature types 1 and 2) / 出资地址（签名类型 1 和 2 时为代理钱包）
+     * @param signatureType 0 EOA, 1 POLY_PROXY, 2 POLY_GNOSIS_SAFE
+     * @param negRisk       Market settles on the neg-risk exchange / 市场在 neg-risk 交易所结算
+     */
+    public Template template(String maker, int signatureType, String tokenId, Side side, boolean negRisk,
+            int feeRateBps) {
+        byte[] struct = new byte[STRUCT_WORDS * WORD];
+        System.arraycopy(ORDER_TYPEHASH, 0, struct, 0, WORD);
+        putAddress(struct, MAKER, maker);
+        putAddress(struct, SIGNER, address);
+        putAddress(struct, TAKER, ZERO_ADDRESS);
+        putUint(struct, TOKEN_ID, new BigInteger(tokenId));
+        putUint(struct, NONCE, BigInteger.ZERO);
+        putUint(struct, FEE_RATE, BigInteger.valueOf(feeRateBps));
+        putUint(struct, SIDE, BigInteger.valueOf(side.ordinal()));
+        putUint(struct, SIGNATURE_TYPE, BigInteger.valueOf(signatureType));
+        return new Template(struct, negRisk ? negRiskDomainSeparator : domainSeparator, maker, signatureType,
+                tokenId, side, feeRateBps);
+    }
+
+    /**
+     * Signs one order. Amounts are in 6-decimal base units.
+     * 签名一个订单。数量以 6 位小数的基本单位表示。
+     *
+     * @param makerAmount What we give: USDC for a buy, shares for a sell / 付出的数量：买入为 USDC，卖出为份额
+     * @param takerAmount What we get: shares for a buy, USDC for a sell / 得到的数量：买入为份额，卖出为 USDC
+     * @param expiration  Unix seconds, 0 for none / Unix 秒，0 表示不过期
+     */
+    public SignedOrder sign(Template template, long salt, long makerAmount, long takerAmount, long expiration) {
+        byte[] struct = template.struct.clone();
+        putLong(struct, SALT, salt);
+        putLong(struct, MAKER_AMOUNT, makerAmount);
+        putLong(struct, TAKER_AMOUNT, takerAmount);
+        putLong(struct, EXPIRATION, expiration);
+
+        KeccakDigest digest = new KeccakDigest(256);
+        digest.update(new byte[] { 0x19, 0x01 }, 0, 2);
+        digest.update(template.domainSeparator, 0, WORD);
+        digest.update(keccak(struct), 0, WORD);
+        byte[] hash = new byte[WORD];
+        digest.doFinal(hash, 0);
+
+        return new SignedOrder(template, salt, makerAmount, takerAmount, expiration, signHash(hash));
+    }
+
+    /**
+     * Deterministic ECDSA with low-s, returning r || s || v (v = 27/28).
+     * 确定性 ECDSA（低 s），返回 r || s || v（v = 27/28）。
+     *
+     * The recovery id comes straight from R's y parity, so no public-key recovery
+     * loop is needed.
+     * 恢复 ID 直接取自 R 的 y 奇偶性，无需公钥恢复循环。
+     */
+    private String signHash(byte[] hash) {
+        BigInteger n = CURVE.getN();
+        BigInteger e = new BigInteger(1, hash);
+        HMacDSAKCalculator kCalculator = new HMacDSAKCalculator(new SHA256Digest());
+        kCalculator.init(n, privateKey, hash);
+        FixedPointCombMultiplier multiplier = new FixedPointCombMultiplier();
+        while (true) {
+            BigInteger k = kCalculator.nextK();
+            ECPoint point = multiplier.multiply(CURVE.getG(), k).normalize();
+            BigInteger r = point.getAffineXCoord().toBigInteger().mod(n);
+            if (r.signum() == 0) {
+                continue;
+            }
+            BigInteger s = k.modInverse(n).multiply(e.add(privateKey.multiply(r))).mod(n);
+            if (s.signum() == 0) {
+                continue;
+            }
+            int recId = point.getAffineYCoord().toBigInteger().testBit(0) ? 1 : 0;
+            if (s.compareTo(HALF_N) > 0) {
+                s = n.subtract(s);
+                recId ^= 1;
+            }
+            byte[] sig = new byte[65];
+            putBytes(sig, 0, r);
+            putBytes(sig, WORD, s);
+            sig[64] = (byte) (27 + recId);
+            return "0x" + HexFormat.of().formatHex(sig);
+        }
+    }
+
+    private static byte[] domainSeparator(long chainId, String verifyingContract) {
+        byte[] encoded = new byte[5 * WORD];
+        System.arraycopy(keccak(("EIP712Domain(string name,string version,uint256 chainId,"
+                + "address verifyingContract)").getBytes(StandardCharsets.UTF_8)), 0, encoded, 0, WORD);
+        System.arraycopy(keccak("Polymarket CTF Exchange".getBytes(StandardCharsets.UTF_8)), 0, encoded, WORD, WORD);
+        System.arraycopy(keccak("1".getBytes(StandardCharsets.UTF_8)), 0, encoded, 2 * WORD, WORD);
+        putLong(encoded, 3, chainId);
+        putAddress(encoded, 4, verifyingContract);
+        return keccak(encoded);
+    }
+
+    static byte[] keccak(byte[] input) {
+        KeccakDigest digest = new KeccakDigest(256);
+        digest.update(input, 0, input.length);
+        byte[] out = new byte[WORD];
+        digest.doFinal(out, 0);
+        return out;
+    }
+
+    private static void putAddress(byte[] buf, int word, String address) {
+        byte[] raw = HexFormat.of().parseHex(strip0x(address));
+        if (raw.length != 20) {
+            throw new IllegalArgumentException("Not an address: " + address);
+        }
+        System.arraycopy(raw, 0, buf, word * WORD + 12, 20);
+    }
+
+    private static void putUint(byte[] buf, int word, BigInteger value) {
+        putBytes(buf, word * WORD, value);
+    }
+
+    private static void putLong(byte[] buf, int word, long value) {
+        int end = (word + 1) * WORD;
+        Arrays.fill(buf, word * WORD, end, (byte) 0);
+        for (int i = 1; i <= 8; i++) {
+            buf[end - i] = (byte) (value >>> (8 * (i - 1)));
+        }
+    }
+
+    /** Writes an unsigned big-endian 32-byte word. / 写入无符号大端 32 字节字。 */
+    private static void putBytes(byte[] buf, int offset, BigInteger value) {
+        byte[] raw = value.toByteArray();
+        int len = Math.min(raw.length, WORD); // Drops the sign byte / 去掉符号字节
+        Arrays.fill(buf, offset, offset + WORD, (byte) 0);
+        System.arraycopy(raw, raw.length - len, buf, offset + WORD - len, len);
+    }
+
+    private static String strip0x(String hex) {
+        return hex.startsWith("0x") || hex.startsWith("0X") ? hex.substring(2) : hex;
+    }
+
+    /**
+     * Static part of the orders for one token and side. / 同一代币和方向订单的静态部分。
+     */
+    public static final class Template {
+        private final byte[] struct;
+        private final byte[] domainSeparator;
+        final String maker;
+        final int signatureType;
+        final String tokenId;
+        final Side side;
+        final int feeRateBps;
+
+        private Template(byte[] struct, byte[] domainSeparator, String maker, int signatureType, String tokenId,
+                Side side, int feeRateBps) {
+            this.struct = struct;
+            this.domainSeparator = domainSeparator;
+            this.maker = maker;
+            this.signatureType = signatureType;
+            this.tokenId = tokenId;
+            this.side = side;
+            this.feeRateBps = feeRateBps;
+        }
+
+        public String tokenId() {
+            return tokenId;
+        }
+
+        public Side side() {
+            return side;
+        }
+    }
+
+    /**
+     * A signed order, ready to be serialized for the CLOB. / 已签名、可序列化提交到 CLOB 的订单。
+     */
+    public record SignedOrder(Template template, long salt, long makerAmount, long takerAmount, long expiration,
+            String signature) {
+    }
+}
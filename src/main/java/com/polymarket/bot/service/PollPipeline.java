@@ -0,0 +1,292 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Asynchronous poll pipeline: fetch/decode, then match, then notify/execute.
+ * 异步轮询流水线：拉取/解码 → 匹配 → 通知/执行。
+ *
+ * Fetch and match each run on their own thread; dispatch runs on per-creator
+ * lanes ({@link StripedDispatcher}). Stages hand work on through bounded queues.
+ * A full queue blocks the stage before it, so a slow downstream slows ingestion
+ * (the cursor simply waits) instead of dropping trades, unless dispatch lanes
+ * are set to {@link StripedDispatcher.OverflowPolicy#DROP}. {@link #tick()} never
+ * blocks the scheduler; ticks that arrive while a fetch is still running are
+ * handled by the configured {@link OverrunPolicy}.
+ * 拉取和匹配各在独立线程上运行；分发在按创建者划分的通道上运行。各阶段通过有界队列传递任务。队列满时会阻塞上游阶段，
+ * 因此下游变慢只会放慢拉取（游标等待），而不会丢弃交易（除非分发通道设置为 DROP）。{@link #tick()} 从不阻塞调度器；
+ * 拉取仍在进行时到达的 tick 按配置的 {@link OverrunPolicy} 处理。
+ */
+public class PollPipeline {
+
+    /**
+     * What to do with ticks that fire while the previous fetch is still running.
+     * 上一次拉取仍在进行时触发的 tick 如何处理。
+     */
+    public enum OverrunPolicy {
+        /** Drop overrunning ticks / 丢弃重叠的 tick */
+        SKIP,
+        /** Run one extra fetch after the current one, however many ticks overran / 无论重叠多少，只在当前拉取后多运行一次 */
+        COALESCE,
+        /** Run every missed tick back-to-back, up to a cap / 连续补跑所有错过的 tick（有上限） */
+        CATCH_UP
+    }
+
+    /**
+     * Fetch stage. / 拉取阶段。
+     */
+    public interface Fetcher {
+        List<Trade> fetch() throws IOException;
+    }
+
+    private static final int MAX_CATCH_UP_TICKS = 12;
+    private static final int STATS_LOG_INTERVAL_TICKS = 60;
+
+    private final Fetcher fetcher;
+    private final Function<Trade, MatchedTrade> matcher;
+    private final OverrunPolicy policy;
+
+    private final BlockingQueue<Trade> matchQueue;
+    private final StripedDispatcher dispatchLanes;
+    private final ExecutorService fetchExecutor = Executors.newSingleThreadExecutor(daemon("poll-fetch"));
+
+    private final AtomicBoolean fetchInFlight = new AtomicBoolean(false);
+    private final AtomicInteger pendingTicks = new AtomicInteger();
+    private final Metrics.Counter skippedTicks;
+    private final AtomicLong ticks = new AtomicLong();
+    private volatile TradeSource source;
+
+    private final StageStats fetchStats;
+    private final StageStats matchStats;
+    private final StageStats dispatchStats;
+
+    /**
+     * @param laneCount      Parallel dispatch lanes; trades of one creator always share a lane / 并行分发通道数；同一创建者的交易总在同一通道
+     * @param laneCapacity   Queue capacity of each lane / 每个通道的队列容量
+     * @param watermarkSink  Receives the resumable watermark as trades finish dispatching / 交易分发完成时接收可恢复的水位线
+     */
+    public PollPipeline(Fetcher fetcher, Function<Trade, MatchedTrade> matcher, Consumer<MatchedTrade> dispatcher,
+            OverrunPolicy policy, int queueCapacity, int laneCount, int laneCapacity,
+            StripedDispatcher.OverflowPolicy overflowPolicy, LongConsumer watermarkSink, Metrics metrics) {
+        this.fetcher = fetcher;
+        this.matcher = matcher;
+        this.policy = policy;
+        this.matchQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.fetchStats = new StageStats("fetch", metrics);
+        this.matchStats = new StageStats("match", metrics);
+        this.dispatchStats = new StageStats("dispatch", metrics);
+        this.dispatchLanes = new StripedDispatcher(dispatcher, laneCount, laneCapacity, overflowPolicy,
+                watermarkSink, dispatchStats, metrics);
+        this.skippedTicks = metrics.counter("poll_skipped_ticks_total", "Poll ticks dropped by the SKIP overrun policy");
+        metrics.gauge("poll_queue_depth", "Items waiting between pipeline stages", matchQueue::size, "queue", "match");
+        metrics.gauge("poll_queue_depth", "Items waiting between pipeline stages", dispatchLanes::getQueueDepth,
+                "queue", "dispatch");
+    }
+
+    /**
+     * Pipeline from the watcher's stages, sized by the {@code POLL_*} and {@code DISPATCH_*} settings.
+     * 由观察者的各阶段组成的流水线，按 {@code POLL_*} 和 {@code DISPATCH_*} 设置确定规模。
+     */
+    public static PollPipeline forWatcher(BotConfig config, WhaleWatcher watcher, Metrics metrics) {
+        // Trades of one whale stay in order on their lane; whales run in parallel
+        // 同一巨鲸的交易在其通道上保持顺序；不同巨鲸并行处理
+        return new PollPipeline(watcher::fetchTrades, watcher::match, watcher::dispatch,
+                OverrunPolicy.valueOf(config.get("POLL_OVERRUN_POLICY", "COALESCE").toUpperCase()),
+                1024,
+                config.getInt("DISPATCH_LANES", Runtime.getRuntime().availableProcessors()),
+                config.getInt("DISPATCH_LANE_CAPACITY", 256),
+                StripedDispatcher.OverflowPolicy.valueOf(
+                        config.get("DISPATCH_OVERFLOW_POLICY", "BLOCK").toUpperCase()),
+                watcher::advanceWatermark, metrics);
+    }
+
+    /**
+     * Starts the match and dispatch stage threads, then lets the source drive fetches.
+     * 启动匹配和分发阶段线程，然后由数据源驱动拉取。
+     */
+    public void start(TradeSource source) {
+        this.source = source;
+        daemon("poll-match").newThread(this::runMatchStage).start();
+        dispatchLanes.start();
+        System.out.println("Poll pipeline started (" + source + "). Overrun policy: " + policy
+                + " / 轮询流水线已启动（" + source + "）。重叠策略：" + policy);
+        source.start(this::tick);
+    }
+
+    /**
+     * Scheduler entry point. Starts a fetch, or applies the overrun policy if one is running.
+     * 调度器入口。启动一次拉取；如已有拉取在进行，则应用重叠策略。
+     */
+    public void tick() {
+        if (ticks.incrementAndGet() % STATS_LOG_INTERVAL_TICKS == 0) {
+            System.out.println(describe());
+        }
+        if (fetchInFlight.compareAndSet(false, true)) {
+            fetchExecutor.execute(this::runFetchStage);
+            return;
+        }
+        switch (policy) {
+            case SKIP -> skippedTicks.inc();
+            case COALESCE -> pendingTicks.set(1);
+            case CATCH_UP -> pendingTicks.updateAndGet(n -> Math.min(n + 1, MAX_CATCH_UP_TICKS));
+        }
+    }
+
+    private void runFetchStage() {
+        while (true) {
+            fetchOnce();
+            if (pendingTicks.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+                continue;
+            }
+            fetchInFlight.set(false);
+            // A tick may have been deferred just before the flag cleared / 标志清除前可能有 tick 被推迟
+            if (pendingTicks.get() == 0 || !fetchInFlight.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void fetchOnce() {
+        long start = System.nanoTime();
+        List<Trade> trades;
+        try {
+            trades = fetcher.fetch();
+        } catch (IOException e) {
+            System.err.println("Network error polling activity: " + e.getMessage());
+            source.onFetch(0, true);
+            return;
+        } catch (Exception e) {
+            System.err.println("Error in poll loop: " + e.getMessage());
+            e.printStackTrace();
+            source.onFetch(0, true);
+            return;
+        } finally {
+            fetchStats.record(System.nanoTime() - start);
+        }
+
+        try {
+            for (Trade trade : trades) {
+                matchQueue.put(trade); // Blocks when full: backpressure / 队列满时阻塞：背压
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Reported after the hand-off so a backed-up pipeline slows the source too / 在交接之后报告，使积压的流水线也能放慢数据源
+        source.onFetch(trades.size(), false);
+    }
+
+    private void runMatchStage() {
+        try {
+            while (true) {
+                Trade trade = matchQueue.take();
+                long start = System.nanoTime();
+                MatchedTrade matched = null;
+                try {
+                    matched = matcher.apply(trade);
+                } catch (Exception e) {
+                    System.err.println("Error matching trade " + trade.id() + ": " + e.getMessage());
+                }
+                matchStats.record(System.nanoTime() - start);
+                if (matched != null) {
+                    dispatchLanes.submit(matched);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public StageStats getFetchStats() {
+        return fetchStats;
+    }
+
+    public StageStats getMatchStats() {
+        return matchStats;
+    }
+
+    public StageStats getDispatchStats() {
+        return dispatchStats;
+    }
+
+    public int getMatchQueueDepth() {
+        return matchQueue.size();
+    }
+
+    public int getDispatchQueueDepth() {
+        return dispatchLanes.getQueueDepth();
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+
+    /**
+     * One-line summary of stage latency and queue depth.
+     * 各阶段延迟和队列深度的单行摘要。
+     */
+    public String describe() {
+        return "Pipeline " + fetchStats + " | " + matchStats + " | " + dispatchStats
+                + " | queues match=" + matchQueue.size() + " dispatch=" + dispatchLanes.getQueueDepth()
+                + " | skipped ticks=" + skippedTicks.get();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Count, mean and max service time of one stage, exported as {@code poll_stage_seconds}.
+     * 单个阶段的次数、平均和最大处理时间，导出为 {@code poll_stage_seconds}。
+     */
+    public static final class StageStats {
+        private final String name;
+        private final Metrics.Histogram histogram;
+
+        StageStats(String name, Metrics metrics) {
+            this.name = name;
+            this.histogram = metrics.histogram("poll_stage_seconds", "Service time of each poll pipeline stage",
+                    Metrics.LATENCY_BUCKETS, "stage", name);
+        }
+
+        void record(long nanos) {
+            histogram.observeNanos(nanos);
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public double getMeanMillis() {
+            return histogram.getMeanMillis();
+        }
+
+        public double getMaxMillis() {
+            return histogram.getMaxMillis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s n=%d mean=%.2fms max=%.2fms", name, getCount(), getMeanMillis(), getMaxMillis());
+        }
+    }
+}
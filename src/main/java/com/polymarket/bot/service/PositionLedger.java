@@ -0,0 +1,464 @@
+package com.polymarket.bot.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In-memory book of what the copies hold: shares and cost per token, realized
+ * and unrealized PnL, and the open exposure per market, per whale and overall.
+ * 跟单持仓的内存账本：每个代币的份额和成本、已实现和未实现盈亏，以及按市场、按巨鲸和总体的敞口。
+ *
+ * Positions are immutable records swapped per token with
+ * {@link ConcurrentHashMap#compute}, so updates to different tokens never
+ * contend. Exposure is open cost plus reservations for orders in flight, kept
+ * in micro-USDC counters that {@link #reserve} raises with a CAS against the
+ * cap, so two lanes cannot both take the last headroom. Whale exposure is
+ * attributed to the whale whose trade was copied and released by the sells
+ * copied from the same whale, so it is approximate when whales trade each
+ * other's markets.
+ * 持仓是按代币用 {@link ConcurrentHashMap#compute} 替换的不可变记录，因此不同代币的更新互不竞争。
+ * 敞口为持仓成本加上在途订单的预留，保存在以微 USDC 计的计数器中，{@link #reserve} 通过 CAS 在上限内增加，
+ * 因此两个通道不会同时占用最后的额度。巨鲸敞口归属于被跟单的巨鲸，并由跟单同一巨鲸的卖出释放，
+ * 当巨鲸交易彼此的市场时该值为近似值。
+ *
+ * The ledger is snapshotted to {@code ledger.bin} (temp file + atomic move,
+ * CRC-checked) every few seconds while it changes and on shutdown. Only filled
+ * cost is kept; reservations of orders in flight end with the process.
+ * 账本在变化期间每隔几秒以及关闭时快照到 {@code ledger.bin}（临时文件 + 原子移动，带 CRC 校验）。
+ * 只保存已成交成本；在途订单的预留随进程结束而失效。
+ */
+public class PositionLedger {
+
+    private static final int SNAPSHOT_MAGIC = 0x504D4C47; // "PMLG"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 5000;
+    private static final double MICROS = 1e6;
+    // Positions below this are closed / 低于此值的持仓视为已平仓
+    private static final double DUST_SHARES = 1e-6;
+
+    /**
+     * Holding in one outcome token. / 单个结果代币的持仓。
+     *
+     * @param cost     USDC paid for the shares still held / 仍持有份额所支付的 USDC
+     * @param realized USDC realized by sells of this token / 该代币卖出实现的 USDC 盈亏
+     */
+    public record Position(String tokenId, String conditionId, int outcome, String title, double shares, double cost,
+            double realized) {
+
+        public double averagePrice() {
+            return shares > 0 ? cost / shares : 0;
+        }
+    }
+
+    // Null for an in-memory ledger / 内存账本为 null
+    private final Path snapshotPath;
+    // Current UTC day, for the daily realized PnL / 当前 UTC 日期，用于每日已实现盈亏
+    private final LongSupplier epochDay;
+    private final Map<String, Position> positions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> marketExposure = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> whaleExposure = new ConcurrentHashMap<>();
+    // Filled cost per whale, without reservations; this is what the snapshot keeps / 每个巨鲸的已成交成本，不含预留；快照保存的是该值
+    private final Map<String, AtomicLong> whaleBooked = new ConcurrentHashMap<>();
+    private final AtomicLong totalExposure = new AtomicLong();
+    private final AtomicLong realizedMicros = new AtomicLong();
+    // Realized since UTC midnight; reset by the first update of a new day / UTC 零点以来的已实现盈亏；新一天的首次更新时重置
+    private final AtomicLong realizedTodayMicros = new AtomicLong();
+    private volatile long today;
+    private volatile ToDoubleFunction<String> marks = tokenId -> Double.NaN;
+    private volatile boolean dirty;
+
+    /**
+     * Opens the ledger in the given directory, restoring its last snapshot.
+     * 在给定目录中打开账本并恢复最近的快照。
+     */
+    public PositionLedger(Path directory, Metrics metrics) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve("ledger.bin");
+        this.epochDay = () -> LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        this.today = epochDay.getAsLong();
+        loadSnapshot();
+        System.out.println("Ledger restored: " + positions.size() + " positions, exposure $"
+                + String.format("%.2f", totalExposure.get() / MICROS) + " / 持仓账本已恢复");
+
+        metrics.gauge("ledger_positions", "Open copy positions", positions::size);
+        metrics.gauge("ledger_exposure_usdc", "Open cost plus reservations in flight",
+                () -> totalExposure.get() / MICROS);
+        metrics.gauge("ledger_realized_pnl_usdc", "Realized PnL of the copies", () -> realizedMicros.get() / MICROS);
+        metrics.gauge("ledger_unrealized_pnl_usdc", "Unrealized PnL at the best bid", this::unrealizedPnl);
+
+        Thread snapshotter = new Thread(this::runSnapshotter, "ledger-snapshot");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::snapshot, "ledger-shutdown"));
+    }
+
+    /**
+     * In-memory ledger for replays: no snapshot, no metrics, days taken from {@code epochDay}.
+     * 用于回放的内存账本：无快照、无指标，日期取自 {@code epochDay}。
+     */
+    PositionLedger(LongSupplier epochDay) {
+        this.snapshotPath = null;
+        this.epochDay = epochDay;
+        this.today = epochDay.getAsLong();
+    }
+
+    /**
+     * Sets the mark price source (best bid per token, NaN if unknown).
+     * 设置标记价格来源（每个代币的最优买价，未知时为 NaN）。
+     */
+    public void setMarks(ToDoubleFunction<String> marks) {
+        this.marks = marks;
+    }
+
+    public double exposure() {
+        return totalExposure.get() / MICROS;
+    }
+
+    public double marketExposure(String conditionId) {
+        AtomicLong counter = marketExposure.get(conditionId);
+        return counter != null ? counter.get() / MICROS : 0;
+    }
+
+    public double whaleExposure(String whale) {
+        AtomicLong counter = whaleExposure.get(whale);
+        return counter != null ? counter.get() / MICROS : 0;
+    }
+
+    public double heldShares(String tokenId) {
+        Position position = positions.get(tokenId);
+        return position != null ? position.shares() : 0;
+    }
+
+    public double realizedToday() {
+        rollDay();
+        return realizedTodayMicros.get() / MICROS;
+    }
+
+    /**
+     * Conditions of the tokens held, whose markets must stay marked.
+     * 所持代币的条件 ID，其市场须保持有标记价格。
+     */
+    public Set<String> openMarkets() {
+        Set<String> open = new HashSet<>();
+        for (Position position : positions.values()) {
+            open.add(position.conditionId());
+        }
+        return open;
+    }
+
+    /**
+     * Mark-to-market PnL of open positions. A position without a mark (its book
+     * not loaded yet, or no bids) is valued at 0, so the daily loss limit errs
+     * on the side of stopping.
+     * 持仓的按市值计价盈亏。没有标记价格的持仓（订单簿尚未加载或无买单）按 0 估值，使每日亏损限额宁可提前止损。
+     */
+    public double unrealizedPnl() {
+        ToDoubleFunction<String> current = marks;
+        double pnl = 0;
+        for (Position position : positions.values()) {
+            double mark = current.applyAsDouble(position.tokenId());
+            pnl += position.shares() * (Double.isNaN(mark) ? 0 : mark) - position.cost();
+        }
+        return pnl;
+    }
+
+    /**
+     * Adds {@code usdc} to the market, whale and total exposure if none exceeds its cap.
+     * 若市场、巨鲸和总敞口均不超过上限，则将 {@code usdc} 计入三者。
+     *
+     * @param marketCap Cap in USDC, 0 for none (likewise the others) / 上限（USDC），0 表示不限（其余同理）
+     * @return null if reserved, otherwise the cap that was hit: market, whale or total / 预留成功返回 null，否则返回触及的上限
+     */
+    public String reserve(String conditionId, String whale, double usdc, double marketCap, double whaleCap,
+            double totalCap) {
+        long micros = Math.round(usdc * MICROS);
+        AtomicLong market = marketExposure.computeIfAbsent(conditionId, k -> new AtomicLong());
+        AtomicLong copied = whaleExposure.computeIfAbsent(whale, k -> new AtomicLong());
+        if (!tryAdd(market, micros, marketCap)) {
+            return "market";
+        }
+        if (!tryAdd(copied, micros, whaleCap)) {
+            market.addAndGet(-micros);
+            return "whale";
+        }
+        if (!tryAdd(totalExposure, micros, totalCap)) {
+            market.addAndGet(-micros);
+            copied.addAndGet(-micros);
+            return "total";
+        }
+        return null;
+    }
+
+    private static boolean tryAdd(AtomicLong counter, long micros, double cap) {
+        long limit = cap > 0 ? Math.round(cap * MICROS) : Long.MAX_VALUE;
+        long current;
+        do {
+            current = counter.get();
+            if (current + micros > limit) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + micros));
+        return true;
+    }
+
+    /**
+     * Gives back a reservation (or the part of it that did not fill).
+     * 归还预留（或其中未成交的部分）。
+     */
+    public void release(String conditionId, String whale, double usdc) {
+        adjustExposure(conditionId, whale, -Math.round(usdc * MICROS));
+    }
+
+    /**
+     * Books a buy against its reservation; the unfilled rest is released.
+     * 将买入计入其预留；未成交的剩余部分被释放。
+     *
+     * @param reserved USDC reserved for the order / 为该订单预留的 USDC
+     * @param usdc     USDC actually paid / 实际支付的 USDC
+     */
+    public void recordBuy(String tokenId, String conditionId, int outcome, String title, String whale,
+            double reserved, double shares, double usdc) {
+        if (shares > 0) {
+            positions.compute(tokenId, (k, p) -> p == null
+                    ? new Position(tokenId, conditionId, outcome, title, shares, usdc, 0)
+                    : new Position(tokenId, conditionId, outcome, title, p.shares() + shares, p.cost() + usdc,
+                            p.realized()));
+        }
+        adjustExposure(conditionId, whale, Math.round((usdc - reserved) * MICROS));
+        whaleBooked.computeIfAbsent(whale, k -> new AtomicLong()).addAndGet(Math.round(usdc * MICROS));
+        dirty = true;
+    }
+
+    /**
+     * Books a sell; only shares we hold are closed, at their average cost.
+     * 记录卖出；只平掉实际持有的份额，按平均成本计算。
+     *
+     * @return USDC realized / 实现的 USDC 盈亏
+     */
+    public double recordSell(String tokenId, String whale, double shares, double usdc) {
+        double[] closed = new double[2]; // cost released, realized / 释放的成本、实现盈亏
+        String[] conditionId = new String[1];
+        positions.computeIfPresent(tokenId, (k, p) -> {
+            double sold = Math.min(shares, p.shares());
+            if (sold <= 0) {
+                return p;
+            }
+            double cost = p.cost() * sold / p.shares();
+            double realized = usdc * sold / shares - cost;
+            closed[0] = cost;
+            closed[1] = realized;
+            conditionId[0] = p.conditionId();
+            double left = p.shares() - sold;
+            return left < DUST_SHARES ? null
+                    : new Position(k, p.conditionId(), p.outcome(), p.title(), left, p.cost() - cost,
+                            p.realized() + realized);
+        });
+        if (conditionId[0] == null) {
+            return 0;
+        }
+        long costMicros = Math.round(closed[0] * MICROS);
+        long realizedDelta = Math.round(closed[1] * MICROS);
+        addTo(marketExposure.get(conditionId[0]), -costMicros);
+        totalExposure.addAndGet(-costMicros);
+        // Never below zero when another whale's copies are closed / 平掉其他巨鲸的跟单时不低于零
+        AtomicLong booked = whaleBooked.get(whale);
+        if (booked != null) {
+            long before = booked.getAndUpdate(v -> Math.max(0, v - costMicros));
+            addTo(whaleExposure.get(whale), -Math.min(before, costMicros));
+        }
+        realizedMicros.addAndGet(realizedDelta);
+        rollDay();
+        realizedTodayMicros.addAndGet(realizedDelta);
+        dirty = true;
+        return closed[1];
+    }
+
+    private void adjustExposure(String conditionId, String whale, long micros) {
+        if (micros == 0) {
+            return;
+        }
+        addTo(marketExposure.get(conditionId), micros);
+        addTo(whaleExposure.get(whale), micros);
+        totalExposure.addAndGet(micros);
+    }
+
+    private static void addTo(AtomicLong counter, long micros) {
+        if (counter != null) {
+            counter.addAndGet(micros);
+        }
+    }
+
+    private void rollDay() {
+        long now = epochDay.getAsLong();
+        if (now != today) {
+            synchronized (this) {
+                if (now != today) {
+                    realizedTodayMicros.set(0);
+                    today = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * Positions and totals as text, for {@code /positions}. / 持仓和汇总的文本，用于 {@code /positions}。
+     */
+    public String describe() {
+        ToDoubleFunction<String> current = marks;
+        List<Position> open = new ArrayList<>(positions.values());
+        open.sort(Comparator.comparingDouble(Position::cost).reversed());
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("# exposure $%.2f, realized $%.2f (today $%.2f), unrealized $%.2f%n",
+                exposure(), realizedMicros.get() / MICROS, realizedToday(), unrealizedPnl()));
+        sb.append("# token outcome shares avg_price cost mark unrealized realized market\n");
+        for (Position p : open) {
+            double mark = current.applyAsDouble(p.tokenId());
+            sb.append(String.format("%s %d %.4f %.4f %.2f %s %s %.2f %s%n", p.tokenId(), p.outcome(), p.shares(),
+                    p.averagePrice(), p.cost(), Double.isNaN(mark) ? "-" : String.format("%.4f", mark),
+                    Double.isNaN(mark) ? "-" : String.format("%.2f", p.shares() * mark - p.cost()), p.realized(),
+                    p.title()));
+        }
+        List<Map.Entry<String, AtomicLong>> whales = new ArrayList<>(whaleExposure.entrySet());
+        whales.removeIf(e -> e.getValue().get() == 0);
+        whales.sort(Comparator.comparingLong((Map.Entry<String, AtomicLong> e) -> e.getValue().get()).reversed());
+        for (Map.Entry<String, AtomicLong> e : whales) {
+            sb.append(String.format("# whale %s $%.2f%n", e.getKey(), e.getValue().get() / MICROS));
+        }
+        return sb.toString();
+    }
+
+    private void runSnapshotter() {
+        try {
+            while (true) {
+                Thread.sleep(SNAPSHOT_INTERVAL_MILLIS);
+                if (dirty) {
+                    snapshot();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the positions, realized PnL and filled cost per whale; reservations are not kept.
+     * 写入持仓、已实现盈亏和每个巨鲸的已成交成本；预留不保存。
+     */
+    public synchronized void snapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+        dirty = false;
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try {
+            try (OutputStream file = Files.newOutputStream(tmp);
+                    DataOutputStream out = new DataOutputStream(
+                            new CheckedOutputStream(new BufferedOutputStream(file), crc))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(realizedMicros.get());
+                out.writeLong(today);
+                out.writeLong(realizedTodayMicros.get());
+                List<Position> open = new ArrayList<>(positions.values());
+                out.writeInt(open.size());
+                for (Position p : open) {
+                    out.writeUTF(p.tokenId());
+                    out.writeUTF(p.conditionId());
+                    out.writeInt(p.outcome());
+                    out.writeUTF(p.title() != null ? p.title() : "");
+                    out.writeDouble(p.shares());
+                    out.writeDouble(p.cost());
+                    out.writeDouble(p.realized());
+                }
+                List<Map.Entry<String, AtomicLong>> whales = new ArrayList<>(whaleBooked.entrySet());
+                whales.removeIf(e -> e.getValue().get() == 0);
+                out.writeInt(whales.size());
+                for (Map.Entry<String, AtomicLong> e : whales) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().get());
+                }
+                out.flush();
+                // The CRC itself is written outside the checksummed stream / CRC 本身在校验流之外写入
+                file.write(ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).array());
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Failed to write ledger snapshot: " + e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        int bodyLength = bytes.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        if (bodyLength > 0) {
+            crc.update(bytes, 0, bodyLength);
+        }
+        if (bodyLength <= 0 || crc.getValue() != ByteBuffer.wrap(bytes, bodyLength, Long.BYTES).getLong()) {
+            System.err.println("Ledger snapshot corrupt, starting empty / 持仓账本快照损坏，以空账本启动");
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bodyLength))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("Unknown ledger snapshot format, starting empty / 未知的账本快照格式，以空账本启动");
+                return;
+            }
+            realizedMicros.set(in.readLong());
+            long day = in.readLong();
+            long realizedToday = in.readLong();
+            if (day == today) {
+                realizedTodayMicros.set(realizedToday);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Position p = new Position(in.readUTF(), in.readUTF(), in.readInt(), in.readUTF(), in.readDouble(),
+                        in.readDouble(), in.readDouble());
+                positions.put(p.tokenId(), p);
+                // Market and total exposure are the open cost / 市场和总敞口即持仓成本
+                long cost = Math.round(p.cost() * MICROS);
+                marketExposure.computeIfAbsent(p.conditionId(), k -> new AtomicLong()).addAndGet(cost);
+                totalExposure.addAndGet(cost);
+            }
+            int whales = in.readInt();
+            // Whale exposure restarts from filled cost; reservations died with the process / 巨鲸敞口从已成交成本重新开始；预留随进程结束而失效
+            for (int i = 0; i < whales; i++) {
+                String whale = in.readUTF();
+                long booked = in.readLong();
+                whaleBooked.put(whale, new AtomicLong(booked));
+                whaleExposure.put(whale, new AtomicLong(booked));
+            }
+        }
+    }
+}
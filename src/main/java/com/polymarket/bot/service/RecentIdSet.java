@@ -0,0 +1,48 @@
+package com.polymarket.bot.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded set of recently seen IDs; the oldest are evicted first.
+ * 最近出现的 ID 的有界集合；最旧的优先淘汰。
+ *
+ * Not thread-safe. / 非线程安全。
+ */
+public class RecentIdSet {
+
+    private final Map<String, Boolean> ids;
+
+    public RecentIdSet(int capacity) {
+        this.ids = new LinkedHashMap<>(Math.min(capacity, 1 << 16), 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return true if the ID was not already present / 如果 ID 之前不存在则返回 true
+     */
+    public boolean add(String id) {
+        return ids.put(id, Boolean.TRUE) == null;
+    }
+
+    public boolean contains(String id) {
+        return ids.containsKey(id);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return IDs from oldest to newest / 从旧到新的 ID
+     */
+    public List<String> toList() {
+        return new ArrayList<>(ids.keySet());
+    }
+}
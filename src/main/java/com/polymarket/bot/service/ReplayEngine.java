@@ -0,0 +1,371 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.FlowSignal;
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Deterministic backtest of the copy strategy over a recorded {@link TradeLog}.
+ * 基于已记录 {@link TradeLog} 的确定性跟单策略回测。
+ *
+ * Each parameter set replays the whole log on its own thread, on a virtual clock
+ * taken from the trade timestamps, through the live decision path: a
+ * {@link WhaleScorer} for smart money, {@link FlowAggregator} windows when
+ * {@code FLOW_WINDOW_SECONDS} is set, and {@link TradeExecutor#sizeCopy} against
+ * a {@link RiskEngine} over an in-memory {@link PositionLedger}, so sizing, the
+ * exposure caps and the daily loss limit apply as they would live. Manual
+ * addresses are always copied; smart money only when the set asks for it. There
+ * is no order book in the log, so copies fill in full at their limit (the
+ * whale's price plus slippage) and {@code COPY_MAX_BOOK_SHARE} does not apply;
+ * open positions are marked at the last traded price, since resolutions are not
+ * in the log.
+ * 每个参数集在独立线程上回放整个日志，使用取自交易时间戳的虚拟时钟，并走实盘的决策路径：
+ * 聪明钱由 {@link WhaleScorer} 判断，设置 {@code FLOW_WINDOW_SECONDS} 时经过 {@link FlowAggregator} 窗口，
+ * 再在内存 {@link PositionLedger} 之上的 {@link RiskEngine} 中调用 {@link TradeExecutor#sizeCopy}，
+ * 因此定额、敞口上限和每日亏损限额与实盘一致。手动地址始终跟单；聪明钱仅在参数集要求时跟单。
+ * 日志中没有订单簿，因此跟单按限价（巨鲸价格加滑点）全部成交，{@code COPY_MAX_BOOK_SHARE} 不生效；
+ * 由于日志中没有结算结果，未平仓头寸按最后成交价估值。
+ */
+public class ReplayEngine {
+
+    private static final long[] LATENCY_BOUNDS_NANOS = {
+            250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 1_000_000 };
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final TradeLog log;
+    private final BotConfig config;
+    private final boolean[] manual;
+    private final int outcomes;
+    // Ledger keys: one "condition" per market and one "token" per (market, outcome) / 账本键：每个市场一个“条件”，每个（市场，结果）一个“代币”
+    private final String[] marketKeys;
+    private final String[] tokenKeys;
+
+    /**
+     * @param config Settings every parameter set starts from; its manual watchlist is copied regardless of score / 每个参数集的初始设置；其手动观察列表无论评分都跟单
+     */
+    public ReplayEngine(TradeLog log, BotConfig config) {
+        this.log = log;
+        this.config = config;
+        Set<String> manualWatchlist = new HashSet<>(config.manualWatchlist());
+        this.manual = new boolean[log.creatorCount()];
+        for (int i = 0; i < manual.length; i++) {
+            manual[i] = manualWatchlist.contains(log.creator(i));
+        }
+        this.outcomes = log.maxOutcome() + 1;
+        this.marketKeys = new String[log.marketCount()];
+        for (int i = 0; i < marketKeys.length; i++) {
+            marketKeys[i] = Integer.toString(i);
+        }
+        this.tokenKeys = new String[marketKeys.length * outcomes];
+        for (int i = 0; i < tokenKeys.length; i++) {
+            tokenKeys[i] = Integer.toString(i);
+        }
+    }
+
+    /**
+     * Replays every parameter set, at most {@code threads} at a time.
+     * 回放每个参数集，最多同时运行 {@code threads} 个。
+     *
+     * @return results in the order of {@code sets} / 按 {@code sets} 顺序的结果
+     * @throws IllegalArgumentException if a set has a setting that does not parse / 参数集中的设置无法解析时抛出
+     */
+    public List<Result> run(List<Params> sets, int threads) throws InterruptedException {
+        // Settings are checked before any replay starts / 在任何回放开始前检查设置
+        List<BotConfig> configs = new ArrayList<>();
+        for (Params params : sets) {
+            BotConfig setConfig = config.with(params.settings(), 0);
+            windowMode(setConfig);
+            configs.add(setConfig);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sets.size())), r -> {
+            Thread t = new Thread(r, "replay");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < sets.size(); i++) {
+                Params params = sets.get(i);
+                BotConfig setConfig = configs.get(i);
+                futures.add(pool.submit(() -> new Run(params, setConfig).replay()));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Replay failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static FlowAggregator.WindowMode windowMode(BotConfig config) {
+        return FlowAggregator.WindowMode.parse(config.get("FLOW_WINDOW_MODE", "TUMBLING"));
+    }
+
+    /**
+     * One parameter set's pass over the log; receives the signals of its flow windows.
+     * 一个参数集对日志的一次回放；接收其流量窗口的信号。
+     */
+    private final class Run implements Consumer<FlowSignal> {
+
+        private final Params params;
+        private final BotConfig config;
+        private final WhaleScorer scorer;
+        private final PositionLedger ledger;
+        private final RiskEngine risk;
+        // Null when fills are copied one by one, as in WhaleWatcher / 与 WhaleWatcher 一样，逐笔跟单时为 null
+        private final FlowAggregator flows;
+        private final double[] lastPrice = new double[tokenKeys.length];
+        private final Map<String, Integer> skips = new TreeMap<>();
+        // Virtual clock, the timestamp of the trade being replayed / 虚拟时钟，即正在回放的交易的时间戳
+        private long nowMillis;
+
+        private int copied;
+        private int skipped;
+        private int wins;
+        private int losses;
+        private double invested;
+        private double realized;
+
+        Run(Params params, BotConfig config) {
+            this.params = params;
+            this.config = config;
+            this.scorer = new WhaleScorer(Integer.MAX_VALUE, Long.MAX_VALUE, config.maxDailyTrades(),
+                    config.minWinRate(), false);
+            this.ledger = new PositionLedger(() -> nowMillis / DAY_MILLIS);
+            ledger.setMarks(token -> {
+                double price = lastPrice[Integer.parseInt(token)];
+                return price > 0 ? price : Double.NaN;
+            });
+            this.risk = new RiskEngine(ledger, () -> TimeUnit.MILLISECONDS.toNanos(nowMillis));
+            long windowSeconds = config.getLong("FLOW_WINDOW_SECONDS", 0);
+            this.flows = windowSeconds > 0
+                    ? new FlowAggregator(TimeUnit.SECONDS.toMillis(windowSeconds), windowMode(config),
+                            config.getDouble("FLOW_EMIT_USDC", 1000), this, new Metrics())
+                    : null;
+        }
+
+        Result replay() {
+            boolean[] tracked = new boolean[log.creatorCount()];
+            long[] latency = new long[LATENCY_BOUNDS_NANOS.length + 1];
+
+            long started = System.nanoTime();
+            for (int i = 0, n = log.size(); i < n; i++) {
+                long start = System.nanoTime();
+                nowMillis = TimeUnit.SECONDS.toMillis(log.timestamp(i));
+                if (flows != null) {
+                    flows.flushExpired(nowMillis);
+                }
+                long tokens = log.amount(i);
+                if (tokens <= 0) {
+                    continue;
+                }
+                lastPrice[log.marketId(i) * outcomes + log.outcome(i)] = (double) log.collateral(i) / tokens;
+
+                // Match stage / 匹配阶段
+                int creator = log.creatorId(i);
+                if (!tracked[creator]) {
+                    scorer.track(log.creator(creator));
+                    tracked[creator] = true;
+                }
+                Trade logged = log.trade(i);
+                // The log keeps no ids; the index lets the copy find its market again / 日志不保存 ID；用索引让跟单重新找到其市场
+                Trade trade = new Trade(Integer.toString(i), logged.creationTimestamp(), logged.title(),
+                        logged.outcomeIndex(), logged.type(), logged.amount(), logged.collateralAmount(),
+                        logged.creator(), logged.conditionId());
+                scorer.onTrade(trade);
+                boolean copy = manual[creator]
+                        || (params.copySmartMoney() && scorer.qualifies(trade.creator(), trade.creationTimestamp()));
+
+                // Dispatch stage / 分发阶段
+                if (copy) {
+                    MatchedTrade matched = new MatchedTrade(trade, true);
+                    if (flows == null) {
+                        accept(FlowSignal.of(matched));
+                    } else {
+                        flows.add(matched, nowMillis);
+                    }
+                }
+                latency[bucket(System.nanoTime() - start)]++;
+            }
+            // Windows still open at the end of the log / 日志结束时仍未关闭的窗口
+            if (flows != null) {
+                flows.flushExpired(Long.MAX_VALUE);
+            }
+            long elapsed = System.nanoTime() - started;
+
+            return new Result(params, log.size(), copied, skipped, Map.copyOf(skips), invested, realized,
+                    ledger.unrealizedPnl(), wins, losses, percentile(latency, 0.50), percentile(latency, 0.99),
+                    elapsed);
+        }
+
+        /**
+         * Execution stage: sizes and checks the signal like {@link TradeExecutor}, then fills it at the limit.
+         * 执行阶段：像 {@link TradeExecutor} 一样计算金额并检查信号，然后按限价成交。
+         */
+        @Override
+        public void accept(FlowSignal signal) {
+            if (signal.flat()) {
+                return; // Round trip, nothing to copy / 来回交易，无需跟单
+            }
+            Trade trade = signal.trade();
+            int i = Integer.parseInt(trade.id());
+            String market = marketKeys[log.marketId(i)];
+            String token = tokenKeys[log.marketId(i) * outcomes + log.outcome(i)];
+            double whaleShares = Double.parseDouble(trade.amount());
+            double whalePrice = whaleShares > 0 ? Double.parseDouble(trade.collateralAmount()) / whaleShares
+                    : Double.NaN;
+            if (!(whalePrice > 0 && whalePrice < 1)) {
+                skip("bad_price");
+                return;
+            }
+            boolean buy = !"Sell".equalsIgnoreCase(trade.type());
+            double slippage = config.copyMaxSlippage();
+            double limit = buy ? Math.min(whalePrice + slippage, 0.99) : Math.max(whalePrice - slippage, 0.01);
+            RiskEngine.Decision decision = TradeExecutor.sizeCopy(config, risk, ledger, trade, market, token,
+                    buy ? OrderSigner.Side.BUY : OrderSigner.Side.SELL, limit, null, 0);
+            if (!decision.allowed()) {
+                skip(decision.reason());
+                return;
+            }
+            double amount = decision.amount();
+            if (buy) {
+                ledger.recordBuy(token, market, trade.outcomeIndex(), trade.title(), trade.creator(), amount,
+                        amount / limit, amount);
+                invested += amount;
+            } else {
+                double pnl = ledger.recordSell(token, trade.creator(), amount / limit, amount);
+                realized += pnl;
+                if (pnl > 0)
+                    wins++;
+                else
+                    losses++;
+            }
+            copied++;
+        }
+
+        private void skip(String reason) {
+            skipped++;
+            skips.merge(reason, 1, Integer::sum);
+        }
+    }
+
+    private static int bucket(long nanos) {
+        int i = 0;
+        while (i < LATENCY_BOUNDS_NANOS.length && nanos > LATENCY_BOUNDS_NANOS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /** Upper bound of the bucket holding the quantile, or -1 past the last bound. / 分位数所在桶的上界，超出最后一个上界时为 -1 */
+    private static long percentile(long[] buckets, double q) {
+        long total = Arrays.stream(buckets).sum();
+        long rank = (long) Math.ceil(total * q);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && total > 0) {
+                return i < LATENCY_BOUNDS_NANOS.length ? LATENCY_BOUNDS_NANOS[i] : -1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * One strategy configuration to evaluate: bot settings over the environment's. / 一组待评估的策略配置：覆盖环境设置的机器人设置。
+     *
+     * @param copySmartMoney Copy qualifying smart money too, which the live bot only alerts on / 同时跟单合格的聪明钱（实盘机器人只对其发送警报）
+     * @param settings       Overridden {@link BotConfig} keys / 被覆盖的 {@link BotConfig} 键
+     */
+    public record Params(String name, boolean copySmartMoney, Map<String, String> settings) {
+
+        // Short names of the original replay parameters / 原有回放参数的简称
+        private static final Map<String, String> ALIASES = Map.of(
+                "minWinRate", "MIN_WIN_RATE",
+                "maxDailyTrades", "MAX_DAILY_TRADES",
+                "copyAmount", "COPY_TRADE_AMOUNT",
+                "copyRatio", "COPY_RATIO",
+                "maxAmount", "COPY_MAX_AMOUNT",
+                "slippage", "COPY_MAX_SLIPPAGE");
+        private static final Set<String> FLOW_KEYS = Set.of("FLOW_WINDOW_SECONDS", "FLOW_WINDOW_MODE",
+                "FLOW_EMIT_USDC");
+
+        /**
+         * Overrides fields from a spec like {@code name=tight,minWinRate=0.7,RISK_MAX_TOTAL_USDC=500}:
+         * {@code name}, {@code copySmartMoney}, the short names above, or any reloadable
+         * or {@code FLOW_*} setting except the watchlist.
+         * 用形如 {@code name=tight,minWinRate=0.7,RISK_MAX_TOTAL_USDC=500} 的规格覆盖字段：
+         * {@code name}、{@code copySmartMoney}、上述简称，或除观察列表外任何可热加载或 {@code FLOW_*} 设置。
+         */
+        public Params with(String spec) {
+            String name = this.name;
+            boolean copySmartMoney = this.copySmartMoney;
+            Map<String, String> settings = new TreeMap<>(this.settings);
+            for (String pair : spec.split(",")) {
+                String[] kv = pair.split("=", 2);
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value: " + pair);
+                }
+                String k = kv[0].trim();
+                String v = kv[1].trim();
+                String key = ALIASES.getOrDefault(k, k);
+                if ("name".equals(k)) {
+                    name = v;
+                } else if ("copySmartMoney".equals(k)) {
+                    copySmartMoney = Boolean.parseBoolean(v);
+                } else if (FLOW_KEYS.contains(key)
+                        || BotConfig.RELOADABLE.contains(key) && !"MANUAL_WATCHLIST".equals(key)) {
+                    settings.put(key, v);
+                } else {
+                    throw new IllegalArgumentException("Unknown replay parameter: " + k);
+                }
+            }
+            return new Params(name, copySmartMoney, Map.copyOf(settings));
+        }
+    }
+
+    /**
+     * Outcome of one replay; amounts in USDC. / 一次回放的结果；金额以 USDC 计。
+     *
+     * @param skipReasons     Skipped copies per reason, as in {@code copy_skipped_total} / 按原因统计的跳过跟单数，与 {@code copy_skipped_total} 相同
+     * @param p50LatencyNanos Per-trade match + execute time, bucket upper bound / 每笔交易匹配加执行时间（桶上界）
+     */
+    public record Result(Params params, int trades, int copied, int skipped, Map<String, Integer> skipReasons,
+            double invested, double realizedPnl, double unrealizedPnl, int wins, int losses, long p50LatencyNanos,
+            long p99LatencyNanos, long elapsedNanos) {
+
+        public double totalPnl() {
+            return realizedPnl + unrealizedPnl;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s copied=%d skipped=%d%s invested=$%.2f pnl=$%.2f (realized $%.2f, open $%.2f)"
+                    + " wins=%d losses=%d | %d trades in %d ms, p50<=%dns p99<=%s",
+                    params.name(), copied, skipped, skipReasons.isEmpty() ? "" : new TreeMap<>(skipReasons),
+                    invested, totalPnl(), realizedPnl, unrealizedPnl, wins, losses,
+                    trades, elapsedNanos / 1_000_000, p50LatencyNanos,
+                    p99LatencyNanos < 0 ? ">1ms" : p99LatencyNanos + "ns");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.polymarket.bot.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Pre-trade checks of copy orders against the exposure caps and the daily loss limit.
+ * 跟单订单的交易前检查：敞口上限和每日亏损限额。
+ *
+ * Buys are shrunk to the headroom left under the per-market, per-whale and
+ * global caps and reserved in the {@link PositionLedger} before submission, so
+ * concurrent lanes cannot overshoot a cap. Sells only reduce exposure and are
+ * clamped to the shares we hold. Checks read in-memory counters only and take
+ * microseconds.
+ * 买单被缩减到每市场、每巨鲸和全局上限下的剩余额度，并在提交前在 {@link PositionLedger} 中预留，
+ * 因此并发通道不会突破上限。卖单只会减少敞口，并被限制在持有的份额内。检查只读取内存计数器，耗时为微秒级。
+ */
+public class RiskEngine {
+
+    // Unrealized PnL walks every position, so it is recomputed at most this often / 未实现盈亏需遍历所有持仓，因此最多按此频率重算
+    private static final long UNREALIZED_TTL_NANOS = 1_000_000_000L;
+
+    /**
+     * Outcome of a check. / 检查结果。
+     *
+     * @param amount USDC allowed, possibly less than asked / 允许的 USDC，可能少于请求值
+     * @param reason Skip reason when nothing is allowed / 不允许时的跳过原因
+     */
+    public record Decision(double amount, String reason) {
+
+        public boolean allowed() {
+            return reason == null;
+        }
+
+        static Decision skip(String reason) {
+            return new Decision(0, reason);
+        }
+    }
+
+    private final PositionLedger ledger;
+    private final LongSupplier nanoClock;
+    private volatile long unrealizedAt;
+    private volatile double unrealized;
+
+    public RiskEngine(PositionLedger ledger) {
+        this(ledger, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock Time source for the unrealized PnL refresh; replays pass a virtual clock / 未实现盈亏刷新的时间来源；回放传入虚拟时钟
+     */
+    RiskEngine(PositionLedger ledger, LongSupplier nanoClock) {
+        this.ledger = ledger;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Sizes a buy to the remaining headroom and reserves it; release or book it afterwards.
+     * 将买单缩减到剩余额度并预留；之后须释放或记账。
+     */
+    public Decision reserveBuy(BotConfig config, String whale, String conditionId, double amount) {
+        double lossLimit = config.riskDailyLossUsdc();
+        if (lossLimit > 0 && ledger.realizedToday() + unrealized() <= -lossLimit) {
+            return Decision.skip("risk_daily_loss");
+        }
+        double marketCap = config.riskMaxMarketUsdc();
+        double whaleCap = config.riskMaxWhaleUsdc();
+        double totalCap = config.riskMaxTotalUsdc();
+        String blocked = null;
+        // A second try covers another lane taking the headroom in between / 第二次尝试覆盖其间另一通道占用额度的情况
+        for (int attempt = 0; attempt < 2; attempt++) {
+            double headroom = amount;
+            String tightest = null;
+            if (marketCap > 0 && marketCap - ledger.marketExposure(conditionId) < headroom) {
+                headroom = marketCap - ledger.marketExposure(conditionId);
+                tightest = "market";
+            }
+            if (whaleCap > 0 && whaleCap - ledger.whaleExposure(whale) < headroom) {
+                headroom = whaleCap - ledger.whaleExposure(whale);
+                tightest = "whale";
+            }
+            if (totalCap > 0 && totalCap - ledger.exposure() < headroom) {
+                headroom = totalCap - ledger.exposure();
+                tightest = "total";
+            }
+            double granted = TradeExecutor.quantize(headroom);
+            if (granted < 1) {
+                return Decision.skip("risk_" + tightest);
+            }
+            blocked = ledger.reserve(conditionId, whale, granted, marketCap, whaleCap, totalCap);
+            if (blocked == null) {
+                return new Decision(granted, null);
+            }
+        }
+        return Decision.skip("risk_" + blocked);
+    }
+
+    /**
+     * Clamps a sell to the shares held; nothing to copy if we hold none.
+     * 将卖单限制在持有份额内；未持有时不跟单。
+     */
+    public Decision checkSell(String tokenId, double amount, double limit) {
+        double held = ledger.heldShares(tokenId);
+        if (held <= 0) {
+            return Decision.skip("no_position");
+        }
+        return new Decision(Math.min(amount, Math.floor(held * limit * 100) / 100), null);
+    }
+
+    private double unrealized() {
+        long now = nanoClock.getAsLong();
+        if (now - unrealizedAt > UNREALIZED_TTL_NANOS) {
+            unrealized = ledger.unrealizedPnl();
+            unrealizedAt = now;
+        }
+        return unrealized;
+    }
+}
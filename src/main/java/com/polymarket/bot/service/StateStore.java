@@ -0,0 +1,288 @@
+package com.polymarket.bot.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable ingestion state: watermark, processed trade IDs and copy-trade executions.
+ * 持久化的拉取状态：水位线、已处理交易 ID 和跟单执行记录。
+ *
+ * Updates are appended to a memory-mapped journal; each record carries a CRC32 so
+ * a torn write at the tail is detected and ignored on replay. When the journal
+ * fills up, the full state is written to a snapshot (temp file + atomic move) and
+ * the journal is cleared. Replay is idempotent (sets only grow, the watermark only
+ * moves forward), so a crash between the two steps is harmless.
+ * 更新追加到内存映射日志中；每条记录带有 CRC32，重放时可发现并忽略尾部的不完整写入。
+ * 日志写满时，完整状态写入快照（临时文件 + 原子移动），随后清空日志。重放是幂等的
+ * （集合只增不减，水位线只前进），因此两步之间崩溃也无害。
+ */
+public class StateStore {
+
+    private static final int JOURNAL_SIZE = 4 * 1024 * 1024;
+    private static final int RECENT_ID_CAPACITY = 50_000;
+    private static final int SNAPSHOT_MAGIC = 0x504D5353; // "PMSS"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte RECORD_WATERMARK = 1;
+    private static final byte RECORD_PROCESSED = 2;
+    private static final byte RECORD_EXECUTED = 3;
+
+    private final Path snapshotPath;
+    private final FileChannel journalChannel;
+    private final MappedByteBuffer journal;
+
+    private long watermark;
+    private final RecentIdSet processed = new RecentIdSet(RECENT_ID_CAPACITY);
+    private final RecentIdSet executed = new RecentIdSet(RECENT_ID_CAPACITY);
+    private boolean dirty;
+
+    /**
+     * Opens (or creates) the store in the given directory and replays it.
+     * 在给定目录中打开（或创建）存储并重放。
+     */
+    public StateStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve("snapshot.bin");
+        this.journalChannel = FileChannel.open(directory.resolve("journal.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_SIZE);
+
+        loadSnapshot();
+        int replayed = replayJournal();
+        System.out.println("State restored: watermark=" + watermark + ", processed=" + processed.size()
+                + ", executed=" + executed.size() + ", journal records=" + replayed + " / 状态已恢复");
+
+        Thread flusher = new Thread(this::runFlusher, "state-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @return the persisted watermark, or 0 if none / 持久化的水位线，没有则返回 0
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Advances the watermark; older values are ignored.
+     * 推进水位线；更旧的值会被忽略。
+     */
+    public synchronized void advanceWatermark(long timestamp) {
+        if (timestamp > watermark) {
+            watermark = timestamp;
+            append(RECORD_WATERMARK, ByteBuffer.allocate(Long.BYTES).putLong(timestamp).array());
+        }
+    }
+
+    /**
+     * Records a trade as processed.
+     * 将交易记录为已处理。
+     *
+     * @return false if it was already processed / 如果已处理过则返回 false
+     */
+    public synchronized boolean markProcessed(String tradeId) {
+        if (!processed.add(tradeId)) {
+            return false;
+        }
+        append(RECORD_PROCESSED, tradeId.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    public synchronized boolean isProcessed(String tradeId) {
+        return processed.contains(tradeId);
+    }
+
+    /**
+     * Records a copy-trade execution for a trade.
+     * 记录某笔交易的跟单执行。
+     *
+     * @return false if it was already executed / 如果已执行过则返回 false
+     */
+    public synchronized boolean markExecuted(String tradeId) {
+        if (!executed.add(tradeId)) {
+            return false;
+        }
+        append(RECORD_EXECUTED, tradeId.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    // Record layout: [int length][byte type][payload][int crc32(type + payload)]
+    // 记录格式：[int 长度][byte 类型][负载][int crc32(类型 + 负载)]
+    private void append(byte type, byte[] payload) {
+        int size = Integer.BYTES + 1 + payload.length + Integer.BYTES;
+        if (journal.position() + size + Integer.BYTES > JOURNAL_SIZE) {
+            rollover();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        int start = journal.position();
+        journal.position(start + Integer.BYTES);
+        journal.put(type).put(payload).putInt((int) crc.getValue());
+        // Length last, so a partially written record reads as end-of-journal / 最后写长度，未写完的记录视为日志结尾
+        journal.putInt(start, payload.length);
+        dirty = true;
+    }
+
+    private int replayJournal() {
+        int count = 0;
+        journal.position(0);
+        while (journal.remaining() >= Integer.BYTES * 2 + 1) {
+            int start = journal.position();
+            int length = journal.getInt();
+            if (length <= 0 || length > journal.remaining() - 1 - Integer.BYTES) {
+                journal.position(start);
+                break;
+            }
+            byte type = journal.get();
+            byte[] payload = new byte[length];
+            journal.get(payload);
+            int storedCrc = journal.getInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                // Torn tail from a crash / 崩溃导致的不完整尾部
+                journal.position(start);
+                break;
+            }
+            switch (type) {
+                case RECORD_WATERMARK -> watermark = Math.max(watermark, ByteBuffer.wrap(payload).getLong());
+                case RECORD_PROCESSED -> processed.add(new String(payload, StandardCharsets.UTF_8));
+                case RECORD_EXECUTED -> executed.add(new String(payload, StandardCharsets.UTF_8));
+                default -> {
+                }
+            }
+            count++;
+        }
+        // Clear anything after the valid tail so it is not replayed later / 清除有效尾部之后的数据
+        int tail = journal.position();
+        for (int i = tail; i < Math.min(tail + Integer.BYTES, JOURNAL_SIZE); i++) {
+            journal.put(i, (byte) 0);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a snapshot and clears the journal.
+     * 写入快照并清空日志。
+     */
+    public synchronized void snapshot() {
+        try {
+            writeSnapshot();
+            for (int i = 0; i < journal.position(); i++) {
+                journal.put(i, (byte) 0);
+            }
+            journal.position(0);
+            journal.force();
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Failed to write state snapshot: " + e.getMessage());
+        }
+    }
+
+    private void rollover() {
+        snapshot();
+        if (journal.position() != 0) {
+            // Snapshot failed; never overwrite journal records that are not in a snapshot
+            // 快照失败；绝不覆盖尚未写入快照的日志记录
+            throw new IllegalStateException("State journal full and snapshot failed");
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(file), crc))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(watermark);
+            writeIds(out, processed.toList());
+            writeIds(out, executed.toList());
+            out.flush();
+            // The CRC itself is written outside the checksummed stream / CRC 本身在校验流之外写入
+            file.write(ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).array());
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        if (bytes.length < Long.BYTES) {
+            System.err.println("State snapshot truncated, ignoring / 状态快照不完整，已忽略");
+            return;
+        }
+        int bodyLength = bytes.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bodyLength);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bodyLength, Long.BYTES).getLong()) {
+            System.err.println("State snapshot checksum mismatch, ignoring / 状态快照校验失败，已忽略");
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bodyLength))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("Unknown state snapshot format, ignoring / 未知的状态快照格式，已忽略");
+                return;
+            }
+            watermark = in.readLong();
+            readIds(in, processed);
+            readIds(in, executed);
+        }
+    }
+
+    private static void writeIds(DataOutputStream out, List<String> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.writeUTF(id);
+        }
+    }
+
+    private static void readIds(DataInputStream in, RecentIdSet target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.add(in.readUTF());
+        }
+    }
+
+    private void runFlusher() {
+        try {
+            while (true) {
+                Thread.sleep(1000);
+                synchronized (this) {
+                    if (dirty) {
+                        journal.force();
+                        dirty = false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.MatchedTrade;
+
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Dispatch stage split into single-threaded lanes, one per creator hash.
+ * 按创建者哈希划分为单线程通道的分发阶段。
+ *
+ * Every trade of one address lands on the same lane and is dispatched in the
+ * order it was submitted, so a whale's buy is never copied after its later
+ * sell; different whales run in parallel, and one slow copy only holds up the
+ * whales that share its lane. Each lane has a bounded queue.
+ * 同一地址的所有交易进入同一通道并按提交顺序分发，因此巨鲸的买入绝不会在其之后的卖出之后才被跟单；
+ * 不同巨鲸并行处理，一次缓慢的跟单只会阻塞同一通道上的巨鲸。每个通道都有有界队列。
+ *
+ * Lanes finish out of timestamp order, so the resumable watermark is the
+ * oldest trade still queued or running, not the last one dispatched.
+ * 各通道完成顺序与时间戳顺序不同，因此可恢复的水位线是仍在排队或执行中的最旧交易，而不是最后分发的交易。
+ */
+public class StripedDispatcher {
+
+    /**
+     * What to do when a lane's queue is full.
+     * 通道队列已满时的处理方式。
+     */
+    public enum OverflowPolicy {
+        /** Wait for room, slowing the match stage / 等待空位，放慢匹配阶段 */
+        BLOCK,
+        /** Drop the trade / 丢弃交易 */
+        DROP
+    }
+
+    private final Lane[] lanes;
+    private final Consumer<MatchedTrade> dispatcher;
+    private final OverflowPolicy policy;
+    private final LongConsumer watermarkSink;
+    private final PollPipeline.StageStats stats;
+
+    // Timestamps of trades not yet dispatched, with multiplicity / 尚未分发交易的时间戳（含重复计数）
+    private final TreeMap<Long, Integer> pending = new TreeMap<>();
+    private long lastSubmitted;
+
+    /**
+     * @param watermarkSink Receives the timestamp before which every trade has been dispatched / 接收此前所有交易均已分发的时间戳
+     */
+    public StripedDispatcher(Consumer<MatchedTrade> dispatcher, int laneCount, int laneCapacity,
+            OverflowPolicy policy, LongConsumer watermarkSink, PollPipeline.StageStats stats, Metrics metrics) {
+        this.dispatcher = dispatcher;
+        this.policy = policy;
+        this.watermarkSink = watermarkSink;
+        this.stats = stats;
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, laneCapacity, metrics);
+        }
+    }
+
+    public void start() {
+        for (Lane lane : lanes) {
+            Thread t = new Thread(lane::run, "poll-dispatch-" + lane.index);
+            t.setDaemon(true);
+            t.start();
+        }
+        System.out.println("Dispatch lanes: " + lanes.length + " (" + policy + ") / 分发通道：" + lanes.length);
+    }
+
+    /**
+     * Queues a trade on its creator's lane. Called from the single match thread.
+     * 将交易放入其创建者的通道。由单一匹配线程调用。
+     */
+    public void submit(MatchedTrade matched) throws InterruptedException {
+        Lane lane = lanes[laneOf(matched.trade().creator())];
+        long timestamp = matched.trade().creationTimestamp();
+        synchronized (pending) {
+            pending.merge(timestamp, 1, Integer::sum);
+            lastSubmitted = Math.max(lastSubmitted, timestamp);
+        }
+        if (lane.queue.offer(matched)) {
+            return;
+        }
+        lane.overflows.inc();
+        if (policy == OverflowPolicy.DROP) {
+            lane.drops.inc();
+            System.err.println("Dispatch lane " + lane.index + " full, dropped trade " + matched.trade().id()
+                    + " / 分发通道已满，丢弃交易");
+            done(timestamp);
+            return;
+        }
+        lane.queue.put(matched); // Backpressure onto the match stage / 对匹配阶段施加背压
+    }
+
+    /**
+     * @return trades queued across all lanes / 所有通道中排队的交易数
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    private int laneOf(String creator) {
+        if (creator == null) {
+            return 0;
+        }
+        int h = creator.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    private void done(long timestamp) {
+        long safe;
+        synchronized (pending) {
+            pending.computeIfPresent(timestamp, (k, n) -> n > 1 ? n - 1 : null);
+            safe = pending.isEmpty() ? lastSubmitted : pending.firstKey();
+        }
+        // Trades in the safe second are re-read on resume and deduped / 恢复时会重新读取该秒的交易并去重
+        watermarkSink.accept(safe);
+    }
+
+    private final class Lane {
+        private final int index;
+        private final BlockingQueue<MatchedTrade> queue;
+        private final Metrics.Counter overflows;
+        private final Metrics.Counter drops;
+
+        Lane(int index, int capacity, Metrics metrics) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            String label = Integer.toString(index);
+            this.overflows = metrics.counter("dispatch_lane_overflows_total",
+                    "Trades that found their dispatch lane full", "lane", label);
+            this.drops = metrics.counter("dispatch_lane_dropped_total",
+                    "Trades dropped because their dispatch lane was full", "lane", label);
+            metrics.gauge("dispatch_lane_depth", "Trades queued on each dispatch lane", queue::size, "lane", label);
+        }
+
+        void run() {
+            try {
+                while (true) {
+                    MatchedTrade matched = queue.take();
+                    long start = System.nanoTime();
+                    try {
+                        dispatcher.accept(matched);
+                    } catch (Exception e) {
+                        System.err.println("Error dispatching trade " + matched.trade().id() + ": " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                    stats.record(System.nanoTime() - start);
+                    done(matched.trade().creationTimestamp());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
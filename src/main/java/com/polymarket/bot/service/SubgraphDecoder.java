@@ -0,0 +1,283 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.polymarket.bot.model.Trade;
+import com.polymarket.bot.model.Trader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming decoder for Goldsky subgraph responses.
+ * Goldsky 子图响应的流式解码器。
+ *
+ * Reads straight from the HTTP body with a {@link JsonParser}, so a response is
+ * never held as a String or a JsonNode tree.
+ * 使用 {@link JsonParser} 直接从 HTTP 响应体读取，响应不会以字符串或 JsonNode 树的形式驻留内存。
+ */
+public class SubgraphDecoder {
+
+    private static final int MAX_INTERNED = 50_000;
+
+    private final JsonFactory factory;
+
+    // Market titles repeat across thousands of trades / 市场标题在大量交易中重复出现
+    private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    public SubgraphDecoder(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Decodes {@code data.fpmmTrades} into trades.
+     * 将 {@code data.fpmmTrades} 解码为交易列表。
+     */
+    public List<Trade> decodeTrades(InputStream body) throws IOException {
+        List<Trade> trades = new ArrayList<>();
+        try (JsonParser p = factory.createParser(body)) {
+            if (seekArray(p, "fpmmTrades")) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    trades.add(readTrade(p));
+                }
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * Decodes {@code data.users} into traders.
+     * 将 {@code data.users} 解码为交易者列表。
+     */
+    public List<Trader> decodeTraders(InputStream body) throws IOException {
+        List<Trader> traders = new ArrayList<>();
+        try (JsonParser p = factory.createParser(body)) {
+            if (seekArray(p, "users")) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    String id = null;
+                    double profit = 0;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = p.currentName();
+                        p.nextToken();
+                        switch (field) {
+                            case "id" -> id = normalizeAddress(p.getValueAsString());
+                            case "profit" -> profit = p.getValueAsDouble();
+                            default -> p.skipChildren();
+                        }
+                    }
+                    traders.add(new Trader(id, profit));
+                }
+            }
+        }
+        return traders;
+    }
+
+    /**
+     * Decodes a batched query whose results are aliased {@code <prefix>0 .. <prefix>(count-1)}.
+     * 解码结果别名为 {@code <prefix>0 .. <prefix>(count-1)} 的批量查询。
+     *
+     * @return one list per alias, in alias order (empty if absent) / 每个别名一个列表，按别名顺序（缺失时为空）
+     * @throws IOException if the response only carries GraphQL errors / 响应仅包含 GraphQL 错误时抛出
+     */
+    public List<List<Trade>> decodeTradesByAlias(InputStream body, String prefix, int count) throws IOException {
+        List<List<Trade>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new ArrayList<>());
+        }
+        try (JsonParser p = factory.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected subgraph response");
+            }
+            boolean sawData = false;
+            String error = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken token = p.nextToken();
+                if ("data".equals(name) && token == JsonToken.START_OBJECT) {
+                    sawData = true;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        int index = aliasIndex(p.currentName(), prefix, count);
+                        if (p.nextToken() == JsonToken.START_ARRAY && index >= 0) {
+                            while (p.nextToken() == JsonToken.START_OBJECT) {
+                                results.get(index).add(readTrade(p));
+                            }
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                } else if ("errors".equals(name) && token == JsonToken.START_ARRAY) {
+                    error = readFirstErrorMessage(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (!sawData && error != null) {
+                throw new IOException("Subgraph error: " + error);
+            }
+        }
+        return results;
+    }
+
+    private static int aliasIndex(String alias, String prefix, int count) {
+        if (!alias.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(alias.substring(prefix.length()));
+            return index < count ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Positions the parser on the START_ARRAY of {@code data.<field>}.
+     * 将解析器定位到 {@code data.<field>} 的 START_ARRAY。
+     *
+     * @return false if the field is absent or null / 字段不存在或为 null 时返回 false
+     * @throws IOException if the response only carries GraphQL errors / 响应仅包含 GraphQL 错误时抛出
+     */
+    private boolean seekArray(JsonParser p, String field) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected subgraph response");
+        }
+        String error = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken token = p.nextToken();
+            if ("data".equals(name) && token == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if (field.equals(dataField)) {
+                        return value == JsonToken.START_ARRAY;
+                    }
+                    p.skipChildren();
+                }
+            } else if ("errors".equals(name) && token == JsonToken.START_ARRAY) {
+                error = readFirstErrorMessage(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+        if (error != null) {
+            throw new IOException("Subgraph error: " + error);
+        }
+        return false;
+    }
+
+    private String readFirstErrorMessage(JsonParser p) throws IOException {
+        String message = null;
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                p.nextToken();
+                if (message == null && "message".equals(name)) {
+                    message = p.getValueAsString();
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return message != null ? message : "unknown";
+    }
+
+    private Trade readTrade(JsonParser p) throws IOException {
+        String id = null;
+        long creationTimestamp = 0;
+        String title = null;
+        int outcomeIndex = 0;
+        String type = null;
+        String amount = null;
+        String collateralAmount = null;
+        String creator = null;
+        String conditionId = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "id" -> id = p.getValueAsString();
+                case "creationTimestamp" -> creationTimestamp = p.getValueAsLong();
+                case "title" -> title = intern(p.getValueAsString());
+                case "outcomeIndex" -> outcomeIndex = p.getValueAsInt();
+                case "type" -> type = intern(p.getValueAsString());
+                case "amount" -> amount = p.getValueAsString();
+                case "collateralAmount" -> collateralAmount = p.getValueAsString();
+                case "creator" -> creator = readNestedId(p);
+                case "fpmm" -> conditionId = readConditionId(p);
+                default -> p.skipChildren();
+            }
+        }
+        return new Trade(id, creationTimestamp, title, outcomeIndex, type, amount, collateralAmount, creator,
+                conditionId);
+    }
+
+    /**
+     * Reads {@code fpmm { conditions { id } }} and returns the first condition id.
+     * 读取 {@code fpmm { conditions { id } }} 并返回第一个条件 ID。
+     */
+    private String readConditionId(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String conditionId = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("conditions".equals(field) && value == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    String id = readNestedId(p);
+                    if (conditionId == null) {
+                        conditionId = intern(id);
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+        return conditionId;
+    }
+
+    private String readNestedId(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String id = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("id".equals(field)) {
+                id = normalizeAddress(p.getValueAsString());
+            } else {
+                p.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (interned.size() >= MAX_INTERNED) {
+            interned.clear();
+        }
+        String existing = interned.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Lower-cases an address; returns the same instance if it already is.
+     * 将地址转为小写；如果已是小写则返回同一实例。
+     */
+    static String normalizeAddress(String address) {
+        return address == null ? null : address.toLowerCase(Locale.ROOT);
+    }
+}
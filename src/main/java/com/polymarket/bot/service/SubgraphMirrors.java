@@ -0,0 +1,322 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of equivalent endpoints (mirrors) for one subgraph.
+ * 同一子图的一组等价端点（镜像）。
+ *
+ * Mirrors are ranked by availability (circuit breaker), indexing lag and observed
+ * latency. Plain queries go to the best mirror and fail over down the ranking.
+ * Trade pages are fanned out to the top {@code fanOut} mirrors; the first answer
+ * plus whatever else arrives within a short grace period is merged and
+ * de-duplicated by trade id, so a lagging mirror can only add trades, never
+ * duplicate them. A mirror whose newest trade is more than {@code maxLagSeconds}
+ * behind the freshest mirror is ranked last until it catches up.
+ * 镜像按可用性（熔断器）、索引延迟和观测延迟排序。普通查询发往最佳镜像，失败时按排名依次切换。
+ * 交易分页会扇出到排名前 {@code fanOut} 的镜像；首个结果与短暂宽限期内到达的其他结果合并，
+ * 并按交易 id 去重，因此落后的镜像只会补充交易，不会产生重复。最新交易落后最快镜像超过
+ * {@code maxLagSeconds} 的镜像会排到最后，直到追上为止。
+ */
+public class SubgraphMirrors {
+
+    private static final long MERGE_GRACE_MILLIS = 250;
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
+    private static final int MAX_FANOUT_THREADS = 32;
+
+    private static final GraphQLClient.Template HEAD_QUERY = GraphQLClient.Template.compile(
+            "{ fpmmTrades(first: 1, orderBy: creationTimestamp, orderDirection: desc) { creationTimestamp } }");
+
+    private static final ThreadPoolExecutor FANOUT_EXECUTOR = new ThreadPoolExecutor(0, MAX_FANOUT_THREADS,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemon("mirror-fanout"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private final String name;
+    private final UpstreamClient upstream;
+    private final List<Mirror> mirrors;
+    private final List<GraphQLClient> graphs; // Parallel to mirrors / 与 mirrors 一一对应
+    private final int fanOut;
+    private final long maxLagSeconds;
+
+    /**
+     * @param name          Label used in logs and metrics / 日志和指标中使用的标签
+     * @param urls          Equivalent endpoints, preferred first / 等价端点，优先的在前
+     * @param fanOut        Mirrors queried in parallel for trade pages / 交易分页并行查询的镜像数
+     * @param maxLagSeconds Lag behind the freshest mirror before a mirror is avoided / 落后最快镜像多少秒后避开该镜像
+     */
+    public SubgraphMirrors(String name, List<String> urls, UpstreamClient upstream, JsonFactory factory,
+            boolean gzipRequests, int fanOut, long maxLagSeconds, Metrics metrics) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("No endpoints configured for " + name);
+        }
+        this.name = name;
+        this.upstream = upstream;
+        this.fanOut = Math.max(1, fanOut);
+        this.maxLagSeconds = maxLagSeconds;
+        this.mirrors = new ArrayList<>();
+        this.graphs = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            Mirror mirror = new Mirror(urls.get(i));
+            mirrors.add(mirror);
+            graphs.add(new GraphQLClient(upstream, factory, urls.get(i), gzipRequests));
+            String label = String.valueOf(i);
+            metrics.gauge("mirror_lag_seconds", "Newest trade seen on a mirror, behind the freshest mirror",
+                    () -> lagSeconds(mirror), "subgraph", name, "mirror", label);
+            metrics.gauge("mirror_latency_ewma_seconds", "Smoothed response time of a mirror",
+                    () -> mirror.latencyMillis / 1000.0, "subgraph", name, "mirror", label);
+            // Per mirror: mirrors of one subgraph share the upstream label / 按镜像统计：同一子图的镜像共用 upstream 标签
+            metrics.gauge("mirror_available", "1 while the mirror's circuit breaker admits calls",
+                    () -> upstream.isAvailable(mirror.url) ? 1 : 0, "subgraph", name, "mirror", label);
+        }
+        if (urls.size() > 1) {
+            System.out.println(name + " subgraph: " + urls.size() + " mirrors, fan-out " + this.fanOut
+                    + " / " + name + " 子图：" + urls.size() + " 个镜像，扇出 " + this.fanOut);
+        }
+    }
+
+    private SubgraphMirrors(SubgraphMirrors base, List<GraphQLClient> graphs) {
+        this.name = base.name;
+        this.upstream = base.upstream;
+        this.mirrors = base.mirrors;
+        this.graphs = graphs;
+        this.fanOut = base.fanOut;
+        this.maxLagSeconds = base.maxLagSeconds;
+    }
+
+    /**
+     * Same mirrors (and shared health stats) with a different per-attempt timeout.
+     * 相同的镜像（共享健康统计），但使用不同的单次尝试超时。
+     */
+    public SubgraphMirrors withCallTimeout(long millis) {
+        return new SubgraphMirrors(this, graphs.stream().map(g -> g.withCallTimeout(millis)).toList());
+    }
+
+    /**
+     * Runs a query on the best mirror, failing over to the next on error.
+     * 在最佳镜像上执行查询，出错时切换到下一个。
+     */
+    public <T> T execute(GraphQLClient.Template template, GraphQLClient.Variables variables,
+            GraphQLClient.ResponseDecoder<T> decoder) throws IOException {
+        IOException lastError = null;
+        for (int index : ranked()) {
+            try {
+                return timed(index, template, variables, decoder);
+            } catch (IOException e) {
+                lastError = e;
+                if (mirrors.size() > 1) {
+                    System.err.println(name + " mirror " + index + " failed, failing over: " + e.getMessage());
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Fans a trade query out to the top mirrors and merges the pages.
+     * 将交易查询扇出到排名靠前的镜像并合并分页。
+     *
+     * The merged page is cut back to {@code limit} so it never reaches past what
+     * every queried mirror covered; otherwise a cursor could skip trades one mirror
+     * has and another is missing.
+     * 合并后的分页会截断到 {@code limit} 条，使其不会超出每个被查询镜像都覆盖到的范围；
+     * 否则游标可能跳过某个镜像有而另一个镜像缺失的交易。
+     *
+     * @param order Order of the merged page; must match the query's orderBy / 合并后分页的顺序，须与查询的 orderBy 一致
+     * @param limit The query's page size / 查询的分页大小
+     * @return trades de-duplicated by id / 按 id 去重的交易
+     * @throws IOException if every queried mirror failed / 所有被查询的镜像都失败时抛出
+     */
+    public List<Trade> fetchTrades(GraphQLClient.Template template, GraphQLClient.Variables variables,
+            SubgraphDecoder decoder, Comparator<Trade> order, int limit) throws IOException {
+        int[] ranking = ranked();
+        int n = Math.min(fanOut, ranking.length);
+        if (n == 1) {
+            return execute(template, variables, body -> observeHead(ranking[0], decoder.decodeTrades(body)));
+        }
+
+        CompletionService<List<Trade>> completion = new ExecutorCompletionService<>(FANOUT_EXECUTOR);
+        List<Future<List<Trade>>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int index = ranking[i];
+            futures.add(completion.submit(() -> timed(index, template, variables,
+                    body -> observeHead(index, decoder.decodeTrades(body)))));
+        }
+
+        Map<String, Trade> merged = new LinkedHashMap<>();
+        IOException lastError = null;
+        int succeeded = 0;
+        try {
+            long graceDeadline = Long.MAX_VALUE;
+            for (int received = 0; received < n; received++) {
+                Future<List<Trade>> done;
+                if (succeeded == 0) {
+                    done = completion.take();
+                } else {
+                    done = completion.poll(Math.max(0, graceDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        break; // Grace period over / 宽限期已过
+                    }
+                }
+                try {
+                    for (Trade trade : done.get()) {
+                        merged.putIfAbsent(trade.id(), trade);
+                    }
+                    if (succeeded++ == 0) {
+                        graceDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MERGE_GRACE_MILLIS);
+                    }
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while querying mirrors", e);
+        } finally {
+            for (Future<List<Trade>> future : futures) {
+                future.cancel(true); // Stragglers past the grace period / 超过宽限期的慢请求
+            }
+        }
+
+        if (succeeded == 0) {
+            throw lastError;
+        }
+        List<Trade> result = new ArrayList<>(merged.values());
+        result.sort(order);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Polls every mirror's newest trade on a schedule so lag is known even when quiet.
+     * 定期查询每个镜像的最新交易，使安静时也能掌握延迟。
+     *
+     * Only meaningful for subgraphs that index fpmmTrades.
+     * 仅适用于索引 fpmmTrades 的子图。
+     */
+    public void startLagProbe(SubgraphDecoder decoder, long intervalSeconds) {
+        if (mirrors.size() < 2) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemon("mirror-probe"));
+        scheduler.scheduleWithFixedDelay(() -> {
+            for (int i = 0; i < mirrors.size(); i++) {
+                int index = i;
+                try {
+                    timed(index, HEAD_QUERY, null, body -> observeHead(index, decoder.decodeTrades(body)));
+                } catch (Exception e) {
+                    System.err.println(name + " mirror " + index + " probe failed: " + e.getMessage());
+                }
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private <T> T timed(int index, GraphQLClient.Template template, GraphQLClient.Variables variables,
+            GraphQLClient.ResponseDecoder<T> decoder) throws IOException {
+        Mirror mirror = mirrors.get(index);
+        long start = System.nanoTime();
+        try {
+            T result = graphs.get(index).execute(template, variables, decoder);
+            mirror.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        } catch (IOException e) {
+            // Penalize as if it took the full timeout / 按耗尽超时计入惩罚
+            mirror.recordLatency(upstream.getCallTimeoutMillis());
+            throw e;
+        }
+    }
+
+    private List<Trade> observeHead(int index, List<Trade> trades) {
+        Mirror mirror = mirrors.get(index);
+        for (Trade trade : trades) {
+            mirror.observeHead(trade.creationTimestamp());
+        }
+        return trades;
+    }
+
+    /**
+     * Mirror indexes, best first: available, then not lagging, then fastest.
+     * 镜像索引（最佳在前）：先可用，再不落后，再最快。
+     */
+    private int[] ranked() {
+        Integer[] order = new Integer[mirrors.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (order.length > 1) {
+            Arrays.sort(order, Comparator
+                    .comparing((Integer i) -> !upstream.isAvailable(mirrors.get(i).url))
+                    .thenComparing(i -> lagSeconds(mirrors.get(i)) > maxLagSeconds)
+                    .thenComparingDouble(i -> mirrors.get(i).latencyMillis));
+        }
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private long lagSeconds(Mirror mirror) {
+        if (mirror.headTimestamp == 0) {
+            return 0; // Unknown yet / 尚未知
+        }
+        long freshest = 0;
+        for (Mirror m : mirrors) {
+            freshest = Math.max(freshest, m.headTimestamp);
+        }
+        return freshest - mirror.headTimestamp;
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger id = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Health stats of one mirror, shared by every view of the set.
+     * 单个镜像的健康统计，由该集合的所有视图共享。
+     */
+    private static final class Mirror {
+        final String url;
+        volatile long headTimestamp;
+        // 0 until measured, so untried mirrors are tried first / 测量前为 0，未尝试的镜像会优先被尝试
+        volatile double latencyMillis;
+
+        Mirror(String url) {
+            this.url = url;
+        }
+
+        synchronized void observeHead(long timestamp) {
+            if (timestamp > headTimestamp) {
+                headTimestamp = timestamp;
+            }
+        }
+
+        synchronized void recordLatency(long millis) {
+            latencyMillis = latencyMillis == 0 ? millis
+                    : latencyMillis + LATENCY_EWMA_WEIGHT * (millis - latencyMillis);
+        }
+    }
+}
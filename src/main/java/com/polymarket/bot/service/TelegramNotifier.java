@@ -4,20 +4,77 @@ import org.telegram.telegrambots.bots.DefaultAbsSender;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles sending notifications to Telegram (Send-only mode).
  * 处理发送通知到 Telegram（仅发送模式）。
+ *
+ * Alerts are queued and delivered by a background thread, so callers never wait
+ * on Telegram. Bursts are folded into one message, sends are paced per chat and
+ * globally, and 429 {@code retry_after} hints are honored. When the queue is full
+ * new alerts are dropped and a summary of the drop count is sent instead; both
+ * these and batches that fail to send count as dropped. Each alert's future
+ * completes once it has been delivered or dropped.
+ * 警报进入队列，由后台线程发送，调用方无需等待 Telegram。突发警报会合并为一条消息，
+ * 发送速率按聊天和全局限制，并遵守 429 的 {@code retry_after}。队列满时丢弃新警报，改为发送丢弃数量摘要；
+ * 这些警报以及发送失败的批次都计为丢弃。每条警报的 future 在其送达或被丢弃后完成。
  */
 public class TelegramNotifier extends DefaultAbsSender {
 
+    private static final int DEFAULT_QUEUE_CAPACITY = 500;
+    private static final int MAX_MESSAGE_LENGTH = 4096; // Telegram limit / Telegram 限制
+    private static final int MAX_BATCH_SIZE = 10;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String BATCH_SEPARATOR = "\n\n────────\n\n";
+    // Trade-to-alert lag, in seconds; dominated by subgraph indexing delay / 交易到警报的延迟（秒）；主要取决于子图索引延迟
+    private static final double[] ALERT_LAG_BUCKETS = { 1, 2, 5, 10, 15, 30, 60, 120, 300, 600 };
+
+    // Telegram allows ~30 messages/s per bot and ~20 messages/min per group chat
+    // Telegram 允许每个机器人约 30 条/秒，每个群聊约 20 条/分钟
+    private static final TokenBucket GLOBAL_RATE = new TokenBucket(30, 30);
+
     private final String botToken;
     private final String chatId;
 
-    public TelegramNotifier(DefaultBotOptions options, String botToken, String chatId) {
+    private final BlockingQueue<Alert> outbox;
+    private final TokenBucket chatRate = new TokenBucket(20 / 60.0, 5);
+    private final AtomicLong droppedSinceReport = new AtomicLong();
+    private final Metrics.Counter droppedTotal;
+    private final Metrics.Counter sentTotal;
+    private final Metrics.Histogram sendLatency;
+    private final Metrics.Histogram tradeToAlert;
+    private volatile long retryAfterUntilMillis;
+
+    public TelegramNotifier(DefaultBotOptions options, String botToken, String chatId, Metrics metrics) {
+        this(options, botToken, chatId, DEFAULT_QUEUE_CAPACITY, metrics);
+    }
+
+    public TelegramNotifier(DefaultBotOptions options, String botToken, String chatId, int queueCapacity,
+            Metrics metrics) {
         super(options);
         this.botToken = botToken;
         this.chatId = chatId;
+        this.outbox = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.droppedTotal = metrics.counter("telegram_dropped_total",
+                "Alerts dropped because the queue was full or delivery failed");
+        this.sentTotal = metrics.counter("telegram_sent_total", "Telegram messages delivered");
+        this.sendLatency = metrics.histogram("telegram_send_seconds", "Duration of one Telegram sendMessage call",
+                Metrics.LATENCY_BUCKETS);
+        this.tradeToAlert = metrics.histogram("trade_to_alert_seconds",
+                "Lag from on-chain trade timestamp to Telegram delivery", ALERT_LAG_BUCKETS);
+        metrics.gauge("telegram_queue_depth", "Alerts waiting to be sent", outbox::size);
+
+        Thread sender = new Thread(this::runSender, "telegram-sender");
+        sender.setDaemon(true);
+        sender.start();
     }
 
     @Override
@@ -26,21 +83,137 @@ public class TelegramNotifier extends DefaultAbsSender {
     }
 
     /**
-     * Send a message to the configured chat.
-     * 发送消息到配置的聊天。
+     * Queue a message for the configured chat. Never blocks.
+     * 将消息加入发送到配置聊天的队列。从不阻塞。
      *
      * @param message Text to send / 要发送的文本
      */
     public void sendAlert(String message) {
+        sendAlert(message, 0);
+    }
+
+    /**
+     * Queue an alert about a trade; delivery lag is recorded against the trade time.
+     * 将关于某笔交易的警报加入队列；发送延迟以交易时间为起点记录。
+     *
+     * @param message        Text to send / 要发送的文本
+     * @param tradeTimestamp Trade creation time in epoch seconds, or 0 / 交易创建时间（epoch 秒），或 0
+     * @return completes with true once Telegram has the alert, false if it was dropped / Telegram 收到警报时以 true 完成，被丢弃时以 false 完成
+     */
+    public CompletableFuture<Boolean> sendAlert(String message, long tradeTimestamp) {
+        Alert alert = new Alert(message, tradeTimestamp, new CompletableFuture<>());
+        if (!outbox.offer(alert)) {
+            droppedSinceReport.incrementAndGet();
+            droppedTotal.inc();
+            alert.delivered().complete(false);
+        }
+        return alert.delivered();
+    }
+
+    public int getQueueDepth() {
+        return outbox.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedTotal.get();
+    }
+
+    public long getSentCount() {
+        return sentTotal.get();
+    }
+
+    private void runSender() {
+        try {
+            while (true) {
+                Alert first = outbox.take();
+
+                // The drop report goes first, so it counts against the length limit / 丢弃报告放在最前，因此计入长度限制
+                long dropped = droppedSinceReport.getAndSet(0);
+                StringBuilder text = new StringBuilder();
+                if (dropped > 0) {
+                    text.append("⚠️ ").append(dropped).append(" alerts dropped (queue full) / ").append(dropped)
+                            .append(" 条警报被丢弃（队列已满）").append(BATCH_SEPARATOR);
+                }
+                // An alert too long on its own is cut rather than rejected / 单条过长的警报被截断而不是被拒绝
+                text.append(first.text(), 0, Math.min(first.text().length(), MAX_MESSAGE_LENGTH - text.length()));
+                Alert[] batch = new Alert[MAX_BATCH_SIZE];
+                batch[0] = first;
+
+                // Fold a burst into one message / 将突发警报合并为一条消息
+                int batched = 1;
+                Alert next;
+                while (batched < MAX_BATCH_SIZE && (next = outbox.peek()) != null
+                        && text.length() + BATCH_SEPARATOR.length() + next.text().length() <= MAX_MESSAGE_LENGTH) {
+                    outbox.poll();
+                    text.append(BATCH_SEPARATOR).append(next.text());
+                    batch[batched++] = next;
+                }
+
+                boolean delivered = deliver(text.toString());
+                if (!delivered) {
+                    // The whole batch is lost / 整批消息丢失
+                    droppedTotal.add(batched);
+                }
+                long nowMillis = System.currentTimeMillis();
+                for (int i = 0; i < batched; i++) {
+                    if (delivered && batch[i].tradeTimestamp() > 0) {
+                        tradeToAlert.observe(Math.max(0, nowMillis / 1000.0 - batch[i].tradeTimestamp()));
+                    }
+                    batch[i].delivered().complete(delivered);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the message was delivered / 消息发送成功时返回 true
+     */
+    private boolean deliver(String text) throws InterruptedException {
         SendMessage sm = new SendMessage();
         sm.setChatId(chatId);
-        sm.setText(message);
+        sm.setText(text);
 
-        try {
-            execute(sm);
-        } catch (TelegramApiException e) {
-            System.err.println("Failed to send Telegram message: " + e.getMessage());
-            System.err.println("发送 Telegram 消息失败：" + e.getMessage());
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long backoff = retryAfterUntilMillis - System.currentTimeMillis();
+            if (backoff > 0) {
+                Thread.sleep(backoff);
+            }
+            chatRate.acquire();
+            GLOBAL_RATE.acquire();
+
+            long start = System.nanoTime();
+            try {
+                execute(sm);
+                sendLatency.observeNanos(System.nanoTime() - start);
+                sentTotal.inc();
+                return true;
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (Integer.valueOf(429).equals(e.getErrorCode()) && retryAfter != null) {
+                    retryAfterUntilMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryAfter);
+                    System.err.println("Telegram rate limited, retrying after " + retryAfter + "s / Telegram 限流，"
+                            + retryAfter + " 秒后重试");
+                    continue;
+                }
+                logFailure(e);
+                return false;
+            } catch (TelegramApiException e) {
+                logFailure(e);
+                return false;
+            }
         }
+        System.err.println("Giving up on Telegram message after " + MAX_ATTEMPTS + " attempts / 重试 "
+                + MAX_ATTEMPTS + " 次后放弃发送 Telegram 消息");
+        return false;
+    }
+
+    private void logFailure(TelegramApiException e) {
+        System.err.println("Failed to send Telegram message: " + e.getMessage());
+        System.err.println("发送 Telegram 消息失败：" + e.getMessage());
+    }
+
+    private record Alert(String text, long tradeTimestamp, CompletableFuture<Boolean> delivered) {
     }
 }
@@ -0,0 +1,55 @@
+package com.polymarket.bot.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple token bucket rate limiter.
+ * 简单的令牌桶限流器。
+ *
+ * Callers reserve a token up front and then sleep for the returned delay, so
+ * concurrent callers are spaced out fairly without holding the lock while waiting.
+ * 调用方先预留令牌，再休眠返回的延迟时间，因此并发调用方会被公平地错开，且等待时不持有锁。
+ */
+public class TokenBucket {
+
+    private final double ratePerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param ratePerSecond Sustained rate / 持续速率
+     * @param capacity      Maximum burst / 最大突发量
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, possibly going into debt.
+     * 取走一个令牌（可能透支）。
+     *
+     * @return nanoseconds to wait before using it / 使用前需要等待的纳秒数
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Blocks until a token is available.
+     * 阻塞直到有可用令牌。
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
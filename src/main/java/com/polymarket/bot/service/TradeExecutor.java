@@ -1,6 +1,10 @@
 package com.polymarket.bot.service;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 
 /**
  * Handles trade execution (Simulation & Real).
@@ -8,31 +12,57 @@ import io.github.cdimascio.dotenv.Dotenv;
  */
 public class TradeExecutor {
 
+    // Older books are not trusted for sizing / 更旧的订单簿不用于定额
+    private static final long BOOK_MAX_AGE_MILLIS = 10_000;
+
     private final TelegramNotifier notifier;
-    private final double copyAmount;
+    private final Metrics metrics;
+    private final EventLog events;
+    // Sizing settings are read per trade so reloads apply to the next copy / 定额设置按笔读取，重新加载后对下一笔跟单生效
+    private final ConfigManager configs;
     private final boolean isSimulation;
+    // Null in simulation / 模拟模式下为 null
+    private final ClobExecutionEngine engine;
+    private final PositionLedger ledger;
+    private final RiskEngine risk;
 
-    public TradeExecutor(TelegramNotifier notifier) {
+    public TradeExecutor(TelegramNotifier notifier, ConfigManager configs, EventLog events, Metrics metrics) {
         this.notifier = notifier;
-        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        this.configs = configs;
+        this.events = events;
+        this.metrics = metrics;
+        BotConfig config = configs.current();
 
-        String amountStr = dotenv.get("COPY_TRADE_AMOUNT");
-        if (amountStr == null)
-            amountStr = System.getenv("COPY_TRADE_AMOUNT");
-        this.copyAmount = (amountStr != null) ? Double.parseDouble(amountStr) : 10.0;
-
-        String mode = dotenv.get("TRADE_MODE");
-        if (mode == null)
-            mode = System.getenv("TRADE_MODE");
-        this.isSimulation = !"REAL".equalsIgnoreCase(mode);
+        // TRADE_MODE and the CLOB credentials only apply at startup / TRADE_MODE 和 CLOB 凭证仅在启动时生效
+        ClobExecutionEngine clob = null;
+        if ("REAL".equalsIgnoreCase(config.get("TRADE_MODE"))) {
+            try {
+                clob = new ClobExecutionEngine(config, metrics);
+            } catch (RuntimeException e) {
+                System.err.println("❌ REAL trading disabled, falling back to SIMULATION: " + e.getMessage());
+                System.err.println("❌ 真实交易已禁用，回退到模拟模式：" + e.getMessage());
+            }
+        }
+        this.engine = clob;
+        this.isSimulation = engine == null;
+        try {
+            this.ledger = new PositionLedger(Path.of(config.get("STATE_DIR", "state")), metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open position ledger / 无法打开持仓账本", e);
+        }
+        this.risk = new RiskEngine(ledger);
 
         System.out.println("TradeExecutor initialized. Mode: " + (isSimulation ? "SIMULATION" : "REAL") + ", Amount: $"
-                + copyAmount);
+                + config.copyTradeAmount());
+    }
+
+    public PositionLedger getLedger() {
+        return ledger;
     }
 
     /**
-     * Executes a copy trade.
-     * 执行跟单交易。
+     * Logs a copy trade without placing an order (simulation and test alerts).
+     * 记录跟单交易但不下单（模拟和测试警报）。
      * 
      * @param whaleAddress The address we are copying
      * @param marketTitle  The market name
@@ -40,21 +70,255 @@ public class TradeExecutor {
      * @param type         The action (Buy/Sell)
      */
     public void executeCopyTrade(String whaleAddress, String marketTitle, String outcome, String type) {
+        String logMsg = logCopy(whaleAddress, marketTitle, outcome, type, configs.current().copyTradeAmount());
+        System.out.println(logMsg);
+    }
+
+    private String logCopy(String whaleAddress, String marketTitle, String outcome, String type, double amount) {
         // In simulation mode, we just log and notify.
         // 在模拟模式下，我们只记录和通知。
 
         String logMsg = String.format(
                 "[%s] Copying Trade!\nWhale: %s\nMarket: %s\nOutcome: %s\nAction: %s\nAmount: $%.2f",
                 isSimulation ? "SIMULATION" : "REAL",
-                whaleAddress, marketTitle, outcome, type, copyAmount);
+                whaleAddress, marketTitle, outcome, type, amount);
 
-        System.out.println(logMsg);
         notifier.sendAlert("📋 " + logMsg);
+        return logMsg;
+    }
+
+    /**
+     * Sizes and copies a trade on the CLOB, or logs it in simulation.
+     * 计算跟单金额并在 CLOB 上跟单；模拟模式下仅记录。
+     *
+     * Never blocks on the network: sizing uses the cached market and book, the
+     * order is handed to the execution engine and its outcome reported when the
+     * CLOB answers.
+     * 从不在网络上阻塞：定额使用缓存的市场和订单簿，订单交给执行引擎，在 CLOB 响应后报告结果。
+     *
+     * @param market        Cached market of the trade, or null if it could not be loaded / 交易所在的缓存市场；无法加载时为 null
+     * @param detectedNanos {@link System#nanoTime()} when the trade was dispatched / 分发交易时的 {@link System#nanoTime()}
+     */
+    public void executeCopyTrade(Trade trade, MarketDataCache.Market market, long detectedNanos) {
+        // One snapshot for the whole trade / 整笔交易使用同一快照
+        BotConfig config = configs.current();
+        double maxSlippage = config.copyMaxSlippage();
+        String outcome = String.valueOf(trade.outcomeIndex());
+        OrderSigner.Side side = "Sell".equalsIgnoreCase(trade.type()) ? OrderSigner.Side.SELL : OrderSigner.Side.BUY;
+        double whaleShares = Double.parseDouble(trade.amount());
+        double whalePrice = whaleShares > 0 ? Double.parseDouble(trade.collateralAmount()) / whaleShares : Double.NaN;
+        double limit = side == OrderSigner.Side.BUY ? whalePrice + maxSlippage : whalePrice - maxSlippage;
+
+        String tokenId = market != null ? market.tokenId(trade.outcomeIndex()) : null;
+        // A zero share amount would price the copy at 0.99 or 0.01 / 份额为零会使跟单价格变为 0.99 或 0.01
+        String skip = !(whalePrice > 0 && whalePrice < 1) ? "bad_price"
+                : market == null ? "no_market"
+                : !market.acceptingOrders() ? "closed"
+                : tokenId == null ? "no_token"
+                // Orders are priced in whole cents / 订单按整分定价
+                : market.tickSize() > 0.01 ? "tick_size"
+                : null;
+        // Buys are reserved against the caps here and must be booked or released below
+        // 买单在此按上限预留，之后必须记账或释放
+        RiskEngine.Decision decision = skip != null ? RiskEngine.Decision.skip(skip)
+                : sizeCopy(config, risk, ledger, trade, market.conditionId(), tokenId, side, limit,
+                        market.book(trade.outcomeIndex()), market.minOrderSize());
+        skip = decision.reason();
+        if (skip != null) {
+            metrics.counter("copy_skipped_total", "Copy trades skipped before submission", "reason", skip).inc();
+            events.copySkipped(skip, trade.creator(), trade.title(), trade.outcomeIndex());
+            return;
+        }
+        double amount = decision.amount();
+
+        events.orderSubmitted(tokenId, trade.creator(), trade.title(), side.name(), trade.outcomeIndex(), limit, amount,
+                isSimulation);
+        if (isSimulation) {
+            logCopy(trade.creator(), trade.title(), outcome, trade.type(), amount);
+            // Simulated copies fill in full at the whale's price / 模拟跟单按巨鲸价格全部成交
+            double shares = amount / (side == OrderSigner.Side.BUY ? whalePrice : limit);
+            recordFill(side, market, tokenId, trade, amount, shares, shares * whalePrice);
+            return;
+        }
+
+        engine.submit(tokenId, market.negRisk(), side, limit, amount, detectedNanos).whenComplete((result, error) -> {
+            String head = String.format("[REAL] %s $%.2f, limit %.2f\nMarket: %s\nOutcome: %s\nWhale: %s",
+                    side, amount, limit, trade.title(), outcome, trade.creator());
+            if (error != null) {
+                release(side, market, trade, amount);
+                events.orderResult(null, "error", trade.title(), error.getMessage(), false);
+                System.err.println("Order submission failed: " + error.getMessage());
+                notifier.sendAlert("❌ " + head + "\nOrder failed / 下单失败: " + error.getMessage());
+            } else if (!result.success()) {
+                release(side, market, trade, amount);
+                events.orderResult(result.orderId(), result.status(), trade.title(), result.error(), false);
+                System.err.println("Order rejected: " + result.error());
+                notifier.sendAlert("❌ " + head + "\nRejected / 被拒绝: " + result.error());
+            } else {
+                events.orderResult(result.orderId(), result.status(), trade.title(), null, true);
+                notifier.sendAlert("✅ " + head + "\nOrder / 订单: " + result.orderId() + " (" + result.status() + ")");
+                if (result.resting()) {
+                    engine.trackFill(result.orderId()).whenComplete((fill, trackError) -> {
+                        if (trackError != null) {
+                            // The order may be live and partly filled, so the reservation stays / 订单可能仍有效且部分成交，因此预留保留
+                            System.err.println("Fill tracking failed for " + result.orderId() + ", keeping $"
+                                    + amount + " reserved: " + trackError.getMessage());
+                            return;
+                        }
+                        double filled = fill.sizeMatched();
+                        if (fill.unsettled()) {
+                            // The cancel was not confirmed: book what filled and keep the rest reserved, as it may
+                            // still fill / 撤单未确认：记入已成交部分，其余保持预留，因为仍可能成交
+                            recordFill(side, market, tokenId, trade, filled * limit, filled, filled * limit);
+                            notifier.sendAlert(String.format("⚠️ Order %s not confirmed cancelled, %.2f/%.2f shares"
+                                    + " filled, the rest stays reserved / 订单未确认取消，其余部分保持预留",
+                                    fill.orderId(), fill.sizeMatched(), fill.originalSize()));
+                            return;
+                        }
+                        recordFill(side, market, tokenId, trade, amount, filled, filled * limit);
+                        notifier.sendAlert(String.format("📈 Order %s %s: %.2f/%.2f shares filled / 已成交份额",
+                                fill.orderId(), fill.status(), fill.sizeMatched(), fill.originalSize()));
+                    });
+                } else {
+                    recordMatched(side, market, tokenId, trade, amount, limit, result);
+                }
+            }
+        });
+
+        // Keep both sides signed for this market so the whale's next move is a cache hit
+        // 为该市场双向预签名，使巨鲸的下一次操作命中缓存
+        engine.prepare(tokenId, market.negRisk(), OrderSigner.Side.BUY, amount);
+        engine.prepare(tokenId, market.negRisk(), OrderSigner.Side.SELL, amount);
+    }
+
+    /**
+     * Books the immediate match of an order; the CLOB reports what was given
+     * (making) and received (taking), USDC and shares for a buy, the reverse for
+     * a sell.
+     * 记录订单的即时成交；CLOB 报告付出（making）和收到（taking）的数量，买单为 USDC 和份额，卖单相反。
+     */
+    private void recordMatched(OrderSigner.Side side, MarketDataCache.Market market, String tokenId, Trade trade,
+            double amount, double limit, ClobExecutionEngine.OrderResult result) {
+        double making = parseAmount(result.makingAmount());
+        double taking = parseAmount(result.takingAmount());
+        boolean buy = side == OrderSigner.Side.BUY;
+        double usdc = buy ? making : taking;
+        double shares = buy ? taking : making;
+        if (!(usdc > 0 && shares > 0)) {
+            if (!"matched".equalsIgnoreCase(result.status())) {
+                release(side, market, trade, amount);
+                return;
+            }
+            // Matched without amounts: assume filled at the limit / 已成交但无数量：假定按限价成交
+            shares = amount / limit;
+            usdc = buy ? amount : shares * limit;
+        }
+        recordFill(side, market, tokenId, trade, amount, shares, usdc);
+    }
+
+    private void recordFill(OrderSigner.Side side, MarketDataCache.Market market, String tokenId, Trade trade,
+            double amount, double shares, double usdc) {
+        if (side == OrderSigner.Side.BUY) {
+            ledger.recordBuy(tokenId, market.conditionId(), trade.outcomeIndex(), trade.title(), trade.creator(),
+                    amount, shares, usdc);
+        } else if (shares > 0) {
+            ledger.recordSell(tokenId, trade.creator(), shares, usdc);
+        }
+    }
+
+    /** Gives back a buy's reservation; sells reserve nothing. / 归还买单的预留；卖单不预留。 */
+    private void release(OrderSigner.Side side, MarketDataCache.Market market, Trade trade, double amount) {
+        if (side == OrderSigner.Side.BUY) {
+            ledger.release(market.conditionId(), trade.creator(), amount);
+        }
+    }
+
+    private static double parseAmount(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Pre-signs buys for every outcome of a newly cached market (REAL mode only).
+     * 为新缓存市场的每个结果预签名买单（仅 REAL 模式）。
+     */
+    public void prepareMarket(MarketDataCache.Market market) {
+        if (isSimulation || !market.acceptingOrders()) {
+            return;
+        }
+        BotConfig config = configs.current();
+        double amount = quantize(Math.min(config.copyTradeAmount(), config.copyMaxAmount()));
+        for (String tokenId : market.tokenIds()) {
+            engine.prepare(tokenId, market.negRisk(), OrderSigner.Side.BUY, amount);
+        }
+    }
+
+    /**
+     * Sizes a copy and checks it against the risk caps; shared with {@link ReplayEngine}
+     * so a backtest takes the same decisions as the live bot. A buy that is allowed
+     * comes back reserved in {@code ledger} and must be booked or released.
+     * 计算跟单金额并按风控上限检查；与 {@link ReplayEngine} 共用，使回测与实盘机器人做出相同决定。
+     * 允许的买单已在 {@code ledger} 中预留，之后必须记账或释放。
+     *
+     * @param book         Book of the outcome, or null if unknown / 该结果的订单簿，未知时为 null
+     * @param minOrderSize Minimum shares per order, 0 for none / 每笔订单的最小份额，0 表示不限
+     * @return USDC to submit, or the skip reason / 要提交的 USDC，或跳过原因
+     */
+    static RiskEngine.Decision sizeCopy(BotConfig config, RiskEngine risk, PositionLedger ledger, Trade trade,
+            String conditionId, String tokenId, OrderSigner.Side side, double limit, MarketDataCache.Book book,
+            double minOrderSize) {
+        double sized = size(config, trade, book, side, limit);
+        if (sized < 1) {
+            return RiskEngine.Decision.skip("too_small");
+        }
+        if (sized / Math.max(limit, 0.01) < minOrderSize) {
+            return RiskEngine.Decision.skip("below_min_size");
+        }
+        RiskEngine.Decision decision = side == OrderSigner.Side.BUY
+                ? risk.reserveBuy(config, trade.creator(), conditionId, sized)
+                : risk.checkSell(tokenId, sized, limit);
+        if (decision.allowed() && decision.amount() / Math.max(limit, 0.01) < minOrderSize) {
+            if (side == OrderSigner.Side.BUY) {
+                ledger.release(conditionId, trade.creator(), decision.amount());
+            }
+            return RiskEngine.Decision.skip("below_min_size");
+        }
+        return decision;
+    }
+
+    /**
+     * Copy notional in USDC: fixed or proportional, capped by {@code COPY_MAX_AMOUNT}
+     * and by a share of the fresh book depth within the limit, then rounded down
+     * to a 1-2-5 step so repeat sizes hit the pre-signed ladders.
+     * 跟单金额（USDC）：固定或按比例，受 {@code COPY_MAX_AMOUNT} 和限价内最新订单簿深度的一定比例限制，
+     * 再向下取整到 1-2-5 档位，使重复金额命中预签名阶梯。
+     */
+    private static double size(BotConfig config, Trade trade, MarketDataCache.Book book, OrderSigner.Side side,
+            double limit) {
+        double ratio = config.copyRatio();
+        double amount = ratio > 0 ? Double.parseDouble(trade.collateralAmount()) / 1e6 * ratio
+                : config.copyTradeAmount();
+        amount = Math.min(amount, config.copyMaxAmount());
+        if (book != null && book.ageMillis() < BOOK_MAX_AGE_MILLIS) {
+            double depth = side == OrderSigner.Side.BUY ? book.askNotional(limit) : book.bidNotional(limit);
+            amount = Math.min(amount, depth * config.copyMaxBookShare());
+        }
+        return quantize(amount);
+    }
 
-        if (!isSimulation) {
-            // Real execution logic will go here in Phase 3.5
-            // 真实的执行逻辑将在第 3.5 阶段放在这里
-            System.err.println("Real trading not yet implemented in Java CLOB client.");
+    /** Rounds down to 1, 2, 5, 10, 20, 50... / 向下取整到 1、2、5、10、20、50…… */
+    static double quantize(double amount) {
+        if (amount < 1) {
+            return 0;
         }
+        double decade = Math.pow(10, Math.floor(Math.log10(amount)));
+        double mantissa = amount / decade;
+        return (mantissa >= 5 ? 5 : mantissa >= 2 ? 2 : 1) * decade;
     }
 }
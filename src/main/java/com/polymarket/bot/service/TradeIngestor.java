@@ -0,0 +1,202 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pages through new fpmmTrades using a (creationTimestamp, id) cursor.
+ * 使用 (creationTimestamp, id) 游标分页拉取新的 fpmmTrades。
+ *
+ * Each call drains the backlog since the last cursor in chronological order, so
+ * bursts larger than one page and trades sharing the same second are never lost.
+ * 每次调用都按时间顺序拉取自上次游标以来的全部积压，因此超过一页的突发交易和同一秒内的交易都不会丢失。
+ */
+public class TradeIngestor {
+
+    private static final int MIN_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 1000; // Subgraph hard limit for `first` / 子图 `first` 的上限
+    private static final int MAX_PAGES_PER_POLL = 50;
+    private static final int RECENT_ID_CAPACITY = 10_000;
+
+    private static final GraphQLClient.Template TRADES_QUERY = GraphQLClient.Template.compile(
+            "query Trades($first: Int!, $orderBy: FpmmTrade_orderBy!, $where: FpmmTrade_filter!) {"
+                    + " fpmmTrades(first: $first, orderBy: $orderBy, orderDirection: asc, where: $where) {"
+                    + " id creationTimestamp title outcomeIndex type amount collateralAmount creator { id }"
+                    + " fpmm { conditions { id } } } }");
+
+    private static final Comparator<Trade> BY_ID = Comparator.comparing(Trade::id);
+    private static final Comparator<Trade> BY_TIMESTAMP_THEN_ID = Comparator
+            .comparingLong(Trade::creationTimestamp)
+            .thenComparing(Trade::id);
+
+    private final SubgraphMirrors graph;
+    private final SubgraphDecoder decoder;
+    // Pre-rendered JSON array for `creator_in`, or null for all creators / 预先生成的 `creator_in` JSON 数组，null 表示全部
+    private final String creatorsJson;
+
+    // Cursor: trades before cursorTimestamp (and, while draining, up to cursorId) are done
+    // 游标：cursorTimestamp 之前（排空时直到 cursorId）的交易均已处理
+    private long cursorTimestamp;
+    private String cursorId;
+    private boolean cursorSecondDone = false;
+    private int pageSize = MIN_PAGE_SIZE;
+    // True while the last call stopped at the page limit / 上次调用因达到页数上限而停止时为 true
+    private boolean backlog;
+
+    // Bounded, insertion-ordered set of recently seen trade IDs / 最近已处理交易 ID 的有界集合
+    private final RecentIdSet recentIds = new RecentIdSet(RECENT_ID_CAPACITY);
+
+    public TradeIngestor(SubgraphMirrors graph, SubgraphDecoder decoder, long startTimestamp) {
+        this(graph, decoder, startTimestamp, null);
+    }
+
+    /**
+     * @param creators Only ingest trades by these lower-cased addresses, or null for all / 仅拉取这些小写地址的交易，null 表示全部
+     */
+    public TradeIngestor(SubgraphMirrors graph, SubgraphDecoder decoder, long startTimestamp, List<String> creators) {
+        this.graph = graph;
+        this.decoder = decoder;
+        this.cursorTimestamp = startTimestamp;
+        if (creators == null) {
+            this.creatorsJson = null;
+        } else {
+            // Addresses are validated hex, so no escaping is needed / 地址已校验为十六进制，无需转义
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < creators.size(); i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append('"').append(creators.get(i)).append('"');
+            }
+            this.creatorsJson = sb.append(']').toString();
+        }
+    }
+
+    public long getCursorTimestamp() {
+        return cursorTimestamp;
+    }
+
+    /**
+     * @return true if trades after the cursor were left for the next call / 游标之后仍有交易留待下次调用时返回 true
+     */
+    public synchronized boolean hasBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Fetches all trades newer than the cursor, oldest first, without duplicates.
+     * 获取游标之后的所有交易（按时间从旧到新），不含重复。
+     *
+     * At most {@code MAX_PAGES_PER_POLL} pages are read per call; the remainder is
+     * picked up on the next call since the cursor only moves past trades returned.
+     * 每次调用最多读取 {@code MAX_PAGES_PER_POLL} 页；剩余部分会在下次调用时继续。
+     *
+     * @return new trades in chronological order / 按时间顺序排列的新交易
+     * @throws IOException on network or HTTP errors / 网络或 HTTP 错误时抛出
+     */
+    public synchronized List<Trade> fetchNewTrades() throws IOException {
+        List<Trade> result = new ArrayList<>();
+        int pages = 0;
+
+        while (pages < MAX_PAGES_PER_POLL) {
+            int requested = pageSize;
+            pages++;
+
+            if (cursorId != null) {
+                // More trades in one second than a page holds: page through it by id
+                // 同一秒的交易超过一页：按 id 分页
+                String afterId = cursorId;
+                long second = cursorTimestamp;
+                List<Trade> page = fetchPage(g -> {
+                    g.writeStringField("creationTimestamp", Long.toString(second));
+                    g.writeStringField("id_gt", afterId);
+                }, "id", requested);
+                for (Trade trade : page) {
+                    cursorId = trade.id();
+                    accept(trade, result);
+                }
+                adaptPageSize(page.size(), requested);
+                if (page.size() < requested) {
+                    cursorId = null;
+                    cursorSecondDone = true;
+                }
+                continue;
+            }
+
+            // Re-read the cursor second (`_gte`) so late same-second trades are caught; the
+            // recent-id set filters the ones already processed.
+            // 重新读取游标所在秒（`_gte`）以捕获同秒的新交易；已处理的由去重集合过滤。
+            String op = cursorSecondDone ? "creationTimestamp_gt" : "creationTimestamp_gte";
+            long since = cursorTimestamp;
+            List<Trade> page = fetchPage(g -> g.writeStringField(op, Long.toString(since)),
+                    "creationTimestamp", requested);
+            long maxTimestamp = cursorTimestamp;
+            for (Trade trade : page) {
+                maxTimestamp = Math.max(maxTimestamp, trade.creationTimestamp());
+                accept(trade, result);
+            }
+            boolean full = page.size() >= requested;
+            adaptPageSize(page.size(), requested);
+
+            if (maxTimestamp > cursorTimestamp) {
+                cursorTimestamp = maxTimestamp;
+                cursorSecondDone = false;
+            } else if (full) {
+                // A full page without progress: switch to id paging for this second
+                // 整页都在同一秒：切换为按 id 分页
+                cursorId = "";
+                continue;
+            }
+            if (!full) {
+                backlog = false;
+                return result;
+            }
+        }
+        backlog = true;
+
+        System.out.println("Ingestion backlog remains after " + pages + " pages, continuing next poll. / 积压未处理完，下次轮询继续。");
+        return result;
+    }
+
+    private void accept(Trade trade, List<Trade> result) {
+        String id = trade.id();
+        if (recentIds.add(id)) {
+            result.add(trade);
+        }
+    }
+
+    /**
+     * Grows the page when full and shrinks it when mostly empty.
+     * 页面满时扩大，基本为空时缩小。
+     */
+    private void adaptPageSize(int returned, int requested) {
+        if (returned >= requested) {
+            pageSize = Math.min(requested * 2, MAX_PAGE_SIZE);
+        } else if (returned < requested / 4) {
+            pageSize = Math.max(requested / 2, MIN_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Reads one page, merged across the mirrors the page is fanned out to.
+     * 读取一页，结果合并自该页扇出到的各个镜像。
+     *
+     * @param cursor Writes the cursor conditions into the {@code where} filter / 将游标条件写入 {@code where} 过滤器
+     */
+    private List<Trade> fetchPage(GraphQLClient.Variables cursor, String orderBy, int first) throws IOException {
+        return graph.fetchTrades(TRADES_QUERY, g -> {
+            g.writeNumberField("first", first);
+            g.writeStringField("orderBy", orderBy);
+            g.writeObjectFieldStart("where");
+            if (creatorsJson != null) {
+                g.writeFieldName("creator_in");
+                g.writeRawValue(creatorsJson);
+            }
+            cursor.write(g);
+            g.writeEndObject();
+        }, decoder, "id".equals(orderBy) ? BY_ID : BY_TIMESTAMP_THEN_ID, first);
+    }
+}
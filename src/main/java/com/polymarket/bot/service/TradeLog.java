@@ -0,0 +1,306 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded fpmmTrades in a compact columnar file, read through a memory map.
+ * 以紧凑列式文件记录的 fpmmTrades，通过内存映射读取。
+ *
+ * Layout (big-endian): a 32-byte header, then one column per field (timestamps,
+ * token and USDC amounts as raw longs; creator and market as dictionary
+ * indexes; outcome and side as bytes), then the creator and market dictionaries.
+ * A trade costs 30 bytes, so months of history map in well under a gigabyte,
+ * and replay threads share the mapping with no decoding up front.
+ * 布局（大端）：32 字节文件头，然后每个字段一列（时间戳、代币和 USDC 数量为原始 long；
+ * 创建者和市场为字典索引；结果和方向为字节），最后是创建者和市场字典。
+ * 每笔交易占 30 字节，因此数月的历史映射后远小于 1 GB，回放线程共享映射且无需预先解码。
+ *
+ * Trade ids are not recorded. / 不记录交易 ID。
+ */
+public class TradeLog {
+
+    private static final int MAGIC = 0x504D544C; // "PMTL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ADDRESS_BYTES = 20;
+    private static final String BUY = "Buy";
+    private static final String SELL = "Sell";
+
+    private final int count;
+    private final LongBuffer timestamps;
+    private final LongBuffer amounts;
+    private final LongBuffer collaterals;
+    private final IntBuffer creatorIds;
+    private final IntBuffer marketIds;
+    private final ByteBuffer outcomes;
+    private final ByteBuffer sides;
+    private final String[] creators;
+    private final String[] titles;
+    private final String[] conditionIds;
+    private final int maxOutcome;
+
+    private TradeLog(MappedByteBuffer map) throws IOException {
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a trade log (version " + VERSION + ")");
+        }
+        this.count = map.getInt(8);
+        int creatorCount = map.getInt(12);
+        int marketCount = map.getInt(16);
+
+        int offset = HEADER_BYTES;
+        this.timestamps = map.slice(offset, count * Long.BYTES).asLongBuffer();
+        offset += count * Long.BYTES;
+        this.amounts = map.slice(offset, count * Long.BYTES).asLongBuffer();
+        offset += count * Long.BYTES;
+        this.collaterals = map.slice(offset, count * Long.BYTES).asLongBuffer();
+        offset += count * Long.BYTES;
+        this.creatorIds = map.slice(offset, count * Integer.BYTES).asIntBuffer();
+        offset += count * Integer.BYTES;
+        this.marketIds = map.slice(offset, count * Integer.BYTES).asIntBuffer();
+        offset += count * Integer.BYTES;
+        this.outcomes = map.slice(offset, count);
+        offset += count;
+        this.sides = map.slice(offset, count);
+        offset += count;
+
+        this.creators = new String[creatorCount];
+        byte[] address = new byte[ADDRESS_BYTES];
+        for (int i = 0; i < creatorCount; i++) {
+            map.get(offset, address);
+            offset += ADDRESS_BYTES;
+            creators[i] = ("0x" + HexFormat.of().formatHex(address)).intern();
+        }
+        this.titles = new String[marketCount];
+        this.conditionIds = new String[marketCount];
+        for (int i = 0; i < marketCount; i++) {
+            int length = map.getInt(offset);
+            titles[i] = readString(map, offset + Integer.BYTES, length);
+            offset += Integer.BYTES + length;
+            length = map.getInt(offset);
+            conditionIds[i] = length == 0 ? null : readString(map, offset + Integer.BYTES, length);
+            offset += Integer.BYTES + length;
+        }
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, outcomes.get(i));
+        }
+        this.maxOutcome = max;
+    }
+
+    /**
+     * Maps a log written by {@link Writer}. Files are limited to 2 GB.
+     * 映射由 {@link Writer} 写入的日志。文件大小上限为 2 GB。
+     */
+    public static TradeLog open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new TradeLog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long timestamp(int i) {
+        return timestamps.get(i);
+    }
+
+    public int creatorId(int i) {
+        return creatorIds.get(i);
+    }
+
+    public int marketId(int i) {
+        return marketIds.get(i);
+    }
+
+    public int outcome(int i) {
+        return outcomes.get(i);
+    }
+
+    public boolean isBuy(int i) {
+        return sides.get(i) == 0;
+    }
+
+    /** Raw outcome token amount (6 decimals). / 原始结果代币数量（6 位小数）。 */
+    public long amount(int i) {
+        return amounts.get(i);
+    }
+
+    /** Raw USDC amount (6 decimals). / 原始 USDC 数量（6 位小数）。 */
+    public long collateral(int i) {
+        return collaterals.get(i);
+    }
+
+    public String creator(int creatorId) {
+        return creators[creatorId];
+    }
+
+    public int creatorCount() {
+        return creators.length;
+    }
+
+    public int marketCount() {
+        return titles.length;
+    }
+
+    /** Highest outcome index in the log. / 日志中最大的结果索引。 */
+    public int maxOutcome() {
+        return maxOutcome;
+    }
+
+    /**
+     * Decodes one trade; safe to call from several threads.
+     * 解码一笔交易；可从多个线程调用。
+     */
+    public Trade trade(int i) {
+        int market = marketIds.get(i);
+        return new Trade(null, timestamps.get(i), titles[market], outcomes.get(i), isBuy(i) ? BUY : SELL,
+                Long.toString(amounts.get(i)), Long.toString(collaterals.get(i)), creators[creatorIds.get(i)],
+                conditionIds[market]);
+    }
+
+    private static String readString(ByteBuffer map, int offset, int length) {
+        byte[] bytes = new byte[length];
+        map.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).intern();
+    }
+
+    /**
+     * Buffers trades in column arrays and writes the file on {@link #close()}.
+     * Trades must be appended oldest first.
+     * 将交易缓存在列数组中，在 {@link #close()} 时写入文件。交易必须按时间从旧到新追加。
+     */
+    public static final class Writer implements AutoCloseable {
+        private final Path file;
+        private int count;
+        private long[] timestamps = new long[1024];
+        private long[] amounts = new long[1024];
+        private long[] collaterals = new long[1024];
+        private int[] creatorIds = new int[1024];
+        private int[] marketIds = new int[1024];
+        private byte[] outcomes = new byte[1024];
+        private byte[] sides = new byte[1024];
+        private final Map<String, Integer> creators = new HashMap<>();
+        private final Map<String, Integer> markets = new HashMap<>();
+        private final List<String[]> marketEntries = new ArrayList<>();
+
+        public Writer(Path file) {
+            this.file = file;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void append(Trade trade) {
+            if (count > 0 && trade.creationTimestamp() < timestamps[count - 1]) {
+                throw new IllegalArgumentException("Trades must be appended oldest first: " + trade.id());
+            }
+            if (count == timestamps.length) {
+                int capacity = count * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                collaterals = Arrays.copyOf(collaterals, capacity);
+                creatorIds = Arrays.copyOf(creatorIds, capacity);
+                marketIds = Arrays.copyOf(marketIds, capacity);
+                outcomes = Arrays.copyOf(outcomes, capacity);
+                sides = Arrays.copyOf(sides, capacity);
+            }
+            timestamps[count] = trade.creationTimestamp();
+            amounts[count] = raw(trade.amount());
+            collaterals[count] = raw(trade.collateralAmount());
+            creatorIds[count] = creators.computeIfAbsent(trade.creator(), c -> creators.size());
+            String marketKey = trade.conditionId() != null ? trade.conditionId() : trade.title();
+            marketIds[count] = markets.computeIfAbsent(marketKey, k -> {
+                marketEntries.add(new String[] { trade.title() != null ? trade.title() : "", trade.conditionId() });
+                return marketEntries.size() - 1;
+            });
+            outcomes[count] = (byte) trade.outcomeIndex();
+            sides[count] = (byte) ("Sell".equalsIgnoreCase(trade.type()) ? 1 : 0);
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            String[] creatorList = new String[creators.size()];
+            creators.forEach((address, id) -> creatorList[id] = address);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(count).putInt(creatorList.length)
+                    .putInt(marketEntries.size());
+            ByteBuffer columns = ByteBuffer.allocate(count * (3 * Long.BYTES + 2 * Integer.BYTES + 2));
+            columns.asLongBuffer().put(timestamps, 0, count);
+            columns.position(columns.position() + count * Long.BYTES);
+            columns.asLongBuffer().put(amounts, 0, count);
+            columns.position(columns.position() + count * Long.BYTES);
+            columns.asLongBuffer().put(collaterals, 0, count);
+            columns.position(columns.position() + count * Long.BYTES);
+            columns.asIntBuffer().put(creatorIds, 0, count);
+            columns.position(columns.position() + count * Integer.BYTES);
+            columns.asIntBuffer().put(marketIds, 0, count);
+            columns.position(columns.position() + count * Integer.BYTES);
+            columns.put(outcomes, 0, count).put(sides, 0, count);
+
+            List<ByteBuffer> dictionaries = new ArrayList<>();
+            ByteBuffer addresses = ByteBuffer.allocate(creatorList.length * ADDRESS_BYTES);
+            for (String address : creatorList) {
+                byte[] raw = HexFormat.of().parseHex(address.substring(2));
+                if (raw.length != ADDRESS_BYTES) {
+                    throw new IOException("Not an address: " + address);
+                }
+                addresses.put(raw);
+            }
+            dictionaries.add(addresses);
+            for (String[] entry : marketEntries) {
+                byte[] title = entry[0].getBytes(StandardCharsets.UTF_8);
+                byte[] condition = entry[1] != null ? entry[1].getBytes(StandardCharsets.UTF_8) : new byte[0];
+                dictionaries.add(ByteBuffer.allocate(2 * Integer.BYTES + title.length + condition.length)
+                        .putInt(title.length).put(title).putInt(condition.length).put(condition));
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header.clear());
+                writeFully(channel, columns.flip());
+                for (ByteBuffer buffer : dictionaries) {
+                    writeFully(channel, buffer.flip());
+                }
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /** Raw subgraph integers; the few that overflow a long are clamped. / 子图原始整数；超出 long 的少数值被截断。 */
+        private static long raw(String value) {
+            if (value == null || value.isEmpty()) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return new BigInteger(value).min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pushes the watchlist into the subgraph as sharded `creator_in` queries.
+ * 将观察列表以分片的 `creator_in` 查询下推到子图。
+ *
+ * The watchlist is split into shards of at most {@code shardSize} addresses, each
+ * with its own cursor ({@link TradeIngestor}). Shards are queried concurrently on
+ * the shared subgraph mirrors and their results merged in timestamp order.
+ * 观察列表被拆分为最多 {@code shardSize} 个地址的分片，每个分片有自己的游标。
+ * 各分片在共享的子图镜像上并发查询，结果按时间戳顺序合并。
+ */
+public class TradeQueryPlanner {
+
+    private static final int MAX_CONCURRENT_SHARDS = 8;
+    private static final int RECENT_ID_CAPACITY = 10_000;
+
+    private static final Comparator<Trade> BY_TIMESTAMP_THEN_ID = Comparator
+            .comparingLong(Trade::creationTimestamp)
+            .thenComparing(Trade::id);
+
+    private final SubgraphMirrors graph;
+    private final SubgraphDecoder decoder;
+    private final int shardSize;
+    private final ExecutorService shardExecutor;
+
+    private long plannedVersion = -1;
+    private List<TradeIngestor> shards = List.of();
+    private long watermark;
+    // Oldest cursor of a shard that failed, has a backlog or has not polled yet; read without the lock
+    // 失败、有积压或尚未轮询的分片中最旧的游标；无需加锁即可读取
+    private volatile long unfetchedFrom;
+    // Earlier start for addresses taken over from another node, applied at the next replan
+    // 从其他节点接管的地址的更早起点，在下次重新规划时应用
+    private final Map<String, Long> backfillFrom = new HashMap<>();
+
+    // Re-planned shards restart from the common watermark, so dedup across shards
+    // 重新规划的分片从共同水位线开始，因此需要跨分片去重
+    private final RecentIdSet recentIds = new RecentIdSet(RECENT_ID_CAPACITY);
+
+    public TradeQueryPlanner(SubgraphMirrors graph, SubgraphDecoder decoder, long startTimestamp, int shardSize) {
+        this.graph = graph;
+        this.decoder = decoder;
+        this.watermark = startTimestamp;
+        this.unfetchedFrom = startTimestamp;
+        this.shardSize = Math.max(1, shardSize);
+        this.shardExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_SHARDS, r -> {
+            Thread t = new Thread(r, "trade-shard");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Oldest cursor across all shards: every trade before it has been ingested.
+     * 所有分片中最旧的游标：在此之前的交易都已拉取。
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Oldest trade time that may not have been fetched yet: the cursor of a shard
+     * whose last poll failed or stopped at the page limit. Shards that polled to
+     * the end do not hold it back, even when their whales are idle and their
+     * cursors stay old.
+     * 可能尚未拉取的最早交易时间：上次轮询失败或达到页数上限的分片的游标。
+     * 已轮询到末尾的分片不会阻挡它，即使其巨鲸不活跃、游标停留在较早时间。
+     *
+     * @return the timestamp, or {@link Long#MAX_VALUE} if every shard is caught up / 时间戳；所有分片均已追上时为 {@link Long#MAX_VALUE}
+     */
+    public long oldestUnfetchedTimestamp() {
+        return unfetchedFrom;
+    }
+
+    /**
+     * Starts these addresses from an earlier timestamp when the next watchlist
+     * change is planned, so trades made while they had no owner are fetched.
+     * 在规划下一次观察列表变化时，让这些地址从更早的时间戳开始，从而拉取它们无人负责期间的交易。
+     */
+    public synchronized void backfill(Collection<String> addresses, long fromTimestamp) {
+        for (String address : addresses) {
+            backfillFrom.merge(address, fromTimestamp, Math::min);
+        }
+    }
+
+    /**
+     * Fetches new trades for the given watchlist, oldest first.
+     * 获取给定观察列表的新交易（按时间从旧到新）。
+     *
+     * A failed shard keeps its cursor and is retried on the next call; only when
+     * every shard fails is the error rethrown.
+     * 失败的分片保留游标并在下次调用时重试；只有所有分片都失败时才抛出错误。
+     *
+     * @param watchlist Current watchlist snapshot / 当前观察列表快照
+     * @return merged new trades / 合并后的新交易
+     * @throws IOException if all shards failed / 如果所有分片都失败
+     */
+    public synchronized List<Trade> fetchNewTrades(AddressIndex.Snapshot watchlist) throws IOException {
+        if (watchlist.version() != plannedVersion) {
+            replan(watchlist);
+        }
+        if (shards.isEmpty()) {
+            return List.of();
+        }
+
+        List<Future<List<Trade>>> futures = new ArrayList<>(shards.size());
+        for (TradeIngestor shard : shards) {
+            futures.add(shardExecutor.submit(shard::fetchNewTrades));
+        }
+
+        List<Trade> merged = new ArrayList<>();
+        IOException lastError = null;
+        int failed = 0;
+        long unfetched = Long.MAX_VALUE;
+        for (int i = 0; i < futures.size(); i++) {
+            TradeIngestor shard = shards.get(i);
+            try {
+                merged.addAll(futures.get(i).get());
+                if (shard.hasBacklog()) {
+                    unfetched = Math.min(unfetched, shard.getCursorTimestamp());
+                }
+            } catch (ExecutionException e) {
+                failed++;
+                unfetched = Math.min(unfetched, shard.getCursorTimestamp());
+                lastError = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while polling shards", e);
+            }
+        }
+
+        long newWatermark = Long.MAX_VALUE;
+        for (TradeIngestor shard : shards) {
+            newWatermark = Math.min(newWatermark, shard.getCursorTimestamp());
+        }
+        watermark = newWatermark;
+        unfetchedFrom = unfetched;
+
+        if (failed == shards.size()) {
+            throw lastError;
+        }
+        if (failed > 0) {
+            System.err.println(failed + "/" + shards.size() + " shards failed, retrying next poll: "
+                    + lastError.getMessage());
+        }
+
+        merged.sort(BY_TIMESTAMP_THEN_ID);
+        List<Trade> result = new ArrayList<>(merged.size());
+        for (Trade trade : merged) {
+            if (recentIds.add(trade.id())) {
+                result.add(trade);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the watchlist into shards that resume from the current watermark, or
+     * earlier for a shard holding an address to backfill.
+     * 将观察列表拆分为分片，各分片从当前水位线继续；包含需回填地址的分片从更早处开始。
+     */
+    private void replan(AddressIndex.Snapshot watchlist) {
+        List<String> addresses = new ArrayList<>(watchlist.addresses());
+        addresses.sort(null);
+
+        List<TradeIngestor> planned = new ArrayList<>();
+        long unfetched = Long.MAX_VALUE;
+        for (int i = 0; i < addresses.size(); i += shardSize) {
+            List<String> chunk = addresses.subList(i, Math.min(i + shardSize, addresses.size()));
+            long start = watermark;
+            for (String address : chunk) {
+                Long from = backfillFrom.remove(address);
+                if (from != null) {
+                    start = Math.min(start, from);
+                }
+            }
+            planned.add(new TradeIngestor(graph, decoder, start, List.copyOf(chunk)));
+            unfetched = Math.min(unfetched, start);
+        }
+        // New shards have fetched nothing yet / 新分片尚未拉取任何内容
+        unfetchedFrom = unfetched;
+
+        shards = planned;
+        plannedVersion = watchlist.version();
+        System.out.println("Query plan: " + addresses.size() + " addresses in " + shards.size()
+                + " shards / 查询计划：" + addresses.size() + " 个地址，" + shards.size() + " 个分片");
+    }
+}
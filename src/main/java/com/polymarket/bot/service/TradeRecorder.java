@@ -0,0 +1,57 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.polymarket.bot.model.Trade;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Records fpmmTrades history from the activity subgraph into a {@link TradeLog}.
+ * 从活动子图记录 fpmmTrades 历史到 {@link TradeLog}。
+ */
+public class TradeRecorder {
+
+    private static final long PROGRESS_LOG_INTERVAL = 50_000;
+
+    private TradeRecorder() {
+    }
+
+    /**
+     * Pages through [from, to] with the live ingestor's cursor and writes the trades oldest first.
+     * 使用实时拉取器的游标分页读取 [from, to]，按时间从旧到新写入交易。
+     *
+     * @param creators Only these lower-cased addresses, or null for all trades / 仅这些小写地址，null 表示全部交易
+     * @return trades written / 写入的交易数
+     */
+    public static int record(BotConfig config, Path file, long fromTimestamp, long toTimestamp, List<String> creators)
+            throws IOException {
+        Metrics metrics = new Metrics();
+        UpstreamClient upstream = new UpstreamClient(config, metrics);
+        SubgraphMirrors graph = new SubgraphMirrors("activity", WhaleWatcher.activityEndpoints(config), upstream,
+                new JsonFactory(), false, 1, Long.MAX_VALUE, metrics);
+        TradeIngestor ingestor = new TradeIngestor(graph, new SubgraphDecoder(new JsonFactory()), fromTimestamp,
+                creators);
+
+        try (TradeLog.Writer writer = new TradeLog.Writer(file)) {
+            long nextLog = PROGRESS_LOG_INTERVAL;
+            while (true) {
+                List<Trade> page = ingestor.fetchNewTrades();
+                for (Trade trade : page) {
+                    if (trade.creationTimestamp() <= toTimestamp) {
+                        writer.append(trade);
+                    }
+                }
+                if (writer.size() >= nextLog) {
+                    System.out.println("Recorded " + writer.size() + " trades up to " + ingestor.getCursorTimestamp()
+                            + " / 已记录 " + writer.size() + " 笔交易");
+                    nextLog += PROGRESS_LOG_INTERVAL;
+                }
+                if (page.isEmpty() || ingestor.getCursorTimestamp() > toTimestamp) {
+                    return writer.size();
+                }
+            }
+        }
+    }
+}
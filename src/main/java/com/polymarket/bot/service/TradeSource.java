@@ -0,0 +1,45 @@
+package com.polymarket.bot.service;
+
+/**
+ * Decides when the poll pipeline should look for new trades.
+ * 决定轮询流水线何时查找新交易。
+ *
+ * A source calls the tick it was started with whenever new trades may be
+ * available, and is told the outcome of every fetch so it can pace itself.
+ * 数据源在可能有新交易时调用启动时传入的 tick，并获知每次拉取的结果以便自行调节节奏。
+ */
+public interface TradeSource {
+
+    /**
+     * Starts signalling; {@code tick} must not block.
+     * 开始发出信号；{@code tick} 不得阻塞。
+     */
+    void start(Runnable tick);
+
+    /**
+     * Called after each fetch completes. / 每次拉取完成后调用。
+     *
+     * @param newTrades Trades returned by the fetch / 本次拉取返回的交易数
+     * @param failed    True if the fetch threw / 拉取抛出异常时为 true
+     */
+    void onFetch(int newTrades, boolean failed);
+
+    void stop();
+
+    /**
+     * Builds the source selected by {@code TRADE_SOURCE}: adaptive polling by default, or FIXED.
+     * 根据 {@code TRADE_SOURCE} 构建数据源：默认自适应轮询，或 FIXED 固定间隔。
+     */
+    static TradeSource fromConfig(BotConfig config, Metrics metrics) {
+        if ("FIXED".equalsIgnoreCase(config.get("TRADE_SOURCE"))) {
+            return new FixedIntervalSource(config.getLong("POLL_INTERVAL_MS", 5000));
+        }
+        // Sub-second polling while whales trade, backing off when quiet / 巨鲸交易时亚秒级轮询，安静时放缓
+        AdaptivePollSource adaptive = new AdaptivePollSource(
+                config.getLong("POLL_MIN_INTERVAL_MS", 500),
+                config.getLong("POLL_MAX_INTERVAL_MS", 5000));
+        metrics.gauge("poll_interval_seconds", "Current adaptive poll interval",
+                () -> adaptive.getIntervalMillis() / 1000.0);
+        return adaptive;
+    }
+}
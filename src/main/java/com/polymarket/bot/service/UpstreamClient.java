@@ -0,0 +1,272 @@
+package com.polymarket.bot.service;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared HTTP client for the Goldsky subgraphs.
+ * Goldsky 子图的共享 HTTP 客户端。
+ *
+ * Owns the connection pool, dispatcher limits and protocol list (HTTP/2 is
+ * preferred and multiplexes calls over one connection when the endpoint offers
+ * it). Each call is bounded by a call timeout, hedged with a second request if
+ * no response arrives within the hedge delay, and retried on network errors,
+ * 429 and 5xx with exponential backoff and full jitter. A circuit breaker per
+ * endpoint makes calls fail fast while it is down.
+ * 管理连接池、调度器限制和协议列表（优先 HTTP/2，端点支持时在单个连接上多路复用）。
+ * 每次调用受调用超时限制；若在对冲延迟内未收到响应，会再发一个对冲请求；遇到网络错误、429 和 5xx 时
+ * 以指数退避加完全抖动重试。每个端点各有一个熔断器，端点故障期间调用会快速失败。
+ */
+public class UpstreamClient {
+
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private final OkHttpClient client;
+    private final Metrics metrics;
+    private final int maxAttempts;
+    private final long hedgeDelayMillis;
+    private final long callTimeoutMillis;
+    private final int breakerFailures;
+    private final long breakerOpenMillis;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public UpstreamClient(BotConfig config, Metrics metrics) {
+        this.metrics = metrics;
+
+        // Idle connections kept per pool; with HTTP/2 one connection carries many calls
+        // 连接池保留的空闲连接数；使用 HTTP/2 时一个连接可承载多个调用
+        int maxIdle = config.getInt("UPSTREAM_MAX_IDLE_CONNECTIONS", 8);
+        // Async calls (hedges) are capped per host by the dispatcher; all subgraphs share one host
+        // 异步调用（对冲）按主机受调度器限制；所有子图共用一个主机
+        int maxPerHost = config.getInt("UPSTREAM_MAX_REQUESTS_PER_HOST", 32);
+        this.maxAttempts = Math.max(1, config.getInt("UPSTREAM_MAX_ATTEMPTS", 3));
+        this.hedgeDelayMillis = config.getLong("UPSTREAM_HEDGE_DELAY_MS", 2000);
+        this.callTimeoutMillis = config.getLong("UPSTREAM_CALL_TIMEOUT_MS", 15_000);
+        this.breakerFailures = Math.max(1, config.getInt("UPSTREAM_BREAKER_FAILURES", 5));
+        this.breakerOpenMillis = config.getLong("UPSTREAM_BREAKER_OPEN_MS", 30_000);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(64, maxPerHost));
+        dispatcher.setMaxRequestsPerHost(maxPerHost);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(maxIdle, 5, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true) // Stale pooled connections only / 仅针对失效的池化连接
+                .addNetworkInterceptor(new HttpMetricsInterceptor(metrics));
+
+        // Configure Proxy for OkHttp (Goldsky API)
+        String proxyHost = config.get("HTTP_PROXY_HOST");
+        String proxyPort = config.get("HTTP_PROXY_PORT");
+
+        if (proxyHost != null && !proxyHost.isEmpty() && proxyPort != null && !proxyPort.isEmpty()) {
+            builder.proxy(new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                    new java.net.InetSocketAddress(proxyHost, Integer.parseInt(proxyPort))));
+            System.out.println("Upstream client using HTTP Proxy: " + proxyHost + ":" + proxyPort);
+        }
+        this.client = builder.build();
+    }
+
+    public long getCallTimeoutMillis() {
+        return callTimeoutMillis;
+    }
+
+    /**
+     * @return false while the circuit breaker for this URL rejects calls / 该 URL 的熔断器拒绝调用期间返回 false
+     */
+    public boolean isAvailable(String url) {
+        CircuitBreaker breaker = breakers.get(endpoint(HttpUrl.get(url)));
+        return breaker == null || breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Executes a request with breaker, hedging and retries. The caller must close the response.
+     * 带熔断、对冲和重试地执行请求。调用方必须关闭响应。
+     *
+     * Only use this for idempotent requests (subgraph queries are reads).
+     * 仅用于幂等请求（子图查询都是只读的）。
+     *
+     * @param callTimeoutMillis Bound on each attempt / 每次尝试的时间上限
+     * @return the final response; may be non-2xx once retries are exhausted / 最终响应；重试用尽后可能为非 2xx
+     * @throws IOException on network errors after all attempts, or if the circuit is open / 所有尝试均出现网络错误或熔断器打开时抛出
+     */
+    public Response execute(Request request, long callTimeoutMillis) throws IOException {
+        String upstream = HttpMetricsInterceptor.upstreamName(request.url());
+        CircuitBreaker breaker = breakers.computeIfAbsent(endpoint(request.url()), url -> {
+            CircuitBreaker created = new CircuitBreaker(upstream, breakerFailures, breakerOpenMillis);
+            metrics.gauge("upstream_circuit_open", "1 while the circuit breaker rejects calls",
+                    () -> created.getState() == CircuitBreaker.State.CLOSED ? 0 : 1, "upstream", upstream);
+            return created;
+        });
+
+        for (int attempt = 1;; attempt++) {
+            if (!breaker.tryAcquire()) {
+                metrics.counter("upstream_rejected_total", "Calls rejected by an open circuit",
+                        "upstream", upstream).inc();
+                throw new IOException("Circuit open for " + upstream + " / " + upstream + " 熔断中");
+            }
+
+            long waitMillis;
+            boolean reported = false;
+            try {
+                Response response = hedged(request, callTimeoutMillis, upstream);
+                if (!retryable(response.code())) {
+                    breaker.onSuccess(); // Reachable, even if the request was bad / 可达，即使请求本身有误
+                    reported = true;
+                    return response;
+                }
+                breaker.onFailure();
+                reported = true;
+                if (attempt >= maxAttempts) {
+                    return response;
+                }
+                waitMillis = Math.max(backoff(attempt), retryAfterMillis(response));
+                response.close();
+            } catch (IOException e) {
+                breaker.onFailure();
+                reported = true;
+                if (attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                waitMillis = backoff(attempt);
+            } finally {
+                // Anything else thrown still ends a half-open probe / 抛出的其他异常同样结束半开探测
+                if (!reported) {
+                    breaker.onFailure();
+                }
+            }
+
+            metrics.counter("upstream_retries_total", "Upstream calls retried", "upstream", upstream).inc();
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during retry backoff");
+            }
+        }
+    }
+
+    /**
+     * Sends the request and, if it is still pending after the hedge delay, a copy;
+     * whichever responds first wins and the other is cancelled.
+     * 发送请求；若超过对冲延迟仍未响应，再发送一份副本；先响应者胜出，另一个被取消。
+     */
+    private Response hedged(Request request, long timeoutMillis, String upstream) throws IOException {
+        CompletableFuture<Winner> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        Call primary = enqueue(request, timeoutMillis, first, pending);
+        Call hedge = null;
+        Winner won = null;
+        try {
+            if (hedgeDelayMillis > 0 && hedgeDelayMillis < timeoutMillis) {
+                try {
+                    won = first.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+                    return won.response();
+                } catch (TimeoutException e) {
+                    metrics.counter("upstream_hedges_total", "Hedge requests sent", "upstream", upstream).inc();
+                    pending.incrementAndGet();
+                    hedge = enqueue(request, timeoutMillis - hedgeDelayMillis, first, pending);
+                }
+            }
+            won = first.get();
+            return won.response();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Failing the future makes a later response close itself; one already delivered holds a pooled
+            // connection and is closed here / 使 future 失败后，之后到达的响应会自行关闭；已送达的响应占用连接池中的连接，在此关闭
+            if (!first.completeExceptionally(e) && !first.isCompletedExceptionally()) {
+                first.join().response().close();
+            }
+            throw new InterruptedIOException("Interrupted waiting for upstream");
+        } finally {
+            // Cancel whichever call did not produce the winning response / 取消未产生胜出响应的调用
+            for (Call call : new Call[] { primary, hedge }) {
+                if (call != null && (won == null || won.call() != call)) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+
+    private Call enqueue(Request request, long timeoutMillis, CompletableFuture<Winner> first,
+            AtomicInteger pending) {
+        Call call = client.newCall(request);
+        call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call c, Response response) {
+                if (!first.complete(new Winner(c, response))) {
+                    response.close(); // Lost the race / 竞速失败
+                }
+            }
+
+            @Override
+            public void onFailure(Call c, IOException e) {
+                if (pending.decrementAndGet() == 0) {
+                    first.completeExceptionally(e);
+                }
+            }
+        });
+        return call;
+    }
+
+    private record Winner(Call call, Response response) {
+    }
+
+    /**
+     * Breaker key: the URL without its query, so lookups by query parameter share one breaker.
+     * 熔断器键：去掉查询参数的 URL，使按查询参数的查找共用一个熔断器。
+     */
+    private static String endpoint(HttpUrl url) {
+        return url.newBuilder().query(null).build().toString();
+    }
+
+    private static boolean retryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * Exponential backoff with full jitter. / 带完全抖动的指数退避。
+     */
+    private static long backoff(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static long retryAfterMillis(Response response) {
+        String header = response.header("Retry-After");
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Math.min(MAX_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            return 0; // HTTP-date form is not used by Goldsky / Goldsky 不使用 HTTP 日期格式
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-address rolling stats used to pick smart-money whales.
+ * 用于挑选聪明钱巨鲸的按地址滚动统计。
+ *
+ * Stats live in an LRU cache with a TTL. A refresh rebuilds them from the
+ * address's last 24h of trades; between refreshes they are updated
+ * incrementally from the trades we already ingest, so the subgraph only needs
+ * to be re-queried for entries that have gone stale.
+ * 统计数据保存在带 TTL 的 LRU 缓存中。刷新时根据该地址过去 24 小时的交易重建；
+ * 两次刷新之间根据已拉取的交易增量更新，因此只有过期的条目才需要重新查询子图。
+ */
+public class WhaleScorer {
+
+    private static final long DAY_SECONDS = 86400;
+
+    private final int capacity;
+    private final long ttlMillis;
+    // Guarded by this; replaced on config reload / 由 this 保护；配置重新加载时替换
+    private int maxDailyTrades;
+    private double minWinRate;
+    private final boolean logRejections;
+
+    private final Map<String, TraderStats> cache;
+
+    public WhaleScorer(int capacity, long ttlMillis, int maxDailyTrades, double minWinRate) {
+        this(capacity, ttlMillis, maxDailyTrades, minWinRate, true);
+    }
+
+    /**
+     * @param logRejections Log why candidates fail {@link #qualifies} (off for replay) / 记录候选人未通过 {@link #qualifies} 的原因（回放时关闭）
+     */
+    public WhaleScorer(int capacity, long ttlMillis, int maxDailyTrades, double minWinRate, boolean logRejections) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.maxDailyTrades = maxDailyTrades;
+        this.minWinRate = minWinRate;
+        this.logRejections = logRejections;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TraderStats> eldest) {
+                return size() > WhaleScorer.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Records the profit reported by the PnL subgraph.
+     * 记录 PnL 子图报告的利润。
+     */
+    public synchronized void recordProfit(String address, double profit) {
+        TraderStats s = stats(address);
+        s.profit = profit;
+        s.realizedPnl = 0; // Now included in the subgraph figure / 已包含在子图数值中
+    }
+
+    /**
+     * @return true if the 24h activity must be re-fetched from the subgraph / 如果需要从子图重新获取 24 小时活动则返回 true
+     */
+    public synchronized boolean isStale(String address, long nowMillis) {
+        TraderStats s = cache.get(address);
+        return s == null || nowMillis - s.refreshedAtMillis > ttlMillis;
+    }
+
+    /**
+     * Replaces the 24h activity and win rate with a fresh upstream result.
+     * 用最新的上游结果替换 24 小时活动和胜率。
+     *
+     * Candidates are not watched yet, so their fills never reach {@link #onTrade};
+     * the wins and losses come from replaying these trades instead. Their PnL is
+     * already in the subgraph profit and is not added again.
+     * 候选人尚未被观察，其成交不会进入 {@link #onTrade}；盈亏次数改为通过重放这些交易得出。
+     * 其盈亏已包含在子图利润中，不会重复计入。
+     *
+     * @param trades Trades in the last 24h (capped at maxDailyTrades + 1) / 过去 24 小时的交易（最多 maxDailyTrades + 1 笔）
+     */
+    public synchronized void refreshActivity(String address, List<Trade> trades, long nowMillis) {
+        TraderStats s = stats(address);
+        s.recentTrades.clear();
+        s.positions.clear();
+        s.wins = 0;
+        s.losses = 0;
+        trades.stream()
+                .sorted(Comparator.comparingLong(Trade::creationTimestamp))
+                .forEach(trade -> {
+                    s.recentTrades.add(trade.creationTimestamp());
+                    s.applyFill(trade);
+                });
+        s.refreshedAtMillis = nowMillis;
+    }
+
+    /**
+     * Updates stats from an ingested trade.
+     * 根据拉取到的交易更新统计。
+     */
+    public synchronized void onTrade(Trade trade) {
+        TraderStats s = cache.get(trade.creator());
+        if (s == null) {
+            return; // Only track addresses we are scoring / 只跟踪正在评分的地址
+        }
+        // The ring keeps at most maxDailyTrades + 1, enough to tell a bot / 环形缓冲最多保留 maxDailyTrades + 1 个，足以识别机器人
+        s.recentTrades.add(trade.creationTimestamp());
+        s.recentTrades.dropUpTo(trade.creationTimestamp() - DAY_SECONDS);
+        s.realizedPnl += s.applyFill(trade);
+    }
+
+    /**
+     * @return true if the address is a human, profitable trader with a good win rate / 如果地址是盈利且胜率达标的真人交易者则返回 true
+     */
+    public synchronized boolean qualifies(String address, long nowSeconds) {
+        TraderStats s = cache.get(address);
+        if (s == null) {
+            return false;
+        }
+        if (s.tradesSince(nowSeconds - DAY_SECONDS) > maxDailyTrades) {
+            if (logRejections)
+                System.out.println("⚠️ Detected Bot: " + address + " / 检测到机器人：" + address);
+            return false;
+        }
+        if (s.profit + s.realizedPnl <= 0) {
+            if (logRejections)
+                System.out.println("Skipping Low Profit user: " + address);
+            return false;
+        }
+        // No closed trades seen yet: fall back to profitability alone / 尚无平仓记录：仅以盈利判断
+        if (s.wins + s.losses > 0 && s.winRate() < minWinRate) {
+            if (logRejections)
+                System.out.println("Skipping Low Win Rate user: " + address + " (" + String.format("%.2f", s.winRate()) + ")");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies new filter thresholds from a config reload.
+     * 应用配置重新加载后的新过滤阈值。
+     *
+     * A larger trade limit needs longer activity rings, so those are resized and
+     * marked stale to be re-queried on the next check.
+     * 更大的交易上限需要更长的活动环形缓冲，因此会调整其大小并标记为过期，在下次检查时重新查询。
+     */
+    public synchronized void setThresholds(int maxDailyTrades, double minWinRate) {
+        this.minWinRate = minWinRate;
+        if (maxDailyTrades == this.maxDailyTrades) {
+            return;
+        }
+        this.maxDailyTrades = maxDailyTrades;
+        for (TraderStats s : cache.values()) {
+            s.recentTrades = s.recentTrades.resized(maxDailyTrades + 1);
+            s.refreshedAtMillis = 0;
+        }
+    }
+
+    /**
+     * Starts scoring an address from its trades alone, without a PnL subgraph figure.
+     * 仅根据交易开始为地址评分，不使用 PnL 子图数值。
+     */
+    public synchronized void track(String address) {
+        stats(address);
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    private TraderStats stats(String address) {
+        return cache.computeIfAbsent(address, a -> new TraderStats(maxDailyTrades + 1));
+    }
+
+    /**
+     * Rolling stats for one address. Guarded by the scorer's lock.
+     * 单个地址的滚动统计，由评分器的锁保护。
+     */
+    private static final class TraderStats {
+        long refreshedAtMillis;
+        double profit;
+        // Realized since the last profit refresh / 自上次利润刷新以来的已实现盈亏
+        double realizedPnl;
+        int wins;
+        int losses;
+        TimestampRing recentTrades;
+        // Average entry per (market, outcome): [shares, cost] / 每个（市场，结果）的平均建仓：[份额, 成本]
+        final Map<PositionKey, double[]> positions = new HashMap<>();
+
+        TraderStats(int recentCapacity) {
+            this.recentTrades = new TimestampRing(recentCapacity);
+        }
+
+        int tradesSince(long cutoffSeconds) {
+            return recentTrades.countAfter(cutoffSeconds);
+        }
+
+        double winRate() {
+            return wins / (double) (wins + losses);
+        }
+
+        /**
+         * A sell above the average entry price counts as a win.
+         * 高于平均建仓价卖出计为一次盈利。
+         *
+         * @return the PnL realized by this fill, 0 for buys / 此次成交实现的盈亏，买入为 0
+         */
+        double applyFill(Trade trade) {
+            double shares = parse(trade.amount());
+            double collateral = parse(trade.collateralAmount());
+            if (shares <= 0) {
+                return 0;
+            }
+            // Titles are not unique across markets; the condition id is / 标题在不同市场间不唯一；条件 ID 唯一
+            PositionKey key = new PositionKey(trade.conditionId() != null ? trade.conditionId() : trade.title(),
+                    trade.outcomeIndex());
+            if ("Buy".equalsIgnoreCase(trade.type())) {
+                double[] position = positions.computeIfAbsent(key, k -> new double[2]);
+                position[0] += shares;
+                position[1] += collateral;
+                return 0;
+            }
+            // Sells of positions opened before we started watching are ignored / 忽略开始观察前建立的仓位的卖出
+            double[] position = positions.get(key);
+            if (position == null) {
+                return 0;
+            }
+            double sold = Math.min(shares, position[0]);
+            double entryCost = position[1] * sold / position[0];
+            double pnl = collateral * sold / shares - entryCost;
+            if (pnl > 0)
+                wins++;
+            else
+                losses++;
+            position[0] -= sold;
+            position[1] -= entryCost;
+            if (position[0] <= 0) {
+                positions.remove(key);
+            }
+            return pnl;
+        }
+
+        private static double parse(String raw) {
+            if (raw == null) {
+                return 0;
+            }
+            // Subgraph BigInts are plain digits: skip the general float parser / 子图 BigInt 为纯数字：跳过通用浮点解析
+            int length = raw.length();
+            if (length > 0 && length <= 18) {
+                long value = 0;
+                int i = 0;
+                while (i < length) {
+                    char c = raw.charAt(i);
+                    if (c < '0' || c > '9')
+                        break;
+                    value = value * 10 + (c - '0');
+                    i++;
+                }
+                if (i == length) {
+                    return value;
+                }
+            }
+            try {
+                return Double.parseDouble(raw);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @param market Condition id, or the title for trades decoded without one / 条件 ID；解码时没有条件 ID 的交易使用标题
+     */
+    private record PositionKey(String market, int outcomeIndex) {
+    }
+
+    /**
+     * Ascending timestamps in a fixed ring; the oldest is overwritten when full.
+     * 固定大小环形缓冲中的升序时间戳；满时覆盖最旧的。
+     */
+    private static final class TimestampRing {
+        private final long[] values;
+        private int head;
+        private int size;
+
+        TimestampRing(int capacity) {
+            this.values = new long[Math.max(1, capacity)];
+        }
+
+        void add(long timestamp) {
+            values[(head + size) % values.length] = timestamp;
+            if (size < values.length) {
+                size++;
+            } else {
+                head = (head + 1) % values.length;
+            }
+        }
+
+        void dropUpTo(long cutoff) {
+            while (size > 0 && values[head] <= cutoff) {
+                head = (head + 1) % values.length;
+                size--;
+            }
+        }
+
+        int countAfter(long cutoff) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[(head + i) % values.length] > cutoff)
+                    n++;
+            }
+            return n;
+        }
+
+        /**
+         * Copy with a new capacity, keeping the newest timestamps.
+         * 以新容量复制，保留最新的时间戳。
+         */
+        TimestampRing resized(int capacity) {
+            TimestampRing copy = new TimestampRing(capacity);
+            for (int i = Math.max(0, size - copy.values.length); i < size; i++) {
+                copy.add(values[(head + i) % values.length]);
+            }
+            return copy;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
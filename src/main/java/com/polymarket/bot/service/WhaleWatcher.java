@@ -1,20 +1,28 @@
 package com.polymarket.bot.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.cdimascio.dotenv.Dotenv;
-import okhttp3.*;
+import com.polymarket.bot.model.FlowSignal;
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+import com.polymarket.bot.model.Trader;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeMap;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutorService;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 
 /**
@@ -24,17 +32,25 @@ import java.util.ArrayList;
 public class WhaleWatcher {
 
     private final TelegramNotifier notifier;
-    private final OkHttpClient client;
+    private final UpstreamClient upstream;
     private final ObjectMapper mapper;
+    private final SubgraphDecoder decoder;
 
     // In Phase 1, we hardcode or fetch a small list.
     // For simplicity in this demo step, let's keep a hardcoded list of "known
     // whales" or just fetch top 5.
     // 在第一阶段，我们硬编码或获取一个小列表。
     // 为了简化这个演示步骤，我们保留一个硬编码的“已知巨鲸”列表或仅获取前 5 名。
-    private final Set<String> watchedAddresses = ConcurrentHashMap.newKeySet();
-    private final Set<String> manualWatchlist = ConcurrentHashMap.newKeySet();
-    private boolean initialDiscoveryDone = false;
+    // Manual and smart-money addresses share one primitive index, tagged by flag
+    // 手动地址和聪明钱地址共用一个原始类型索引，以标志区分
+    private final AddressIndex watchedAddresses = new AddressIndex();
+    // Cluster mode: the part of the watchlist this node owns, else null / 集群模式：本节点拥有的观察列表部分，否则为 null
+    private final ClusterCoordinator cluster;
+    private final AddressIndex ownedAddresses = new AddressIndex();
+    // Versions ownedAddresses was built from; written after it, so a reader that sees them sees the index
+    // 构建 ownedAddresses 所依据的版本；在其之后写入，读取方看到版本即能看到对应索引
+    private volatile long ownedWatchVersion = -1;
+    private volatile long ownedRingVersion = Long.MIN_VALUE;
 
     // Goldsky Subgraph URLs (Example public endpoints, may need specific project
     // IDs in production)
@@ -44,75 +60,180 @@ public class WhaleWatcher {
     private static final String PNL_SUBGRAPH_URL = "https://api.goldsky.com/api/public/project_cl6mb8i9h0003e201j6li0diw/subgraphs/pnl-subgraph/0.0.14/gn";
     private static final String ACTIVITY_SUBGRAPH_URL = "https://api.goldsky.com/api/public/project_cl6mb8i9h0003e201j6li0diw/subgraphs/activity-subgraph/0.0.4/gn";
 
-    private long lastCheckedTimestamp = System.currentTimeMillis() / 1000;
-
-    private final int maxDailyTrades;
-    private final double minWinRate;
+    private static final GraphQLClient.Template PING_QUERY = GraphQLClient.Template.compile(
+            "{ fpmmTrades(first: 1, orderBy: creationTimestamp, orderDirection: desc) { creationTimestamp } }");
+    private static final GraphQLClient.Template TOP_USERS_QUERY = GraphQLClient.Template.compile(
+            "query TopUsers($first: Int!) { users(first: $first, orderBy: profit, orderDirection: desc) { id profit } }");
+    private static final String ACTIVITY_ALIAS = "a";
+    // Markets the manual whales traded recently, loaded at startup / 手动巨鲸近期交易的市场，启动时加载
+    private static final GraphQLClient.Template RECENT_MARKETS_QUERY = GraphQLClient.Template.compile(
+            "query RecentMarkets($creators: [String!]!, $first: Int!) { fpmmTrades(first: $first,"
+                    + " orderBy: creationTimestamp, orderDirection: desc, where: { creator_in: $creators })"
+                    + " { id creationTimestamp title outcomeIndex type amount collateralAmount"
+                    + " creator { id } fpmm { conditions { id } } } }");
+    private static final int WARM_TRADES = 200;
+    // Smart-money addresses kept from each discovery scan / 每次发现扫描保留的聪明钱地址数
+    private static final int SMART_MONEY_SIZE = 20;
+
+    private final SubgraphMirrors activityGraph;
+    private final SubgraphMirrors pnlGraph;
+    private final SubgraphMirrors discoveryGraph;
+    private final TradeQueryPlanner queryPlanner;
+
+    // Aliased activity queries, one compiled template per batch size / 别名活动查询，每种批量大小一个编译模板
+    private final Map<Integer, GraphQLClient.Template> activityBatchQueries = new ConcurrentHashMap<>();
+
+    private static final long DISCOVERY_REQUEST_DEADLINE_SECONDS = 10;
+
+    private final ConfigManager configs;
+    private final EventLog events;
+    // Null when fills are dispatched one by one / 逐笔分发成交时为 null
+    private final FlowAggregator flows;
+    // Highest watermark the dispatcher has asked for / 分发器请求过的最高水位线
+    private final AtomicLong requestedWatermark = new AtomicLong();
+    // First-fill timestamps of alerts Telegram has not confirmed, with counts; guarded by itself
+    // Telegram 尚未确认的警报的首笔成交时间戳及其数量；由自身保护
+    private final TreeMap<Long, Integer> pendingAlerts = new TreeMap<>();
 
     private final TradeExecutor tradeExecutor;
-
-    public WhaleWatcher(TelegramNotifier notifier, TradeExecutor tradeExecutor) {
+    private final MarketDataCache marketCache;
+    private final StateStore stateStore;
+    private final WhaleScorer scorer;
+    private final DiscoveryEngine discovery;
+    private final int discoveryCandidates;
+    private final int discoveryBatchSize;
+    private final Metrics.Histogram discoveryScanTime;
+
+    public WhaleWatcher(TelegramNotifier notifier, TradeExecutor tradeExecutor, ConfigManager configs,
+            EventLog events, Metrics metrics) {
         this.notifier = notifier;
         this.tradeExecutor = tradeExecutor;
+        this.configs = configs;
+        this.events = events;
         this.mapper = new ObjectMapper();
+        this.decoder = new SubgraphDecoder(mapper.getFactory());
+        BotConfig config = configs.current();
 
-        // Load dotenv first needed for Proxy config
-        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
-
-        // Configure Proxy for OkHttp (Goldsky API)
-        String proxyHost = dotenv.get("HTTP_PROXY_HOST");
-        if (proxyHost == null)
-            proxyHost = System.getenv("HTTP_PROXY_HOST");
-
-        String proxyPort = dotenv.get("HTTP_PROXY_PORT");
-        if (proxyPort == null)
-            proxyPort = System.getenv("HTTP_PROXY_PORT");
-
-        if (proxyHost != null && !proxyHost.isEmpty() && proxyPort != null && !proxyPort.isEmpty()) {
-            java.net.Proxy proxy = new java.net.Proxy(java.net.Proxy.Type.HTTP,
-                    new java.net.InetSocketAddress(proxyHost, Integer.parseInt(proxyPort)));
-            this.client = new OkHttpClient.Builder()
-                    .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                    .readTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                    .proxy(proxy)
-                    .build();
-            System.out.println("WhaleWatcher using HTTP Proxy: " + proxyHost + ":" + proxyPort);
-        } else {
-            this.client = new OkHttpClient.Builder()
-                    .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                    .readTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                    .build();
-        }
+        // Pooled, retrying, circuit-broken client shared by all subgraph queries
+        // 所有子图查询共享的带连接池、重试和熔断的客户端
+        this.upstream = new UpstreamClient(config, metrics);
 
-        // Load manual watchlist from env / 从环境变量加载手动观察列表
-        String manualList = dotenv.get("MANUAL_WATCHLIST");
-        if (manualList == null)
-            manualList = System.getenv("MANUAL_WATCHLIST");
-
-        if (manualList != null && !manualList.isEmpty()) {
-            String[] addresses = manualList.split(",");
-            for (String addr : addresses) {
-                String cleanAddr = addr.trim();
-                if (!cleanAddr.isEmpty()) {
-                    watchedAddresses.add(cleanAddr);
-                    manualWatchlist.add(cleanAddr);
-                    System.out.println("Added manual watch address: " + cleanAddr + " / 已添加手动观察地址：" + cleanAddr);
-                }
+        // Manual watchlist, validated by the config snapshot / 手动观察列表，由配置快照校验
+        for (String address : config.manualWatchlist()) {
+            System.out.println("Added manual watch address: " + address + " / 已添加手动观察地址：" + address);
+        }
+        watchedAddresses.addAll(config.manualWatchlist(), AddressIndex.MANUAL);
+
+        // Instances sharing CLUSTER_DIR split the watchlist between them / 共享 CLUSTER_DIR 的实例之间划分观察列表
+        String clusterDir = config.get("CLUSTER_DIR");
+        if (clusterDir != null) {
+            try {
+                this.cluster = new ClusterCoordinator(new FileClusterMembership(Path.of(clusterDir)),
+                        config.get("CLUSTER_NODE_ID", config.get("HOSTNAME", "node") + "-" + ProcessHandle.current().pid()),
+                        TimeUnit.SECONDS.toMillis(config.getLong("CLUSTER_LEASE_SECONDS", 15)),
+                        config.getInt("CLUSTER_VIRTUAL_NODES", 64), metrics);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open cluster directory", e);
             }
+            cluster.start();
+            metrics.gauge("cluster_owned_addresses", "Watched addresses owned by this node",
+                    () -> pollIndex().size());
+        } else {
+            this.cluster = null;
         }
 
         // Load filter config / 加载过滤配置
-        String maxTradesStr = dotenv.get("MAX_DAILY_TRADES");
-        if (maxTradesStr == null)
-            maxTradesStr = System.getenv("MAX_DAILY_TRADES");
-        this.maxDailyTrades = (maxTradesStr != null) ? Integer.parseInt(maxTradesStr) : 50;
+        System.out.println("Bot Filter: Max Daily Trades = " + config.maxDailyTrades() + ", Min Win Rate = "
+                + config.minWinRate());
+
+        // Cached candidate stats, re-queried after the TTL / 缓存的候选人统计，TTL 过期后重新查询
+        long scoreTtlMinutes = config.getLong("SCORE_TTL_MINUTES", 120);
+        this.scorer = new WhaleScorer(5000, TimeUnit.MINUTES.toMillis(scoreTtlMinutes), config.maxDailyTrades(),
+                config.minWinRate());
+
+        // Discovery checks get their own bounded executor and a per-request deadline
+        // 发现检查使用独立的有界线程池和单请求截止时间
+        this.discoveryCandidates = Math.min(config.getInt("DISCOVERY_CANDIDATES", 50), 1000);
+        int discoveryConcurrency = config.getInt("DISCOVERY_CONCURRENCY", 32);
+
+        // Candidates whose activity is fetched per aliased request / 每个别名请求获取活动的候选人数
+        this.discoveryBatchSize = Math.max(1, config.getInt("DISCOVERY_BATCH_SIZE", 25));
+
+        this.discovery = new DiscoveryEngine(discoveryConcurrency,
+                TimeUnit.SECONDS.toMillis(DISCOVERY_REQUEST_DEADLINE_SECONDS));
+
+        // Gzip request bodies only if the endpoint accepts them / 仅在端点支持时压缩请求体
+        boolean gzipRequests = config.getBoolean("GRAPHQL_GZIP_REQUESTS", false);
+
+        // Equivalent mirrors per subgraph, comma-separated, preferred first / 每个子图的等价镜像，逗号分隔，优先的在前
+        int fanOut = config.getInt("MIRROR_FANOUT", 2);
+        long maxLagSeconds = config.getLong("MIRROR_MAX_LAG_SECONDS", 30);
+        this.activityGraph = new SubgraphMirrors("activity",
+                activityEndpoints(config), upstream, mapper.getFactory(),
+                gzipRequests, fanOut, maxLagSeconds, metrics);
+        this.pnlGraph = new SubgraphMirrors("pnl",
+                endpoints(config, "PNL_SUBGRAPH_URLS", PNL_SUBGRAPH_URL), upstream, mapper.getFactory(),
+                gzipRequests, fanOut, maxLagSeconds, metrics);
+        activityGraph.startLagProbe(decoder, config.getLong("MIRROR_PROBE_SECONDS", 15));
+        this.discoveryGraph = activityGraph.withCallTimeout(TimeUnit.SECONDS.toMillis(DISCOVERY_REQUEST_DEADLINE_SECONDS));
+
+        // Watchlist is pushed into the subgraph in shards / 观察列表按分片下推到子图
+        int shardSize = config.getInt("WATCHLIST_SHARD_SIZE", 100);
+        // Resume from the persisted watermark so restarts don't lose trades / 从持久化水位线继续，重启不丢交易
+        try {
+            this.stateStore = new StateStore(Path.of(config.get("STATE_DIR", "state")));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open state store", e);
+        }
+        long startTimestamp = stateStore.getWatermark();
+        if (startTimestamp == 0) {
+            startTimestamp = System.currentTimeMillis() / 1000;
+            stateStore.advanceWatermark(startTimestamp);
+        } else {
+            System.out.println("Resuming from watermark " + startTimestamp + " / 从水位线 " + startTimestamp + " 继续");
+        }
+        this.queryPlanner = new TradeQueryPlanner(activityGraph, decoder, startTimestamp, shardSize);
+
+        // Market metadata and books for sizing copies without a round-trip / 用于跟单定额的市场元数据和订单簿，无需往返请求
+        this.marketCache = new MarketDataCache(upstream, mapper.getFactory(),
+                config.get("GAMMA_URL", "https://gamma-api.polymarket.com"),
+                config.get("CLOB_URL", "https://clob.polymarket.com"),
+                config.getInt("MARKET_CACHE_SIZE", 500),
+                TimeUnit.MINUTES.toMillis(config.getLong("MARKET_CACHE_TTL_MINUTES", 360)),
+                config.getLong("BOOK_REFRESH_MS", 2000), 100, metrics);
+        marketCache.setOnLoaded(tradeExecutor::prepareMarket);
+        // Open copy positions are marked at the cached best bid; their markets stay cached and load at startup
+        // 跟单持仓按缓存的最优买价计价；其市场保持缓存，并在启动时加载
+        PositionLedger ledger = tradeExecutor.getLedger();
+        ledger.setMarks(marketCache::bidPrice);
+        marketCache.setPinned(ledger::openMarkets);
+        marketCache.warm(ledger.openMarkets());
+        marketCache.start();
+
+        // Opt-in: fills of one whale in one market outcome are coalesced per window, at the cost of holding the
+        // alert and copy back; 0 sends every fill at once / 可选：同一巨鲸在同一市场结果上的成交按窗口合并，代价是警报和跟单被延迟；0 表示立即逐笔发送
+        long flowWindowSeconds = config.getLong("FLOW_WINDOW_SECONDS", 0);
+        if (flowWindowSeconds > 0) {
+            this.flows = new FlowAggregator(TimeUnit.SECONDS.toMillis(flowWindowSeconds),
+                    FlowAggregator.WindowMode.parse(config.get("FLOW_WINDOW_MODE", "TUMBLING")),
+                    config.getDouble("FLOW_EMIT_USDC", 1000), this::emit, metrics);
+            // The delivered fills no longer hold the watermark back / 已交付的成交不再阻挡水位线
+            flows.setOnDelivered(() -> advanceWatermark(requestedWatermark.get()));
+            flows.start();
+        } else {
+            this.flows = null;
+        }
 
-        String minWinRateStr = dotenv.get("MIN_WIN_RATE");
-        if (minWinRateStr == null)
-            minWinRateStr = System.getenv("MIN_WIN_RATE");
-        this.minWinRate = (minWinRateStr != null) ? Double.parseDouble(minWinRateStr) : 0.60;
+        // Reloads swap the manual list in one step and retune the scorer / 重新加载时一步换入手动列表并调整评分器
+        configs.addListener(this::applyConfig);
 
-        System.out.println("Bot Filter: Max Daily Trades = " + maxDailyTrades + ", Min Win Rate = " + minWinRate);
+        this.discoveryScanTime = metrics.histogram("discovery_scan_seconds", "Duration of one smart-money discovery scan",
+                Metrics.LATENCY_BUCKETS);
+        metrics.gauge("watchlist_addresses", "Addresses currently watched (manual and smart money)",
+                watchedAddresses::size);
+        metrics.gauge("scorer_cached_addresses", "Candidates with cached whale stats", scorer::size);
+        metrics.gauge("ingest_watermark_seconds", "Oldest shard cursor of the trade ingestor",
+                queryPlanner::getWatermark);
 
         // Initial "Scout": Fetch Top Traders (Simplification: Monitoring a dummy
         // address if fetch fails)
@@ -121,6 +242,65 @@ public class WhaleWatcher {
         // 实现待办：添加获取顶级用户的完整 GraphQL 查询。
     }
 
+    /**
+     * Activity subgraph mirrors from {@code ACTIVITY_SUBGRAPH_URLS}, or the public endpoint.
+     * 来自 {@code ACTIVITY_SUBGRAPH_URLS} 的活动子图镜像，或公共端点。
+     */
+    static List<String> activityEndpoints(BotConfig config) {
+        return endpoints(config, "ACTIVITY_SUBGRAPH_URLS", ACTIVITY_SUBGRAPH_URL);
+    }
+
+    private static List<String> endpoints(BotConfig config, String key, String defaultUrl) {
+        List<String> urls = config.getList(key);
+        return urls.isEmpty() ? List.of(defaultUrl) : urls;
+    }
+
+    private void applyConfig(BotConfig config) {
+        int before = watchedAddresses.size();
+        watchedAddresses.replaceFlag(config.manualWatchlist(), AddressIndex.MANUAL);
+        scorer.setThresholds(config.maxDailyTrades(), config.minWinRate());
+        System.out.println("Manual watchlist now " + config.manualWatchlist().size() + " addresses (watching "
+                + before + " -> " + watchedAddresses.size() + ") / 手动观察列表已更新");
+    }
+
+    /**
+     * Loads the markets the manual whales traded most recently, so their next
+     * trade finds metadata, books and pre-signed orders ready.
+     * 加载手动巨鲸最近交易的市场，使其下一笔交易时元数据、订单簿和预签名订单已就绪。
+     */
+    public void warmMarkets() {
+        List<String> manual = new ArrayList<>();
+        AddressIndex owned = pollIndex();
+        for (String address : owned.snapshot().addresses()) {
+            if ((owned.flags(address) & AddressIndex.MANUAL) != 0) {
+                manual.add(address);
+            }
+        }
+        if (manual.isEmpty()) {
+            return;
+        }
+        try {
+            List<Trade> recent = activityGraph.execute(RECENT_MARKETS_QUERY, g -> {
+                g.writeArrayFieldStart("creators");
+                for (String address : manual) {
+                    g.writeString(address);
+                }
+                g.writeEndArray();
+                g.writeNumberField("first", WARM_TRADES);
+            }, decoder::decodeTrades);
+            Set<String> conditionIds = new HashSet<>();
+            for (Trade trade : recent) {
+                if (trade.conditionId() != null) {
+                    conditionIds.add(trade.conditionId());
+                }
+            }
+            marketCache.warm(conditionIds);
+            System.out.println("Warming " + conditionIds.size() + " markets / 正在预热 " + conditionIds.size() + " 个市场");
+        } catch (Exception e) {
+            System.err.println("Failed to warm market cache: " + e.getMessage());
+        }
+    }
+
     /**
      * Sends a fake alert for testing purposes.
      * 发送用于测试目的的伪造警报。
@@ -147,23 +327,11 @@ public class WhaleWatcher {
      * 通过获取 1 笔全球交易来测试与 Goldsky 的连接。
      */
     public boolean testConnection() {
-        String query = "{ \"query\": \"{ fpmmTrades(first: 1, orderBy: creationTimestamp, orderDirection: desc) { creationTimestamp } }\" }";
-        Request request = new Request.Builder()
-                .url(ACTIVITY_SUBGRAPH_URL)
-                .post(RequestBody.create(query, MediaType.parse("application/json")))
-                .build();
-
         System.out.println("Testing Goldsky Connection... / 正在测试 Goldsky 连接...");
-        try (Response response = client.newCall(request).execute()) {
-            if (response.isSuccessful() && response.body() != null) {
-                System.out.println("✅ Connection Successful! (Status: " + response.code() + ") / 连接成功！（状态："
-                        + response.code() + ")");
-                return true;
-            } else {
-                System.err.println("❌ Connection Failed. Status: " + response.code());
-                System.err.println("❌ Data: " + (response.body() != null ? response.body().string() : "null"));
-                return false;
-            }
+        try {
+            activityGraph.execute(PING_QUERY, null, decoder::decodeTrades);
+            System.out.println("✅ Connection Successful! / 连接成功！");
+            return true;
         } catch (Exception e) {
             System.err.println("❌ Connection Error (Network/Proxy problem?): " + e.getMessage());
             System.err.println("❌ 连接错误（网络/代理问题？）：" + e.getMessage());
@@ -173,225 +341,380 @@ public class WhaleWatcher {
     }
 
     /**
-     * Polls for new trades.
-     * 轮询新交易。
+     * Fetch stage: fetches and decodes new trades for the watchlist.
+     * 拉取阶段：拉取并解码观察列表的新交易。
+     *
+     * @return new trades, oldest first / 新交易（按时间从旧到新）
+     * @throws IOException on network errors / 网络错误时抛出
      */
-    public void poll() {
-        try {
-            // 1. Refresh "Whales" list on startup (Auto-Discovery)
-            // 启动时刷新“巨鲸”列表（自动发现）
-            if (!initialDiscoveryDone) {
-                fetchTopTraders();
-                initialDiscoveryDone = true;
+    public List<Trade> fetchTrades() throws IOException {
+        AddressIndex owned = pollIndex();
+        long start = System.nanoTime();
+
+        // Query recent activity (Transactions/Trades) / 查询最近活动（交易）
+        // Using `fpmmTrades` (Fixed Product Market Maker Trade) filtered by `creator_in`,
+        // paged by cursor so bursts are not lost
+        // 使用按 `creator_in` 过滤的 `fpmmTrades`（固定产品做市商交易），按游标分页以免丢失突发交易
+        List<Trade> trades = queryPlanner.fetchNewTrades(owned.snapshot());
+        events.pollCompleted(owned.size(), trades.size(), System.nanoTime() - start);
+        return trades;
+    }
+
+    /**
+     * The addresses this node polls and dispatches: the whole watchlist, or in
+     * cluster mode the part it owns, rebuilt when either side changes.
+     * 本节点轮询和分发的地址：整个观察列表；集群模式下为本节点拥有的部分，任一方变化时重建。
+     */
+    private AddressIndex pollIndex() {
+        // Runs on every match; takes no lock unless ownership changed / 每次匹配都会调用；所有权未变化时不加锁
+        if (cluster == null) {
+            return watchedAddresses;
+        }
+        if (watchedAddresses.snapshot().version() != ownedWatchVersion
+                || cluster.getRingVersion() != ownedRingVersion) {
+            rebuildOwned();
+        }
+        return ownedAddresses;
+    }
+
+    /**
+     * Rebuilds the owned index. Addresses taken over after a ring change are
+     * fetched again from two leases before the persisted watermark: the previous
+     * owner may have stopped polling up to a lease before its lease ran out, and
+     * another renewal period passes before we notice. Trades that owner already
+     * alerted on can be alerted again.
+     * 重建所拥有的索引。环变化后接管的地址从持久化水位线之前两个租约长度处重新拉取：
+     * 原所有者可能在其租约失效前最多一个租约长度就已停止轮询，而我们发现时又会再过一个续期周期。
+     * 原所有者已发送警报的交易可能会再次发送警报。
+     */
+    private synchronized void rebuildOwned() {
+        AddressIndex.Snapshot watched = watchedAddresses.snapshot();
+        long ringVersion = cluster.getRingVersion();
+        if (watched.version() == ownedWatchVersion && ringVersion == ownedRingVersion) {
+            return;
+        }
+        AddressIndex.Snapshot before = ownedAddresses.snapshot();
+        Map<String, Integer> owned = new HashMap<>();
+        List<String> takenOver = new ArrayList<>();
+        for (String address : watched.addresses()) {
+            if (cluster.owns(address)) {
+                owned.put(address, watched.flags(address));
+                if (ringVersion != ownedRingVersion && before.flags(address) == 0) {
+                    takenOver.add(address);
+                }
+            }
+        }
+        if (!takenOver.isEmpty()) {
+            queryPlanner.backfill(takenOver,
+                    stateStore.getWatermark() - TimeUnit.MILLISECONDS.toSeconds(2 * cluster.getLeaseMillis()));
+        }
+        ownedAddresses.replaceAll(owned);
+        ownedWatchVersion = watched.version();
+        ownedRingVersion = ringVersion;
+        System.out.println("Cluster shard: " + owned.size() + "/" + watched.size() + " addresses owned by "
+                + cluster.getNodeId() + ", " + takenOver.size() + " taken over / 集群分片已更新");
+    }
+
+    /**
+     * Match stage: checks whether a trade belongs to a watched whale.
+     * 匹配阶段：检查交易是否属于关注的巨鲸。
+     *
+     * @return the match, or null if not watched / 匹配结果，未关注时返回 null
+     */
+    public MatchedTrade match(Trade trade) {
+        // Server already filters, but the watchlist may have changed mid-poll
+        // 服务端已过滤，但观察列表可能在轮询期间发生变化
+        int flags = pollIndex().flags(trade.creator());
+        if (flags == 0) {
+            return null;
+        }
+        scorer.onTrade(trade);
+        // Starts loading the market while the alert goes out / 在发送警报的同时开始加载市场
+        if ((flags & AddressIndex.MANUAL) != 0) {
+            marketCache.peek(trade.conditionId());
+        }
+        // Check type of whale / 检查巨鲸类型
+        boolean manual = (flags & AddressIndex.MANUAL) != 0;
+        events.tradeMatched(trade.id(), trade.creator(), trade.title(), trade.type(), trade.outcomeIndex(),
+                Double.parseDouble(trade.collateralAmount()) / 1e6, manual);
+        return new MatchedTrade(trade, manual);
+    }
+
+    /**
+     * Dispatch stage: adds the trade to its flow window, or emits it directly.
+     * 分发阶段：将交易加入其流量窗口，或直接发出。
+     *
+     * Runs concurrently on the dispatch lanes; the caller advances the watermark.
+     * 在各分发通道上并发运行；由调用方推进水位线。
+     */
+    public void dispatch(MatchedTrade matched) {
+        if (flows == null) {
+            emit(FlowSignal.of(matched));
+        } else if (!stateStore.isProcessed(matched.trade().id())) { // Already handled before a restart / 重启前已处理
+            flows.add(matched);
+        }
+    }
+
+    /**
+     * Sends the alert for a signal and copies it if the whale is on the manual list.
+     * 发送信号警报；如果巨鲸在手动列表中则跟单。
+     *
+     * The trades are marked processed only once the notifier has delivered (or
+     * dropped) the alert, and until then they hold the watermark back, so a crash
+     * with the alert still queued re-reads and re-alerts them. A crash after
+     * delivery but before the mark alerts them twice.
+     * 仅在通知器送达（或丢弃）警报后才将交易标记为已处理，在此之前它们会阻挡水位线，
+     * 因此警报仍在队列中时崩溃，重启后会重新读取并再次警报。送达后、标记前崩溃则会警报两次。
+     */
+    private void emit(FlowSignal signal) {
+        long detectedNanos = System.nanoTime();
+        Trade trade = signal.trade();
+        // Already handled before a restart / 重启前已处理
+        List<String> fresh = new ArrayList<>(signal.tradeIds().size());
+        for (String id : signal.tradeIds()) {
+            if (!stateStore.isProcessed(id)) {
+                fresh.add(id);
             }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
 
-            System.out.println("Polling activity for " + watchedAddresses.size() + " whales... / 正在为 "
-                    + watchedAddresses.size() + " 个巨鲸轮询活动...");
-
-            // 2. Query recent activity (Transactions/Trades) / 查询最近活动（交易）
-            // Schema guess: multifillOrders or fpmmTrade (Fixed Product Market Maker Trade)
-            // Using a query for `fpmmTrades` which is common for Prediction Markets
-            // (Gnosis/Polymarket)
-            // schema 猜测：multifillOrders 或 fpmmTrade (固定产品做市商交易)
-            // 使用 `fpmmTrades` 查询，这对预测市场 (Gnosis/Polymarket) 来说很常见
-            String query = String.format(
-                    "{ \"query\": \"{ fpmmTrades(first: 20, orderBy: creationTimestamp, orderDirection: desc, where: { creationTimestamp_gt: \\\"%d\\\" }) { id creationTimestamp title outcomeIndex type amount collateralAmount creator { id } } }\" }",
-                    lastCheckedTimestamp);
-
-            Request request = new Request.Builder()
-                    .url(ACTIVITY_SUBGRAPH_URL)
-                    .post(RequestBody.create(query, MediaType.parse("application/json")))
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    JsonNode root = mapper.readTree(response.body().string());
-                    JsonNode trades = root.path("data").path("fpmmTrades");
-
-                    if (trades.isArray()) {
-                        long maxTimestamp = lastCheckedTimestamp;
-
-                        for (JsonNode trade : trades) {
-                            String creator = trade.path("creator").path("id").asText().toLowerCase();
-                            long timestamp = trade.path("creationTimestamp").asLong();
-
-                            // Keep track of latest time
-                            if (timestamp > maxTimestamp) {
-                                maxTimestamp = timestamp;
-                            }
-
-                            // Check if this is one of our watched whales
-                            // 检查这是否是我们关注的巨鲸之一
-                            if (watchedAddresses.contains(creator)) {
-                                String title = trade.path("title").asText();
-                                String type = trade.path("type").asText(); // Buy/Sell
-                                String amount = trade.path("collateralAmount").asText(); // USDC Amount
-                                String outcome = trade.path("outcomeIndex").asText(); // Yes/No index
-
-                                // Check type of whale / 检查巨鲸类型
-                                boolean isManual = manualWatchlist.contains(creator);
-                                String alertTitle = isManual ? "🚨 *Whale Alert!* 巨鲸警报!"
-                                        : "🔍 *Smart Money Alert* 聪明钱警报";
-
-                                String msg = String.format(
-                                        "%s\n\nUser: `%s`\nAction: %s\nMarket: %s\nAmount: $%s USDC\nOutcome: %s",
-                                        alertTitle, creator, type, title, amount, outcome);
-
-                                notifier.sendAlert(msg);
-                                System.out.println("Alert sent for: " + creator);
-
-                                // Execute Copy Trade ONLY for manual list / 仅为手动列表执行跟单交易
-                                if (isManual) {
-                                    tradeExecutor.executeCopyTrade(creator, title, outcome, type);
-                                } else {
-                                    System.out.println("Observation only (Smart Money): " + creator);
-                                }
-                            }
-                        }
-                        // Update last checked time to avoid duplicates
-                        // 更新上次检查时间以避免重复
-                        lastCheckedTimestamp = maxTimestamp;
-                    }
+        long firstTimestamp = signal.firstTimestamp();
+        synchronized (pendingAlerts) {
+            pendingAlerts.merge(firstTimestamp, 1, Integer::sum);
+        }
+        notifier.sendAlert(alertMessage(signal), firstTimestamp).whenComplete((delivered, error) -> {
+            for (String id : fresh) {
+                stateStore.markProcessed(id);
+            }
+            synchronized (pendingAlerts) {
+                pendingAlerts.computeIfPresent(firstTimestamp, (ts, count) -> count == 1 ? null : count - 1);
+            }
+            advanceWatermark(requestedWatermark.get());
+        });
+        events.alertSent(trade.id(), trade.creator(), trade.title(), signal.flat() ? "RoundTrip" : trade.type(),
+                trade.outcomeIndex(), signal.fills(), Math.abs(signal.buyUsdc() - signal.sellUsdc()) / 1e6,
+                signal.manual());
+
+        // Execute Copy Trade ONLY for manual list / 仅为手动列表执行跟单交易
+        if (signal.manual() && !signal.flat()) {
+            if (stateStore.markExecuted(trade.id())) {
+                MarketDataCache.Market market = marketCache.peek(trade.conditionId());
+                if (market != null) {
+                    tradeExecutor.executeCopyTrade(trade, market, detectedNanos);
                 } else {
-                    System.err.println("Failed to poll activity: " + response.code() + " " + response.message());
+                    marketCache.get(trade.conditionId()).whenComplete(
+                            (loaded, error) -> tradeExecutor.executeCopyTrade(trade, loaded, detectedNanos));
                 }
-            } catch (Exception e) {
-                System.err.println("Network error polling activity: " + e.getMessage());
             }
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error in poll loop: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Alert text for a signal: the fill itself, or the net of a coalesced window.
+     * 信号的警报文本：单笔成交本身，或合并窗口的净额。
+     */
+    static String alertMessage(FlowSignal signal) {
+        Trade trade = signal.trade();
+        String creator = trade.creator();
+        String title = trade.title();
+        String type = trade.type(); // Buy/Sell
+        double amount = Double.parseDouble(trade.collateralAmount()) / 1e6; // USDC, from micro-USDC / USDC（由微 USDC 换算）
+        String outcome = String.valueOf(trade.outcomeIndex()); // Yes/No index
+
+        String alertTitle = signal.manual() ? "🚨 *Whale Alert!* 巨鲸警报!"
+                : "🔍 *Smart Money Alert* 聪明钱警报";
+
+        return signal.fills() == 1
+                ? String.format("%s\n\nUser: `%s`\nAction: %s\nMarket: %s\nAmount: $%.2f USDC\nOutcome: %s",
+                        alertTitle, creator, type, title, amount, outcome)
+                : String.format("%s\n\nUser: `%s`\nAction: %s%s\nMarket: %s\nNet: $%.2f USDC\nOutcome: %s"
+                        + "\nFills: %d over %ds (bought $%.2f, sold $%.2f)",
+                        alertTitle, creator, signal.flat() ? "Round trip / 来回交易" : type,
+                        signal.flat() ? "" : " (net)", title, Math.abs(signal.buyUsdc() - signal.sellUsdc()) / 1e6,
+                        outcome, signal.fills(), trade.creationTimestamp() - signal.firstTimestamp(),
+                        signal.buyUsdc() / 1e6, signal.sellUsdc() / 1e6);
+    }
+
+    /**
+     * Persists the resume point once every trade before it has been dispatched.
+     * 在此前所有交易都已分发后持久化恢复点。
+     *
+     * Trades a failed shard has not fetched, fills still in an open window and
+     * alerts not yet delivered hold it back, so they are re-read on resume.
+     * 失败分片尚未拉取的交易、仍在未关闭窗口中的成交以及尚未送达的警报会阻挡恢复点，因此恢复时会重新读取。
+     */
+    public void advanceWatermark(long timestamp) {
+        long safe = Math.min(requestedWatermark.accumulateAndGet(timestamp, Math::max),
+                queryPlanner.oldestUnfetchedTimestamp());
+        if (flows != null) {
+            safe = Math.min(safe, flows.oldestPendingTimestamp());
+        }
+        synchronized (pendingAlerts) {
+            if (!pendingAlerts.isEmpty()) {
+                safe = Math.min(safe, pendingAlerts.firstKey());
+            }
         }
+        stateStore.advanceWatermark(safe);
     }
 
     /**
-     * Checks if an address behaves like a bot (high frequency).
-     * 检查地址是否像机器人一样行为（高频）。
-     * 
-     * @param address The address to check / 要检查的地址
-     * @return true if bot / 如果是机器人则返回 true
+     * Re-fetches the last-24h trades of several addresses in one aliased request.
+     * 通过一个别名请求重新获取多个地址过去 24 小时的交易。
+     *
+     * The trades give both the bot check and the win rate; candidates are not
+     * watched yet, so the ingested feed has none of their fills.
+     * 这些交易同时用于机器人检测和胜率计算；候选人尚未被观察，拉取的交易流中没有他们的成交。
+     *
+     * @param addresses The addresses to check / 要检查的地址
      */
-    private boolean isPotentialBot(String address) {
+    private void refreshActivity(List<String> addresses) {
         // Query trades in last 24 hours / 查询过去 24 小时的交易
-        long oneDayAgo = (System.currentTimeMillis() / 1000) - 86400;
-
-        // We ask for (maxDailyTrades + 1) items. If we get that many, it's a bot.
-        // 我们请求 (maxDailyTrades + 1) 个条目。如果得到那么多，那就是机器人。
-        String query = String.format(
-                "{ \"query\": \"{ fpmmTrades(first: %d, where: { creator: \\\"%s\\\", creationTimestamp_gt: \\\"%d\\\" }) { id } }\" }",
-                maxDailyTrades + 1, address, oneDayAgo);
-
-        Request request = new Request.Builder()
-                .url(ACTIVITY_SUBGRAPH_URL)
-                .post(RequestBody.create(query, MediaType.parse("application/json")))
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (response.isSuccessful() && response.body() != null) {
-                JsonNode root = mapper.readTree(response.body().string());
-                JsonNode trades = root.path("data").path("fpmmTrades");
-                if (trades.isArray()) {
-                    int count = trades.size();
-                    if (count > maxDailyTrades) {
-                        System.out.println("⚠️ Detected Bot: " + address + " (" + count + " trades/24h) / 检测到机器人："
-                                + address + " (" + count + " 笔交易/24小时)");
-                        return true;
-                    }
+        long now = System.currentTimeMillis();
+        long oneDayAgo = (now / 1000) - 86400;
+
+        // We ask for (maxDailyTrades + 1) items each. If we get that many, it's a bot.
+        // 每个地址请求 (maxDailyTrades + 1) 个条目。如果得到那么多，那就是机器人。
+        GraphQLClient.Template query = activityBatchQueries.computeIfAbsent(addresses.size(),
+                WhaleWatcher::compileActivityBatch);
+        try {
+            List<List<Trade>> results = discoveryGraph.execute(query, g -> {
+                g.writeStringField("since", Long.toString(oneDayAgo));
+                g.writeNumberField("first", configs.current().maxDailyTrades() + 1);
+                for (int i = 0; i < addresses.size(); i++) {
+                    g.writeStringField("c" + i, addresses.get(i));
                 }
+            }, body -> decoder.decodeTradesByAlias(body, ACTIVITY_ALIAS, addresses.size()));
+            for (int i = 0; i < addresses.size(); i++) {
+                scorer.refreshActivity(addresses.get(i), results.get(i), now);
             }
         } catch (Exception e) {
-            System.err.println("Error checking bot status for " + address + ": " + e.getMessage());
+            System.err.println("Error checking bot status for " + addresses.size() + " candidates: " + e.getMessage());
         }
-        return false;
     }
 
-    private boolean checkWinRate(String address, double profit) {
-        // Since we don't have a guaranteed 'winRate' field in the public schema without
-        // verifying,
-        // We will currently use a heuristic: Must be Profitable.
-        // 由于在未验证的情况下公共 Schema 中没有保证的 'winRate' 字段，
-        // 我们目前使用启发式方法：必须盈利。
-
-        // In a real production app, we would query: { user(id: "...") { stats { winRate
-        // } } }
-        // 在真实的生产应用中，我们会查询：{ user(id: "...") { stats { winRate } } }
-
-        // For now, if Profit is very high, we assume they are "Winning".
-        // 目前，如果利润很高，我们假设他们是“赢家”。
-        if (profit <= 0) {
-            System.out.println("Skipping Low Profit user: " + address);
-            return false;
+    private static GraphQLClient.Template compileActivityBatch(int size) {
+        StringBuilder params = new StringBuilder("$since: BigInt!, $first: Int!");
+        StringBuilder fields = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            params.append(", $c").append(i).append(": String!");
+            fields.append(' ').append(ACTIVITY_ALIAS).append(i)
+                    .append(": fpmmTrades(first: $first, where: { creator: $c").append(i)
+                    .append(", creationTimestamp_gt: $since }, orderBy: creationTimestamp, orderDirection: asc)")
+                    .append(" { creationTimestamp title outcomeIndex type amount collateralAmount fpmm { conditions { id } } }");
         }
-
-        // TODO: Implement actual field query when Schema is available.
-        // 待办：可用时实施实际字段查询。
-        return true;
+        return GraphQLClient.Template.compile("query Activity(" + params + ") {" + fields + " }");
     }
 
-    private void fetchTopTraders() {
+    /**
+     * Refreshes the smart-money watchlist from the top traders by profit.
+     * 根据利润最高的交易者刷新聪明钱观察列表。
+     *
+     * Runs on a schedule. Only candidates whose cached stats are stale are re-queried.
+     * 按计划运行。只有缓存统计已过期的候选人才会被重新查询。
+     */
+    public void refreshWhales() {
         // Construct GraphQL query for users sorted by profit
         // 构建按利润排序的用户的 GraphQL 查询
-        // Fetching top 50 to filter down to top 20 humans
-        // 获取前 50 名以过滤出前 20 名真人
-        String query = "{ \"query\": \"{ users(first: 50, orderBy: profit, orderDirection: desc) { id profit } }\" }";
-
-        Request request = new Request.Builder()
-                .url(PNL_SUBGRAPH_URL)
-                .post(RequestBody.create(query, MediaType.parse("application/json")))
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (response.isSuccessful() && response.body() != null) {
-                String responseBody = response.body().string();
-                JsonNode root = mapper.readTree(responseBody);
-                JsonNode usersNode = root.path("data").path("users");
-
-                if (usersNode.isArray()) {
-                    System.out.println("---- Top Whales Analysis (Profit) [Parallel] / 顶级巨鲸分析 (利润) [并行] ----");
-
-                    // Convert JsonNode to List for parallel streaming
-                    List<JsonNode> candidates = new ArrayList<>();
-                    usersNode.forEach(candidates::add);
-
-                    // Parallel Stream to check Bot Status & Win Rate concurrently
-                    // 并行流以并发检查机器人状态和胜率
-                    List<String> validWhales = candidates.parallelStream()
-                            .filter(user -> {
-                                String address = user.path("id").asText();
-                                double profit = user.path("profit").asDouble();
-
-                                // Check for Bot / 检查机器人
-                                if (isPotentialBot(address)) {
-                                    return false;
-                                }
-                                // Check Win Rate / 检查胜率
-                                if (!checkWinRate(address, profit)) {
-                                    return false;
-                                }
-                                return true;
-                            })
-                            .map(user -> user.path("id").asText())
-                            .limit(20) // Take top 20 valid ones
-                            .toList();
-
-                    // Add to watched list
-                    validWhales.forEach(addr -> {
-                        watchedAddresses.add(addr);
-                        System.out.println("✅ Smart Money Added: " + addr);
-                    });
-
-                    if (!validWhales.isEmpty()) {
-                        String msg = "🐳 Found " + validWhales.size()
-                                + " Smart Money Whales (Parallel Scan)! / 并行扫描发现了 " + validWhales.size() + " 名聪明钱巨鲸！";
-                        notifier.sendAlert(msg);
-                    }
+        // Fetching top candidates (50 by default) to filter down to top 20 humans
+        // 获取前若干名候选人（默认 50）以过滤出前 20 名真人
+        try {
+            List<Trader> candidates = pnlGraph.execute(TOP_USERS_QUERY,
+                    g -> g.writeNumberField("first", discoveryCandidates), decoder::decodeTraders);
+
+            if (!candidates.isEmpty()) {
+                long now = System.currentTimeMillis();
+                List<String> stale = candidates.stream()
+                        .map(Trader::id)
+                        .filter(address -> scorer.isStale(address, now))
+                        .toList();
+                System.out.println("---- Top Whales Analysis (Profit) [Batched] / 顶级巨鲸分析 (利润) [批量] ---- "
+                        + stale.size() + "/" + candidates.size() + " stale");
+
+                candidates.forEach(user -> scorer.recordProfit(user.id(), user.profit()));
+
+                // Stale entries are re-fetched in aliased batches, run concurrently on the discovery executor
+                // 过期条目以别名批量重新获取，并在发现线程池上并发运行
+                long scanStart = System.nanoTime();
+                List<Runnable> batches = new ArrayList<>();
+                for (int i = 0; i < stale.size(); i += discoveryBatchSize) {
+                    List<String> batch = stale.subList(i, Math.min(i + discoveryBatchSize, stale.size()));
+                    batches.add(() -> refreshActivity(batch));
                 }
-            } else {
-                System.err.println("Failed to fetch whales: " + response.code());
+                // Batches are in rank order; stop once the top 20 are known / 批次按排名排序；前 20 名确定后即停止
+                Set<String> pending = new HashSet<>(stale);
+                discovery.runUntil(batches, finished -> qualifiedSoFar(candidates, pending,
+                        Math.min(finished * discoveryBatchSize, stale.size()), now / 1000) >= SMART_MONEY_SIZE);
+
+                List<String> validWhales = candidates.stream()
+                        .map(Trader::id)
+                        .filter(address -> scorer.qualifies(address, now / 1000))
+                        .limit(SMART_MONEY_SIZE)
+                        .toList();
+                long scanNanos = System.nanoTime() - scanStart;
+                discoveryScanTime.observeNanos(scanNanos);
+                events.discoveryCompleted(candidates.size(), validWhales.size(), scanNanos);
+
+                updateSmartMoney(validWhales);
             }
         } catch (IOException e) {
+            System.err.println("Failed to fetch whales: " + e.getMessage());
+        } catch (Exception e) {
+            // A scheduled task that throws is never run again / 抛出异常的定时任务不会再次运行
+            System.err.println("Whale refresh failed: " + e + " / 巨鲸刷新失败");
             e.printStackTrace();
         }
     }
+
+    /**
+     * Qualifying candidates ahead of the first stale one not yet refreshed, i.e. those already final.
+     * 第一个尚未刷新的过期候选人之前的合格候选人数，即已确定的部分。
+     *
+     * @param refreshed Stale candidates refreshed so far, in rank order / 目前已按排名刷新的过期候选人数
+     */
+    private int qualifiedSoFar(List<Trader> candidates, Set<String> stale, int refreshed, long nowSeconds) {
+        int qualified = 0;
+        int staleSeen = 0;
+        for (Trader candidate : candidates) {
+            if (stale.contains(candidate.id()) && staleSeen++ >= refreshed) {
+                break;
+            }
+            if (scorer.qualifies(candidate.id(), nowSeconds)) {
+                qualified++;
+            }
+        }
+        return qualified;
+    }
+
+    /**
+     * Swaps in the new smart-money set; manual addresses are always kept.
+     * 换入新的聪明钱集合；手动地址始终保留。
+     */
+    private void updateSmartMoney(List<String> validWhales) {
+        AddressIndex.Snapshot before = watchedAddresses.snapshot();
+        List<String> added = new ArrayList<>();
+        for (String addr : validWhales) {
+            if ((before.flags(addr) & AddressIndex.SMART_MONEY) == 0) {
+                added.add(addr);
+            }
+        }
+        Set<String> valid = new HashSet<>(validWhales);
+        List<String> removed = new ArrayList<>();
+        for (String addr : before.addresses()) {
+            if ((before.flags(addr) & AddressIndex.SMART_MONEY) != 0 && !valid.contains(addr)) {
+                removed.add(addr);
+            }
+        }
+        // One copy-on-write swap, so readers never see a half-updated set / 一次写时复制换入，读取方不会看到更新到一半的集合
+        watchedAddresses.replaceFlag(validWhales, AddressIndex.SMART_MONEY);
+        added.forEach(addr -> System.out.println("✅ Smart Money Added: " + addr));
+        removed.forEach(addr -> System.out.println("➖ Smart Money Removed: " + addr));
+
+        if (!added.isEmpty()) {
+            String msg = "🐳 Found " + added.size()
+                    + " Smart Money Whales (Parallel Scan)! / 并行扫描发现了 " + added.size() + " 名聪明钱巨鲸！";
+            notifier.sendAlert(msg);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.polymarket.bot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flags, updates and the addresses formatted back from the packed table.
+ * 标志、更新，以及从打包表格式化回的地址。
+ */
+class AddressIndexTest {
+
+    private static final String A = "0x00000000000000000000000000000000000000aa";
+    private static final String B = "0xAbCdEf0123456789abcdef0123456789ABCDEF01";
+    private static final String C = "0xffffffffffffffff00000000000000017fffffff";
+
+    @Test
+    void addressesAreFormattedFromThePackedColumns() {
+        AddressIndex index = new AddressIndex();
+        index.addAll(List.of(A, B, C), AddressIndex.MANUAL);
+
+        assertEquals(Set.of(A, B.toLowerCase(), C), Set.copyOf(index.snapshot().addresses()));
+        assertEquals(AddressIndex.MANUAL, index.flags(B.toLowerCase()));
+        assertEquals(AddressIndex.MANUAL, index.flags(B));
+        assertEquals(0, index.flags("0x00000000000000000000000000000000000000ab"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("0x123", AddressIndex.MANUAL));
+    }
+
+    @Test
+    void flagsAreClearedBeforeTheAddressIsRemoved() {
+        AddressIndex index = new AddressIndex();
+        assertTrue(index.add(A, AddressIndex.MANUAL));
+        assertFalse(index.add(A, AddressIndex.SMART_MONEY));
+        assertEquals(AddressIndex.MANUAL | AddressIndex.SMART_MONEY, index.flags(A));
+
+        assertFalse(index.remove(A, AddressIndex.MANUAL));
+        assertEquals(AddressIndex.SMART_MONEY, index.flags(A));
+        assertTrue(index.remove(A, AddressIndex.SMART_MONEY));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void replaceFlagSwapsOneFlagAndKeepsTheOther() {
+        AddressIndex index = new AddressIndex();
+        index.addAll(List.of(A, B), AddressIndex.SMART_MONEY);
+        index.add(A, AddressIndex.MANUAL);
+        long version = index.snapshot().version();
+
+        index.replaceFlag(List.of(C), AddressIndex.SMART_MONEY);
+
+        assertEquals(version + 1, index.snapshot().version());
+        assertEquals(AddressIndex.MANUAL, index.flags(A));
+        assertEquals(0, index.flags(B));
+        assertEquals(AddressIndex.SMART_MONEY, index.flags(C));
+        assertEquals(Set.of(A, C), Set.copyOf(index.snapshot().addresses()));
+    }
+
+    @Test
+    void replaceAllSkipsEntriesWithoutFlags() {
+        AddressIndex index = new AddressIndex();
+        index.replaceAll(Map.of(A, AddressIndex.MANUAL, B, 0));
+        assertEquals(List.of(A), index.snapshot().addresses());
+    }
+}
@@ -0,0 +1,183 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.service.MockClobServer.ReceivedOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Submits orders through {@link ClobExecutionEngine} to {@link MockClobServer} and
+ * checks the L2 HMAC headers, the EIP-712 signature, the amounts for the limit
+ * tick, and how long an order takes to reach the CLOB.
+ * 通过 {@link ClobExecutionEngine} 向 {@link MockClobServer} 提交订单，检查 L2 HMAC 请求头、EIP-712 签名、
+ * 限价刻度对应的数量，以及订单到达 CLOB 所需的时间。
+ */
+class ClobOrderSubmissionTest {
+
+    // Well-known test key, never funded / 公开的测试私钥，从未充值
+    private static final String PRIVATE_KEY = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+    private static final String API_KEY = "test-api-key";
+    private static final String API_SECRET = Base64.getUrlEncoder().encodeToString("test-secret-32-bytes-long-xxxxx!"
+            .getBytes());
+    private static final String PASSPHRASE = "test-passphrase";
+    private static final String TOKEN_ID = "71321045679252212594626385532706912750332728571942532289631379312455583992563";
+    // Dispatch to arrival on loopback, signing included for a cache miss / 回环上从分发到到达的时间，缓存未命中时含签名
+    private static final long ARRIVAL_BOUND_MILLIS = 250;
+
+    private MockClobServer clob;
+    private ClobExecutionEngine engine;
+    private String signerAddress;
+
+    @BeforeEach
+    void start() throws Exception {
+        clob = new MockClobServer(API_SECRET);
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("HTTP_PROXY_HOST", "");
+        overrides.put("POLYMARKET_PRIVATE_KEY", PRIVATE_KEY);
+        overrides.put("POLYMARKET_FUNDER", "");
+        overrides.put("POLYMARKET_SIGNATURE_TYPE", "");
+        overrides.put("CLOB_API_KEY", API_KEY);
+        overrides.put("CLOB_API_SECRET", API_SECRET);
+        overrides.put("CLOB_API_PASSPHRASE", PASSPHRASE);
+        overrides.put("CLOB_URL", clob.url());
+        overrides.put("CLOB_ORDER_TYPE", "FOK");
+        overrides.put("CLOB_FILL_POLL_MS", "50");
+        overrides.put("CLOB_FILL_TRACK_SECONDS", "1");
+        engine = new ClobExecutionEngine(BotConfig.load().with(overrides, 0), new Metrics());
+        signerAddress = new OrderSigner(PRIVATE_KEY, OrderSigner.POLYGON_CHAIN_ID).getAddress();
+    }
+
+    @AfterEach
+    void stop() {
+        clob.close();
+    }
+
+    @Test
+    void buyOrderIsAuthenticatedSignedAndPricedAtTheLimitTick() throws Exception {
+        long dispatched = System.nanoTime();
+        ClobExecutionEngine.OrderResult result = engine.submit(TOKEN_ID, false, OrderSigner.Side.BUY, 0.537, 25.00,
+                dispatched).get(5, TimeUnit.SECONDS);
+        ReceivedOrder received = clob.nextOrder(1_000);
+        assertNotNull(received);
+
+        assertAuthenticated(received);
+        assertEquals(signerAddress, received.orderSigner(), "EIP-712 signature does not recover to the signer");
+        assertEquals(signerAddress, received.order().path("maker").asText());
+        assertEquals(signerAddress, received.order().path("signer").asText());
+        assertEquals(TOKEN_ID, received.order().path("tokenId").asText());
+        assertEquals("BUY", received.order().path("side").asText());
+        assertEquals(0, received.order().path("signatureType").asInt());
+        assertEquals(API_KEY, received.body().path("owner").asText());
+        assertEquals("FOK", received.body().path("orderType").asText());
+
+        // Limit 0.537 rounds down to 0.53: $25.00 buys 47.1698 shares / 限价 0.537 向下取整为 0.53：25 美元买入 47.1698 份
+        assertEquals(25_000_000L, received.order().path("makerAmount").asLong());
+        assertEquals(47_169_800L, received.order().path("takerAmount").asLong());
+        double price = received.order().path("makerAmount").asDouble() / received.order().path("takerAmount").asLong();
+        assertTrue(price <= 0.537 && price >= 0.53, "implied price " + price);
+
+        assertTrue(result.success());
+        assertEquals("matched", result.status());
+        assertEquals("25000000", result.makingAmount());
+        assertArrivedWithin(received, dispatched);
+    }
+
+    @Test
+    void sellOrderRoundsTheLimitUpAndSellsWholeCents() throws Exception {
+        engine.submit(TOKEN_ID, false, OrderSigner.Side.SELL, 0.531, 10.00, System.nanoTime())
+                .get(5, TimeUnit.SECONDS);
+        ReceivedOrder received = clob.nextOrder(1_000);
+        assertNotNull(received);
+
+        assertAuthenticated(received);
+        assertEquals(signerAddress, received.orderSigner());
+        assertEquals("SELL", received.order().path("side").asText());
+        // Limit 0.531 rounds up to 0.54: 18.51 shares for $9.9954 / 限价 0.531 向上取整为 0.54：18.51 份换 9.9954 美元
+        assertEquals(18_510_000L, received.order().path("makerAmount").asLong());
+        assertEquals(9_995_400L, received.order().path("takerAmount").asLong());
+    }
+
+    @Test
+    void preSignedOrderReachesTheClobWithinTheBound() throws Exception {
+        engine.prepare(TOKEN_ID, false, OrderSigner.Side.BUY, 20.00);
+        // The ladder is signed on a background thread / 价格阶梯在后台线程上签名
+        Thread.sleep(1_000);
+
+        for (double limit : new double[] { 0.41, 0.42, 0.43 }) {
+            long dispatched = System.nanoTime();
+            assertTrue(engine.submit(TOKEN_ID, false, OrderSigner.Side.BUY, limit, 20.00, dispatched)
+                    .get(5, TimeUnit.SECONDS).success());
+            ReceivedOrder received = clob.nextOrder(1_000);
+            assertNotNull(received);
+            assertAuthenticated(received);
+            assertEquals(signerAddress, received.orderSigner());
+            assertEquals(20_000_000L, received.order().path("makerAmount").asLong());
+            assertArrivedWithin(received, dispatched);
+        }
+    }
+
+    @Test
+    void rejectionIsReportedWithTheClobError() throws Exception {
+        clob.rejectWith("not enough balance / allowance");
+        ClobExecutionEngine.OrderResult result = engine.submit(TOKEN_ID, false, OrderSigner.Side.BUY, 0.5, 10.00,
+                System.nanoTime()).get(5, TimeUnit.SECONDS);
+        assertFalse(result.success());
+        assertEquals("rejected", result.status());
+        assertEquals("not enough balance / allowance", result.error());
+        assertNotNull(clob.nextOrder(1_000));
+    }
+
+    @Test
+    void restingOrderIsCancelledWhenTrackingTimesOut() throws Exception {
+        clob.restWith(12.5, false);
+        ClobExecutionEngine.OrderResult result = engine.submit(TOKEN_ID, false, OrderSigner.Side.BUY, 0.5, 100.00,
+                System.nanoTime()).get(5, TimeUnit.SECONDS);
+        assertTrue(result.resting());
+
+        ClobExecutionEngine.OrderStatus fill = engine.trackFill(result.orderId()).get(10, TimeUnit.SECONDS);
+        ReceivedOrder cancel = clob.nextCancel(1_000);
+        assertNotNull(cancel, "order left live after tracking");
+        assertAuthenticated(cancel);
+        assertEquals(result.orderId(), cancel.body().path("orderID").asText());
+        // The fills before the cancel are kept / 保留撤单前的成交
+        assertEquals("CANCELED", fill.status());
+        assertEquals(12.5, fill.sizeMatched(), 1e-9);
+        assertFalse(fill.unsettled());
+    }
+
+    @Test
+    void failedCancelLeavesTheOrderUnsettled() throws Exception {
+        clob.restWith(3, true);
+        ClobExecutionEngine.OrderResult result = engine.submit(TOKEN_ID, false, OrderSigner.Side.BUY, 0.5, 100.00,
+                System.nanoTime()).get(5, TimeUnit.SECONDS);
+
+        ClobExecutionEngine.OrderStatus fill = engine.trackFill(result.orderId()).get(10, TimeUnit.SECONDS);
+        assertNotNull(clob.nextCancel(1_000));
+        assertTrue(fill.unsettled());
+        assertEquals(3, fill.sizeMatched(), 1e-9);
+    }
+
+    private void assertAuthenticated(ReceivedOrder received) {
+        assertTrue(received.hmacValid(), "POLY_SIGNATURE does not verify");
+        assertEquals(signerAddress, received.address());
+        assertEquals(API_KEY, received.apiKey());
+        assertEquals(PASSPHRASE, received.passphrase());
+        long skew = Math.abs(System.currentTimeMillis() / 1000 - received.timestamp());
+        assertTrue(skew <= 5, "POLY_TIMESTAMP off by " + skew + "s");
+    }
+
+    private static void assertArrivedWithin(ReceivedOrder received, long dispatchedNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(received.arrivalNanos() - dispatchedNanos);
+        assertTrue(millis < ARRIVAL_BOUND_MILLIS, "order reached the CLOB after " + millis + "ms");
+    }
+}
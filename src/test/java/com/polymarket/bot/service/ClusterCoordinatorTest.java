@@ -0,0 +1,114 @@
+package com.polymarket.bot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Two coordinators on one membership directory: the join-claim delay, the
+ * rebalance to exactly one owner per address, and the takeover after a crash.
+ * 两个协调器共用一个成员目录：加入后的认领延迟、再平衡到每个地址恰好一个所有者，以及崩溃后的接管。
+ */
+class ClusterCoordinatorTest {
+
+    private static final long LEASE_MILLIS = 600;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    private final List<ClusterCoordinator> started = new ArrayList<>();
+    private final List<String> addresses = new ArrayList<>();
+
+    {
+        for (int i = 0; i < 200; i++) {
+            addresses.add(String.format("0x%040x", i * 7919L));
+        }
+    }
+
+    @AfterEach
+    void stopAll() {
+        for (ClusterCoordinator coordinator : started) {
+            coordinator.stop(true);
+        }
+    }
+
+    private ClusterCoordinator start(String nodeId) throws Exception {
+        ClusterCoordinator coordinator = new ClusterCoordinator(new FileClusterMembership(dir), nodeId, LEASE_MILLIS,
+                64, new Metrics());
+        coordinator.start();
+        started.add(coordinator);
+        return coordinator;
+    }
+
+    private int owned(ClusterCoordinator coordinator) {
+        int owned = 0;
+        for (String address : addresses) {
+            if (coordinator.owns(address)) {
+                owned++;
+            }
+        }
+        return owned;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting until " + what);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void joiningNodeWaitsBeforeClaiming() throws Exception {
+        ClusterCoordinator a = start("a");
+        // Two renewal periods pass before a new lease claims anything / 新租约需经过两个续期周期才会认领
+        assertEquals(0, owned(a));
+        await("a owns every address", () -> owned(a) == addresses.size());
+
+        long version = a.getRingVersion();
+        ClusterCoordinator b = start("b");
+        assertEquals(0, owned(b));
+        await("a sees b", () -> a.getRingVersion() != version);
+        await("b claims its share", () -> owned(b) > 0);
+    }
+
+    @Test
+    void rebalanceLeavesOneOwnerPerAddress() throws Exception {
+        ClusterCoordinator a = start("a");
+        ClusterCoordinator b = start("b");
+        await("both claim a share", () -> owned(a) > 0 && owned(b) > 0);
+        await("each address has one owner", () -> owned(a) + owned(b) == addresses.size());
+
+        for (String address : addresses) {
+            assertTrue(a.owns(address) ^ b.owns(address), address);
+        }
+    }
+
+    @Test
+    void survivorTakesOverAfterTheLeaseOfACrashedNode() throws Exception {
+        ClusterCoordinator a = start("a");
+        ClusterCoordinator b = start("b");
+        await("both claim a share", () -> owned(a) > 0 && owned(b) > 0 && owned(a) + owned(b) == addresses.size());
+
+        long version = a.getRingVersion();
+        started.remove(b);
+        b.stop(false); // Crash: the lease file stays until it expires / 崩溃：租约文件保留至过期
+        assertFalse(owned(a) == addresses.size());
+
+        await("a owns every address again", () -> owned(a) == addresses.size());
+        assertTrue(a.getRingVersion() != version);
+    }
+}
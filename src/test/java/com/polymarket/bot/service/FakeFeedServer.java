@@ -0,0 +1,187 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.polymarket.bot.model.Trade;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test fixture: an activity subgraph that serves {@code fpmmTrades} from trades published by the test.
+ * 测试夹具：从测试发布的交易中提供 {@code fpmmTrades} 的活动子图。
+ *
+ * Queries are filtered by {@code creator_in}, ordered and paged like the real
+ * subgraph (cursor by {@code creationTimestamp}, {@code id_gt} within one
+ * second). A trade becomes visible the moment {@link #publish} returns, and that
+ * instant is kept so a test can measure how long the bot took to see it.
+ * 查询按 {@code creator_in} 过滤，并按真实子图的方式排序和分页（按 {@code creationTimestamp} 游标，同一秒内按 {@code id_gt}）。
+ * 交易在 {@link #publish} 返回时即可见，并记录该时刻，以便测试测量机器人发现它所需的时间。
+ */
+public class FakeFeedServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger queries = new AtomicInteger();
+
+    // Published trades in (timestamp, id) order, guarded by this / 按 (时间戳, id) 排序的已发布交易，由 this 保护
+    private final List<Trade> trades = new ArrayList<>();
+    private final Map<String, Long> publishedNanos = new HashMap<>();
+    private final Set<String> failing = new HashSet<>();
+
+    public FakeFeedServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "fake-feed");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/activity", this::graphql);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/activity";
+    }
+
+    /**
+     * Makes a trade visible to queries. / 使交易对查询可见。
+     */
+    public synchronized void publish(Trade trade) {
+        int at = trades.size();
+        while (at > 0 && compare(trades.get(at - 1), trade) > 0) {
+            at--;
+        }
+        trades.add(at, trade);
+        publishedNanos.put(trade.id(), System.nanoTime());
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the trade was published / 交易发布时的 {@link System#nanoTime()}
+     */
+    public synchronized long publishedNanos(String tradeId) {
+        return publishedNanos.get(tradeId);
+    }
+
+    /**
+     * Answers 503 to queries for this creator until cleared. / 对该创建者的查询返回 503，直到清除。
+     */
+    public synchronized void setFailing(String creator, boolean fail) {
+        if (fail) {
+            failing.add(creator);
+        } else {
+            failing.remove(creator);
+        }
+    }
+
+    public int getQueryCount() {
+        return queries.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static int compare(Trade a, Trade b) {
+        int byTime = Long.compare(a.creationTimestamp(), b.creationTimestamp());
+        return byTime != 0 ? byTime : a.id().compareTo(b.id());
+    }
+
+    private void graphql(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            queries.incrementAndGet();
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            if (fails(request.path("variables").path("where").path("creator_in"))) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (JsonGenerator g = mapper.getFactory().createGenerator(buffer)) {
+                g.writeStartObject();
+                g.writeObjectFieldStart("data");
+                g.writeArrayFieldStart("fpmmTrades");
+                for (Trade trade : select(request.path("variables"))) {
+                    writeTrade(g, trade);
+                }
+                g.writeEndArray();
+                g.writeEndObject();
+                g.writeEndObject();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, buffer.size());
+            try (OutputStream os = exchange.getResponseBody()) {
+                buffer.writeTo(os);
+            }
+        }
+    }
+
+    private synchronized boolean fails(JsonNode creators) {
+        for (JsonNode creator : creators) {
+            if (failing.contains(creator.asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized List<Trade> select(JsonNode variables) {
+        JsonNode where = variables.path("where");
+        Set<String> creators = new HashSet<>();
+        where.path("creator_in").forEach(creator -> creators.add(creator.asText()));
+        long from = where.has("creationTimestamp_gte") ? where.get("creationTimestamp_gte").asLong()
+                : where.has("creationTimestamp_gt") ? where.get("creationTimestamp_gt").asLong() + 1
+                : where.path("creationTimestamp").asLong(0);
+        long to = where.has("creationTimestamp") ? from : Long.MAX_VALUE;
+        String idGt = where.path("id_gt").asText("");
+        int first = variables.path("first").asInt(100);
+
+        List<Trade> page = new ArrayList<>();
+        for (Trade trade : trades) {
+            if (page.size() == first || trade.creationTimestamp() > to) {
+                break;
+            }
+            if (trade.creationTimestamp() >= from && trade.id().compareTo(idGt) > 0
+                    && (creators.isEmpty() || creators.contains(trade.creator()))) {
+                page.add(trade);
+            }
+        }
+        return page;
+    }
+
+    private static void writeTrade(JsonGenerator g, Trade trade) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", trade.id());
+        g.writeStringField("creationTimestamp", Long.toString(trade.creationTimestamp()));
+        g.writeStringField("title", trade.title());
+        g.writeStringField("outcomeIndex", Integer.toString(trade.outcomeIndex()));
+        g.writeStringField("type", trade.type());
+        g.writeStringField("amount", trade.amount());
+        g.writeStringField("collateralAmount", trade.collateralAmount());
+        g.writeObjectFieldStart("creator");
+        g.writeStringField("id", trade.creator());
+        g.writeEndObject();
+        g.writeObjectFieldStart("fpmm");
+        g.writeArrayFieldStart("conditions");
+        g.writeStartObject();
+        g.writeStringField("id", trade.conditionId());
+        g.writeEndObject();
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+}
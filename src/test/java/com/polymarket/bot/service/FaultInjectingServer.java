@@ -0,0 +1,128 @@
+package com.polymarket.bot.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test fixture: an upstream that answers each request with the next scripted fault.
+ * 测试夹具：按脚本为每个请求返回下一个故障的上游。
+ *
+ * Requests beyond the script get the fallback, {@link Fault#ok()} unless changed
+ * with {@link #fallback}. Slow answers run on their own handler thread, so a
+ * hedge sent meanwhile is served at once.
+ * 超出脚本的请求使用后备行为（默认 {@link Fault#ok()}，可通过 {@link #fallback} 修改）。
+ * 慢响应在各自的处理线程上运行，因此期间发出的对冲请求会立即得到响应。
+ */
+public class FaultInjectingServer implements AutoCloseable {
+
+    /**
+     * One scripted answer. / 一个脚本化的响应。
+     *
+     * @param status      HTTP status, or 0 to drop the connection without a response / HTTP 状态码，0 表示不响应直接断开连接
+     * @param delayMillis Delay before answering / 响应前的延迟
+     */
+    public record Fault(int status, long delayMillis) {
+
+        public static Fault ok() {
+            return new Fault(200, 0);
+        }
+
+        public static Fault status(int status) {
+            return new Fault(status, 0);
+        }
+
+        public static Fault slow(long delayMillis) {
+            return new Fault(200, delayMillis);
+        }
+
+        public static Fault disconnect() {
+            return new Fault(0, 0);
+        }
+    }
+
+    private static final byte[] BODY = "{\"data\":{}}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    // Guarded by this / 由 this 保护
+    private final Deque<Fault> script = new ArrayDeque<>();
+    private Fault fallback = Fault.ok();
+
+    public FaultInjectingServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fault-stub");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/graphql";
+    }
+
+    /**
+     * Queues answers for the next requests, in order. / 按顺序为接下来的请求排队响应。
+     */
+    public synchronized FaultInjectingServer script(Fault... faults) {
+        script.addAll(List.of(faults));
+        return this;
+    }
+
+    /**
+     * Answer for every request once the script is used up. / 脚本用完后对每个请求的响应。
+     */
+    public synchronized FaultInjectingServer fallback(Fault fault) {
+        this.fallback = fault;
+        return this;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private synchronized Fault next() {
+        Fault fault = script.poll();
+        return fault != null ? fault : fallback;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Fault fault = next();
+        exchange.getRequestBody().readAllBytes();
+        if (fault.delayMillis() > 0) {
+            try {
+                Thread.sleep(fault.delayMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (fault.status() == 0) {
+            // The server drops the connection of a handler that throws / 处理器抛出异常时服务器会断开连接
+            throw new IOException("Injected disconnect");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(fault.status(), BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(BODY);
+        }
+    }
+}
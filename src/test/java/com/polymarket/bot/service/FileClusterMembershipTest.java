@@ -0,0 +1,50 @@
+package com.polymarket.bot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Leases in a shared directory: listed while live, gone after leaving or expiring.
+ * 共享目录中的租约：有效时被列出，离开或过期后消失。
+ */
+class FileClusterMembershipTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void liveNodesAreListedSorted() throws Exception {
+        FileClusterMembership membership = new FileClusterMembership(dir);
+        assertEquals(List.of("b"), membership.heartbeat("b", 60_000));
+        assertEquals(List.of("a", "b"), membership.heartbeat("a", 60_000));
+
+        membership.leave("b");
+        assertEquals(List.of("a"), membership.heartbeat("a", 60_000));
+        assertFalse(Files.exists(dir.resolve("b.lease")));
+    }
+
+    @Test
+    void unrenewedLeaseExpiresAndIsDeleted() throws Exception {
+        FileClusterMembership membership = new FileClusterMembership(dir);
+        membership.heartbeat("dead", 50);
+        assertEquals(List.of("alive", "dead"), membership.heartbeat("alive", 60_000));
+
+        Thread.sleep(100);
+        assertEquals(List.of("alive"), membership.heartbeat("alive", 60_000));
+        assertFalse(Files.exists(dir.resolve("dead.lease")));
+    }
+
+    @Test
+    void unreadableLeaseCountsAsExpired() throws Exception {
+        FileClusterMembership membership = new FileClusterMembership(dir);
+        Files.writeString(dir.resolve("torn.lease"), "");
+        assertEquals(List.of("a"), membership.heartbeat("a", 60_000));
+    }
+}
@@ -0,0 +1,310 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test fixture: a CLOB that accepts {@code POST /order} and checks what it receives.
+ * 测试夹具：接受 {@code POST /order} 并检查收到内容的 CLOB。
+ *
+ * Orders match at once unless {@link #restWith} makes them rest; resting orders
+ * answer {@code GET /data/order/<id>} and are cancelled by {@code DELETE /order}.
+ * 除非 {@link #restWith} 使订单挂单，订单会立即成交；挂单响应 {@code GET /data/order/<id>}，
+ * 并可通过 {@code DELETE /order} 取消。
+ *
+ * Every order is recorded with its arrival time, whether its L2 HMAC headers
+ * verify against the API secret, and the address its EIP-712 signature
+ * recovers to. The hashing is written out here from the exchange's order
+ * struct rather than borrowed from {@link OrderSigner}, so a bug there cannot
+ * hide itself.
+ * 每个订单都会记录到达时间、其 L2 HMAC 请求头能否用 API 密钥验证通过，以及其 EIP-712 签名恢复出的地址。
+ * 哈希计算按交易所的订单结构在此独立实现，而不是借用 {@link OrderSigner}，使其中的错误无法自我掩盖。
+ */
+public class MockClobServer implements AutoCloseable {
+
+    private static final String EXCHANGE = "0x4bFb41d5B3570DeFd03C39a9A4D8dE6Bd8B8982E";
+    private static final long CHAIN_ID = 137;
+    private static final X9ECParameters SECP256K1 = CustomNamedCurves.getByName("secp256k1");
+
+    /**
+     * One order as the CLOB saw it. / CLOB 收到的一个订单。
+     *
+     * @param body          The POST body / POST 请求体
+     * @param arrivalNanos  {@link System#nanoTime()} on arrival / 到达时的 {@link System#nanoTime()}
+     * @param hmacValid     POLY_SIGNATURE matches timestamp + method + path + body / POLY_SIGNATURE 与 timestamp + method + path + body 匹配
+     * @param timestamp     POLY_TIMESTAMP, Unix seconds / POLY_TIMESTAMP，Unix 秒
+     * @param address       POLY_ADDRESS
+     * @param apiKey        POLY_API_KEY
+     * @param passphrase    POLY_PASSPHRASE
+     * @param orderSigner   Address recovered from the order's EIP-712 signature / 从订单 EIP-712 签名恢复出的地址
+     */
+    public record ReceivedOrder(JsonNode body, long arrivalNanos, boolean hmacValid, long timestamp, String address,
+            String apiKey, String passphrase, String orderSigner) {
+
+        public JsonNode order() {
+            return body.path("order");
+        }
+    }
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final byte[] apiSecret;
+    private final BlockingQueue<ReceivedOrder> orders = new LinkedBlockingQueue<>();
+    private final AtomicInteger orderIds = new AtomicInteger();
+    private volatile String rejectWith;
+    private volatile double restingFill = -1;
+    private volatile boolean cancelFails;
+    private final Map<String, String> orderStatus = new ConcurrentHashMap<>();
+    private final BlockingQueue<ReceivedOrder> cancels = new LinkedBlockingQueue<>();
+
+    /**
+     * @param apiSecret Base64url API secret the bot signs with / 机器人签名使用的 Base64url API 密钥
+     */
+    public MockClobServer(String apiSecret) throws IOException {
+        this.apiSecret = Base64.getUrlDecoder().decode(apiSecret);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "mock-clob");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/order", this::order);
+        server.createContext("/data/order/", this::lookup);
+        server.createContext("/time", exchange -> respond(exchange, 200,
+                Long.toString(System.currentTimeMillis() / 1000)));
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Rejects every following order with this error, or accepts them again when null.
+     * 以该错误拒绝之后的所有订单；为 null 时恢复接受。
+     */
+    public void rejectWith(String error) {
+        this.rejectWith = error;
+    }
+
+    /**
+     * Lets following orders rest on the book with this many shares filled; negative matches them at once.
+     * 使之后的订单挂在订单簿上并已成交该数量的份额；为负时立即成交。
+     *
+     * @param cancelFails Answer cancels with 500 and leave the order live / 以 500 响应撤单并保持订单有效
+     */
+    public void restWith(double filledShares, boolean cancelFails) {
+        this.restingFill = filledShares;
+        this.cancelFails = cancelFails;
+    }
+
+    /**
+     * @return the next cancel received, or null after the timeout / 下一个收到的撤单，超时后返回 null
+     */
+    public ReceivedOrder nextCancel(long timeoutMillis) throws InterruptedException {
+        return cancels.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the next order received, or null after the timeout / 下一个收到的订单，超时后返回 null
+     */
+    public ReceivedOrder nextOrder(long timeoutMillis) throws InterruptedException {
+        return orders.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void order(HttpExchange exchange) throws IOException {
+        long arrival = System.nanoTime();
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        Headers headers = exchange.getRequestHeaders();
+        String timestamp = headers.getFirst("POLY_TIMESTAMP");
+        JsonNode body = mapper.readTree(raw);
+        boolean delete = "DELETE".equals(exchange.getRequestMethod());
+
+        (delete ? cancels : orders).add(new ReceivedOrder(body, arrival,
+                hmacValid(timestamp, exchange.getRequestMethod(), exchange.getRequestURI().getPath(), raw,
+                        headers.getFirst("POLY_SIGNATURE")),
+                timestamp == null ? 0 : Long.parseLong(timestamp), headers.getFirst("POLY_ADDRESS"),
+                headers.getFirst("POLY_API_KEY"), headers.getFirst("POLY_PASSPHRASE"),
+                delete ? null : recoverSigner(body.path("order"))));
+
+        if (delete) {
+            String orderId = body.path("orderID").asText();
+            if (cancelFails) {
+                respond(exchange, 500, "{\"error\":\"internal\"}");
+            } else {
+                orderStatus.replace(orderId, "CANCELED");
+                respond(exchange, 200, "{\"canceled\":[\"" + orderId + "\"],\"not_canceled\":{}}");
+            }
+            return;
+        }
+        String error = rejectWith;
+        if (error != null) {
+            respond(exchange, 400, "{\"success\":false,\"errorMsg\":\"" + error + "\"}");
+        } else if (restingFill >= 0) {
+            String orderId = "0x" + orderIds.incrementAndGet();
+            orderStatus.put(orderId, "LIVE");
+            respond(exchange, 200, "{\"success\":true,\"orderID\":\"" + orderId + "\",\"status\":\"live\"}");
+        } else {
+            JsonNode order = body.path("order");
+            respond(exchange, 200, "{\"success\":true,\"orderID\":\"0x" + orderIds.incrementAndGet()
+                    + "\",\"status\":\"matched\",\"makingAmount\":\"" + order.path("makerAmount").asText()
+                    + "\",\"takingAmount\":\"" + order.path("takerAmount").asText() + "\"}");
+        }
+    }
+
+    private void lookup(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String orderId = path.substring(path.lastIndexOf('/') + 1);
+        String status = orderStatus.get(orderId);
+        if (status == null) {
+            respond(exchange, 404, "{\"error\":\"not found\"}");
+            return;
+        }
+        respond(exchange, 200, "{\"id\":\"" + orderId + "\",\"status\":\"" + status + "\",\"size_matched\":\""
+                + restingFill + "\",\"original_size\":\"100\"}");
+    }
+
+    private boolean hmacValid(String timestamp, String method, String path, byte[] body, String signature) {
+        if (timestamp == null || signature == null) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(apiSecret, "HmacSHA256"));
+            mac.update((timestamp + method + path).getBytes(StandardCharsets.US_ASCII));
+            byte[] expected = mac.doFinal(body);
+            return MessageDigest.isEqual(expected, Base64.getUrlDecoder().decode(signature));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Recovers the address that signed an order for the (non neg-risk) CTF exchange.
+     * 恢复为（非 neg-risk）CTF 交易所订单签名的地址。
+     */
+    static String recoverSigner(JsonNode order) {
+        byte[] struct = concat(
+                keccak("Order(uint256 salt,address maker,address signer,address taker,uint256 tokenId,"
+                        + "uint256 makerAmount,uint256 takerAmount,uint256 expiration,uint256 nonce,"
+                        + "uint256 feeRateBps,uint8 side,uint8 signatureType)"),
+                uint(order.path("salt").asText()),
+                address(order.path("maker").asText()),
+                address(order.path("signer").asText()),
+                address(order.path("taker").asText()),
+                uint(order.path("tokenId").asText()),
+                uint(order.path("makerAmount").asText()),
+                uint(order.path("takerAmount").asText()),
+                uint(order.path("expiration").asText()),
+                uint(order.path("nonce").asText()),
+                uint(order.path("feeRateBps").asText()),
+                uint("BUY".equals(order.path("side").asText()) ? "0" : "1"),
+                uint(order.path("signatureType").asText()));
+        byte[] domain = keccak(concat(
+                keccak("EIP712Domain(string name,string version,uint256 chainId,address verifyingContract)"),
+                keccak("Polymarket CTF Exchange"), keccak("1"), uint(Long.toString(CHAIN_ID)), address(EXCHANGE)));
+        byte[] hash = keccak(concat(new byte[] { 0x19, 0x01 }, domain, keccak(struct)));
+
+        byte[] sig = HexFormat.of().parseHex(order.path("signature").asText().substring(2));
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(sig, 0, 32));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(sig, 32, 64));
+        int recId = sig[64] - 27;
+
+        BigInteger n = SECP256K1.getN();
+        byte[] compressed = new byte[33];
+        compressed[0] = (byte) (recId == 0 ? 0x02 : 0x03);
+        System.arraycopy(Arrays.copyOfRange(sig, 0, 32), 0, compressed, 1, 32);
+        ECPoint point = SECP256K1.getCurve().decodePoint(compressed);
+        BigInteger rInv = r.modInverse(n);
+        BigInteger e = new BigInteger(1, hash);
+        ECPoint q = ECAlgorithms.sumOfTwoMultiplies(SECP256K1.getG(), e.negate().multiply(rInv).mod(n), point,
+                s.multiply(rInv).mod(n)).normalize();
+        byte[] pub = q.getEncoded(false);
+        return "0x" + HexFormat.of().formatHex(keccak(Arrays.copyOfRange(pub, 1, pub.length)), 12, 32);
+    }
+
+    private static byte[] uint(String decimal) {
+        byte[] raw = new BigInteger(decimal).toByteArray();
+        byte[] word = new byte[32];
+        int len = Math.min(raw.length, 32);
+        System.arraycopy(raw, raw.length - len, word, 32 - len, len);
+        return word;
+    }
+
+    private static byte[] address(String hex) {
+        byte[] word = new byte[32];
+        System.arraycopy(HexFormat.of().parseHex(hex.substring(2)), 0, word, 12, 20);
+        return word;
+    }
+
+    private static byte[] keccak(String text) {
+        return keccak(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] keccak(byte[] input) {
+        KeccakDigest digest = new KeccakDigest(256);
+        digest.update(input, 0, input.length);
+        byte[] out = new byte[32];
+        digest.doFinal(out, 0);
+        return out;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int at = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, at, part.length);
+            at += part.length;
+        }
+        return out;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        try (exchange) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+}
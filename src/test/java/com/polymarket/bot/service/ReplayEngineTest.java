@@ -0,0 +1,100 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Replays a small log and checks that copies go through the live sizing, the
+ * risk caps and the flow windows.
+ * 回放一个小日志，检查跟单经过实盘的定额、风控上限和流量窗口。
+ */
+class ReplayEngineTest {
+
+    private static final String WHALE = "0x00000000000000000000000000000000000000aa";
+    private static final String CONDITION = "0x01";
+
+    @TempDir
+    Path dir;
+
+    private TradeLog log;
+    private BotConfig config;
+    private ReplayEngine.Params defaults;
+
+    @BeforeEach
+    void record() throws Exception {
+        Path file = dir.resolve("trades.log");
+        try (TradeLog.Writer writer = new TradeLog.Writer(file)) {
+            // Ten $1000 buys at 0.50, one a second, then a $1000 sell at 0.60 / 十笔 0.50 价格的 1000 美元买入，每秒一笔，然后一笔 0.60 价格的 1000 美元卖出
+            for (int i = 0; i < 10; i++) {
+                writer.append(trade(1_000 + i, "Buy", 2_000_000_000L, 1_000_000_000L));
+            }
+            writer.append(trade(1_100, "Sell", 1_666_666_667L, 1_000_000_000L));
+        }
+        log = TradeLog.open(file);
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("HTTP_PROXY_HOST", "");
+        overrides.put("MANUAL_WATCHLIST", WHALE);
+        overrides.put("COPY_TRADE_AMOUNT", "100");
+        overrides.put("COPY_RATIO", "0");
+        overrides.put("COPY_MAX_AMOUNT", "100");
+        overrides.put("COPY_MAX_SLIPPAGE", "0.02");
+        overrides.put("RISK_MAX_MARKET_USDC", "250");
+        overrides.put("RISK_MAX_WHALE_USDC", "0");
+        overrides.put("RISK_MAX_TOTAL_USDC", "0");
+        overrides.put("RISK_DAILY_LOSS_USDC", "0");
+        overrides.put("FLOW_WINDOW_SECONDS", "0");
+        config = BotConfig.load().with(overrides, 0);
+        defaults = new ReplayEngine.Params("default", false, Map.of());
+    }
+
+    private static Trade trade(long timestamp, String type, long amount, long collateral) {
+        return new Trade(null, timestamp, "Will it rain?", 0, type, Long.toString(amount), Long.toString(collateral),
+                WHALE, CONDITION);
+    }
+
+    @Test
+    void marketCapShrinksThenSkipsBuys() throws Exception {
+        ReplayEngine.Result result = new ReplayEngine(log, config).run(List.of(defaults), 1).get(0);
+
+        // $100, $100, then the $50 left under the $250 cap / 100、100 美元，然后是 250 美元上限下剩余的 50 美元
+        assertEquals(250, result.invested(), 1e-9);
+        assertEquals(Map.of("risk_market", 7), result.skipReasons());
+        // The sell is within the shares held: $100 at the 0.58 limit / 卖出未超过持有份额：按 0.58 限价卖出 100 美元
+        assertEquals(4, result.copied());
+        assertEquals(1, result.wins());
+        assertEquals(100 - 100 / 0.58 * 250 / (250 / 0.52), result.realizedPnl(), 1e-6);
+    }
+
+    @Test
+    void flowWindowCoalescesFillsIntoOneCopy() throws Exception {
+        ReplayEngine.Result result = new ReplayEngine(log, config)
+                .run(List.of(defaults.with("FLOW_WINDOW_SECONDS=60,FLOW_EMIT_USDC=0")), 1).get(0);
+
+        // One net buy for the window, and the sell flushed at the end of the log / 窗口一笔净买入，以及日志结束时刷新的卖出
+        assertEquals(100, result.invested(), 1e-9);
+        assertEquals(2, result.copied());
+        assertEquals(0, result.skipped());
+    }
+
+    @Test
+    void settingsAreCheckedBeforeReplaying() {
+        assertThrows(IllegalArgumentException.class, () -> defaults.with("MANUAL_WATCHLIST=" + WHALE));
+        assertThrows(IllegalArgumentException.class, () -> defaults.with("unknown=1"));
+        ReplayEngine engine = new ReplayEngine(log, config);
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.run(List.of(defaults.with("RISK_MAX_TOTAL_USDC=-1")), 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.run(List.of(defaults.with("FLOW_WINDOW_MODE=hopping")), 1));
+    }
+}
@@ -0,0 +1,173 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Kills the watcher partway through a batch, inside the notifier: the trade has
+ * been dispatched but its alert not yet delivered, the point where it used to be
+ * marked processed already. Checks that the restarted watcher alerts every trade
+ * exactly once.
+ * 在批次处理中途、通知器内部杀死观察者：交易已分发但警报尚未送达，此前交易在这一点已被标记为已处理。
+ * 检查重启后的观察者对每笔交易恰好警报一次。
+ *
+ * The watcher runs in a child JVM that stops with {@link Runtime#halt}, so no
+ * shutdown hook or flush runs, as with {@code kill -9}.
+ * 观察者运行在子 JVM 中并通过 {@link Runtime#halt} 停止，不运行任何关闭钩子或刷新，与 {@code kill -9} 相同。
+ */
+class StateStoreCrashTest {
+
+    private static final int TRADES = 12;
+    private static final int CRASH_EXIT_CODE = 137;
+    private static final String WHALE = "0x" + "ab".repeat(20);
+    private static final String OFFLINE = "http://127.0.0.1:9";
+
+    @TempDir
+    Path dir;
+
+    // After the watermark a new state store starts at / 晚于新状态存储的起始水位线
+    private final long start = System.currentTimeMillis() / 1000 + 60;
+
+    @Test
+    void alertsExactlyOnceAfterCrashMidBatch() throws Exception {
+        Path state = dir.resolve("state");
+        Path alerts = dir.resolve("alerts.log");
+
+        // First run dies while sending the 6th of the 12 alerts / 第一次运行在发送 12 条警报中的第 6 条时终止
+        assertEquals(CRASH_EXIT_CODE, runWatcher(state, alerts, 5));
+        assertEquals(5, Files.readAllLines(alerts).size());
+
+        // The restart re-reads the batch from the old watermark / 重启后从旧水位线重新读取该批次
+        assertEquals(0, runWatcher(state, alerts, -1));
+
+        List<String> delivered = Files.readAllLines(alerts);
+        assertEquals(TRADES, delivered.size(), "every trade alerted once: " + delivered);
+        for (int i = 0; i < TRADES; i++) {
+            assertTrue(delivered.contains(tradeId(i)), "missing " + tradeId(i));
+        }
+
+        StateStore store = new StateStore(state);
+        assertEquals(timestamp(start, TRADES - 1), store.getWatermark());
+        for (int i = 0; i < TRADES; i++) {
+            assertTrue(store.isProcessed(tradeId(i)));
+        }
+    }
+
+    @Test
+    void repeatedCrashesStillAlertEachTradeOnce() throws Exception {
+        Path state = dir.resolve("state");
+        Path alerts = dir.resolve("alerts.log");
+
+        assertEquals(CRASH_EXIT_CODE, runWatcher(state, alerts, 8));
+        // Re-reads the 8 processed trades, alerts 2 new ones and dies again / 重新读取 8 笔已处理交易，警报 2 笔新交易后再次终止
+        assertEquals(CRASH_EXIT_CODE, runWatcher(state, alerts, 2));
+        assertEquals(10, Files.readAllLines(alerts).size());
+        assertEquals(0, runWatcher(state, alerts, -1));
+
+        assertEquals(TRADES, Files.readAllLines(alerts).size());
+        assertEquals(TRADES, Files.readAllLines(alerts).stream().distinct().count());
+    }
+
+    private int runWatcher(Path state, Path alerts, int crashAfter) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Consumer.class.getName(), state.toString(), alerts.toString(), Integer.toString(crashAfter),
+                Long.toString(start))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "watcher hung");
+        return process.exitValue();
+    }
+
+    private static String tradeId(int i) {
+        return "0xtrade" + i;
+    }
+
+    // Three trades per second, so resuming re-reads part of a second / 每秒三笔交易，因此恢复时会重新读取某一秒的一部分
+    private static long timestamp(long start, int i) {
+        return start + i / 3;
+    }
+
+    /**
+     * Child process: one poll of a {@link WhaleWatcher} over {@link FakeFeedServer},
+     * alerting through a {@link StubNotifier} that halts instead of sending.
+     * 子进程：{@link WhaleWatcher} 在 {@link FakeFeedServer} 上轮询一次，通过 {@link StubNotifier}
+     * 发送警报，到点时终止进程而不发送。
+     *
+     * Args: state directory, alert log, alerts to deliver before halting (-1 to finish), first trade time.
+     * 参数：状态目录、警报日志、终止前送达的警报数（-1 表示完成）、第一笔交易时间。
+     */
+    static final class Consumer {
+
+        public static void main(String[] args) throws Exception {
+            Path alerts = Path.of(args[1]);
+            int crashAfter = Integer.parseInt(args[2]);
+            long start = Long.parseLong(args[3]);
+
+            FakeFeedServer feed = new FakeFeedServer();
+            // The market title carries the trade id into the alert text / 市场标题将交易 id 带入警报文本
+            for (int i = 0; i < TRADES; i++) {
+                feed.publish(new Trade(tradeId(i), timestamp(start, i), tradeId(i), 0, "Buy", "2000000", "1000000",
+                        WHALE, "0x01"));
+            }
+
+            Map<String, String> overrides = new HashMap<>();
+            overrides.put("HTTP_PROXY_HOST", "");
+            overrides.put("STATE_DIR", args[0]);
+            overrides.put("MANUAL_WATCHLIST", WHALE);
+            overrides.put("ACTIVITY_SUBGRAPH_URLS", feed.url());
+            overrides.put("PNL_SUBGRAPH_URLS", OFFLINE);
+            overrides.put("GAMMA_URL", OFFLINE);
+            overrides.put("CLOB_URL", OFFLINE);
+            overrides.put("UPSTREAM_HEDGE_DELAY_MS", "0");
+            overrides.put("EVENT_LOG_DIR", "none");
+            BotConfig config = BotConfig.load().with(overrides, 0);
+
+            int[] delivered = { 0 };
+            StubNotifier notifier = new StubNotifier(message -> {
+                if (delivered[0] == crashAfter) {
+                    Runtime.getRuntime().halt(CRASH_EXIT_CODE);
+                }
+                String market = message.lines().filter(line -> line.startsWith("Market: ")).findFirst().orElseThrow();
+                try {
+                    Files.writeString(alerts, market.substring("Market: ".length()) + "\n",
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                delivered[0]++;
+            });
+            Metrics metrics = new Metrics();
+            ConfigManager configs = new ConfigManager(config, null);
+            EventLog events = EventLog.fromConfig(config, metrics);
+            WhaleWatcher watcher = new WhaleWatcher(notifier, new TradeExecutor(notifier, configs, events, metrics),
+                    configs, events, metrics);
+
+            List<Trade> batch = watcher.fetchTrades();
+            for (Trade trade : batch) {
+                MatchedTrade matched = watcher.match(trade);
+                if (matched != null) {
+                    watcher.dispatch(matched);
+                }
+            }
+            // The watermark moves only once the whole batch is through / 整个批次完成后才推进水位线
+            watcher.advanceWatermark(batch.get(batch.size() - 1).creationTimestamp());
+            Runtime.getRuntime().halt(0);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.polymarket.bot.service;
+
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Test fixture: a notifier that hands each alert to the test instead of
+ * Telegram and reports it delivered as soon as the test returns.
+ * 测试夹具：将每条警报交给测试而不是 Telegram，测试返回后立即报告已送达。
+ */
+public class StubNotifier extends TelegramNotifier {
+
+    private final Consumer<String> delivery;
+
+    public StubNotifier(Consumer<String> delivery) {
+        super(new DefaultBotOptions(), "test-token", "0", new Metrics());
+        this.delivery = delivery;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendAlert(String message, long tradeTimestamp) {
+        delivery.accept(message);
+        return CompletableFuture.completedFuture(true);
+    }
+}
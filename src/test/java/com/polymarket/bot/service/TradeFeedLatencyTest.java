@@ -0,0 +1,131 @@
+package com.polymarket.bot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Publishes trades on {@link FakeFeedServer} and checks how soon the poll pipeline,
+ * paced by {@link AdaptivePollSource}, hands them to dispatch.
+ * 在 {@link FakeFeedServer} 上发布交易，检查由 {@link AdaptivePollSource} 驱动的轮询流水线多快将其交给分发。
+ *
+ * A trade published while whales are active must be seen within about the
+ * minimum interval; one published after a quiet spell within the maximum.
+ * 巨鲸活跃时发布的交易须在约最小间隔内被发现；安静一段时间后发布的交易须在最大间隔内被发现。
+ */
+class TradeFeedLatencyTest {
+
+    private static final long MIN_INTERVAL_MILLIS = 100;
+    private static final long MAX_INTERVAL_MILLIS = 800;
+    // Fetch, decode and hand-off on a loaded CI machine / 在繁忙的 CI 机器上拉取、解码和交接的耗时
+    private static final long SLACK_MILLIS = 250;
+    private static final String WHALE = "0x" + "ab".repeat(20);
+
+    private FakeFeedServer feed;
+    private AdaptivePollSource source;
+    private final BlockingQueue<Detection> detected = new LinkedBlockingQueue<>();
+    private long now;
+    private int seq;
+
+    @BeforeEach
+    void startPipeline() throws Exception {
+        feed = new FakeFeedServer();
+        now = System.currentTimeMillis() / 1000;
+
+        BotConfig config = BotConfig.load().with(Map.of("HTTP_PROXY_HOST", "", "UPSTREAM_HEDGE_DELAY_MS", "0"), 0);
+        Metrics metrics = new Metrics();
+        JsonFactory factory = new JsonFactory();
+        SubgraphMirrors activity = new SubgraphMirrors("activity", List.of(feed.url()),
+                new UpstreamClient(config, metrics), factory, false, 1, 60, metrics);
+        TradeIngestor ingestor = new TradeIngestor(activity, new SubgraphDecoder(factory), now);
+
+        PollPipeline pipeline = new PollPipeline(ingestor::fetchNewTrades, trade -> new MatchedTrade(trade, false),
+                matched -> detected.add(new Detection(matched.trade().id(), System.nanoTime())),
+                PollPipeline.OverrunPolicy.COALESCE, 64, 2, 64, StripedDispatcher.OverflowPolicy.BLOCK,
+                watermark -> {
+                }, metrics);
+        source = new AdaptivePollSource(MIN_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS);
+        pipeline.start(source);
+    }
+
+    @AfterEach
+    void stop() {
+        source.stop();
+        feed.close();
+    }
+
+    @Test
+    void tradesDuringABurstAreSeenWithinTheMinimumInterval() throws Exception {
+        // The first trade switches the source to fast polling / 第一笔交易使数据源切换到快速轮询
+        publishAndAwait(MAX_INTERVAL_MILLIS + SLACK_MILLIS);
+        for (int i = 0; i < 10; i++) {
+            long latency = publishAndAwait(MIN_INTERVAL_MILLIS + SLACK_MILLIS);
+            assertTrue(latency <= MIN_INTERVAL_MILLIS + SLACK_MILLIS, "burst trade seen after " + latency + "ms");
+        }
+        assertEquals(MIN_INTERVAL_MILLIS, source.getIntervalMillis());
+    }
+
+    @Test
+    void aTradeAfterAQuietSpellIsSeenWithinTheMaximumInterval() throws Exception {
+        // Empty polls back the interval off to the maximum / 空轮询使间隔退避到最大值
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (source.getIntervalMillis() < MAX_INTERVAL_MILLIS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(MAX_INTERVAL_MILLIS, source.getIntervalMillis());
+        int queriesWhileQuiet = feed.getQueryCount();
+        Thread.sleep(2 * MAX_INTERVAL_MILLIS);
+        // Backed off: about one query per maximum interval / 已退避：大约每个最大间隔一次查询
+        assertTrue(feed.getQueryCount() - queriesWhileQuiet <= 3, "kept polling fast while quiet");
+
+        long latency = publishAndAwait(MAX_INTERVAL_MILLIS + SLACK_MILLIS);
+        assertTrue(latency <= MAX_INTERVAL_MILLIS + SLACK_MILLIS, "quiet trade seen after " + latency + "ms");
+    }
+
+    @Test
+    void sameSecondTradesAreEachDispatchedOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            feed.publish(trade());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(detected.poll(MAX_INTERVAL_MILLIS + SLACK_MILLIS, TimeUnit.MILLISECONDS), "trade " + i);
+        }
+        // Later polls re-read the cursor second without re-dispatching it / 之后的轮询会重读游标所在秒，但不会重复分发
+        assertNull(detected.poll(3 * MIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return milliseconds from publishing a trade to its dispatch / 从发布交易到分发的毫秒数
+     */
+    private long publishAndAwait(long timeoutMillis) throws InterruptedException {
+        Trade trade = trade();
+        feed.publish(trade);
+        Detection detection = detected.poll(timeoutMillis + 1_000, TimeUnit.MILLISECONDS);
+        assertNotNull(detection, "trade " + trade.id() + " never dispatched");
+        assertEquals(trade.id(), detection.tradeId());
+        return TimeUnit.NANOSECONDS.toMillis(detection.nanos() - feed.publishedNanos(trade.id()));
+    }
+
+    private Trade trade() {
+        int n = seq++;
+        return new Trade(String.format("0x%016x", n), now, "Fake market #" + n, 0, "Buy", "20000000",
+                "10000000", WHALE, "0x" + "0".repeat(63) + "1");
+    }
+
+    private record Detection(String tradeId, long nanos) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.service.FaultInjectingServer.Fault;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link UpstreamClient} against {@link FaultInjectingServer}: retries on 5xx
+ * and dropped connections, hedging of slow answers, and the circuit breaker
+ * opening, rejecting, and closing again after a half-open probe.
+ * 让 {@link UpstreamClient} 对接 {@link FaultInjectingServer}：5xx 和断开连接时的重试、慢响应的对冲，
+ * 以及熔断器的打开、拒绝和半开探测后的重新关闭。
+ */
+class UpstreamFaultTest {
+
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_OPEN_MILLIS = 400;
+    private static final long HEDGE_DELAY_MILLIS = 100;
+
+    private FaultInjectingServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FaultInjectingServer();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void transientServerErrorsAreRetried() throws IOException {
+        server.script(Fault.status(503), Fault.status(500));
+        try (Response response = call(client(3, 0))) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void droppedConnectionIsRetried() throws IOException {
+        server.script(Fault.disconnect());
+        try (Response response = call(client(3, 0))) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(server.getRequestCount() >= 2);
+    }
+
+    @Test
+    void exhaustedRetriesReturnTheLastResponse() throws IOException {
+        server.fallback(Fault.status(502));
+        try (Response response = call(client(2, 0))) {
+            assertEquals(502, response.code());
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void slowAnswerIsHedged() throws IOException {
+        server.script(Fault.slow(3_000));
+        UpstreamClient client = client(1, HEDGE_DELAY_MILLIS);
+        long start = System.nanoTime();
+        try (Response response = call(client)) {
+            assertEquals(200, response.code());
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        // Bounded by the hedge delay, not the slow first answer / 受对冲延迟限制，而不是慢的首个响应
+        assertTrue(millis < 1_000, "hedged call took " + millis + "ms");
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void breakerOpensAfterThresholdAndFailsFast() throws IOException {
+        server.fallback(Fault.status(500));
+        UpstreamClient client = client(1, 0);
+        for (int i = 0; i < BREAKER_FAILURES; i++) {
+            try (Response response = call(client)) {
+                assertEquals(500, response.code());
+            }
+        }
+        assertFalse(client.isAvailable(server.url()));
+
+        long start = System.nanoTime();
+        IOException rejected = assertThrows(IOException.class, () -> call(client));
+        assertTrue(rejected.getMessage().startsWith("Circuit open"), rejected.getMessage());
+        assertTrue(System.nanoTime() - start < 50_000_000L, "rejection was not immediate");
+        assertEquals(BREAKER_FAILURES, server.getRequestCount(), "open circuit still reached the server");
+    }
+
+    @Test
+    void halfOpenProbeClosesBreakerOnceUpstreamRecovers() throws Exception {
+        server.fallback(Fault.status(500));
+        UpstreamClient client = client(1, 0);
+        openBreaker(client);
+
+        server.fallback(Fault.ok());
+        Thread.sleep(BREAKER_OPEN_MILLIS + 100);
+        try (Response response = call(client)) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(client.isAvailable(server.url()));
+        try (Response response = call(client)) {
+            assertEquals(200, response.code());
+        }
+    }
+
+    @Test
+    void failedProbeReopensBreaker() throws Exception {
+        server.fallback(Fault.disconnect());
+        UpstreamClient client = client(1, 0);
+        openBreaker(client);
+
+        Thread.sleep(BREAKER_OPEN_MILLIS + 100);
+        int before = server.getRequestCount();
+        assertThrows(IOException.class, () -> call(client));
+        assertTrue(server.getRequestCount() > before, "probe was not sent");
+
+        // Re-opened by the probe: rejected without reaching the server / 被探测重新打开：请求未到达服务器即被拒绝
+        int afterProbe = server.getRequestCount();
+        IOException rejected = assertThrows(IOException.class, () -> call(client));
+        assertTrue(rejected.getMessage().startsWith("Circuit open"), rejected.getMessage());
+        assertEquals(afterProbe, server.getRequestCount());
+    }
+
+    private void openBreaker(UpstreamClient client) {
+        for (int i = 0; i < BREAKER_FAILURES; i++) {
+            try (Response ignored = call(client)) {
+                // Failure counted by the breaker / 失败已计入熔断器
+            } catch (IOException e) {
+                // Dropped connections count too / 断开连接同样计入
+            }
+        }
+        assertFalse(client.isAvailable(server.url()));
+    }
+
+    private Response call(UpstreamClient client) throws IOException {
+        Request request = new Request.Builder()
+                .url(server.url())
+                .post(RequestBody.create("{}", GraphQLClient.JSON))
+                .build();
+        return client.execute(request, 5_000);
+    }
+
+    private static UpstreamClient client(int maxAttempts, long hedgeDelayMillis) {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("HTTP_PROXY_HOST", "");
+        overrides.put("UPSTREAM_MAX_ATTEMPTS", Integer.toString(maxAttempts));
+        overrides.put("UPSTREAM_HEDGE_DELAY_MS", Long.toString(hedgeDelayMillis));
+        overrides.put("UPSTREAM_BREAKER_FAILURES", Integer.toString(BREAKER_FAILURES));
+        overrides.put("UPSTREAM_BREAKER_OPEN_MS", Long.toString(BREAKER_OPEN_MILLIS));
+        return new UpstreamClient(BotConfig.load().with(overrides, 0), new Metrics());
+    }
+}
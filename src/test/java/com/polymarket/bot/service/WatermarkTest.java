@@ -0,0 +1,122 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.MatchedTrade;
+import com.polymarket.bot.model.Trade;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the watcher's fetch, match and dispatch stages against {@link FakeFeedServer}
+ * with one whale per shard, and checks that a failing shard holds the persisted
+ * watermark back until it has fetched its trades.
+ * 在 {@link FakeFeedServer} 上运行观察者的拉取、匹配和分发阶段（每个分片一个巨鲸），
+ * 检查失败的分片在拉取到其交易之前会阻挡持久化水位线。
+ */
+class WatermarkTest {
+
+    private static final String ACTIVE = "0x" + "aa".repeat(20);
+    private static final String FAILING = "0x" + "bb".repeat(20);
+    private static final String IDLE = "0x" + "cc".repeat(20);
+    private static final String OFFLINE = "http://127.0.0.1:9";
+
+    @TempDir
+    Path dir;
+
+    private FakeFeedServer feed;
+    private WhaleWatcher watcher;
+    private final List<String> alerts = new ArrayList<>();
+    private long start;
+    private int seq;
+
+    @BeforeEach
+    void startWatcher() throws Exception {
+        feed = new FakeFeedServer();
+
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("HTTP_PROXY_HOST", "");
+        overrides.put("STATE_DIR", dir.resolve("state").toString());
+        overrides.put("MANUAL_WATCHLIST", ACTIVE + "," + FAILING + "," + IDLE);
+        overrides.put("WATCHLIST_SHARD_SIZE", "1");
+        overrides.put("ACTIVITY_SUBGRAPH_URLS", feed.url());
+        overrides.put("PNL_SUBGRAPH_URLS", OFFLINE);
+        overrides.put("GAMMA_URL", OFFLINE);
+        overrides.put("CLOB_URL", OFFLINE);
+        // One attempt per poll, and the shared breaker stays closed / 每次轮询只尝试一次，共享熔断器保持闭合
+        overrides.put("UPSTREAM_MAX_ATTEMPTS", "1");
+        overrides.put("UPSTREAM_BREAKER_FAILURES", "1000");
+        overrides.put("UPSTREAM_HEDGE_DELAY_MS", "0");
+        overrides.put("EVENT_LOG_DIR", "none");
+        overrides.put("EVENT_LOG_CONSOLE", "false");
+        BotConfig config = BotConfig.load().with(overrides, 0);
+
+        Metrics metrics = new Metrics();
+        ConfigManager configs = new ConfigManager(config, null);
+        EventLog events = EventLog.fromConfig(config, metrics);
+        StubNotifier notifier = new StubNotifier(alerts::add);
+        watcher = new WhaleWatcher(notifier, new TradeExecutor(notifier, configs, events, metrics), configs, events,
+                metrics);
+        // A new state store starts at the current time / 新的状态存储从当前时间开始
+        start = persistedWatermark();
+    }
+
+    @AfterEach
+    void stopFeed() {
+        feed.close();
+    }
+
+    private void publish(String creator, long timestamp) {
+        feed.publish(new Trade(String.format("0xtrade%03d", seq++), timestamp, "Will it rain?", 0, "Buy", "2000000",
+                "1000000", creator, "0x01"));
+    }
+
+    /**
+     * One pass of the poll pipeline; returns the trades dispatched. / 轮询流水线的一轮；返回分发的交易。
+     */
+    private List<Trade> poll() throws Exception {
+        List<Trade> trades = watcher.fetchTrades();
+        for (Trade trade : trades) {
+            MatchedTrade matched = watcher.match(trade);
+            if (matched != null) {
+                watcher.dispatch(matched);
+            }
+        }
+        if (!trades.isEmpty()) {
+            watcher.advanceWatermark(trades.get(trades.size() - 1).creationTimestamp());
+        }
+        return trades;
+    }
+
+    private long persistedWatermark() throws Exception {
+        return new StateStore(dir.resolve("state")).getWatermark();
+    }
+
+    @Test
+    void failingShardHoldsTheWatermarkBack() throws Exception {
+        publish(ACTIVE, start + 10);
+        publish(FAILING, start + 20);
+        publish(ACTIVE, start + 30);
+        feed.setFailing(FAILING, true);
+
+        assertEquals(2, poll().size());
+        assertEquals(2, alerts.size());
+        // The failing shard has fetched nothing past the start / 失败的分片未拉取到起点之后的任何内容
+        assertEquals(start, persistedWatermark());
+
+        feed.setFailing(FAILING, false);
+        assertEquals(1, poll().size());
+        // Idle shards keep an old cursor but do not hold the watermark / 空闲分片的游标停留在旧处，但不阻挡水位线
+        watcher.advanceWatermark(start + 30);
+        assertEquals(start + 30, persistedWatermark());
+        assertEquals(3, alerts.size());
+    }
+}
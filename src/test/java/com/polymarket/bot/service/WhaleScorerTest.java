@@ -0,0 +1,55 @@
+package com.polymarket.bot.service;
+
+import com.polymarket.bot.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Win rates of candidates come from their fetched activity, per market.
+ * 候选人的胜率来自其获取到的活动，按市场计算。
+ */
+class WhaleScorerTest {
+
+    private static final String WHALE = "0x00000000000000000000000000000000000000aa";
+    private static final long NOW = 1_000_000;
+
+    private static Trade trade(long timestamp, String conditionId, String type, long shares, long collateral) {
+        return new Trade(null, timestamp, "Will it rain?", 0, type, Long.toString(shares), Long.toString(collateral),
+                WHALE, conditionId);
+    }
+
+    @Test
+    void candidateWinRateComesFromFetchedActivity() {
+        WhaleScorer scorer = new WhaleScorer(10, 60_000, 100, 0.5, false);
+        scorer.recordProfit(WHALE, 1_000);
+        // Profitable overall, but both closes in the last 24h lost / 总体盈利，但过去 24 小时的两次平仓均亏损
+        scorer.refreshActivity(WHALE, List.of(
+                trade(NOW - 40, "0x01", "Sell", 100, 40),
+                trade(NOW - 50, "0x01", "Buy", 100, 50),
+                trade(NOW - 30, "0x02", "Buy", 100, 60),
+                trade(NOW - 20, "0x02", "Sell", 100, 55)), NOW * 1000);
+        assertFalse(scorer.qualifies(WHALE, NOW));
+
+        scorer.refreshActivity(WHALE, List.of(
+                trade(NOW - 50, "0x01", "Buy", 100, 50),
+                trade(NOW - 40, "0x01", "Sell", 100, 70)), NOW * 1000);
+        assertTrue(scorer.qualifies(WHALE, NOW));
+    }
+
+    @Test
+    void positionsWithTheSameTitleAreKeptApartByCondition() {
+        WhaleScorer scorer = new WhaleScorer(10, 60_000, 100, 0.5, false);
+        scorer.recordProfit(WHALE, 1_000);
+        // A sell in another market with the same title is not a close / 同名的另一个市场中的卖出不是平仓
+        scorer.refreshActivity(WHALE, List.of(
+                trade(NOW - 50, "0x01", "Buy", 100, 90),
+                trade(NOW - 40, "0x02", "Sell", 100, 10),
+                trade(NOW - 30, "0x03", "Buy", 100, 40),
+                trade(NOW - 20, "0x03", "Sell", 100, 60)), NOW * 1000);
+        assertTrue(scorer.qualifies(WHALE, NOW));
+    }
+}